@@ -23,8 +23,10 @@ import org.apache.hadoop.io.Text;
 import org.apache.hadoop.mapreduce.Reducer.Context;
 
 import boa.functions.BoaCasts;
+import boa.io.BoaOutputFormat;
 import boa.io.EmitKey;
 import boa.io.EmitValue;
+import boa.io.OutputRecord;
 
 /**
  * The base class for all Boa aggregators.
@@ -38,6 +40,7 @@ public abstract class Aggregator {
 	private Context context;
 	private EmitKey key;
 	private boolean combining;
+	private boolean binary;
 
 	/**
 	 * Construct an Aggregator.
@@ -97,6 +100,8 @@ public abstract class Aggregator {
 	protected void collect(final String data, final String metadata) throws IOException, InterruptedException {
 		if (this.combining)
 			this.getContext().write(this.getKey(), new EmitValue(data, metadata));
+		else if (this.binary)
+			this.getContext().write(new OutputRecord(this.getKey(), data, metadata), NullWritable.get());
 		else if (metadata != null)
 			this.getContext().write(new Text(this.getKey() + " = " + data + " weight " + metadata), NullWritable.get());
 		else
@@ -133,12 +138,20 @@ public abstract class Aggregator {
 
 	public void setContext(@SuppressWarnings("rawtypes") final Context context) {
 		this.context = context;
+		this.binary = context != null && context.getConfiguration() != null && BoaOutputFormat.isBinary(context.getConfiguration());
 	}
 
 	public boolean isCombining() {
 		return this.combining;
 	}
 
+	/**
+	 * @return whether output is written as {@link OutputRecord}s rather than as text
+	 */
+	public boolean isBinary() {
+		return this.binary;
+	}
+
 	public void setCombining(final boolean combining) {
 		this.combining = combining;
 	}
@@ -24,6 +24,7 @@ import org.apache.hadoop.io.Text;
 
 import boa.io.EmitKey;
 import boa.io.EmitValue;
+import boa.io.OutputRecord;
 
 
 /**
@@ -61,7 +62,10 @@ public abstract class GraphAggregator extends Aggregator {
 			this.getContext().write(this.getKey(), new EmitValue(data, metadata));
 			return;
 		}
-		this.getContext().write(new Text(format(this.getKey().getIndex(), data, metadata)), NullWritable.get());
+		if (this.isBinary())
+			this.getContext().write(new OutputRecord(format(this.getKey().getIndex(), data, metadata)), NullWritable.get());
+		else
+			this.getContext().write(new Text(format(this.getKey().getIndex(), data, metadata)), NullWritable.get());
 	}
 
 	protected abstract String format(final String idx, final String data, final String metadata);
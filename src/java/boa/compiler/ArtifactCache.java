@@ -0,0 +1,194 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * A directory of compiled job jars, keyed by a digest of everything that
+ * went into them.  The least recently used jars are removed once the cache
+ * holds more than its maximum number of entries.
+ */
+public class ArtifactCache {
+	private static final String SUFFIX = ".jar";
+
+	private final File dir;
+	private final int maxEntries;
+
+	/**
+	 * Builds the key of a cache entry.
+	 */
+	public static class Key {
+		private final MessageDigest digest;
+
+		public Key() {
+			try {
+				digest = MessageDigest.getInstance("SHA-1");
+			} catch (final NoSuchAlgorithmException e) {
+				throw new RuntimeException(e);
+			}
+		}
+
+		/**
+		 * Adds a string to the key.
+		 *
+		 * @param s the string
+		 * @return this key
+		 */
+		public Key add(final String s) {
+			try {
+				final byte[] b = (s == null ? "" : s).getBytes("UTF-8");
+				add(b.length);
+				digest.update(b);
+			} catch (final UnsupportedEncodingException e) {
+				throw new RuntimeException(e);
+			}
+			return this;
+		}
+
+		/**
+		 * Adds a number to the key.
+		 *
+		 * @param n the number
+		 * @return this key
+		 */
+		public Key add(final long n) {
+			for (int i = 56; i >= 0; i -= 8)
+				digest.update((byte) (n >>> i));
+			return this;
+		}
+
+		/**
+		 * Adds a file's path, size and modification time to the key.
+		 *
+		 * @param f the file
+		 * @return this key
+		 */
+		public Key add(final File f) {
+			return add(f.getAbsolutePath()).add(f.length()).add(f.lastModified());
+		}
+
+		@Override
+		public String toString() {
+			final StringBuilder sb = new StringBuilder();
+			for (final byte b : digest.digest())
+				sb.append(String.format("%02x", b));
+			return sb.toString();
+		}
+	}
+
+	/**
+	 * Opens (and if needed creates) a cache directory.
+	 *
+	 * @param dir the directory holding the cached jars
+	 * @param maxEntries the number of jars to keep
+	 * @throws IOException if the directory can not be created
+	 */
+	public ArtifactCache(final File dir, final int maxEntries) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+		this.dir = dir;
+		this.maxEntries = maxEntries;
+	}
+
+	/**
+	 * Copies the cached jar for the key to the given file.
+	 *
+	 * @param key the key of the jar
+	 * @param jar where to copy the jar
+	 * @return true if the jar was cached
+	 * @throws IOException if the copy fails
+	 */
+	public boolean get(final String key, final File jar) throws IOException {
+		final File f = new File(dir, key + SUFFIX);
+		if (!f.isFile())
+			return false;
+		f.setLastModified(System.currentTimeMillis());
+		copy(f, jar);
+		return true;
+	}
+
+	/**
+	 * Adds a jar to the cache.
+	 *
+	 * @param key the key of the jar
+	 * @param jar the jar to cache
+	 * @throws IOException if the copy fails
+	 */
+	public void put(final String key, final File jar) throws IOException {
+		// copy under a temporary name, so a partially written jar is never served
+		final File tmp = File.createTempFile(key, ".tmp", dir);
+		copy(jar, tmp);
+		final File f = new File(dir, key + SUFFIX);
+		if (!tmp.renameTo(f) && !(f.delete() && tmp.renameTo(f))) {
+			tmp.delete();
+			throw new IOException("unable to move " + tmp + " to " + f);
+		}
+		evict();
+	}
+
+	private void evict() {
+		final File[] jars = dir.listFiles();
+		if (jars == null || jars.length <= maxEntries)
+			return;
+
+		Arrays.sort(jars, new Comparator<File>() {
+			@Override
+			public int compare(final File a, final File b) {
+				final long x = a.lastModified(), y = b.lastModified();
+				return x < y ? -1 : (x == y ? 0 : 1);
+			}
+		});
+
+		int count = 0;
+		for (final File f : jars)
+			if (f.getName().endsWith(SUFFIX))
+				count++;
+		for (int i = 0; i < jars.length && count > maxEntries; i++)
+			if (jars[i].getName().endsWith(SUFFIX) && jars[i].delete())
+				count--;
+	}
+
+	private static void copy(final File from, final File to) throws IOException {
+		final InputStream in = new BufferedInputStream(new FileInputStream(from));
+		try {
+			final OutputStream out = new BufferedOutputStream(new FileOutputStream(to));
+			try {
+				final byte[] b = new byte[4096];
+				int len;
+				while ((len = in.read(b)) > 0)
+					out.write(b, 0, len);
+			} finally {
+				out.close();
+			}
+		} finally {
+			in.close();
+		}
+	}
+}
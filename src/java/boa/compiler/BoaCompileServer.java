@@ -0,0 +1,301 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.antlr.v4.runtime.ANTLRFileStream;
+import org.antlr.v4.runtime.CharStream;
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.PosixParser;
+import org.apache.log4j.Logger;
+import org.scannotation.ClasspathUrlFinder;
+
+import boa.BoaMain;
+
+/**
+ * A long-lived Boa compiler.  The symbol table, the string templates and
+ * javac stay loaded between requests, generated code is compiled in memory
+ * and finished jars are cached by a digest of their inputs.
+ *
+ * Each connection is one request.  The client sends the same arguments it
+ * would pass to {@link BoaCompiler}, one per line, followed by an empty line.
+ * The server answers with a status line ("OK &lt;jar&gt;" or
+ * "ERROR &lt;message&gt;"), a "cached true|false" line, one
+ * "time &lt;phase&gt; &lt;ms&gt;" line per compiler phase, an empty line, and
+ * then any diagnostics the compiler printed, after which it closes the
+ * connection.  Requests are handled one at a time, since the compiler keeps
+ * static state.
+ */
+public class BoaCompileServer extends BoaMain {
+	private static Logger LOG = Logger.getLogger(BoaCompileServer.class);
+
+	// a trivial program compiled on startup, so the first request does not pay for loading javac
+	private static final String WARMUP = "o: output sum of int;\nvisit(input, visitor {\n\tbefore n: Method -> o << 1;\n});\n";
+
+	private final InMemoryJavaCompiler javac;
+	private final ArtifactCache cache;
+	private final String runtimeVersion;
+
+	/**
+	 * Creates a compile server.
+	 *
+	 * @param libs extra function/aggregator jars to load up front
+	 * @param cache the cache of compiled jars, or null to disable caching
+	 * @throws IOException if the libraries can not be loaded
+	 */
+	public BoaCompileServer(final List<URL> libs, final ArtifactCache cache) throws IOException {
+		final PhaseTimer timer = new PhaseTimer();
+		timer.start("symbols");
+		SymbolTable.initialize(libs);
+		timer.start("javac");
+		javac = new InMemoryJavaCompiler(BoaCompiler.getJavacOptions());
+		timer.stop();
+		LOG.info("compile server initialized: " + timer);
+
+		this.cache = cache;
+		this.runtimeVersion = getRuntimeVersion();
+	}
+
+	public static void main(final String[] args) throws IOException {
+		final Options options = new Options();
+		options.addOption("p", "port", true, "the port to listen on (default 8087)");
+		options.addOption("b", "bind", true, "the address to listen on (default localhost)");
+		options.addOption("l", "libs", true, "extra jars (functions/aggregators) to load on startup");
+		options.addOption("cache", "cache-dir", true, "directory to cache compiled jars in (default: no caching)");
+		options.addOption("size", "cache-size", true, "number of compiled jars to cache (default 1000)");
+
+		final CommandLine cl;
+		try {
+			cl = new PosixParser().parse(options, args);
+		} catch (final org.apache.commons.cli.ParseException e) {
+			printHelp(options, e.getMessage());
+			return;
+		}
+
+		final int port = Integer.parseInt(cl.getOptionValue('p', "8087"));
+		final InetAddress bind = InetAddress.getByName(cl.getOptionValue('b', "localhost"));
+
+		ArtifactCache cache = null;
+		if (cl.hasOption("cache"))
+			cache = new ArtifactCache(new File(cl.getOptionValue("cache")), Integer.parseInt(cl.getOptionValue("size", "1000")));
+
+		final BoaCompileServer server = new BoaCompileServer(BoaCompiler.getLibs(cl), cache);
+		server.warmup();
+		server.serve(new ServerSocket(port, 50, bind));
+	}
+
+	/**
+	 * Accepts and answers requests until the socket is closed.
+	 *
+	 * @param socket the socket to listen on
+	 * @throws IOException if accepting a connection fails
+	 */
+	public void serve(final ServerSocket socket) throws IOException {
+		LOG.info("compile server listening on " + socket.getLocalSocketAddress());
+		while (!socket.isClosed()) {
+			final Socket client = socket.accept();
+			try {
+				handle(client);
+			} catch (final IOException e) {
+				LOG.warn("error answering compile request", e);
+			} finally {
+				client.close();
+			}
+		}
+	}
+
+	private void handle(final Socket client) throws IOException {
+		final BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), "UTF-8"));
+		final List<String> args = new ArrayList<String>();
+		String line;
+		while ((line = in.readLine()) != null && line.length() > 0)
+			args.add(line);
+
+		final PrintWriter out = new PrintWriter(new OutputStreamWriter(client.getOutputStream(), "UTF-8"));
+		final Result r = compile(args.toArray(new String[args.size()]), true);
+		out.print(r.error == null ? "OK " + r.jar : "ERROR " + r.error.replace('\n', ' '));
+		out.print('\n');
+		out.print("cached " + r.cached + "\n");
+		for (final Map.Entry<String, Long> e : r.timings.entrySet())
+			out.print("time " + e.getKey() + " " + e.getValue() + "\n");
+		out.print('\n');
+		out.print(r.diagnostics);
+		out.flush();
+	}
+
+	/**
+	 * The outcome of one compile request.
+	 */
+	public static class Result {
+		/** the jar that was written, if it compiled */
+		public String jar;
+		/** why it did not compile, or null */
+		public String error;
+		/** true if the jar came from the cache */
+		public boolean cached = false;
+		/** the time spent in each phase, in milliseconds */
+		public Map<String, Long> timings = new LinkedHashMap<String, Long>();
+		/** what the compiler printed while compiling */
+		public String diagnostics = "";
+	}
+
+	/**
+	 * Compiles a request.  Accepts the same arguments as {@link BoaCompiler},
+	 * except that nothing is written to a compilation directory.
+	 *
+	 * @param args the compiler arguments
+	 * @param useCache whether to look up and store the jar in the cache
+	 * @return the result of the compilation
+	 */
+	public synchronized Result compile(final String[] args, final boolean useCache) {
+		final Result r = new Result();
+		final PhaseTimer timer = new PhaseTimer();
+
+		final PrintStream err = System.err;
+		final ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(diagnostics, true));
+		try {
+			final CommandLine cl = BoaCompiler.processCommandLineOptions(args);
+			if (cl == null)
+				throw new IllegalArgumentException("invalid compiler arguments");
+
+			final List<File> inputFiles = new ArrayList<File>(BoaCompiler.inputFiles);
+			final String className = BoaCompiler.getGeneratedClass(cl);
+			r.jar = cl.hasOption('o') ? cl.getOptionValue('o') : className + ".jar";
+
+			timer.start("symbols");
+			SymbolTable.initialize(BoaCompiler.getLibs(cl));
+
+			timer.start("read");
+			final List<CharStream> inputs = new ArrayList<CharStream>();
+			for (final File f : inputFiles)
+				inputs.add(new ANTLRFileStream(f.getAbsolutePath()));
+			final List<File> libJars = BoaCompiler.getLibJars(cl);
+
+			final String key = cacheKey(cl, className, inputFiles, inputs, libJars);
+
+			timer.start("cache");
+			if (useCache && cache != null && cache.get(key, new File(r.jar))) {
+				r.cached = true;
+			} else {
+				final String src = BoaCompiler.generate(cl, className, inputFiles, inputs, timer);
+
+				timer.start("javac");
+				final Map<String, byte[]> entries = new LinkedHashMap<String, byte[]>();
+				entries.put("boa/" + className + ".java", src.getBytes());
+				entries.putAll(javac.compile("boa." + className, src));
+
+				timer.start("jar");
+				BoaCompiler.generateJar(r.jar, entries, libJars);
+
+				if (useCache && cache != null) {
+					timer.start("cache");
+					cache.put(key, new File(r.jar));
+				}
+			}
+		} catch (final Throwable e) {
+			r.error = e.getMessage() == null ? e.toString() : e.getMessage();
+			if (!(e instanceof RuntimeException))
+				e.printStackTrace();
+		} finally {
+			timer.stop();
+			System.setErr(err);
+		}
+
+		r.timings = timer.getMillis();
+		r.diagnostics = diagnostics.toString();
+		LOG.info((r.error == null ? r.jar : "failed: " + r.error) + (r.cached ? " (cached)" : "") + " - " + timer);
+		return r;
+	}
+
+	/**
+	 * Compiles a small program, so javac and the code generator are loaded
+	 * before the first real request.
+	 *
+	 * @throws IOException if the program can not be written
+	 */
+	public void warmup() throws IOException {
+		final File dir = new File(new File(System.getProperty("java.io.tmpdir")), "boa-warmup-" + System.nanoTime());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+		final File prog = new File(dir, "warmup.boa");
+		final File jar = new File(dir, "warmup.jar");
+
+		final FileWriter w = new FileWriter(prog);
+		try {
+			w.write(WARMUP);
+		} finally {
+			w.close();
+		}
+
+		// the runtime jar is not needed, so bundle the program itself instead
+		final Result r = compile(new String[] { "-i", prog.getPath(), "-o", jar.getPath(), "-j", prog.getPath() }, false);
+		if (r.error != null)
+			LOG.warn("warmup compile failed: " + r.error);
+
+		jar.delete();
+		prog.delete();
+		dir.delete();
+	}
+
+	private String cacheKey(final CommandLine cl, final String className, final List<File> inputFiles, final List<CharStream> inputs, final List<File> libJars) {
+		final ArtifactCache.Key key = new ArtifactCache.Key();
+		key.add(runtimeVersion);
+		key.add(className);
+		key.add(cl.getOptionValue('v', ""));
+		key.add(cl.hasOption("pp") || cl.hasOption("ast") || cl.hasOption("ast2") ? 1 : 0);
+		key.add(cl.hasOption("prof") ? 1 : 0);
+		for (final File f : libJars)
+			key.add(f);
+		for (int i = 0; i < inputs.size(); i++)
+			key.add(inputFiles.get(i).getName()).add(inputs.get(i).toString());
+		return key.toString();
+	}
+
+	// identifies the compiler and runtime build, so a new release never serves stale jars
+	private static String getRuntimeVersion() {
+		final URL base = ClasspathUrlFinder.findClassBase(BoaCompiler.class);
+		final ArtifactCache.Key key = new ArtifactCache.Key();
+		if (base != null) {
+			String path = base.getPath();
+			if (path.indexOf('!') != -1)
+				path = path.substring(path.indexOf(':') + 1, path.indexOf('!'));
+			key.add(new File(path));
+		}
+		final Package p = BoaCompiler.class.getPackage();
+		key.add(p == null ? "" : p.getImplementationVersion());
+		return key.toString();
+	}
+}
@@ -29,6 +29,9 @@ import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
 import java.util.jar.JarOutputStream;
 import java.util.zip.ZipEntry;
@@ -49,8 +52,11 @@ import org.scannotation.ClasspathUrlFinder;
 import boa.BoaMain;
 import boa.compiler.ast.Program;
 import boa.compiler.ast.Start;
+import boa.compiler.transforms.ConstantFoldingTransformer;
+import boa.compiler.transforms.DeadCodeEliminationTransformer;
 import boa.compiler.transforms.InheritedAttributeTransformer;
 import boa.compiler.transforms.LocalAggregationTransformer;
+import boa.compiler.transforms.PureCallHoistingTransformer;
 import boa.compiler.transforms.VariableDeclRenameTransformer;
 import boa.compiler.transforms.VisitorMergingTransformer;
 import boa.compiler.transforms.VisitorOptimizingTransformer;
@@ -58,6 +64,8 @@ import boa.compiler.visitors.AbstractCodeGeneratingVisitor;
 import boa.compiler.visitors.ASTPrintingVisitor;
 import boa.compiler.visitors.CodeGeneratingVisitor;
 import boa.compiler.visitors.PrettyPrintVisitor;
+import boa.compiler.visitors.GuardFindingVisitor;
+import boa.compiler.visitors.ProjectFieldFindingVisitor;
 import boa.compiler.visitors.TaskClassifyingVisitor;
 import boa.compiler.visitors.TypeCheckingVisitor;
 import boa.compiler.listeners.BoaErrorListener;
@@ -67,6 +75,7 @@ import boa.compiler.listeners.ParserErrorListener;
 import org.antlr.v4.runtime.ANTLRFileStream;
 import org.antlr.v4.runtime.atn.PredictionMode;
 import org.antlr.v4.runtime.BaseErrorListener;
+import org.antlr.v4.runtime.CharStream;
 import org.antlr.v4.runtime.CommonTokenStream;
 import org.antlr.v4.runtime.misc.Interval;
 import org.antlr.v4.runtime.misc.ParseCancellationException;
@@ -74,6 +83,7 @@ import org.antlr.v4.runtime.Recognizer;
 import org.antlr.v4.runtime.RecognitionException;
 
 import boa.datagen.DefaultProperties;
+import boa.io.ProjectGuard;
 import boa.parser.BoaParser;
 import boa.parser.BoaLexer;
 
@@ -88,11 +98,16 @@ public class BoaCompiler extends BoaMain {
 	
 	private static Logger LOG = Logger.getLogger(BoaCompiler.class);
 	
+	// the source and target level of the generated code
+	static final String JAVA_VERSION = "5";
+
 	public static void main(final String[] args) throws IOException {
 		CommandLine cl = processCommandLineOptions(args);
 		if (cl == null) return;
 		final ArrayList<File> inputFiles = BoaCompiler.inputFiles;
 
+		final PhaseTimer timer = new PhaseTimer();
+
 		// get the name of the generated class
 		final String className = getGeneratedClass(cl);
 
@@ -114,164 +129,265 @@ public class BoaCompiler extends BoaMain {
 		if (!outputSrcDir.mkdirs())
 			throw new IOException("unable to mkdir " + outputSrcDir);
 
-		// find custom libs to load
-		final List<URL> libs = new ArrayList<URL>();
-		if (cl.hasOption('l'))
-			for (final String lib : cl.getOptionValues('l'))
-				libs.add(new File(lib).toURI().toURL());
-
 		final File outputFile = new File(outputSrcDir, className + ".java");
 		final BufferedOutputStream o = new BufferedOutputStream(new FileOutputStream(outputFile));
 		try {
-			final List<String> jobnames = new ArrayList<String>();
-			final List<String> jobs = new ArrayList<String>();
-			final List<Integer> seeds = new ArrayList<Integer>();
-			boolean isSimple = true;
+			timer.start("symbols");
+			SymbolTable.initialize(getLibs(cl));
+
+			final List<CharStream> inputs = new ArrayList<CharStream>();
+			for (final File f : inputFiles)
+				inputs.add(new ANTLRFileStream(f.getAbsolutePath()));
+
+			final String src = generate(cl, className, inputFiles, inputs, timer);
+
+			timer.start("write");
+			o.write(src.getBytes());
+		} finally {
+			o.close();
+		}
+
+		compileGeneratedSrc(cl, jarName, outputRoot, outputFile, timer);
+
+		timer.stop();
+		LOG.info("compile timings: " + timer);
+	}
+
+	/**
+	 * Compiles Boa programs to the source of a Hadoop job.
+	 *
+	 * The symbol table must already be initialized.  Static state left over
+	 * from an earlier compilation (user types, aggregator tables) is reset, so
+	 * a long-lived process can call this repeatedly.
+	 *
+	 * @param cl the compiler options
+	 * @param className the name of the generated class
+	 * @param inputFiles the files the programs came from, used for messages
+	 * @param inputs the programs
+	 * @param timer accumulates the time spent in each phase
+	 * @return the generated Java source
+	 * @throws IOException if the code generator can not be initialized
+	 */
+	static String generate(final CommandLine cl, final String className, final List<File> inputFiles, final List<CharStream> inputs, final PhaseTimer timer) throws IOException {
+		SymbolTable.resetTypeMap();
+		CodeGeneratingVisitor.combineAggregatorStrings.clear();
+		CodeGeneratingVisitor.reduceAggregatorStrings.clear();
+
+		final List<String> jobnames = new ArrayList<String>();
+		final List<String> jobs = new ArrayList<String>();
+		final List<Integer> seeds = new ArrayList<Integer>();
+		boolean isSimple = true;
+		// the Project members any job reads, or null if some job needs the whole Project
+		Set<String> projection = new TreeSet<String>();
+		// the guards of each job, or null if some job has none
+		List<List<ProjectGuard.Clause>> guards = new ArrayList<List<ProjectGuard.Clause>>();
+		// the profiled sites of all jobs, or null if not profiling
+		final List<String> profileSites = cl.hasOption("prof") ? new ArrayList<String>() : null;
+
+		final List<Program> visitorPrograms = new ArrayList<Program>();
+
+		final int maxVisitors;
+		if (cl.hasOption('v'))
+			maxVisitors = Integer.parseInt(cl.getOptionValue('v'));
+		else
+			maxVisitors = Integer.MAX_VALUE;
 
-			final List<Program> visitorPrograms = new ArrayList<Program>();
+		for (int i = 0; i < inputFiles.size(); i++) {
+			final File f = inputFiles.get(i);
+			try {
+				timer.start("parse");
+				final BoaLexer lexer = new BoaLexer(inputs.get(i));
+				lexer.removeErrorListeners();
+				lexer.addErrorListener(new LexerErrorListener());
+
+				final CommonTokenStream tokens = new CommonTokenStream(lexer);
+				final BoaParser parser = new BoaParser(tokens);
+				parser.removeErrorListeners();
+				parser.addErrorListener(new BaseErrorListener() {
+					@Override
+					public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) throws ParseCancellationException {
+						throw new ParseCancellationException(e);
+					}
+				});
 
-			SymbolTable.initialize(libs);
+				final BoaErrorListener parserErrorListener = new ParserErrorListener();
+				final Start p = parse(tokens, parser, parserErrorListener);
+				if (cl.hasOption("ast")) new ASTPrintingVisitor().start(p);
+				// use the whole input string to seed the RNG
+				seeds.add(new PrettyPrintVisitor().startAndReturn(p).hashCode());
 
-			final int maxVisitors;
-			if (cl.hasOption('v'))
-				maxVisitors = Integer.parseInt(cl.getOptionValue('v'));
-			else
-				maxVisitors = Integer.MAX_VALUE;
+				final String jobName = "" + i;
 
-			for (int i = 0; i < inputFiles.size(); i++) {
-				final File f = inputFiles.get(i);
 				try {
-					final BoaLexer lexer = new BoaLexer(new ANTLRFileStream(f.getAbsolutePath()));
-					lexer.removeErrorListeners();
-					lexer.addErrorListener(new LexerErrorListener());
-
-					final CommonTokenStream tokens = new CommonTokenStream(lexer);
-					final BoaParser parser = new BoaParser(tokens);
-					parser.removeErrorListeners();
-					parser.addErrorListener(new BaseErrorListener() {
-						@Override
-						public void syntaxError(Recognizer<?, ?> recognizer, Object offendingSymbol, int line, int charPositionInLine, String msg, RecognitionException e) throws ParseCancellationException {
-							throw new ParseCancellationException(e);
+					if (!parserErrorListener.hasError) {
+						timer.start("typecheck");
+						new TypeCheckingVisitor().start(p, new SymbolTable());
+
+						final TaskClassifyingVisitor simpleVisitor = new TaskClassifyingVisitor();
+						simpleVisitor.start(p);
+
+						LOG.info(f.getName() + ": task complexity: " + (!simpleVisitor.isComplex() ? "simple" : "complex"));
+						isSimple &= !simpleVisitor.isComplex();
+
+						final ProjectFieldFindingVisitor fieldFinder = new ProjectFieldFindingVisitor();
+						fieldFinder.start(p);
+						if (projection != null && fieldFinder.getFields() != null)
+							projection.addAll(fieldFinder.getFields());
+						else
+							projection = null;
+
+						final GuardFindingVisitor guardFinder = new GuardFindingVisitor();
+						guardFinder.start(p);
+						if (guards != null && !guardFinder.getClauses().isEmpty())
+							guards.add(new ArrayList<ProjectGuard.Clause>(guardFinder.getClauses()));
+						else
+							guards = null;
+
+						timer.start("transform");
+						new VariableDeclRenameTransformer().start(p);
+						new InheritedAttributeTransformer().start(p);
+						new ConstantFoldingTransformer().start(p);
+						new DeadCodeEliminationTransformer().start(p);
+						new PureCallHoistingTransformer().start(p);
+						new LocalAggregationTransformer().start(p);
+
+						// if a job has no visitor, let it have its own method
+						// also let jobs have own methods if visitor merging is disabled
+						if (!simpleVisitor.isComplex() || maxVisitors < 2 || inputFiles.size() == 1) {
+							new VisitorOptimizingTransformer().start(p);
+
+							if (cl.hasOption("pp")) new PrettyPrintVisitor().start(p);
+							if (cl.hasOption("ast2")) new ASTPrintingVisitor().start(p);
+							timer.start("codegen");
+							final CodeGeneratingVisitor cg = new CodeGeneratingVisitor(jobName, profileSites);
+							cg.start(p);
+							jobs.add(cg.getCode());
+
+							jobnames.add(jobName);
 						}
-					});
-
-					final BoaErrorListener parserErrorListener = new ParserErrorListener();
-					final Start p = parse(tokens, parser, parserErrorListener);
-					if (cl.hasOption("ast")) new ASTPrintingVisitor().start(p);
-					// use the whole input string to seed the RNG
-					seeds.add(new PrettyPrintVisitor().startAndReturn(p).hashCode());
-
-					final String jobName = "" + i;
-
-					try {
-						if (!parserErrorListener.hasError) {
-							new TypeCheckingVisitor().start(p, new SymbolTable());
-
-							final TaskClassifyingVisitor simpleVisitor = new TaskClassifyingVisitor();
-							simpleVisitor.start(p);
-
-							LOG.info(f.getName() + ": task complexity: " + (!simpleVisitor.isComplex() ? "simple" : "complex"));
-							isSimple &= !simpleVisitor.isComplex();
-							
-							new VariableDeclRenameTransformer().start(p);
-							new InheritedAttributeTransformer().start(p);
-							new LocalAggregationTransformer().start(p);
-
-							// if a job has no visitor, let it have its own method
-							// also let jobs have own methods if visitor merging is disabled
-							if (!simpleVisitor.isComplex() || maxVisitors < 2 || inputFiles.size() == 1) {
-								new VisitorOptimizingTransformer().start(p);
-
-								if (cl.hasOption("pp")) new PrettyPrintVisitor().start(p);
-								if (cl.hasOption("ast2")) new ASTPrintingVisitor().start(p);
-								final CodeGeneratingVisitor cg = new CodeGeneratingVisitor(jobName);
-								cg.start(p);
-								jobs.add(cg.getCode());
-
-								jobnames.add(jobName);
-							}
-							// if a job has visitors, fuse them all together into a single program
-							else {
-								p.getProgram().jobName = jobName;
-								visitorPrograms.add(p.getProgram());
-							}
+						// if a job has visitors, fuse them all together into a single program
+						else {
+							p.getProgram().jobName = jobName;
+							visitorPrograms.add(p.getProgram());
 						}
-					} catch (final TypeCheckException e) {
-						parserErrorListener.error("typecheck", lexer, null, e.n.beginLine, e.n.beginColumn, e.n2.endColumn - e.n.beginColumn + 1, e.getMessage(), e);
 					}
-				} catch (final Exception e) {
-					System.err.print(f.getName() + ": compilation failed: ");
-					e.printStackTrace();
+				} catch (final TypeCheckException e) {
+					parserErrorListener.error("typecheck", lexer, null, e.n.beginLine, e.n.beginColumn, e.n2.endColumn - e.n.beginColumn + 1, e.getMessage(), e);
 				}
+			} catch (final Exception e) {
+				System.err.print(f.getName() + ": compilation failed: ");
+				e.printStackTrace();
 			}
+		}
 
-			if (!visitorPrograms.isEmpty())
-				try {
-					for (final Program p : new VisitorMergingTransformer().mergePrograms(visitorPrograms, maxVisitors)) {
-						new VisitorOptimizingTransformer().start(p);
-
-						if (cl.hasOption("pp")) new PrettyPrintVisitor().start(p);
-						if (cl.hasOption("ast2")) new ASTPrintingVisitor().start(p);
-						final CodeGeneratingVisitor cg = new CodeGeneratingVisitor(p.jobName);
-						cg.start(p);
-						jobs.add(cg.getCode());
-		
-						jobnames.add(p.jobName);
-					}
-				} catch (final Exception e) {
-					System.err.println("error fusing visitors - falling back: " + e);
-					e.printStackTrace();
+		if (!visitorPrograms.isEmpty())
+			try {
+				timer.start("transform");
+				for (final Program p : new VisitorMergingTransformer().mergePrograms(visitorPrograms, maxVisitors)) {
+					new VisitorOptimizingTransformer().start(p);
+
+					if (cl.hasOption("pp")) new PrettyPrintVisitor().start(p);
+					if (cl.hasOption("ast2")) new ASTPrintingVisitor().start(p);
+					timer.start("codegen");
+					final CodeGeneratingVisitor cg = new CodeGeneratingVisitor(p.jobName, profileSites);
+					cg.start(p);
+					jobs.add(cg.getCode());
+
+					jobnames.add(p.jobName);
+					timer.start("transform");
+				}
+			} catch (final Exception e) {
+				System.err.println("error fusing visitors - falling back: " + e);
+				e.printStackTrace();
 
-					for (final Program p : visitorPrograms) {
-						new VisitorOptimizingTransformer().start(p);
+				for (final Program p : visitorPrograms) {
+					new VisitorOptimizingTransformer().start(p);
 
-						if (cl.hasOption("pp")) new PrettyPrintVisitor().start(p);
-						if (cl.hasOption("ast2")) new ASTPrintingVisitor().start(p);
-						final CodeGeneratingVisitor cg = new CodeGeneratingVisitor(p.jobName);
-						cg.start(p);
-						jobs.add(cg.getCode());
+					if (cl.hasOption("pp")) new PrettyPrintVisitor().start(p);
+					if (cl.hasOption("ast2")) new ASTPrintingVisitor().start(p);
+					timer.start("codegen");
+					final CodeGeneratingVisitor cg = new CodeGeneratingVisitor(p.jobName, profileSites);
+					cg.start(p);
+					jobs.add(cg.getCode());
 
-						jobnames.add(p.jobName);
-					}
+					jobnames.add(p.jobName);
+					timer.start("transform");
 				}
-
-			if (jobs.size() == 0)
-				throw new RuntimeException("no files compiled without error");
-
-			final ST st = AbstractCodeGeneratingVisitor.stg.getInstanceOf("Program");
-
-			st.add("name", className);
-			st.add("numreducers", inputFiles.size());
-			st.add("jobs", jobs);
-			st.add("jobnames", jobnames);
-			st.add("combineTables", CodeGeneratingVisitor.combineAggregatorStrings);
-			st.add("reduceTables", CodeGeneratingVisitor.reduceAggregatorStrings);
-			st.add("splitsize", isSimple ? 64 * 1024 * 1024 : 10 * 1024 * 1024);
-			st.add("seeds", seeds);
-			if (DefaultProperties.localDataPath != null) {
-				st.add("isLocal", true);
 			}
 
-			o.write(st.render().getBytes());
-		} finally {
-			o.close();
+		if (jobs.size() == 0)
+			throw new RuntimeException("no files compiled without error");
+
+		timer.start("render");
+		final ST st = AbstractCodeGeneratingVisitor.stg.getInstanceOf("Program");
+
+		st.add("name", className);
+		st.add("numreducers", inputFiles.size());
+		st.add("jobs", jobs);
+		st.add("jobnames", jobnames);
+		st.add("combineTables", CodeGeneratingVisitor.combineAggregatorStrings);
+		st.add("reduceTables", CodeGeneratingVisitor.reduceAggregatorStrings);
+		st.add("splitsize", isSimple ? 64 * 1024 * 1024 : 10 * 1024 * 1024);
+		st.add("seeds", seeds);
+		if (projection != null) {
+			st.add("projected", true);
+			st.add("projection", projection);
+		}
+		if (guards != null && !guards.isEmpty())
+			st.add("guard", new ProjectGuard(guards).toString());
+		if (profileSites != null)
+			st.add("profile", profileSites);
+		if (DefaultProperties.localDataPath != null) {
+			st.add("isLocal", true);
 		}
 
-		compileGeneratedSrc(cl, jarName, outputRoot, outputFile);
+		final String src = st.render();
+		timer.stop();
+		return src;
 	}
-	
-	public static void parseOnly(final String[] args) throws IOException {
-		final CommandLine cl = processParseCommandLineOptions(args);
-		if (cl == null) return;
-		final ArrayList<File> inputFiles = BoaCompiler.inputFiles;
 
-		// find custom libs to load
+	// find custom libs to load
+	static List<URL> getLibs(final CommandLine cl) throws IOException {
 		final List<URL> libs = new ArrayList<URL>();
 		if (cl.hasOption('l'))
 			for (final String lib : cl.getOptionValues('l'))
 				libs.add(new File(lib).toURI().toURL());
+		return libs;
+	}
+
+	// the jars to bundle into the job jar
+	static List<File> getLibJars(final CommandLine cl) {
+		final List<File> libJars = new ArrayList<File>();
+
+		if (cl.hasOption('j')) {
+			libJars.add(new File(cl.getOptionValue('j')));
+		} else {
+			// find the location of the jar this class is in
+			final String path = ClasspathUrlFinder.findClassBase(BoaCompiler.class).getPath();
+			// find the location of the compiler distribution
+			final File root = new File(path.substring(path.indexOf(':') + 1, path.indexOf('!'))).getParentFile();
+
+			libJars.add(new File(root, "boa-runtime.jar"));
+		}
+
+		if (cl.hasOption('l'))
+			for (final String s : Arrays.asList(cl.getOptionValues('l')))
+				libJars.add(new File(s));
+
+		return libJars;
+	}
+
+	// the javac options for compiling generated code
+	static List<String> getJavacOptions() {
+		return Arrays.asList("-source", JAVA_VERSION, "-target", JAVA_VERSION, "-cp", System.getProperty("java.class.path"));
+	}
+
+	public static void parseOnly(final String[] args) throws IOException {
+		final CommandLine cl = processParseCommandLineOptions(args);
+		if (cl == null) return;
+		final ArrayList<File> inputFiles = BoaCompiler.inputFiles;
 
-		SymbolTable.initialize(libs);
+		SymbolTable.initialize(getLibs(cl));
 
 		for (int i = 0; i < inputFiles.size(); i++) {
 			final File f = inputFiles.get(i);
@@ -331,44 +447,32 @@ public class BoaCompiler extends BoaMain {
 		}
 	}
 
-	private static void compileGeneratedSrc(final CommandLine cl, final String jarName, final File outputRoot, final File outputFile)
+	private static void compileGeneratedSrc(final CommandLine cl, final String jarName, final File outputRoot, final File outputFile, final PhaseTimer timer)
 			throws RuntimeException, IOException, FileNotFoundException {
 		// compile the generated .java file
+		timer.start("javac");
 		final JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
 		if (compiler == null)
 			throw new RuntimeException("Could not get javac - are you running the Boa compiler with a JDK or a JRE?");
 		LOG.info("compiling: " + outputFile);
 		LOG.info("classpath: " + System.getProperty("java.class.path"));
-		if (compiler.run(null, null, null, "-source", "5", "-target", "5", "-cp", System.getProperty("java.class.path"), outputFile.toString()) != 0)
+		final List<String> options = new ArrayList<String>(getJavacOptions());
+		options.add(outputFile.toString());
+		if (compiler.run(null, null, null, options.toArray(new String[options.size()])) != 0)
 			throw new RuntimeException("compile failed");
 
-		final List<File> libJars = new ArrayList<File>();
-
-		if (cl.hasOption('j')) {
-			libJars.add(new File(cl.getOptionValue('j')));
-		} else {
-			// find the location of the jar this class is in
-			final String path = ClasspathUrlFinder.findClassBase(BoaCompiler.class).getPath();
-			// find the location of the compiler distribution
-			final File root = new File(path.substring(path.indexOf(':') + 1, path.indexOf('!'))).getParentFile();
-	
-			libJars.add(new File(root, "boa-runtime.jar"));
-		}
-
-		if (cl.hasOption('l'))
-			for (final String s : Arrays.asList(cl.getOptionValues('l')))
-				libJars.add(new File(s));
-
-		generateJar(jarName, outputRoot, libJars);
+		timer.start("jar");
+		generateJar(jarName, outputRoot, getLibJars(cl));
 
 		if (DefaultProperties.localDataPath == null) {
 			delete(outputRoot);
 		}
+		timer.stop();
 	}
 
 	static ArrayList<File> inputFiles = null; 
 
-	private static CommandLine processCommandLineOptions(final String[] args) {
+	static CommandLine processCommandLineOptions(final String[] args) {
 		// parse the command line options
 		final Options options = new Options();
 		options.addOption("l", "libs", true, "extra jars (functions/aggregators) to be compiled in");
@@ -381,6 +485,7 @@ public class BoaCompiler extends BoaMain {
 		options.addOption("ast2", "ast-transformed", false, "print the AST after transformations, before code generation (debug)");
 		options.addOption("pp", "pretty-print", false, "pretty print the AST before code generation (debug)");
 		options.addOption("cd", "compilation-dir", true, "directory to store all generated files");
+		options.addOption("prof", "profile", false, "instrument the generated code to count and time each clause, intrinsic call and emit");
 
 		final CommandLine cl;
 		try {
@@ -452,7 +557,7 @@ public class BoaCompiler extends BoaMain {
 	}
 	
 	// get the name of the generated class
-	private static final String getGeneratedClass(final CommandLine cl) {
+	static final String getGeneratedClass(final CommandLine cl) {
 		String className;
 		if (cl.hasOption('n')) {
 			className = cl.getOptionValue('n');
@@ -492,6 +597,23 @@ public class BoaCompiler extends BoaMain {
 		}
 	}
 
+	static void generateJar(final String jarName, final Map<String, byte[]> entries, final List<File> libJars) throws IOException, FileNotFoundException {
+		final JarOutputStream jar = new JarOutputStream(new BufferedOutputStream(new FileOutputStream(new File(jarName))));
+
+		try {
+			for (final Map.Entry<String, byte[]> e : entries.entrySet()) {
+				jar.putNextEntry(new ZipEntry(e.getKey()));
+				jar.write(e.getValue());
+				jar.closeEntry();
+			}
+
+			for (final File f : libJars)
+				putJarEntry(jar, f, "lib" + File.separatorChar + f.getName());
+		} finally {
+			jar.close();
+		}
+	}
+
 	private static final List<File> findFiles(final File f, final List<File> l) {
 		if (f.isDirectory())
 			for (final File g : f.listFiles())
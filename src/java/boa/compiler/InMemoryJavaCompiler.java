@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.tools.Diagnostic;
+import javax.tools.DiagnosticCollector;
+import javax.tools.FileObject;
+import javax.tools.ForwardingJavaFileManager;
+import javax.tools.JavaCompiler;
+import javax.tools.JavaFileManager;
+import javax.tools.JavaFileObject;
+import javax.tools.SimpleJavaFileObject;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * Compiles generated Java source without touching the disk.  The system
+ * compiler and its file manager are kept between compilations, so the
+ * classpath is only opened and indexed once.
+ *
+ * Instances are not thread-safe.
+ */
+public class InMemoryJavaCompiler {
+	private final JavaCompiler compiler;
+	private final StandardJavaFileManager fileManager;
+	private final List<String> options;
+
+	/**
+	 * Creates a compiler that passes the given options to javac.
+	 *
+	 * @param options the javac options, such as the classpath and source level
+	 */
+	public InMemoryJavaCompiler(final List<String> options) {
+		compiler = ToolProvider.getSystemJavaCompiler();
+		if (compiler == null)
+			throw new RuntimeException("Could not get javac - are you running the Boa compiler with a JDK or a JRE?");
+		fileManager = compiler.getStandardFileManager(null, null, null);
+		this.options = options;
+	}
+
+	/**
+	 * Compiles a single class.
+	 *
+	 * @param className the fully qualified name of the class
+	 * @param source the source of the class
+	 * @return the compiled classes, keyed by their path in a jar (e.g. boa/Foo$Bar.class)
+	 * @throws RuntimeException if the source does not compile
+	 */
+	public Map<String, byte[]> compile(final String className, final String source) {
+		final Map<String, ByteArrayOutputStream> outputs = new LinkedHashMap<String, ByteArrayOutputStream>();
+		final DiagnosticCollector<JavaFileObject> diagnostics = new DiagnosticCollector<JavaFileObject>();
+
+		final JavaFileManager classManager = new ForwardingJavaFileManager<StandardJavaFileManager>(fileManager) {
+			@Override
+			public JavaFileObject getJavaFileForOutput(final Location location, final String name, final JavaFileObject.Kind kind, final FileObject sibling) {
+				final String path = name.replace('.', '/') + kind.extension;
+				return new SimpleJavaFileObject(URI.create("mem:///" + path), kind) {
+					@Override
+					public OutputStream openOutputStream() {
+						final ByteArrayOutputStream out = new ByteArrayOutputStream();
+						outputs.put(path, out);
+						return out;
+					}
+				};
+			}
+		};
+
+		final JavaFileObject unit = new SimpleJavaFileObject(URI.create("mem:///" + className.replace('.', '/') + JavaFileObject.Kind.SOURCE.extension), JavaFileObject.Kind.SOURCE) {
+			@Override
+			public CharSequence getCharContent(final boolean ignoreEncodingErrors) {
+				return source;
+			}
+		};
+
+		final boolean ok = compiler.getTask(null, classManager, diagnostics, options, null, Arrays.asList(unit)).call();
+
+		try {
+			fileManager.flush();
+		} catch (final IOException e) {
+			// nothing was written through the standard file manager
+		}
+
+		if (!ok) {
+			final StringBuilder sb = new StringBuilder("compile failed");
+			for (final Diagnostic<? extends JavaFileObject> d : diagnostics.getDiagnostics())
+				if (d.getKind() == Diagnostic.Kind.ERROR)
+					sb.append("\nError on line ").append(d.getLineNumber()).append(": ").append(d.getMessage(null));
+			throw new RuntimeException(sb.toString());
+		}
+
+		final Map<String, byte[]> classes = new LinkedHashMap<String, byte[]>();
+		for (final Map.Entry<String, ByteArrayOutputStream> e : outputs.entrySet())
+			classes.put(e.getKey(), e.getValue().toByteArray());
+		return classes;
+	}
+}
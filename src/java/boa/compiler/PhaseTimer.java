@@ -0,0 +1,77 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Accumulates the wall-clock time spent in each phase of a compilation.
+ * Phases are reported in the order they were first started, and starting a
+ * phase again adds to its total.
+ */
+public class PhaseTimer {
+	private final Map<String, Long> phases = new LinkedHashMap<String, Long>();
+
+	private String current = null;
+	private long started;
+
+	/**
+	 * Stops the running phase, if any, and starts timing the named phase.
+	 *
+	 * @param phase the name of the phase
+	 */
+	public void start(final String phase) {
+		stop();
+		current = phase;
+		started = System.nanoTime();
+	}
+
+	/**
+	 * Stops the running phase, if any.
+	 */
+	public void stop() {
+		if (current == null)
+			return;
+		final Long total = phases.get(current);
+		phases.put(current, (total == null ? 0 : total) + System.nanoTime() - started);
+		current = null;
+	}
+
+	/**
+	 * Returns the total time of each phase, in milliseconds.
+	 *
+	 * @return the phase totals, in the order the phases first ran
+	 */
+	public Map<String, Long> getMillis() {
+		final Map<String, Long> millis = new LinkedHashMap<String, Long>();
+		for (final Map.Entry<String, Long> e : phases.entrySet())
+			millis.put(e.getKey(), e.getValue() / 1000000);
+		return millis;
+	}
+
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (final Map.Entry<String, Long> e : getMillis().entrySet()) {
+			if (sb.length() > 0)
+				sb.append(", ");
+			sb.append(e.getKey()).append(": ").append(e.getValue()).append("ms");
+		}
+		return sb.toString();
+	}
+}
@@ -17,13 +17,14 @@
  */
 package boa.compiler;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.lang.reflect.Method;
 import java.net.URL;
 import java.util.*;
 import java.util.Map.Entry;
-
-import org.scannotation.AnnotationDB;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
 
 import boa.aggregators.AggregatorSpec;
 import boa.functions.FunctionSpec;
@@ -46,6 +47,10 @@ public class SymbolTable {
 	private static final Map<String, BoaType> globals;
 	private static FunctionTrie globalFunctions;
 
+	// what initialize() already imported, so a long-lived compiler only pays for it once
+	private static boolean builtinsImported = false;
+	private static final Set<String> importedLibs = new HashSet<String>();
+
 	private FunctionTrie functions;
 	private Map<String, BoaType> locals;
 
@@ -84,6 +89,7 @@ public class SymbolTable {
 		new CommentProtoTuple(),
 		new CommentsRootProtoTuple(),
 		new DeclarationProtoTuple(),
+		new EditScriptProtoTuple(),
 		new ExpressionProtoTuple(),
 		new IssueProtoTuple(),
 		new IssueCommentProtoTuple(),
@@ -121,8 +127,6 @@ public class SymbolTable {
 	};
 
 	static {
-		aggregators = new HashMap<String, Class<?>>();
-
 		// this maps the Java types in protocol buffers into Boa types
 		protomap = new HashMap<Class<?>, BoaType>();
 
@@ -149,19 +153,25 @@ public class SymbolTable {
 		types = new HashMap<String, BoaType>();
 		resetTypeMap();
 
+		resetFunctions();
+	}
+
+	// drops every imported aggregator and function, leaving only the macros
+	private static void resetFunctions() {
+		aggregators = new HashMap<String, Class<?>>();
 		globalFunctions = new FunctionTrie();
 
 		// these generic functions require more finagling than can currently be
 		// (easily) done with a static method, so they are handled with macros
 
 		// FIXME rdyer - def(protolist[i]) should generate "i < protolist.size()"
-		globalFunctions.addFunction("def", new BoaFunction(new BoaBool(), new BoaType[] { new BoaAny() }, "(${0} != null)"));
-		globalFunctions.addFunction("len", new BoaFunction(new BoaInt(), new BoaType[] { new BoaProtoList(new BoaAny()) }, "((long)${0}.size())"));
-		globalFunctions.addFunction("len", new BoaFunction(new BoaInt(), new BoaType[] { new BoaArray(new BoaAny()) }, "((long)${0}.length)"));
-		globalFunctions.addFunction("len", new BoaFunction(new BoaInt(), new BoaType[] { new BoaMap(new BoaTypeVar("V"), new BoaTypeVar("K")) }, "((long)${0}.keySet().size())"));
-		globalFunctions.addFunction("len", new BoaFunction(new BoaInt(), new BoaType[] { new BoaStack(new BoaTypeVar("V")) }, "((long)${0}.size())"));
-		globalFunctions.addFunction("len", new BoaFunction(new BoaInt(), new BoaType[] { new BoaSet(new BoaTypeVar("V")) }, "((long)${0}.size())"));
-		globalFunctions.addFunction("len", new BoaFunction(new BoaInt(), new BoaType[] { new BoaString() }, "((long)${0}.length())"));
+		globalFunctions.addFunction("def", pure(new BoaFunction(new BoaBool(), new BoaType[] { new BoaAny() }, "(${0} != null)")));
+		globalFunctions.addFunction("len", pure(new BoaFunction(new BoaInt(), new BoaType[] { new BoaProtoList(new BoaAny()) }, "((long)${0}.size())")));
+		globalFunctions.addFunction("len", pure(new BoaFunction(new BoaInt(), new BoaType[] { new BoaArray(new BoaAny()) }, "((long)${0}.length)")));
+		globalFunctions.addFunction("len", pure(new BoaFunction(new BoaInt(), new BoaType[] { new BoaMap(new BoaTypeVar("V"), new BoaTypeVar("K")) }, "((long)${0}.keySet().size())")));
+		globalFunctions.addFunction("len", pure(new BoaFunction(new BoaInt(), new BoaType[] { new BoaStack(new BoaTypeVar("V")) }, "((long)${0}.size())")));
+		globalFunctions.addFunction("len", pure(new BoaFunction(new BoaInt(), new BoaType[] { new BoaSet(new BoaTypeVar("V")) }, "((long)${0}.size())")));
+		globalFunctions.addFunction("len", pure(new BoaFunction(new BoaInt(), new BoaType[] { new BoaString() }, "((long)${0}.length())")));
 
 		// traversal functions
 		globalFunctions.addFunction("getvalue", new BoaFunction(new BoaTypeVar("K"), new BoaType[] { new CFGNodeProtoTuple(), new BoaTraversal(new BoaTypeVar("K"))},"${1}.getValue(${0})"));
@@ -179,7 +189,7 @@ public class SymbolTable {
 		globalFunctions.addFunction("gettotaledges", new BoaFunction(new BoaInt(), new BoaType[] { new PDGSlicerProtoTuple() }, "${0}.getTotalEdges()"));
 
 		// map functions
-		globalFunctions.addFunction("haskey", new BoaFunction(new BoaBool(), new BoaType[] { new BoaMap(new BoaTypeVar("V"), new BoaTypeVar("K")), new BoaTypeVar("K") }, "${0}.containsKey(${1})"));
+		globalFunctions.addFunction("haskey", pure(new BoaFunction(new BoaBool(), new BoaType[] { new BoaMap(new BoaTypeVar("V"), new BoaTypeVar("K")), new BoaTypeVar("K") }, "${0}.containsKey(${1})")));
 		globalFunctions.addFunction("keys", new BoaFunction(new BoaArray(new BoaTypeVar("K")), new BoaType[] { new BoaMap(new BoaTypeVar("V"), new BoaTypeVar("K")) }, "boa.functions.BoaIntrinsics.basic_array(${0}.keySet().toArray(new ${K}[0]))"));
 		globalFunctions.addFunction("values", new BoaFunction(new BoaArray(new BoaTypeVar("V")), new BoaType[] { new BoaMap(new BoaTypeVar("V"), new BoaTypeVar("K")) }, "boa.functions.BoaIntrinsics.basic_array(${0}.values().toArray(new ${V}[0]))"));
 		globalFunctions.addFunction("lookup", new BoaFunction(new BoaTypeVar("V"), new BoaType[] { new BoaMap(new BoaTypeVar("V"), new BoaTypeVar("K")), new BoaTypeVar("K"), new BoaTypeVar("V") }, "(${0}.containsKey(${1}) ? ${0}.get(${1}) : ${2})"));
@@ -190,7 +200,7 @@ public class SymbolTable {
 		globalFunctions.addFunction("regex", new BoaFunction(new BoaString(), new BoaType[] { new BoaName(new BoaScalar()) }, "boa.functions.BoaSpecialIntrinsics.regex(\"${0}\")"));
 
 		// clone functions
-		globalFunctions.addFunction("clone", new BoaFunction(new BoaSet(new BoaTypeVar("V")), new BoaType[] {new BoaSet(new BoaTypeVar("V"))},"(java.util.HashSet)${0}.clone()"));
+		globalFunctions.addFunction("clone", new BoaFunction(new BoaSet(new BoaTypeVar("V")), new BoaType[] {new BoaSet(new BoaTypeVar("V"))},"boa.functions.BoaIntrinsics.set_clone(${0})"));
 		globalFunctions.addFunction("clone", new BoaFunction(new BoaString(), new BoaType[] {new BoaString()},"new String(${0})"));
 
 		// visitors
@@ -213,7 +223,7 @@ public class SymbolTable {
 		globalFunctions.addFunction("values", new BoaFunction(new BoaArray(new BoaTypeVar("V")), new BoaType[] { new BoaStack(new BoaTypeVar("V")) }, "boa.functions.BoaIntrinsics.basic_array(${0}.toArray(new ${V}[0]))"));
 
 		// set functions
-		globalFunctions.addFunction("contains", new BoaFunction(new BoaBool(), new BoaType[] { new BoaSet(new BoaTypeVar("V")), new BoaTypeVar("V") }, "${0}.contains(${1})"));
+		globalFunctions.addFunction("contains", pure(new BoaFunction(new BoaBool(), new BoaType[] { new BoaSet(new BoaTypeVar("V")), new BoaTypeVar("V") }, "${0}.contains(${1})")));
 		globalFunctions.addFunction("containsall", new BoaFunction(new BoaBool(), new BoaType[] { new BoaSet(new BoaTypeVar("V")), new BoaSet(new BoaTypeVar("V"))}, "${0}.containsAll(${1})"));
 		globalFunctions.addFunction("add", new BoaFunction(new BoaAny(), new BoaType[] { new BoaSet(new BoaTypeVar("V")), new BoaTypeVar("V") }, "${0}.add(${1})"));
 		globalFunctions.addFunction("remove", new BoaFunction(new BoaAny(), new BoaType[] { new BoaSet(new BoaTypeVar("V")), new BoaTypeVar("V") }, "${0}.remove(${1})"));
@@ -492,6 +502,13 @@ public class SymbolTable {
 		return aggregators;
 	}
 
+	// a builtin whose value only depends on its arguments, and that can not fail
+	private static BoaFunction pure(final BoaFunction f) {
+		f.setPure(true);
+		f.setSpeculative(true);
+		return f;
+	}
+
 	private static void importFunction(final Method m) {
 		final FunctionSpec annotation = m.getAnnotation(FunctionSpec.class);
 
@@ -511,7 +528,10 @@ public class SymbolTable {
 				formalParameterTypes[i] = getType(id);
 		}
 
-		globalFunctions.addFunction(annotation.name(), new BoaFunction(m.getDeclaringClass().getCanonicalName() + '.' + m.getName(), getType(annotation.returnType()), formalParameterTypes));
+		final BoaFunction f = new BoaFunction(m.getDeclaringClass().getCanonicalName() + '.' + m.getName(), getType(annotation.returnType()), formalParameterTypes);
+		f.setPure(annotation.pure());
+		f.setSpeculative(annotation.pure() && annotation.speculative());
+		globalFunctions.addFunction(annotation.name(), f);
 	}
 
 	private static void importFunctions(final Class<?> c) {
@@ -528,7 +548,66 @@ public class SymbolTable {
 		}
 	}
 
-	private static void importLibs(final List<URL> urls) throws IOException {
+	private static void importLibs(final List<URL> libs) throws IOException {
+		// libraries imported for an earlier compilation must not be visible to this one
+		final Set<String> requested = new HashSet<String>();
+		for (final URL url : libs)
+			requested.add(url.toString());
+		if (!requested.containsAll(importedLibs)) {
+			resetFunctions();
+			builtinsImported = false;
+			importedLibs.clear();
+		}
+
+		if (!builtinsImported) {
+			importBuiltins();
+			builtinsImported = true;
+		}
+
+		final List<URL> urls = new ArrayList<URL>();
+		for (final URL url : libs)
+			if (importedLibs.add(url.toString()))
+				urls.add(url);
+
+		// also check any libs passed into the compiler
+		for (final URL url : urls)
+			importLib(url);
+	}
+
+	// imports the aggregators and functions of a library jar, only loading the
+	// classes whose bytecode mentions one of the annotations
+	private static void importLib(final URL url) throws IOException {
+		final String aggregatorSpec = "L" + AggregatorSpec.class.getName().replace('.', '/') + ";";
+		final String functionSpec = "L" + FunctionSpec.class.getName().replace('.', '/') + ";";
+
+		final JarInputStream jar = new JarInputStream(url.openStream());
+		try {
+			final ByteArrayOutputStream buf = new ByteArrayOutputStream();
+			final byte[] b = new byte[4096];
+			JarEntry entry;
+			while ((entry = jar.getNextJarEntry()) != null) {
+				final String name = entry.getName();
+				if (!name.endsWith(".class"))
+					continue;
+
+				buf.reset();
+				int len;
+				while ((len = jar.read(b)) > 0)
+					buf.write(b, 0, len);
+				final String bytecode = buf.toString("ISO-8859-1");
+
+				final String c = name.substring(0, name.length() - ".class".length()).replace('/', '.');
+				if (bytecode.contains(aggregatorSpec))
+					importAggregator(c);
+				if (bytecode.contains(functionSpec))
+					importFunctions(c);
+			}
+		} finally {
+			jar.close();
+		}
+	}
+
+	private static void importBuiltins() {
 		// load built-in functions
 		final Class<?>[] builtinFuncs = {
 			boa.functions.BoaAstIntrinsics.class,
@@ -579,25 +658,6 @@ public class SymbolTable {
 		};
 		for (final Class<?> c : builtinAggs)
 			importAggregator(c);
-
-		// also check any libs passed into the compiler
-		if (urls.size() > 0) {
-			final AnnotationDB db = new AnnotationDB();
-			db.setScanMethodAnnotations(true);
-			db.setScanClassAnnotations(true);
-//			db.setScanPackages(new String[] {"boa.aggregators", "boa.functions"});
-
-			for (final URL url : urls)
-				db.scanArchives(url);
-
-			final Map<String, Set<String>> annotationIndex = db.getAnnotationIndex();
-
-			for (final String s : annotationIndex.get(AggregatorSpec.class.getCanonicalName()))
-				importAggregator(s);
-
-			for (final String s : annotationIndex.get(FunctionSpec.class.getCanonicalName()))
-				importFunctions(s);
-		}
 	}
 
 	public BoaFunction getFunction(final String id) {
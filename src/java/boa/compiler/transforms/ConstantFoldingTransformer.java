@@ -0,0 +1,558 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler.transforms;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import boa.compiler.SymbolTable;
+import boa.compiler.ast.Call;
+import boa.compiler.ast.Comparison;
+import boa.compiler.ast.Component;
+import boa.compiler.ast.Conjunction;
+import boa.compiler.ast.Factor;
+import boa.compiler.ast.Identifier;
+import boa.compiler.ast.Operand;
+import boa.compiler.ast.Program;
+import boa.compiler.ast.Term;
+import boa.compiler.ast.UnaryFactor;
+import boa.compiler.ast.expressions.Expression;
+import boa.compiler.ast.expressions.ParenExpression;
+import boa.compiler.ast.expressions.SimpleExpr;
+import boa.compiler.ast.literals.IntegerLiteral;
+import boa.compiler.ast.statements.AssignmentStatement;
+import boa.compiler.ast.statements.Block;
+import boa.compiler.ast.statements.BreakStatement;
+import boa.compiler.ast.statements.ContinueStatement;
+import boa.compiler.ast.statements.DoStatement;
+import boa.compiler.ast.statements.ExistsStatement;
+import boa.compiler.ast.statements.ForStatement;
+import boa.compiler.ast.statements.ForeachStatement;
+import boa.compiler.ast.statements.IfAllStatement;
+import boa.compiler.ast.statements.IfStatement;
+import boa.compiler.ast.statements.PostfixStatement;
+import boa.compiler.ast.statements.ReturnStatement;
+import boa.compiler.ast.statements.Statement;
+import boa.compiler.ast.statements.StopStatement;
+import boa.compiler.ast.statements.VarDeclStatement;
+import boa.compiler.ast.statements.WhileStatement;
+import boa.compiler.visitors.AbstractVisitor;
+import boa.compiler.visitors.AbstractVisitorNoArgNoRet;
+import boa.compiler.visitors.IdentifierFindingVisitor;
+import boa.types.BoaBool;
+import boa.types.BoaInt;
+import boa.types.BoaType;
+
+/**
+ * Folds constant int and bool expressions into literals and removes the
+ * branches of if statements (and while loops) their constant conditions
+ * never take.
+ *
+ * Variables are constants if they are initialized with a constant and
+ * never assigned again.  As {@link VariableDeclRenameTransformer} gave
+ * every variable a unique name, such a variable holds its initial value
+ * everywhere it is used, so its uses fold like literals.
+ *
+ * Loop conditions are never folded as a whole, as Java rejects the code
+ * after a loop on true if it has no break.  Variables passed to calls are
+ * never replaced either, as some intrinsics need a variable.
+ */
+public class ConstantFoldingTransformer extends AbstractVisitorNoArgNoRet {
+	/**
+	 * Finds the variables that are initialized and never assigned again.
+	 */
+	protected class ConstantFindingVisitor extends AbstractVisitorNoArgNoRet {
+		protected final Map<String, VarDeclStatement> decls = new LinkedHashMap<String, VarDeclStatement>();
+		protected final Set<String> declared = new HashSet<String>();
+		protected final Set<String> assigned = new HashSet<String>();
+		protected final IdentifierFindingVisitor idFinder = new IdentifierFindingVisitor();
+
+		/** {@inheritDoc} */
+		@Override
+		protected void initialize() {
+			decls.clear();
+			declared.clear();
+			assigned.clear();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final VarDeclStatement n) {
+			final String id = n.getId().getToken();
+			if (!declared.add(id))
+				assigned.add(id);
+			else if (n.hasInitializer() && (n.type instanceof BoaInt || n.type instanceof BoaBool))
+				decls.put(id, n);
+
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final AssignmentStatement n) {
+			idFinder.start(n.getLhs());
+			assigned.addAll(idFinder.getNames());
+
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final PostfixStatement n) {
+			idFinder.start(n.getExpr());
+			assigned.addAll(idFinder.getNames());
+
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Component n) {
+			// parameters and visit clause nodes shadow anything with their name
+			if (n.hasIdentifier())
+				assigned.add(n.getIdentifier().getToken());
+
+			super.visit(n);
+		}
+	}
+
+	/**
+	 * Evaluates an expression to a {@link Long} or {@link Boolean}, or
+	 * <code>null</code> if its value is not known at compile time.
+	 */
+	protected class ConstantEvaluatingVisitor extends AbstractVisitor<Object, Void> {
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final Expression n, final Void arg) {
+			Object v = n.getLhs().accept(this, arg);
+			for (final Conjunction c : n.getRhs()) {
+				if (!(v instanceof Boolean))
+					return null;
+				if ((Boolean) v)
+					return v;
+				v = c.accept(this, arg);
+			}
+			return v;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final Conjunction n, final Void arg) {
+			Object v = n.getLhs().accept(this, arg);
+			for (final Comparison c : n.getRhs()) {
+				if (!(v instanceof Boolean))
+					return null;
+				if (!(Boolean) v)
+					return v;
+				v = c.accept(this, arg);
+			}
+			return v;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final Comparison n, final Void arg) {
+			final Object lhs = n.getLhs().accept(this, arg);
+			if (!n.hasRhs() || lhs == null)
+				return lhs;
+			final Object rhs = n.getRhs().accept(this, arg);
+
+			if (lhs instanceof Boolean && rhs instanceof Boolean) {
+				if (n.getOp().equals("=="))
+					return lhs.equals(rhs);
+				if (n.getOp().equals("!="))
+					return !lhs.equals(rhs);
+				return null;
+			}
+			if (!(lhs instanceof Long && rhs instanceof Long))
+				return null;
+
+			final int cmp = ((Long) lhs).compareTo((Long) rhs);
+			if (n.getOp().equals("=="))
+				return cmp == 0;
+			if (n.getOp().equals("!="))
+				return cmp != 0;
+			if (n.getOp().equals("<"))
+				return cmp < 0;
+			if (n.getOp().equals("<="))
+				return cmp <= 0;
+			if (n.getOp().equals(">"))
+				return cmp > 0;
+			if (n.getOp().equals(">="))
+				return cmp >= 0;
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final SimpleExpr n, final Void arg) {
+			Object v = n.getLhs().accept(this, arg);
+			for (int i = 0; v != null && i < n.getRhsSize(); i++) {
+				final Object rhs = n.getRhs(i).accept(this, arg);
+				if (!(v instanceof Long && rhs instanceof Long))
+					return null;
+
+				final long l = (Long) v, r = (Long) rhs;
+				final String op = n.getOp(i);
+				if (op.equals("+"))
+					v = l + r;
+				else if (op.equals("-"))
+					v = l - r;
+				else if (op.equals("|"))
+					v = l | r;
+				else if (op.equals("^"))
+					v = l ^ r;
+				else
+					return null;
+			}
+			return v;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final Term n, final Void arg) {
+			Object v = n.getLhs().accept(this, arg);
+			for (int i = 0; v != null && i < n.getRhsSize(); i++) {
+				final Object rhs = n.getRhs(i).accept(this, arg);
+				if (!(v instanceof Long && rhs instanceof Long))
+					return null;
+
+				final long l = (Long) v, r = (Long) rhs;
+				final String op = n.getOp(i);
+				if (op.equals("*"))
+					v = l * r;
+				else if (op.equals("/") && r != 0)
+					v = l / r;
+				else if (op.equals("%") && r != 0)
+					v = l % r;
+				else if (op.equals("<<"))
+					v = l << r;
+				else if (op.equals(">>"))
+					v = l >> r;
+				else if (op.equals("&"))
+					v = l & r;
+				else
+					return null;
+			}
+			return v;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final Factor n, final Void arg) {
+			if (n.getOpsSize() > 0)
+				return null;
+			return n.getOperand().accept(this, arg);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final UnaryFactor n, final Void arg) {
+			final Object v = n.getFactor().accept(this, arg);
+			if (v instanceof Long) {
+				if (n.getOp().equals("-"))
+					return -(Long) v;
+				if (n.getOp().equals("+"))
+					return v;
+				if (n.getOp().equals("~"))
+					return ~(Long) v;
+			} else if (v instanceof Boolean) {
+				if (n.getOp().equals("!") || n.getOp().equals("not"))
+					return !(Boolean) v;
+			}
+			return null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final ParenExpression n, final Void arg) {
+			return n.getExpression().accept(this, arg);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final Identifier n, final Void arg) {
+			// every variable was renamed, so these are always the constants
+			if (n.getToken().equals("true"))
+				return Boolean.TRUE;
+			if (n.getToken().equals("false"))
+				return Boolean.FALSE;
+			return constants.get(n.getToken());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public Object visit(final IntegerLiteral n, final Void arg) {
+			return parseInt(n.getLiteral());
+		}
+	}
+
+	protected final ConstantFindingVisitor constantFinder = new ConstantFindingVisitor();
+	protected final ConstantEvaluatingVisitor evaluator = new ConstantEvaluatingVisitor();
+
+	protected final Map<String, Object> constants = new HashMap<String, Object>();
+
+	/** {@inheritDoc} */
+	@Override
+	protected void initialize() {
+		constants.clear();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Program n) {
+		constantFinder.start(n);
+
+		// constants may be initialized from other constants
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (final Map.Entry<String, VarDeclStatement> e : constantFinder.decls.entrySet()) {
+				if (constants.containsKey(e.getKey()) || constantFinder.assigned.contains(e.getKey()))
+					continue;
+
+				final VarDeclStatement decl = e.getValue();
+				final Object v = evaluate(decl.getInitializer());
+				if ((v instanceof Long && decl.type instanceof BoaInt) || (v instanceof Boolean && decl.type instanceof BoaBool)) {
+					constants.put(e.getKey(), v);
+					changed = true;
+				}
+			}
+		}
+
+		foldStatements(n);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Block n) {
+		foldStatements(n);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Expression n) {
+		final Object v = isLiteral(getOperand(n)) ? null : evaluate(n);
+		if (v == null)
+			super.visit(n);
+		else
+			replace(n, v);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Factor n) {
+		final Object v = n.getOpsSize() == 0 && n.getOperand() instanceof Identifier ? constants.get(((Identifier) n.getOperand()).getToken()) : null;
+		if (v == null) {
+			super.visit(n);
+			return;
+		}
+
+		final Expression e = createLiteral(v, n.env);
+		if (v instanceof Long && (Long) v < 0) {
+			// a negative literal could follow a minus
+			final ParenExpression paren = new ParenExpression(e);
+			paren.type = e.type;
+			paren.env = n.env;
+			n.setOperand(paren);
+		} else {
+			n.setOperand(e.getLhs().getLhs().getLhs().getLhs().getLhs().getOperand());
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Call n) {
+		for (final Expression e : n.getArgs())
+			if (!(getOperand(e) instanceof Identifier))
+				visitChildren(e);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final WhileStatement n) {
+		visitChildren(n.getCondition());
+		n.getBody().accept(this);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final DoStatement n) {
+		n.getBody().accept(this);
+		visitChildren(n.getCondition());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final ForStatement n) {
+		if (n.hasInit())
+			n.getInit().accept(this);
+		if (n.hasCondition())
+			visitChildren(n.getCondition());
+		if (n.hasUpdate())
+			n.getUpdate().accept(this);
+		n.getBody().accept(this);
+	}
+
+	// the quantifiers find what to iterate over in their conditions
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final ForeachStatement n) {
+		n.getBody().accept(this);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final ExistsStatement n) {
+		n.getBody().accept(this);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final IfAllStatement n) {
+		n.getBody().accept(this);
+	}
+
+	// folds the statements of a block, replacing if statements with constant conditions by their taken branch
+	protected void foldStatements(final Block n) {
+		final List<Statement> statements = n.getStatements();
+		for (int i = 0; i < statements.size(); i++) {
+			final Statement s = statements.get(i);
+			s.accept(this);
+
+			final Object cond = s instanceof IfStatement ? evaluate(((IfStatement) s).getCondition()) : null;
+			if (cond instanceof Boolean) {
+				final IfStatement ifStmt = (IfStatement) s;
+				final Block taken = (Boolean) cond ? ifStmt.getBody() : ifStmt.getElse();
+
+				statements.remove(i);
+				if (taken != null && taken.getStatementsSize() > 0) {
+					// every variable has a unique name, so the branch's declarations can move out of its scope
+					for (final Statement s2 : taken.getStatements())
+						s2.setParent(n);
+					statements.addAll(i, taken.getStatements());
+					i += taken.getStatementsSize() - 1;
+					removeUnreachable(statements, i);
+				} else {
+					i--;
+				}
+			} else if (s instanceof WhileStatement && Boolean.FALSE.equals(evaluate(((WhileStatement) s).getCondition()))) {
+				statements.remove(i--);
+			} else {
+				removeUnreachable(statements, i);
+			}
+		}
+	}
+
+	// Java rejects statements after a jump, which a taken branch may now be followed by
+	protected static void removeUnreachable(final List<Statement> statements, final int i) {
+		final Statement s = statements.get(i);
+		if (s instanceof ReturnStatement || s instanceof StopStatement || s instanceof BreakStatement || s instanceof ContinueStatement)
+			while (statements.size() > i + 1)
+				statements.remove(i + 1);
+	}
+
+	// folds the parts of an expression, but not the expression as a whole
+	protected void visitChildren(final Expression n) {
+		super.visit(n);
+	}
+
+	protected Object evaluate(final Expression n) {
+		return n.accept(evaluator, null);
+	}
+
+	protected static void replace(final Expression n, final Object v) {
+		n.getRhs().clear();
+		n.setLhs(createLiteral(v, n.env).getLhs());
+	}
+
+	// creates an expression of only a literal for an int or bool value
+	protected static Expression createLiteral(final Object v, final SymbolTable env) {
+		final BoaType t;
+		final Operand op;
+		if (v instanceof Long) {
+			t = new BoaInt();
+			op = new IntegerLiteral(v.toString());
+		} else {
+			t = new BoaBool();
+			op = ASTFactory.createIdentifier(v.toString(), env);
+		}
+
+		final Expression e = ASTFactory.createFactorExpr(op);
+		final Conjunction conj = e.getLhs();
+		final Comparison cmp = conj.getLhs();
+		final SimpleExpr simple = cmp.getLhs();
+		final Term term = simple.getLhs();
+		final Factor f = term.getLhs();
+		e.type = conj.type = cmp.type = simple.type = term.type = f.type = op.type = t;
+		e.env = conj.env = cmp.env = simple.env = term.env = f.env = op.env = env;
+		return e;
+	}
+
+	protected static boolean isLiteral(final Operand op) {
+		if (op instanceof IntegerLiteral)
+			return true;
+		return op instanceof Identifier && (((Identifier) op).getToken().equals("true") || ((Identifier) op).getToken().equals("false"));
+	}
+
+	/**
+	 * Returns the operand of an expression that is only an operand, such as
+	 * a literal or a variable, or <code>null</code> if it is anything more.
+	 */
+	protected static Operand getOperand(final Expression n) {
+		if (n.getRhsSize() > 0 || n.getLhs().getRhsSize() > 0 || n.getLhs().getLhs().hasRhs())
+			return null;
+		final SimpleExpr simple = n.getLhs().getLhs().getLhs();
+		if (simple.getRhsSize() > 0 || simple.getLhs().getRhsSize() > 0 || simple.getLhs().getLhs().getOpsSize() > 0)
+			return null;
+		return simple.getLhs().getLhs().getOperand();
+	}
+
+	/**
+	 * Parses an int literal as Java would, or returns <code>null</code>
+	 * if it does not fit a long.
+	 */
+	protected static Long parseInt(final String literal) {
+		String digits = literal;
+		int radix = 10;
+		if (literal.length() > 2 && (literal.charAt(1) == 'x' || literal.charAt(1) == 'X')) {
+			digits = literal.substring(2);
+			radix = 16;
+		} else if (literal.length() > 2 && (literal.charAt(1) == 'b' || literal.charAt(1) == 'B')) {
+			digits = literal.substring(2);
+			radix = 2;
+		} else if (literal.length() > 1 && literal.charAt(0) == '0') {
+			digits = literal.substring(1);
+			radix = 8;
+		}
+
+		try {
+			final BigInteger v = new BigInteger(digits, radix);
+			if (v.bitLength() > (radix == 10 ? 63 : 64))
+				return null;
+			return v.longValue();
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+}
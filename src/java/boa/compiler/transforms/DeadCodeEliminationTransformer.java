@@ -0,0 +1,269 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler.transforms;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import boa.compiler.ast.Identifier;
+import boa.compiler.ast.Operand;
+import boa.compiler.ast.Program;
+import boa.compiler.ast.expressions.Expression;
+import boa.compiler.ast.expressions.FixPExpression;
+import boa.compiler.ast.expressions.FunctionExpression;
+import boa.compiler.ast.expressions.TraversalExpression;
+import boa.compiler.ast.expressions.VisitorExpression;
+import boa.compiler.ast.statements.AssignmentStatement;
+import boa.compiler.ast.statements.Block;
+import boa.compiler.ast.statements.EmitStatement;
+import boa.compiler.ast.statements.IfStatement;
+import boa.compiler.ast.statements.PostfixStatement;
+import boa.compiler.ast.statements.Statement;
+import boa.compiler.ast.statements.VarDeclStatement;
+import boa.compiler.ast.statements.VisitStatement;
+import boa.compiler.ast.types.OutputType;
+import boa.compiler.visitors.AbstractVisitorNoArgNoRet;
+import boa.compiler.visitors.SideEffectFindingVisitor;
+
+/**
+ * Removes the parts of a program that can not affect its output: output
+ * variables that are never emitted to, variables that are never read
+ * (along with the statements assigning them), and the if statements,
+ * blocks and visit clauses left empty by that or by constant folding.
+ *
+ * A variable is only removed if its initializer and the values assigned
+ * to it have no side effects.  Each removal may make more code dead, so
+ * this repeats until nothing else is removed.
+ */
+public class DeadCodeEliminationTransformer extends AbstractVisitorNoArgNoRet {
+	/**
+	 * Finds the statements that can be removed.
+	 */
+	protected class DeadCodeFindingVisitor extends AbstractVisitorNoArgNoRet {
+		protected final Set<Statement> dead = new HashSet<Statement>();
+
+		protected final List<VarDeclStatement> decls = new ArrayList<VarDeclStatement>();
+		protected final Set<String> read = new HashSet<String>();
+		protected final Set<String> emitted = new HashSet<String>();
+
+		// the statements only writing a variable, and the variables written by statements that must stay
+		protected final Map<String, List<Statement>> writes = new HashMap<String, List<Statement>>();
+		protected final Set<String> pinned = new HashSet<String>();
+
+		// the variable being assigned, whose reads while computing its new value do not count
+		protected String assigning;
+
+		public Set<Statement> getDead() {
+			return dead;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		protected void initialize() {
+			dead.clear();
+			decls.clear();
+			read.clear();
+			emitted.clear();
+			writes.clear();
+			pinned.clear();
+			assigning = null;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Program n) {
+			super.visit(n);
+
+			// a program must declare an output, even if nothing is emitted to it
+			VarDeclStatement output = null;
+			for (final VarDeclStatement decl : decls)
+				if (decl.getType() instanceof OutputType && decl.getParent() instanceof Program)
+					if (output == null || emitted.contains(decl.getId().getToken()))
+						output = decl;
+
+			for (final VarDeclStatement decl : decls) {
+				final String id = decl.getId().getToken();
+				if (decl.getType() instanceof OutputType) {
+					if (decl != output && decl.getParent() instanceof Program && !emitted.contains(id))
+						dead.add(decl);
+				} else if (!read.contains(id) && !pinned.contains(id) && (!decl.hasInitializer() || isRemovable(decl.getInitializer()))) {
+					dead.add(decl);
+					if (writes.containsKey(id))
+						dead.addAll(writes.get(id));
+				}
+			}
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Identifier n) {
+			if (!n.getToken().equals(assigning))
+				read.add(n.getToken());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final VarDeclStatement n) {
+			if (n.getParent() instanceof Block)
+				decls.add(n);
+
+			if (n.hasType())
+				n.getType().accept(this);
+			if (n.hasInitializer())
+				n.getInitializer().accept(this);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final AssignmentStatement n) {
+			final Operand op = n.getLhs().getOpsSize() == 0 ? n.getLhs().getOperand() : null;
+			if (op instanceof Identifier) {
+				assigning = ((Identifier) op).getToken();
+				write(n, assigning, !hasSideEffects(n.getRhs()));
+				n.getRhs().accept(this);
+				assigning = null;
+			} else {
+				super.visit(n);
+			}
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final PostfixStatement n) {
+			final Operand op = ConstantFoldingTransformer.getOperand(n.getExpr());
+			if (op instanceof Identifier)
+				write(n, ((Identifier) op).getToken(), true);
+			else
+				super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final EmitStatement n) {
+			emitted.add(n.getId().getToken());
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final IfStatement n) {
+			super.visit(n);
+
+			if (n.getParent() instanceof Block && isEmpty(n.getBody()) && (!n.hasElse() || isEmpty(n.getElse())) && !hasSideEffects(n.getCondition()))
+				dead.add(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Block n) {
+			super.visit(n);
+
+			if (n.getParent() instanceof Block && isEmpty(n))
+				dead.add(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final VisitorExpression n) {
+			boolean beforeWildcard = false, afterWildcard = false;
+			for (final Statement s : n.getBody().getStatements())
+				if (s instanceof VisitStatement && ((VisitStatement) s).hasWildcard()) {
+					if (((VisitStatement) s).isBefore())
+						beforeWildcard = true;
+					else
+						afterWildcard = true;
+				}
+
+			// without a wildcard, a clause doing nothing is the same as no clause
+			for (final Statement s : n.getBody().getStatements())
+				if (s instanceof VisitStatement && isEmpty(((VisitStatement) s).getBody())) {
+					final VisitStatement v = (VisitStatement) s;
+					if (!v.hasWildcard() && !(v.isBefore() ? beforeWildcard : afterWildcard))
+						dead.add(v);
+				}
+
+			super.visit(n);
+		}
+
+		protected void write(final Statement n, final String id, final boolean removable) {
+			if (!removable || !(n.getParent() instanceof Block)) {
+				pinned.add(id);
+				return;
+			}
+			if (!writes.containsKey(id))
+				writes.put(id, new ArrayList<Statement>());
+			writes.get(id).add(n);
+		}
+
+		// unused functions, visitors and traversals are kept, as they are
+		// only created and not run, so removing them saves next to nothing
+		protected boolean isRemovable(final Expression e) {
+			final Operand op = ConstantFoldingTransformer.getOperand(e);
+			if (op instanceof FunctionExpression || op instanceof VisitorExpression || op instanceof TraversalExpression || op instanceof FixPExpression)
+				return false;
+			return !hasSideEffects(e);
+		}
+
+		protected boolean hasSideEffects(final Expression e) {
+			sideEffectFinder.start(e);
+			return sideEffectFinder.hasSideEffects();
+		}
+	}
+
+	protected final DeadCodeFindingVisitor deadCodeFinder = new DeadCodeFindingVisitor();
+	protected final SideEffectFindingVisitor sideEffectFinder = new SideEffectFindingVisitor();
+
+	protected Set<Statement> dead;
+	protected boolean removed;
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Program n) {
+		do {
+			deadCodeFinder.start(n);
+			dead = deadCodeFinder.getDead();
+			removed = false;
+			if (!dead.isEmpty())
+				removeStatements(n);
+		} while (removed);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Block n) {
+		removeStatements(n);
+	}
+
+	protected void removeStatements(final Block n) {
+		final List<Statement> statements = n.getStatements();
+		for (int i = 0; i < statements.size(); i++) {
+			if (dead.contains(statements.get(i))) {
+				statements.remove(i--);
+				removed = true;
+			} else
+				statements.get(i).accept(this);
+		}
+	}
+
+	protected static boolean isEmpty(final Block n) {
+		return n.getStatementsSize() == 0;
+	}
+}
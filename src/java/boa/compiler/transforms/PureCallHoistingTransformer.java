@@ -0,0 +1,774 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler.transforms;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import boa.compiler.ast.Call;
+import boa.compiler.ast.Comparison;
+import boa.compiler.ast.Component;
+import boa.compiler.ast.Conjunction;
+import boa.compiler.ast.Factor;
+import boa.compiler.ast.Identifier;
+import boa.compiler.ast.Index;
+import boa.compiler.ast.Node;
+import boa.compiler.ast.Selector;
+import boa.compiler.ast.Program;
+import boa.compiler.ast.Term;
+import boa.compiler.ast.expressions.Expression;
+import boa.compiler.ast.expressions.FixPExpression;
+import boa.compiler.ast.expressions.FunctionExpression;
+import boa.compiler.ast.expressions.SimpleExpr;
+import boa.compiler.ast.expressions.TraversalExpression;
+import boa.compiler.ast.expressions.VisitorExpression;
+import boa.compiler.ast.literals.ILiteral;
+import boa.compiler.ast.statements.AssignmentStatement;
+import boa.compiler.ast.statements.Block;
+import boa.compiler.ast.statements.DoStatement;
+import boa.compiler.ast.statements.EmitStatement;
+import boa.compiler.ast.statements.ExistsStatement;
+import boa.compiler.ast.statements.ExprStatement;
+import boa.compiler.ast.statements.ForStatement;
+import boa.compiler.ast.statements.ForeachStatement;
+import boa.compiler.ast.statements.IfAllStatement;
+import boa.compiler.ast.statements.IfStatement;
+import boa.compiler.ast.statements.PostfixStatement;
+import boa.compiler.ast.statements.ReturnStatement;
+import boa.compiler.ast.statements.Statement;
+import boa.compiler.ast.statements.SwitchStatement;
+import boa.compiler.ast.statements.VarDeclStatement;
+import boa.compiler.ast.statements.WhileStatement;
+import boa.compiler.visitors.AbstractVisitorNoArgNoRet;
+import boa.compiler.visitors.IdentifierFindingVisitor;
+import boa.compiler.visitors.PrettyPrintVisitor;
+import boa.compiler.visitors.SideEffectFindingVisitor;
+import boa.types.BoaArray;
+import boa.types.BoaBool;
+import boa.types.BoaFloat;
+import boa.types.BoaFunction;
+import boa.types.BoaInt;
+import boa.types.BoaProtoMap;
+import boa.types.BoaProtoTuple;
+import boa.types.BoaScalar;
+import boa.types.BoaTime;
+import boa.types.BoaType;
+import boa.types.BoaTypeVar;
+
+/**
+ * Computes the value of a call to a pure intrinsic once, instead of every
+ * time the same call is made with the same arguments.
+ *
+ * A call made in every iteration of a loop, whose arguments the loop does
+ * not change, is moved out of the loop into a variable set before it.
+ * Then, equal calls made by the statements of a block share a variable set
+ * before the first of them, as long as none of the variables they read is
+ * assigned and no call that may have other effects is made in between.
+ *
+ * Only calls to intrinsics implemented in Java are shared, as macros are
+ * no more expensive than reading a variable, and only if their value can
+ * not be changed through one of the variables holding it.
+ */
+public class PureCallHoistingTransformer extends AbstractVisitorNoArgNoRet {
+	/**
+	 * Finds the shared calls made whenever an expression is evaluated,
+	 * without looking into the arguments of the calls found, unless they
+	 * are opened.
+	 */
+	protected class CallFindingVisitor extends AbstractVisitorNoArgNoRet {
+		protected final List<Factor> calls = new ArrayList<Factor>();
+		protected boolean conditional;
+
+		public List<Factor> getCalls() {
+			return calls;
+		}
+
+		/**
+		 * Finds the shared calls made anywhere in a node, even if they are
+		 * only made in some of the cases.
+		 */
+		public void startAll(final Node n) {
+			conditional = true;
+			start(n);
+			conditional = false;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		protected void initialize() {
+			calls.clear();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Expression n) {
+			// the rest is only evaluated depending on the first conjunction
+			if (conditional)
+				super.visit(n);
+			else
+				n.getLhs().accept(this);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Conjunction n) {
+			if (conditional)
+				super.visit(n);
+			else
+				n.getLhs().accept(this);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Factor n) {
+			if (isShared(n) && !opened.contains(getKey(n)))
+				calls.add(n);
+			else
+				super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final FunctionExpression n) {
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final VisitorExpression n) {
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final TraversalExpression n) {
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final FixPExpression n) {
+		}
+	}
+
+	/**
+	 * Finds if a node makes a call that may have an effect.  Function and
+	 * visitor expressions only create their closures, so their bodies are
+	 * not looked at.
+	 */
+	protected class ImpureCallFindingVisitor extends AbstractVisitorNoArgNoRet {
+		protected boolean found;
+
+		public boolean isFound() {
+			return found;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		protected void initialize() {
+			found = false;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Factor n) {
+			for (int i = 0; i < n.getOpsSize(); i++)
+				if (n.getOp(i) instanceof Call && (i > 0 || !isPure(n)))
+					found = true;
+
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final FunctionExpression n) {
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final VisitorExpression n) {
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final TraversalExpression n) {
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final FixPExpression n) {
+		}
+	}
+
+	/**
+	 * Finds the variables a node declares or assigns.
+	 */
+	protected class AssignmentFindingVisitor extends AbstractVisitorNoArgNoRet {
+		protected final Set<String> assigned = new HashSet<String>();
+		protected final IdentifierFindingVisitor idFinder = new IdentifierFindingVisitor();
+		protected boolean elements;
+
+		public Set<String> getAssigned() {
+			return assigned;
+		}
+
+		/**
+		 * Returns whether an element of an array or map is assigned.
+		 */
+		public boolean assignsElements() {
+			return elements;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		protected void initialize() {
+			assigned.clear();
+			elements = false;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final VarDeclStatement n) {
+			assigned.add(n.getId().getToken());
+
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final AssignmentStatement n) {
+			idFinder.start(n.getLhs());
+			assigned.addAll(idFinder.getNames());
+			for (final Node op : n.getLhs().getOps())
+				if (op instanceof Index)
+					elements = true;
+
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final PostfixStatement n) {
+			idFinder.start(n.getExpr());
+			assigned.addAll(idFinder.getNames());
+			for (final Node op : getFactor(n.getExpr()).getOps())
+				if (op instanceof Index)
+					elements = true;
+
+			super.visit(n);
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Component n) {
+			if (n.hasIdentifier())
+				assigned.add(n.getIdentifier().getToken());
+
+			super.visit(n);
+		}
+	}
+
+	/**
+	 * Finds if evaluating an expression may fail, so it can not be moved
+	 * out of a loop that may not run.  Unlike other calls, calls that can
+	 * be made speculatively with the arguments given are looked into.
+	 */
+	protected class FailureFindingVisitor extends SideEffectFindingVisitor {
+		/** {@inheritDoc} */
+		@Override
+		public void visit(final Factor n) {
+			if (isSpeculative(n) && hasDefinedArgs(n)) {
+				for (final Expression e : ((Call) n.getOp(0)).getArgs())
+					e.accept(this);
+				for (int i = 1; i < n.getOpsSize(); i++)
+					n.getOp(i).accept(this);
+			} else {
+				super.visit(n);
+			}
+		}
+	}
+
+	protected final CallFindingVisitor callFinder = new CallFindingVisitor();
+	protected final CallFindingVisitor argCallFinder = new CallFindingVisitor();
+	protected final ImpureCallFindingVisitor impureCallFinder = new ImpureCallFindingVisitor();
+	protected final AssignmentFindingVisitor assignmentFinder = new AssignmentFindingVisitor();
+	protected final FailureFindingVisitor failureFinder = new FailureFindingVisitor();
+	protected final IdentifierFindingVisitor idFinder = new IdentifierFindingVisitor();
+	protected final PrettyPrintVisitor printer = new PrettyPrintVisitor();
+
+	// the calls whose arguments are looked into instead
+	protected final Set<String> opened = new HashSet<String>();
+	protected final Set<String> single = new HashSet<String>();
+
+	protected final String varPrefix = "_pure_call_";
+	protected int vars;
+
+	// the calls setting the variables declared, and the uses of each variable
+	protected final Map<Factor, VarDeclStatement> inits = new HashMap<Factor, VarDeclStatement>();
+	protected final Map<String, List<Identifier>> uses = new HashMap<String, List<Identifier>>();
+
+	// whether arrays may be changed after they are created
+	protected boolean arraysAssigned;
+
+	// the variables known to be defined where the loop being hoisted from is
+	protected final Set<String> defined = new HashSet<String>();
+
+	/** {@inheritDoc} */
+	@Override
+	protected void initialize() {
+		vars = 0;
+		arraysAssigned = false;
+		inits.clear();
+		uses.clear();
+		opened.clear();
+		single.clear();
+		defined.clear();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Program n) {
+		assignmentFinder.start(n);
+		arraysAssigned = assignmentFinder.assignsElements();
+
+		super.visit(n);
+		optimize(n);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Block n) {
+		super.visit(n);
+		optimize(n);
+	}
+
+	protected void optimize(final Block n) {
+		// hoisting first lets the calls moved out of loops be shared by the rest of the block
+		for (final Statement s : new ArrayList<Statement>(n.getStatements()))
+			hoist(n, s);
+		share(n);
+	}
+
+	/**
+	 * Moves the calls made in every iteration of a loop, that do not
+	 * depend on the loop, to before the loop.
+	 */
+	protected void hoist(final Block n, final Statement loop) {
+		// the expressions evaluated in every iteration, and the ones evaluated even if there is none
+		final List<Expression> always = new ArrayList<Expression>();
+		final Set<Expression> first = new HashSet<Expression>();
+		final Block body;
+		if (loop instanceof ForeachStatement) {
+			body = ((ForeachStatement) loop).getBody();
+		} else if (loop instanceof ExistsStatement) {
+			body = ((ExistsStatement) loop).getBody();
+		} else if (loop instanceof IfAllStatement) {
+			body = ((IfAllStatement) loop).getBody();
+		} else if (loop instanceof WhileStatement) {
+			body = ((WhileStatement) loop).getBody();
+			always.add(((WhileStatement) loop).getCondition());
+			first.add(((WhileStatement) loop).getCondition());
+		} else if (loop instanceof DoStatement) {
+			body = ((DoStatement) loop).getBody();
+			always.add(((DoStatement) loop).getCondition());
+		} else if (loop instanceof ForStatement) {
+			body = ((ForStatement) loop).getBody();
+			if (((ForStatement) loop).hasCondition()) {
+				always.add(((ForStatement) loop).getCondition());
+				first.add(((ForStatement) loop).getCondition());
+			}
+		} else {
+			return;
+		}
+		for (final Statement s : body.getStatements())
+			always.addAll(getEvaluated(s));
+
+		impureCallFinder.start(loop);
+		if (impureCallFinder.isFound())
+			return;
+		assignmentFinder.start(loop);
+		final Set<String> assigned = new HashSet<String>(assignmentFinder.getAssigned());
+		findDefined(loop);
+
+		// the calls made in every iteration, that read nothing the loop assigns,
+		// and that can not fail if the loop would not have made them
+		// and else the ones in their arguments
+		final Set<String> invariant = new HashSet<String>();
+		opened.clear();
+		boolean found = true;
+		while (found) {
+			found = false;
+			for (final Expression e : always) {
+				callFinder.start(e);
+				for (final Factor c : callFinder.getCalls()) {
+					final String key = getKey(c);
+					if (invariant.contains(key))
+						continue;
+					idFinder.start(c.getOp(0));
+					if (Collections.disjoint(idFinder.getNames(), assigned) && (first.contains(e) || !mayFail(c))) {
+						invariant.add(key);
+					} else {
+						opened.add(key);
+						found = true;
+					}
+				}
+			}
+		}
+		if (invariant.isEmpty()) {
+			opened.clear();
+			return;
+		}
+
+		// then every equal call in the loop can use the value computed before it
+		callFinder.startAll(loop);
+		final Map<String, List<Factor>> calls = new LinkedHashMap<String, List<Factor>>();
+		for (final Factor c : callFinder.getCalls()) {
+			final String key = getKey(c);
+			if (invariant.contains(key)) {
+				if (!calls.containsKey(key))
+					calls.put(key, new ArrayList<Factor>());
+				calls.get(key).add(c);
+			}
+		}
+		opened.clear();
+		for (final List<Factor> l : calls.values())
+			replace(n, loop, l);
+	}
+
+	/**
+	 * Shares the values of equal calls made by the statements of a block.
+	 * The calls made only once are then opened, so the calls in their
+	 * arguments can be shared too.
+	 */
+	protected void share(final Block n) {
+		opened.clear();
+		do {
+			single.clear();
+			shareCalls(n);
+		} while (opened.addAll(single));
+		opened.clear();
+	}
+
+	protected void shareCalls(final Block n) {
+		final Map<String, List<Factor>> calls = new LinkedHashMap<String, List<Factor>>();
+		final Map<String, Statement> first = new LinkedHashMap<String, Statement>();
+		final Map<String, Set<String>> reads = new LinkedHashMap<String, Set<String>>();
+
+		for (final Statement s : new ArrayList<Statement>(n.getStatements())) {
+			impureCallFinder.start(s);
+			if (impureCallFinder.isFound()) {
+				for (final String key : new ArrayList<String>(calls.keySet()))
+					share(n, key, calls, first, reads);
+				continue;
+			}
+
+			final Set<Factor> found = new HashSet<Factor>();
+			for (final Expression e : getEvaluated(s)) {
+				callFinder.start(e);
+				for (final Factor c : callFinder.getCalls()) {
+					final String key = getKey(c);
+					if (!calls.containsKey(key)) {
+						calls.put(key, new ArrayList<Factor>());
+						first.put(key, s);
+						idFinder.start(c.getOp(0));
+						reads.put(key, new HashSet<String>(idFinder.getNames()));
+					}
+					calls.get(key).add(c);
+					found.add(c);
+				}
+			}
+
+			// the calls the statement only makes in some cases, or in nested
+			// blocks, can share a value computed before if it assigns nothing they read
+			assignmentFinder.start(s);
+			final Set<String> assigned = new HashSet<String>(assignmentFinder.getAssigned());
+			callFinder.startAll(s);
+			for (final Factor c : callFinder.getCalls()) {
+				final String key = getKey(c);
+				if (found.contains(c))
+					continue;
+				if (calls.containsKey(key) && Collections.disjoint(reads.get(key), assigned))
+					calls.get(key).add(c);
+				else if (hasSharedArgs(c))
+					single.add(key);
+			}
+
+			// a call made after one of its variables is assigned may have another value
+			for (final String key : new ArrayList<String>(calls.keySet()))
+				if (!Collections.disjoint(reads.get(key), assigned))
+					share(n, key, calls, first, reads);
+		}
+
+		for (final String key : new ArrayList<String>(calls.keySet()))
+			share(n, key, calls, first, reads);
+	}
+
+	protected void share(final Block n, final String key, final Map<String, List<Factor>> calls, final Map<String, Statement> first, final Map<String, Set<String>> reads) {
+		if (calls.get(key).size() > 1)
+			replace(n, first.get(key), calls.get(key));
+		else if (hasSharedArgs(calls.get(key).get(0)))
+			single.add(key);
+		calls.remove(key);
+		first.remove(key);
+		reads.remove(key);
+	}
+
+	/**
+	 * Declares a variable holding the value of the calls before a
+	 * statement, and replaces the calls with it.
+	 */
+	protected void replace(final Block n, final Statement before, final List<Factor> calls) {
+		if (before.env == null)
+			return;
+
+		final Factor c = calls.get(0);
+		final BoaType t = c.getOp(0).type;
+		final String name = varPrefix + vars++;
+
+		final Factor f = new Factor(c.getOperand().clone());
+		f.addOp(c.getOp(0).clone());
+		final Term term = new Term(f);
+		final SimpleExpr simple = new SimpleExpr(term);
+		final Comparison comparison = new Comparison(simple);
+		final Conjunction conjunction = new Conjunction(comparison);
+		final Expression e = new Expression(conjunction);
+		f.type = term.type = simple.type = comparison.type = conjunction.type = e.type = t;
+		f.env = term.env = simple.env = comparison.env = conjunction.env = e.env = c.env;
+
+		final VarDeclStatement var = new VarDeclStatement(ASTFactory.createIdentifier(name, before.env), e);
+		var.type = t;
+		var.env = before.env;
+		var.setPositions(before.beginLine, before.beginColumn, before.endLine, before.endColumn);
+		before.env.set(name, t);
+		n.insertStatementBefore(var, before);
+		inits.put(f, var);
+		uses.put(name, new ArrayList<Identifier>());
+
+		for (final Factor call : calls) {
+			// a variable only set by a call now shared is replaced with the new one
+			if (inits.containsKey(call)) {
+				final VarDeclStatement old = inits.remove(call);
+				((Block) old.getParent()).getStatements().remove(old);
+				for (final Identifier id : uses.remove(old.getId().getToken())) {
+					id.setToken(name);
+					uses.get(name).add(id);
+				}
+				continue;
+			}
+
+			final Identifier id = ASTFactory.createIdentifier(name, call.env);
+			id.type = t;
+			call.getOps().remove(0);
+			call.setOperand(id);
+			uses.get(name).add(id);
+		}
+	}
+
+	// the expressions a statement always evaluates, before anything else it does
+	protected static List<Expression> getEvaluated(final Statement s) {
+		final List<Expression> l = new ArrayList<Expression>();
+		if (s instanceof ExprStatement) {
+			l.add(((ExprStatement) s).getExpr());
+		} else if (s instanceof AssignmentStatement) {
+			l.add(((AssignmentStatement) s).getRhs());
+		} else if (s instanceof VarDeclStatement) {
+			if (((VarDeclStatement) s).hasInitializer())
+				l.add(((VarDeclStatement) s).getInitializer());
+		} else if (s instanceof EmitStatement) {
+			final EmitStatement emit = (EmitStatement) s;
+			l.addAll(emit.getIndices());
+			l.add(emit.getValue());
+			if (emit.hasWeight())
+				l.add(emit.getWeight());
+		} else if (s instanceof IfStatement) {
+			l.add(((IfStatement) s).getCondition());
+		} else if (s instanceof ReturnStatement) {
+			if (((ReturnStatement) s).hasExpr())
+				l.add(((ReturnStatement) s).getExpr());
+		} else if (s instanceof SwitchStatement) {
+			l.add(((SwitchStatement) s).getCondition());
+		}
+		return l;
+	}
+
+	protected String getKey(final Factor n) {
+		return ((Identifier) n.getOperand()).getToken() + printer.startAndReturn(n.getOp(0));
+	}
+
+	protected boolean mayFail(final Factor n) {
+		if (!isSpeculative(n) || !hasDefinedArgs(n))
+			return true;
+		for (final Expression e : ((Call) n.getOp(0)).getArgs()) {
+			failureFinder.start(e);
+			if (failureFinder.hasSideEffects())
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Finds the variables a node is only reached with if they are defined:
+	 * those the enclosing if statements test with def, in conditions that
+	 * only join tests with and, and that the blocks of the ifs do not assign.
+	 */
+	protected void findDefined(final Node n) {
+		defined.clear();
+		for (Node child = n, p = n.getParent(); p != null; child = p, p = p.getParent()) {
+			if (!(p instanceof IfStatement) || ((IfStatement) p).getBody() != child)
+				continue;
+			final Expression cond = ((IfStatement) p).getCondition();
+			if (cond.getRhsSize() > 0)
+				continue;
+
+			final List<Comparison> tests = new ArrayList<Comparison>();
+			tests.add(cond.getLhs().getLhs());
+			tests.addAll(cond.getLhs().getRhs());
+			assignmentFinder.start(child);
+			for (final Comparison c : tests) {
+				if (c.hasRhs() || c.getLhs().getRhsSize() > 0 || c.getLhs().getLhs().getRhsSize() > 0)
+					continue;
+				final Factor f = c.getLhs().getLhs().getLhs();
+				if (f.getOpsSize() != 1 || !(f.getOp(0) instanceof Call) || !(f.getOperand() instanceof Identifier)
+						|| !((Identifier) f.getOperand()).getToken().equals("def") || ((Call) f.getOp(0)).getArgsSize() != 1)
+					continue;
+				final Expression arg = ((Call) f.getOp(0)).getArg(0);
+				if (!isFactor(arg) || getFactor(arg).getOpsSize() > 0 || !(getFactor(arg).getOperand() instanceof Identifier))
+					continue;
+				final String name = ((Identifier) getFactor(arg).getOperand()).getToken();
+				if (!assignmentFinder.getAssigned().contains(name))
+					defined.add(name);
+			}
+		}
+	}
+
+	// whether every argument of a call is known to be defined
+	protected boolean hasDefinedArgs(final Factor n) {
+		for (final Expression e : ((Call) n.getOp(0)).getArgs())
+			if (!isDefined(e))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns whether an expression is known to never be undefined: a
+	 * number, time or bool, a literal, a field of the input or of another
+	 * message known to be defined, a variable tested with def, or the value
+	 * of a speculative call whose arguments are all known to be defined.
+	 */
+	protected boolean isDefined(final Expression e) {
+		if (e.type instanceof BoaInt || e.type instanceof BoaFloat || e.type instanceof BoaTime || e.type instanceof BoaBool)
+			return true;
+		if (!isFactor(e))
+			return false;
+
+		final Factor f = getFactor(e);
+		int i = 0;
+		BoaType t;
+		if (f.getOperand() instanceof ILiteral) {
+			t = f.getOperand().type;
+		} else if (f.getOperand() instanceof Identifier) {
+			final String name = ((Identifier) f.getOperand()).getToken();
+			if (f.getOpsSize() > 0 && f.getOp(0) instanceof Call) {
+				if (!isSpeculative(f) || !hasDefinedArgs(f))
+					return false;
+				i = 1;
+				t = f.getOp(0).type;
+			} else if (name.equals("input") || defined.contains(name)) {
+				t = f.getOperand().type;
+			} else {
+				return false;
+			}
+		} else {
+			return false;
+		}
+
+		// the fields of a message are never undefined
+		for (; i < f.getOpsSize(); i++) {
+			if (!(f.getOp(i) instanceof Selector) || !(t instanceof BoaProtoTuple))
+				return false;
+			t = f.getOp(i).type;
+		}
+		return true;
+	}
+
+	// whether an expression is a single factor
+	protected static boolean isFactor(final Expression e) {
+		return e.getRhsSize() == 0 && e.getLhs().getRhsSize() == 0 && !e.getLhs().getLhs().hasRhs()
+				&& e.getLhs().getLhs().getLhs().getRhsSize() == 0 && e.getLhs().getLhs().getLhs().getLhs().getRhsSize() == 0;
+	}
+
+	// whether the arguments of a call make shared calls
+	protected boolean hasSharedArgs(final Factor n) {
+		argCallFinder.startAll(n.getOp(0));
+		return !argCallFinder.getCalls().isEmpty();
+	}
+
+	/**
+	 * Returns whether a factor is a call to a pure intrinsic implemented in
+	 * Java, whose arguments only make pure calls and whose value can be
+	 * shared.
+	 */
+	protected boolean isShared(final Factor n) {
+		final BoaFunction f = getFunction(n);
+		if (f == null || !f.isPure() || !f.hasName() || !isImmutable(n.getOp(0).type))
+			return false;
+
+		impureCallFinder.start(n.getOp(0));
+		return !impureCallFinder.isFound();
+	}
+
+	protected boolean isImmutable(final BoaType t) {
+		if (t instanceof BoaArray)
+			return !arraysAssigned && isImmutable(((BoaArray) t).getType());
+		if (t instanceof BoaTypeVar)
+			return false;
+		return t instanceof BoaScalar || t instanceof BoaProtoTuple || t instanceof BoaProtoMap;
+	}
+
+	protected static boolean isPure(final Factor n) {
+		final BoaFunction f = getFunction(n);
+		return f != null && f.isPure();
+	}
+
+	protected static boolean isSpeculative(final Factor n) {
+		final BoaFunction f = getFunction(n);
+		return f != null && f.isSpeculative();
+	}
+
+	// the function a factor calls, if it is a call to a named function
+	protected static BoaFunction getFunction(final Factor n) {
+		if (n.getOpsSize() == 0 || !(n.getOp(0) instanceof Call) || !(n.getOperand() instanceof Identifier) || n.env == null)
+			return null;
+
+		final List<BoaType> types = new ArrayList<BoaType>();
+		for (final Expression e : ((Call) n.getOp(0)).getArgs())
+			types.add(e.type);
+
+		try {
+			return n.env.getFunction(((Identifier) n.getOperand()).getToken(), types);
+		} catch (final RuntimeException e) {
+			return null;
+		}
+	}
+
+	protected static Factor getFactor(final Expression e) {
+		return e.getLhs().getLhs().getLhs().getLhs().getLhs();
+	}
+}
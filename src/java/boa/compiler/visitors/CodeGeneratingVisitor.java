@@ -277,17 +277,20 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 
 				final List<String> fields = new ArrayList<String>();
 				final List<String> types = new ArrayList<String>();
+				final List<String> copies = new ArrayList<String>();
 
 				int counter = 0;
 				for (final Expression e : n.getExprs()) {
 					fields.add("f" + counter);
 					types.add(e.type.toBoxedJavaType());
+					copies.add(copier(e.type));
 					counter++;
 				}
 
 				st.add("name", name);
 				st.add("fields", fields);
 				st.add("types", types);
+				st.add("copies", copies);
 
 				code.add(st.render());
 			}
@@ -311,7 +314,7 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 			final List<Component> members = n.getMembers();
 			final List<String> fields = new ArrayList<String>();
 			final List<String> types = new ArrayList<String>();
-			final List<Boolean> protos = new ArrayList<Boolean>();
+			final List<String> copies = new ArrayList<String>();
 
 			int fieldCount = 0;
 			for (final Component c : members) {
@@ -322,14 +325,14 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 				}
 				fieldCount++;
 				BoaType type = c.getType().type;
-				protos.add(type instanceof BoaProtoTuple);
+				copies.add(copier(type));
 				types.add(type.toBoxedJavaType());
 			}
 
 			st.add("name", tupType.toJavaType());
 			st.add("fields", fields);
 			st.add("types", types);
-			st.add("protos", protos);
+			st.add("copies", copies);
 
 			code.add(st.render());
 		}
@@ -492,8 +495,39 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 	final public static List<String> combineAggregatorStrings = new ArrayList<String>();
 	final public static List<String> reduceAggregatorStrings = new ArrayList<String>();
 
+	// intrinsics taking a regex, and the position of that argument
+	// literal regexes are compiled once into a static field of the job
+	final protected static Map<String, Integer> regexFunctions = new HashMap<String, Integer>();
+	static {
+		regexFunctions.put("boa.functions.BoaStringIntrinsics.match", 0);
+		regexFunctions.put("boa.functions.BoaStringIntrinsics.matchPositions", 0);
+		regexFunctions.put("boa.functions.BoaStringIntrinsics.matchStrings", 0);
+		regexFunctions.put("boa.functions.BoaStringIntrinsics.split", 1);
+		regexFunctions.put("boa.functions.BoaStringIntrinsics.splitn", 1);
+		regexFunctions.put("boa.functions.BoaStringIntrinsics.splitall", 1);
+	}
+
+	protected final Map<String, String> regexPatterns = new LinkedHashMap<String, String>();
+
+	// the descriptions of the profiled sites, by site number, or null if not profiling
+	protected final List<String> profileSites;
+
 	public CodeGeneratingVisitor(final String name) throws IOException {
+		this(name, null);
+	}
+
+	/**
+	 * Creates a code generator that instruments the code it generates to
+	 * profile each visitor clause, traversal clause, intrinsic call and emit.
+	 *
+	 * @param name the name of the job
+	 * @param profileSites the descriptions of the sites, which this adds to;
+	 *        shared by all jobs of a program, so sites are numbered across jobs
+	 *        (or null, to not profile)
+	 */
+	public CodeGeneratingVisitor(final String name, final List<String> profileSites) throws IOException {
 		this.name = name;
+		this.profileSites = profileSites;
 
 		varDecl = new VarDeclCodeGeneratingVisitor();
 		staticInitialization = new StaticInitializationCodeGeneratingVisitor();
@@ -537,6 +571,15 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 		}
 		st.add("statements", statements);
 
+		for (final Entry<String, String> entry : this.regexPatterns.entrySet()) {
+			final ST pst = stg.getInstanceOf("RegexPattern");
+
+			pst.add("id", entry.getValue());
+			pst.add("regex", entry.getKey());
+
+			st.add("staticDeclarations", pst.render());
+		}
+
 		if (this.aggregators.size() == 0)
 			throw new TypeCheckException(n, "No output variables were declared - must declare at least one output variable");
 
@@ -620,14 +663,65 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 			}
 
 			if (n.getArgsSize() > 0) {
-				visit(n.getArgs());
-				st.add("parameters", code.removeLast());
+				final Integer regexArg = f.hasName() ? regexFunctions.get(f.getName()) : null;
+				final String regex = regexArg == null ? null : getStringLiteral(n.getArg(regexArg));
+
+				if (regex == null) {
+					visit(n.getArgs());
+					st.add("parameters", code.removeLast());
+				} else {
+					if (!this.regexPatterns.containsKey(regex))
+						this.regexPatterns.put(regex, "_regex_" + this.regexPatterns.size());
+
+					String s = "";
+					for (int i = 0; i < n.getArgsSize(); i++) {
+						if (s.length() > 0)
+							s += ", ";
+						if (i == regexArg) {
+							s += this.regexPatterns.get(regex);
+						} else {
+							n.getArg(i).accept(this);
+							s += code.removeLast();
+						}
+					}
+					st.add("parameters", s);
+				}
+			}
+
+			// time calls of intrinsics (calls of user functions go through invoke and have no name)
+			if (this.profileSites != null && f.hasName() && f.getType() != null && !(f.getType() instanceof BoaAny)) {
+				final ST pst = stg.getInstanceOf("ProfiledCall");
+				pst.add("id", addProfileSite(n, funcName + "()"));
+				pst.add("call", st.render());
+				code.add(pst.render());
+				return;
 			}
 		}
 
 		code.add(st.render());
 	}
 
+	/**
+	 * Returns the literal if the expression is nothing but a string literal.
+	 *
+	 * @param e the expression to check
+	 * @return the (quoted) Java string literal, or null
+	 */
+	protected static String getStringLiteral(final Expression e) {
+		if (e.getRhsSize() > 0 || e.getLhs().getRhsSize() > 0)
+			return null;
+
+		final Comparison c = e.getLhs().getLhs();
+		if (c.hasRhs() || c.getLhs().getRhsSize() > 0 || c.getLhs().getLhs().getRhsSize() > 0)
+			return null;
+
+		final Factor f = c.getLhs().getLhs().getLhs();
+		if (f.getOpsSize() > 0 || !(f.getOperand() instanceof StringLiteral))
+			return null;
+
+		return ((StringLiteral)f.getOperand()).getLiteral();
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public void visit(final Comparison n) {
@@ -1084,7 +1178,7 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 			st.add("weight", code.removeLast());
 		}
 
-		code.add(st.render());
+		code.add(profile(n, "emit " + id, Collections.singletonList(st.render())).get(0));
 	}
 
 	/** {@inheritDoc} */
@@ -1407,7 +1501,7 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 		}
 		if (isBefore && !lastStatementIsStop(n.getBody()))
 			body.add("return true;\n");
-		st.add("body", body);
+		st.add("body", profile(n, (isBefore ? "before " : "after ") + (n.hasComponent() ? simpleName(n.getComponent().getType().type) : "_"), body));
 
 		code.add(st.render());
 	}
@@ -1474,8 +1568,10 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 			st.add("name", "preTraverse");
 		}
 
-		if (!(funcType.getType() instanceof BoaAny))
+		if (!(funcType.getType() instanceof BoaAny)) {
 			st.add("ret", funcType.getType().toBoxedJavaType());
+			st.add("copy", copier(funcType.getType()));
+		}
 
 		if (n.hasBody()) {
 			if (n.getBody() instanceof Block) {
@@ -1509,7 +1605,7 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 
 		traversalMap.put(traverseVar, flowSensitive);
 
-		st.add("body", body);
+		st.add("body", profile(n, "traverse " + (n.hasComponent() ? simpleName(n.getComponent().getType().type) : "_"), body));
 
 		st.add("args", traversalNodeIdentifier);
 		st.add("types", types);
@@ -1837,6 +1933,12 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 	/** {@inheritDoc} */
 	@Override
 	public void visit(final MapType n) {
+		// int and float elements get the unboxed collections from boa.runtime
+		if (n.type instanceof BoaMap && ((BoaMap) n.type).getPrimitiveJavaType() != null) {
+			code.add(((BoaMap) n.type).getPrimitiveJavaType());
+			return;
+		}
+
 		final ST st = stg.getInstanceOf("MapType");
 
 		n.env.setNeedsBoxing(true);
@@ -1874,6 +1976,12 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 	/** {@inheritDoc} */
 	@Override
 	public void visit(final StackType n) {
+		// int elements get the unboxed collections from boa.runtime
+		if (n.type instanceof BoaStack && ((BoaStack) n.type).getPrimitiveJavaType() != null) {
+			code.add(((BoaStack) n.type).getPrimitiveJavaType());
+			return;
+		}
+
 		final ST st = stg.getInstanceOf("StackType");
 
 		n.env.setNeedsBoxing(true);
@@ -1889,6 +1997,12 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 	/** {@inheritDoc} */
 	@Override
 	public void visit(final SetType n) {
+		// int elements get the unboxed collections from boa.runtime
+		if (n.type instanceof BoaSet && ((BoaSet) n.type).getPrimitiveJavaType() != null) {
+			code.add(((BoaSet) n.type).getPrimitiveJavaType());
+			return;
+		}
+
 		final ST st = stg.getInstanceOf("SetType");
 
 		n.env.setNeedsBoxing(true);
@@ -1971,6 +2085,20 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 		return typeStr;
 	}
 
+	// the function applied to copy a tuple field or traversal result of the type:
+	// sets and maps become persistent, so their copies share storage
+	private static String copier(BoaType type) {
+		if (type instanceof BoaName)
+			type = ((BoaName) type).getType();
+		if (type instanceof BoaProtoTuple)
+			return "";
+		if (type instanceof BoaSet && ((BoaSet) type).getPrimitiveJavaType() == null)
+			return "boa.runtime.BoaPersistentSet.copy";
+		if (type instanceof BoaMap && ((BoaMap) type).getPrimitiveJavaType() == null)
+			return "boa.runtime.BoaPersistentMap.copy";
+		return "new " + type.toBoxedJavaType();
+	}
+
 	protected static String camelCase(final String string) {
 		final StringBuilder camelized = new StringBuilder();
 
@@ -1993,6 +2121,43 @@ public class CodeGeneratingVisitor extends AbstractCodeGeneratingVisitor {
 		return camelized.toString();
 	}
 
+	/**
+	 * Adds a site to profile.
+	 *
+	 * @param n the node of the site, for its line
+	 * @param description what the site is
+	 * @return the site number
+	 */
+	protected int addProfileSite(final Node n, final String description) {
+		// nodes made by transformations have no line
+		this.profileSites.add(n.beginLine > 0 ? "line " + n.beginLine + ": " + description : description);
+		return this.profileSites.size() - 1;
+	}
+
+	/**
+	 * Wraps statements so they are counted and timed, if profiling.
+	 *
+	 * @param n the node of the site, for its line
+	 * @param description what the site is
+	 * @param body the generated statements
+	 * @return the wrapped statements
+	 */
+	protected List<String> profile(final Node n, final String description, final List<String> body) {
+		if (this.profileSites == null)
+			return body;
+
+		final ST st = stg.getInstanceOf("Profiled");
+		st.add("id", addProfileSite(n, description));
+		st.add("body", body);
+		return Collections.singletonList(st.render());
+	}
+
+	// the name of a type, without its package
+	private static String simpleName(final BoaType t) {
+		final String s = t.toJavaType();
+		return s.substring(s.lastIndexOf('.') + 1);
+	}
+
 	protected boolean lastStatementIsStop(Statement s) {
 		if (s instanceof StopStatement)
 			return true;
@@ -0,0 +1,437 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler.visitors;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import boa.compiler.ast.Call;
+import boa.compiler.ast.Comparison;
+import boa.compiler.ast.Factor;
+import boa.compiler.ast.Identifier;
+import boa.compiler.ast.Index;
+import boa.compiler.ast.Operand;
+import boa.compiler.ast.Program;
+import boa.compiler.ast.Selector;
+import boa.compiler.ast.UnaryFactor;
+import boa.compiler.ast.expressions.Expression;
+import boa.compiler.ast.expressions.FixPExpression;
+import boa.compiler.ast.expressions.FunctionExpression;
+import boa.compiler.ast.expressions.ParenExpression;
+import boa.compiler.ast.expressions.SimpleExpr;
+import boa.compiler.ast.expressions.TraversalExpression;
+import boa.compiler.ast.expressions.VisitorExpression;
+import boa.compiler.ast.literals.ILiteral;
+import boa.compiler.ast.literals.IntegerLiteral;
+import boa.compiler.ast.literals.StringLiteral;
+import boa.compiler.ast.statements.Block;
+import boa.compiler.ast.statements.ExprStatement;
+import boa.compiler.ast.statements.IfAllStatement;
+import boa.compiler.ast.statements.IfStatement;
+import boa.compiler.ast.statements.Statement;
+import boa.compiler.ast.statements.StopStatement;
+import boa.compiler.ast.statements.TypeDecl;
+import boa.compiler.ast.statements.VarDeclStatement;
+import boa.compiler.ast.statements.VisitStatement;
+import boa.io.ProjectGuard;
+import boa.types.BoaName;
+import boa.types.BoaType;
+import boa.types.proto.ProjectProtoTuple;
+
+/**
+ * Finds the guards a program's visitor starts its Project clause with,
+ * which stop it for projects the program is not interested in, and turns
+ * them into {@link ProjectGuard} clauses the input can check against the
+ * project index.  Guards only count if visiting the input is the only
+ * thing the program does and nothing but declarations come before them in
+ * the clause, since skipping a project must not skip anything else the
+ * program would have done with it.
+ *
+ * The recognized guards (on either input or the clause's variable) are:
+ * <pre>
+ * ifall (i: int; !match(`re`, [lowercase(]input.programming_languages[i][)])) stop;
+ * ifall (i: int; [lowercase(]input.programming_languages[i][)] != "lang") stop;
+ * if (len(input.code_repositories) OP n) stop;
+ * </pre>
+ */
+public class GuardFindingVisitor extends AbstractVisitorNoArgNoRet {
+	protected final List<ProjectGuard.Clause> clauses = new ArrayList<ProjectGuard.Clause>();
+
+	// the name the Project clause gives the project, if any
+	private String project;
+
+	/**
+	 * @return the clauses of the program's guards, empty if it has none
+	 */
+	public List<ProjectGuard.Clause> getClauses() {
+		return clauses;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void initialize() {
+		super.initialize();
+		clauses.clear();
+		project = null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Program n) {
+		final Map<String, VisitorExpression> visitors = new HashMap<String, VisitorExpression>();
+		VisitorExpression visitor = null;
+
+		for (final Statement s : n.getStatements()) {
+			if (isDeclaration(s)) {
+				if (s instanceof VarDeclStatement && ((VarDeclStatement) s).hasInitializer()) {
+					final Operand op = factor(((VarDeclStatement) s).getInitializer()).getOperand();
+					if (op instanceof VisitorExpression)
+						visitors.put(((VarDeclStatement) s).getId().getToken(), (VisitorExpression) op);
+				}
+				continue;
+			}
+			// only one visit
+			if (visitor != null)
+				return;
+			visitor = visitedWith(s, visitors);
+			if (visitor == null)
+				return;
+		}
+
+		if (visitor != null)
+			findGuards(visitor);
+	}
+
+	// the visitor if the statement is visit(input, v), or null
+	private static VisitorExpression visitedWith(final Statement s, final Map<String, VisitorExpression> visitors) {
+		if (!(s instanceof ExprStatement))
+			return null;
+		final Call call = call(factor(((ExprStatement) s).getExpr()), "visit", 2);
+		if (call == null)
+			return null;
+		final Factor input = factor(call.getArg(0));
+		if (input == null || input.getOpsSize() != 0 || !(input.getOperand() instanceof Identifier) || !((Identifier) input.getOperand()).getToken().equals("input"))
+			return null;
+
+		final Factor v = factor(call.getArg(1));
+		if (v == null || v.getOpsSize() != 0)
+			return null;
+		if (v.getOperand() instanceof VisitorExpression)
+			return (VisitorExpression) v.getOperand();
+		if (v.getOperand() instanceof Identifier)
+			return visitors.get(((Identifier) v.getOperand()).getToken());
+		return null;
+	}
+
+	private void findGuards(final VisitorExpression v) {
+		for (final Statement s : v.getBody().getStatements()) {
+			if (!(s instanceof VisitStatement))
+				continue;
+			final VisitStatement vs = (VisitStatement) s;
+			if (!vs.isBefore() || vs.hasWildcard())
+				continue;
+
+			if (vs.hasComponent()) {
+				if (!isProject(vs.getComponent().getType().type))
+					continue;
+				project = vs.getComponent().getIdentifier().getToken();
+			} else {
+				boolean found = false;
+				for (final Identifier id : vs.getIdList())
+					found |= id.getToken().equals("Project");
+				if (!found)
+					continue;
+			}
+
+			for (final Statement guard : vs.getBody().getStatements()) {
+				if (isDeclaration(guard))
+					continue;
+				final ProjectGuard.Clause c = guard(guard);
+				if (c == null)
+					break;
+				clauses.add(c);
+			}
+			return;
+		}
+	}
+
+	private static boolean isProject(final BoaType t) {
+		if (t instanceof BoaName)
+			return ((BoaName) t).getType() instanceof ProjectProtoTuple;
+		return t instanceof ProjectProtoTuple;
+	}
+
+	// declarations that can not have side effects (or throw)
+	private static boolean isDeclaration(final Statement s) {
+		if (s instanceof TypeDecl)
+			return true;
+		if (!(s instanceof VarDeclStatement))
+			return false;
+		final VarDeclStatement decl = (VarDeclStatement) s;
+		if (!decl.hasInitializer())
+			return true;
+		final Factor f = factor(decl.getInitializer());
+		if (f == null || f.getOpsSize() > 0)
+			return false;
+		final Operand op = f.getOperand();
+		return op instanceof ILiteral || op instanceof FunctionExpression || op instanceof VisitorExpression
+				|| op instanceof TraversalExpression || op instanceof FixPExpression;
+	}
+
+	private ProjectGuard.Clause guard(final Statement s) {
+		if (s instanceof IfAllStatement) {
+			final IfAllStatement ifall = (IfAllStatement) s;
+			if (!isStop(ifall.getBody()))
+				return null;
+			// stops if no language meets the negated condition
+			return negatedLanguage(ifall.getCondition(), ifall.getVar().getIdentifier().getToken());
+		}
+
+		if (s instanceof IfStatement) {
+			final IfStatement ifs = (IfStatement) s;
+			if (ifs.hasElse() || !isStop(ifs.getBody()))
+				return null;
+			// stops if the condition holds, so projects must fail it
+			final Factor f = factor(ifs.getCondition());
+			final Factor negated = f == null ? null : negated(f);
+			if (negated != null)
+				return repositories(negated, false);
+			return repositories(comparison(ifs.getCondition()), true);
+		}
+
+		return null;
+	}
+
+	private static boolean isStop(final Block b) {
+		return b.getStatementsSize() == 1 && b.getStatement(0) instanceof StopStatement;
+	}
+
+	//
+	// languages
+	//
+
+	// the clause for "some language meets P", given a condition that is !P
+	private ProjectGuard.Clause negatedLanguage(final Expression e, final String var) {
+		final Factor f = factor(e);
+		if (f != null) {
+			final Factor negated = negated(f);
+			return negated == null ? null : language(negated, var);
+		}
+
+		final Comparison c = comparison(e);
+		if (c != null && c.hasOp() && c.getOp().equals("!="))
+			return languageEquals(c, var);
+		return null;
+	}
+
+	// the clause for "some language meets the factor"
+	private ProjectGuard.Clause language(final Factor f, final String var) {
+		if (f.getOpsSize() == 0 && f.getOperand() instanceof ParenExpression) {
+			final Expression e = ((ParenExpression) f.getOperand()).getExpression();
+			final Factor inner = factor(e);
+			if (inner != null)
+				return language(inner, var);
+			final Comparison c = comparison(e);
+			if (c != null && c.hasOp() && c.getOp().equals("=="))
+				return languageEquals(c, var);
+			return null;
+		}
+
+		final Call call = call(f, "match", 2);
+		if (call == null)
+			return null;
+		final String regex = string(factor(call.getArg(0)));
+		final Boolean lower = languageTerm(factor(call.getArg(1)), var);
+		if (regex == null || lower == null)
+			return null;
+		return ProjectGuard.languageMatches(regex, lower);
+	}
+
+	private ProjectGuard.Clause languageEquals(final Comparison c, final String var) {
+		final Factor lhs = factor(c.getLhs());
+		final Factor rhs = factor(c.getRhs());
+
+		Boolean lower = languageTerm(lhs, var);
+		String s = string(rhs);
+		if (lower == null || s == null) {
+			lower = languageTerm(rhs, var);
+			s = string(lhs);
+		}
+		if (lower == null || s == null)
+			return null;
+		return ProjectGuard.languageEquals(s, lower);
+	}
+
+	// is the factor input.programming_languages[var], or lowercase() of it?
+	// returns whether it is lowercased, or null if it is neither
+	private Boolean languageTerm(final Factor f, final String var) {
+		if (f == null)
+			return null;
+
+		final Call call = call(f, "lowercase", 1);
+		if (call != null) {
+			final Boolean inner = languageTerm(factor(call.getArg(0)), var);
+			return inner != null && !inner ? Boolean.TRUE : null;
+		}
+
+		if (!isInput(f) || f.getOpsSize() != 2 || !isSelector(f, 0, "programming_languages") || !(f.getOp(1) instanceof Index))
+			return null;
+		final Index index = (Index) f.getOp(1);
+		if (index.hasEnd())
+			return null;
+		final Factor i = factor(index.getStart());
+		if (i == null || i.getOpsSize() != 0 || !(i.getOperand() instanceof Identifier) || !((Identifier) i.getOperand()).getToken().equals(var))
+			return null;
+		return Boolean.FALSE;
+	}
+
+	//
+	// repositories
+	//
+
+	// the clause for a comparison of len(input.code_repositories) against a constant, or its negation
+	private ProjectGuard.Clause repositories(final Factor f, final boolean negate) {
+		if (f.getOpsSize() != 0 || !(f.getOperand() instanceof ParenExpression))
+			return null;
+		return repositories(comparison(((ParenExpression) f.getOperand()).getExpression()), negate);
+	}
+
+	private ProjectGuard.Clause repositories(final Comparison c, final boolean negate) {
+		if (c == null || !c.hasOp())
+			return null;
+		String op = c.getOp();
+
+		Long n = integer(factor(c.getRhs()));
+		boolean repos = isRepositoryCount(factor(c.getLhs()));
+		if (n == null || !repos) {
+			n = integer(factor(c.getLhs()));
+			repos = isRepositoryCount(factor(c.getRhs()));
+			// n OP len(...) is len(...) OP' n
+			if (op.startsWith("<"))
+				op = ">" + op.substring(1);
+			else if (op.startsWith(">"))
+				op = "<" + op.substring(1);
+		}
+		if (n == null || !repos)
+			return null;
+		return ProjectGuard.repositories(negate ? ProjectGuard.negate(op) : op, n);
+	}
+
+	private boolean isRepositoryCount(final Factor f) {
+		if (f == null)
+			return false;
+		final Call call = call(f, "len", 1);
+		if (call == null)
+			return false;
+		final Factor arg = factor(call.getArg(0));
+		return arg != null && isInput(arg) && arg.getOpsSize() == 1 && isSelector(arg, 0, "code_repositories");
+	}
+
+	//
+	// expression shapes
+	//
+
+	// the only factor of an expression, or null if it has any operators
+	private static Factor factor(final Expression e) {
+		final Comparison c = comparison(e);
+		if (c == null || c.hasRhs())
+			return null;
+		return factor(c.getLhs());
+	}
+
+	private static Factor factor(final SimpleExpr e) {
+		if (e == null || e.getRhsSize() > 0 || e.getLhs().getRhsSize() > 0)
+			return null;
+		return e.getLhs().getLhs();
+	}
+
+	// the only comparison of an expression, or null if it has any logical operators
+	private static Comparison comparison(final Expression e) {
+		if (e == null || e.getRhsSize() > 0 || e.getLhs().getRhsSize() > 0)
+			return null;
+		return e.getLhs().getLhs();
+	}
+
+	// the factor f negates, or null if f is not a negation
+	private static Factor negated(final Factor f) {
+		if (f.getOpsSize() != 0 || !(f.getOperand() instanceof UnaryFactor))
+			return null;
+		final UnaryFactor u = (UnaryFactor) f.getOperand();
+		if (!u.getOp().equals("!") && !u.getOp().equals("not"))
+			return null;
+		return u.getFactor();
+	}
+
+	// the call if f is a call of the named function with the given number of arguments
+	private static Call call(final Factor f, final String name, final int args) {
+		if (f == null || f.getOpsSize() != 1 || !(f.getOp(0) instanceof Call) || !(f.getOperand() instanceof Identifier))
+			return null;
+		if (!((Identifier) f.getOperand()).getToken().equals(name))
+			return null;
+		final Call call = (Call) f.getOp(0);
+		return call.getArgsSize() == args ? call : null;
+	}
+
+	// is f input or the Project clause's variable, followed by something?
+	private boolean isInput(final Factor f) {
+		if (!(f.getOperand() instanceof Identifier))
+			return false;
+		final String id = ((Identifier) f.getOperand()).getToken();
+		return id.equals("input") || id.equals(project);
+	}
+
+	private static boolean isSelector(final Factor f, final int i, final String name) {
+		return f.getOp(i) instanceof Selector && ((Selector) f.getOp(i)).getId().getToken().equals(name);
+	}
+
+	// the value of a string literal, or null if f is not one (or uses escapes other than \\ and \")
+	private static String string(final Factor f) {
+		if (f == null || f.getOpsSize() != 0 || !(f.getOperand() instanceof StringLiteral))
+			return null;
+		final String lit = ((StringLiteral) f.getOperand()).getLiteral();
+		if (lit.length() < 2 || lit.charAt(0) != '"' || lit.charAt(lit.length() - 1) != '"')
+			return null;
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 1; i < lit.length() - 1; i++) {
+			char c = lit.charAt(i);
+			if (c == '\\') {
+				c = lit.charAt(++i);
+				if (c != '\\' && c != '"')
+					return null;
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	// the value of a decimal integer literal, or null if f is not one
+	private static Long integer(final Factor f) {
+		if (f == null || f.getOpsSize() != 0 || !(f.getOperand() instanceof IntegerLiteral))
+			return null;
+		final String lit = ((IntegerLiteral) f.getOperand()).getLiteral();
+		if (!lit.matches("[0-9]+"))
+			return null;
+		try {
+			return Long.parseLong(lit);
+		} catch (final NumberFormatException e) {
+			return null;
+		}
+	}
+}
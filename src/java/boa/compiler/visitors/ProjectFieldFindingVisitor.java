@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler.visitors;
+
+import java.util.Set;
+import java.util.TreeSet;
+
+import boa.compiler.ast.Factor;
+import boa.compiler.ast.Node;
+import boa.compiler.ast.Selector;
+import boa.compiler.ast.expressions.Expression;
+import boa.compiler.ast.statements.AssignmentStatement;
+import boa.compiler.ast.statements.Statement;
+import boa.compiler.ast.statements.VarDeclStatement;
+import boa.types.BoaName;
+import boa.types.BoaType;
+import boa.types.proto.ProjectProtoTuple;
+
+/**
+ * Finds which members of the Project a (type checked) program can read, so
+ * the mapper only has to decode those.
+ *
+ * Every member selected from a Project value is recorded.  A Project value
+ * stored into a variable is fine, since the uses of that variable are
+ * checked on their own, but if it is used in any other way (passed to a
+ * function or a visit, returned, put in a collection...) the whole Project
+ * is needed.
+ */
+public class ProjectFieldFindingVisitor extends AbstractVisitorNoArgNoRet {
+	protected final Set<String> fields = new TreeSet<String>();
+	protected boolean whole;
+
+	/**
+	 * @return the names of the members read, or null if the whole Project is needed
+	 */
+	public Set<String> getFields() {
+		return whole ? null : fields;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void initialize() {
+		super.initialize();
+		fields.clear();
+		whole = false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Factor n) {
+		super.visit(n);
+
+		BoaType type = n.getOperand().type;
+		for (final Node o : n.getOps()) {
+			if (o instanceof Selector && isProject(type))
+				fields.add(((Selector) o).getId().getToken());
+			type = o.type;
+		}
+
+		if (isProject(n.type) && !isStored(n))
+			whole = true;
+	}
+
+	private static boolean isProject(final BoaType t) {
+		if (t instanceof BoaName)
+			return ((BoaName) t).getType() instanceof ProjectProtoTuple;
+		return t instanceof ProjectProtoTuple;
+	}
+
+	// is the factor assigned to, or the whole value assigned to a variable?
+	private static boolean isStored(final Factor n) {
+		if (n.getParent() instanceof AssignmentStatement)
+			return ((AssignmentStatement) n.getParent()).getLhs() == n;
+
+		Node e = n.getParent();
+		while (e != null && !(e instanceof Expression) && !(e instanceof Statement))
+			e = e.getParent();
+		if (!(e instanceof Expression) || !isProject(e.type))
+			return false;
+
+		final Node parent = e.getParent();
+		if (parent instanceof VarDeclStatement)
+			return ((VarDeclStatement) parent).getInitializer() == e;
+		if (parent instanceof AssignmentStatement)
+			return ((AssignmentStatement) parent).getRhs() == e;
+		return false;
+	}
+}
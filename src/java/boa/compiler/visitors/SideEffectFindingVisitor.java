@@ -0,0 +1,88 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.compiler.visitors;
+
+import boa.compiler.ast.Call;
+import boa.compiler.ast.Index;
+import boa.compiler.ast.Term;
+import boa.compiler.ast.expressions.FixPExpression;
+import boa.compiler.ast.expressions.FunctionExpression;
+import boa.compiler.ast.expressions.TraversalExpression;
+import boa.compiler.ast.expressions.VisitorExpression;
+
+/**
+ * Finds if evaluating an expression may have an effect besides its value,
+ * so it can not be dropped if its value is unused.
+ *
+ * Calls may have side effects, and indexing or integer division may throw.
+ * Function and visitor expressions only create their closures, so their
+ * bodies are not looked at.
+ */
+public class SideEffectFindingVisitor extends AbstractVisitorNoArgNoRet {
+	protected boolean hasSideEffects;
+
+	public boolean hasSideEffects() {
+		return hasSideEffects;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	protected void initialize() {
+		hasSideEffects = false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Call n) {
+		hasSideEffects = true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Index n) {
+		hasSideEffects = true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final Term n) {
+		if (n.getOps().contains("/") || n.getOps().contains("%"))
+			hasSideEffects = true;
+		else
+			super.visit(n);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final FunctionExpression n) {
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final VisitorExpression n) {
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final TraversalExpression n) {
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void visit(final FixPExpression n) {
+	}
+}
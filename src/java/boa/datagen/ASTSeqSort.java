@@ -17,52 +17,274 @@
 
 package boa.datagen;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.io.BytesWritable;
 import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.io.Text;
 
-import com.google.protobuf.CodedInputStream;
-
-import boa.types.Ast.ASTRoot;
-
 /**
+ * Sorts a dataset's ast.seq by key.  If a key appears more than once, only
+ * its last value is kept.
+ *
+ * The sort is an external merge sort, so it needs memory for a few runs
+ * rather than for the whole file: the records are read into runs of a
+ * bounded size, each run is sorted and spilled to a local temporary file
+ * on a pool of threads, and the runs are then merged into the output, at
+ * most {@link #FAN_IN} at a time.
+ *
  * @author hoan
- * 
+ *
  */
 public class ASTSeqSort {
+	/** the default size of a run, in megabytes */
+	public static final int DEFAULT_RUN_SIZE = 256;
+	/** the most runs merged at once */
+	public static final int FAN_IN = 64;
+
+	// the memory a record takes besides its key and value
+	private static final int RECORD_OVERHEAD = 64;
 
+	/**
+	 * Sorts an ast.seq file in place.
+	 *
+	 * @param args the dataset directory holding ast.seq, and optionally the
+	 *             run size in megabytes and the number of threads
+	 */
 	public static void main(String[] args) throws Exception {
 		Configuration conf = new Configuration();
 		FileSystem fs = FileSystem.get(conf);
-		
+
 		String inPath = args[0];
-		Map<String, BytesWritable> map = new HashMap<String, BytesWritable>();
-		SequenceFile.Reader reader = new SequenceFile.Reader(fs, new Path(inPath + "/ast.seq"), conf);
-		Text key = new Text();
-		BytesWritable val = new BytesWritable();
-		while (reader.next(key, val)) {
-			map.put(key.toString(), val);
-			val = new BytesWritable();
+		long runSize = (args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_RUN_SIZE) << 20;
+		int threads = args.length > 2 ? Integer.parseInt(args[2]) : Integer.parseInt(DefaultProperties.NUM_THREADS);
+		Path path = new Path(inPath + "/ast.seq");
+		sort(fs, conf, path, path, runSize, threads);
+	}
+
+	/**
+	 * Sorts a sequence file of ASTs by key, in the order of the keys as
+	 * strings.  The output is written only after the whole input has been
+	 * read, so it may be the input itself.
+	 *
+	 * @param fs the file system holding the input and output
+	 * @param conf the configuration to use
+	 * @param in the file to sort
+	 * @param out the sorted file to write
+	 * @param runSize the most bytes of records each run holds in memory
+	 * @param threads the number of runs to sort and spill at once
+	 * @throws IOException if the input can not be read or the output can not be written
+	 */
+	public static void sort(final FileSystem fs, final Configuration conf, final Path in, final Path out, final long runSize, final int threads) throws IOException {
+		final FileSystem local = FileSystem.getLocal(conf);
+		final File tmp = File.createTempFile("ast-sort", "");
+		if (!tmp.delete() || !tmp.mkdir())
+			throw new IOException("unable to mkdir " + tmp);
+		final Path tmpDir = new Path(tmp.getAbsolutePath());
+
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			List<Path> runs = spill(fs, local, conf, in, tmpDir, runSize, Math.max(1, threads), pool);
+
+			// merge runs in order, so the last value of a key still comes from the latest run
+			while (runs.size() > FAN_IN) {
+				final List<Future<Path>> merged = new ArrayList<Future<Path>>();
+				for (int i = 0; i < runs.size(); i += FAN_IN) {
+					final List<Path> group = runs.subList(i, Math.min(i + FAN_IN, runs.size()));
+					final Path run = new Path(tmpDir, "merge-" + runs.size() + "-" + i);
+					merged.add(pool.submit(new Callable<Path>() {
+						@Override
+						public Path call() throws IOException {
+							merge(local, conf, group, SequenceFile.createWriter(local, conf, run, Text.class, BytesWritable.class, CompressionType.NONE));
+							return run;
+						}
+					}));
+				}
+				final List<Path> next = new ArrayList<Path>();
+				for (final Future<Path> f : merged)
+					next.add(get(f));
+				runs = next;
+			}
+
+			merge(local, conf, runs, SequenceFile.createWriter(fs, conf, out, Text.class, BytesWritable.class));
+		} finally {
+			pool.shutdownNow();
+			local.delete(tmpDir, true);
+		}
+	}
+
+	// reads the input into runs, sorting and spilling up to threads runs at once
+	private static List<Path> spill(final FileSystem fs, final FileSystem local, final Configuration conf, final Path in, final Path tmpDir, final long runSize, final int threads, final ExecutorService pool) throws IOException {
+		final List<Path> runs = new ArrayList<Path>();
+		final LinkedList<Future<Path>> pending = new LinkedList<Future<Path>>();
+
+		final SequenceFile.Reader reader = new SequenceFile.Reader(fs, in, conf);
+		try {
+			List<Record> run = new ArrayList<Record>();
+			long size = 0;
+			Text key = new Text();
+			BytesWritable val = new BytesWritable();
+			while (reader.next(key, val)) {
+				run.add(new Record(key.toString(), val));
+				size += 2 * key.getLength() + val.getLength() + RECORD_OVERHEAD;
+				val = new BytesWritable();
+				if (size >= runSize) {
+					// bound the runs held in memory to the ones being spilled and the one being read
+					if (pending.size() == threads)
+						runs.add(get(pending.removeFirst()));
+					pending.add(pool.submit(new Spill(local, conf, run, new Path(tmpDir, "run-" + (runs.size() + pending.size())))));
+					run = new ArrayList<Record>();
+					size = 0;
+				}
+			}
+			if (!run.isEmpty() || runs.size() + pending.size() == 0)
+				pending.add(pool.submit(new Spill(local, conf, run, new Path(tmpDir, "run-" + (runs.size() + pending.size())))));
+		} finally {
+			reader.close();
+		}
+
+		while (!pending.isEmpty())
+			runs.add(get(pending.removeFirst()));
+		return runs;
+	}
+
+	// merges sorted runs into w, keeping the value from the latest run for keys in several runs
+	private static void merge(final FileSystem fs, final Configuration conf, final List<Path> runs, final SequenceFile.Writer w) throws IOException {
+		final PriorityQueue<Cursor> queue = new PriorityQueue<Cursor>(Math.max(1, runs.size()));
+		try {
+			for (int i = 0; i < runs.size(); i++) {
+				final Cursor c = new Cursor(new SequenceFile.Reader(fs, runs.get(i), conf), i);
+				if (c.next())
+					queue.add(c);
+				else
+					c.close();
+			}
+
+			String last = null;
+			while (!queue.isEmpty()) {
+				final Cursor c = queue.poll();
+				if (!c.key.equals(last)) {
+					w.append(c.text, c.val);
+					last = c.key;
+				}
+				if (c.next())
+					queue.add(c);
+				else
+					c.close();
+			}
+		} finally {
+			for (final Cursor c : queue)
+				c.close();
+			w.close();
+		}
+	}
+
+	private static Path get(final Future<Path> f) throws IOException {
+		try {
+			return f.get();
+		} catch (final InterruptedException e) {
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static class Record {
+		final String key;
+		final BytesWritable val;
+
+		Record(final String key, final BytesWritable val) {
+			this.key = key;
+			this.val = val;
+		}
+	}
+
+	// sorts a run and writes it, keeping only the last value of each key
+	private static class Spill implements Callable<Path> {
+		private final FileSystem fs;
+		private final Configuration conf;
+		private final List<Record> run;
+		private final Path path;
+
+		Spill(final FileSystem fs, final Configuration conf, final List<Record> run, final Path path) {
+			this.fs = fs;
+			this.conf = conf;
+			this.run = run;
+			this.path = path;
+		}
+
+		@Override
+		public Path call() throws IOException {
+			// the sort is stable, so the last of several equal keys is the last one read
+			Collections.sort(run, new Comparator<Record>() {
+				@Override
+				public int compare(final Record r1, final Record r2) {
+					return r1.key.compareTo(r2.key);
+				}
+			});
+
+			final SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, path, Text.class, BytesWritable.class, CompressionType.NONE);
+			try {
+				final int n = run.size();
+				for (int i = 0; i < n; i++)
+					if (i + 1 == n || !run.get(i).key.equals(run.get(i + 1).key))
+						w.append(new Text(run.get(i).key), run.get(i).val);
+			} finally {
+				w.close();
+			}
+			return path;
+		}
+	}
+
+	// the next record of a run
+	private static class Cursor implements Comparable<Cursor> {
+		private final SequenceFile.Reader reader;
+		private final int run;
+		final Text text = new Text();
+		final BytesWritable val = new BytesWritable();
+		String key;
+
+		Cursor(final SequenceFile.Reader reader, final int run) {
+			this.reader = reader;
+			this.run = run;
 		}
-		reader.close();
-		
-		List<String> list = new ArrayList<String>(map.keySet());
-		Collections.sort(list);
-		
-		SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, new Path(inPath + "/ast.seq"), Text.class, BytesWritable.class);
-		for (String k : list) {
-			w.append(new Text(k), map.get(k));
+
+		boolean next() throws IOException {
+			if (!reader.next(text, val))
+				return false;
+			key = text.toString();
+			return true;
+		}
+
+		void close() throws IOException {
+			reader.close();
+		}
+
+		@Override
+		public int compareTo(final Cursor c) {
+			final int cmp = key.compareTo(c.key);
+			if (cmp != 0)
+				return cmp;
+			// later runs first, so their value is the one kept
+			return c.run - run;
 		}
-		w.close();
 	}
 }
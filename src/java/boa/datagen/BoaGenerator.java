@@ -117,6 +117,8 @@ public class BoaGenerator {
 		options.addOption("cache", "cache", false, "enable if you want to delete the cloned code for user.");
 		options.addOption("debug", "debug", false, "enable for debug mode.");
 		options.addOption("debugparse", "debugparse", false, "enable for debug mode when parsing source files.");
+		options.addOption("singlepass", "singlepass", false, "parse JavaScript and PHP files once and find their language version from the features they use.");
+		options.addOption("edits", "edits", false, "compute and store the AST edit script of each modified Java file.");
 		options.addOption("help", "help", false, "help");
 	}
 
@@ -184,6 +186,12 @@ public class BoaGenerator {
 		if (cl.hasOption("debugparse")) {
 			DefaultProperties.DEBUGPARSE = true;
 		}
+		if (cl.hasOption("singlepass")) {
+			DefaultProperties.SINGLEPASS = true;
+		}
+		if (cl.hasOption("edits")) {
+			DefaultProperties.EDITS = true;
+		}
 		if (cl.hasOption("cache")) {
 			DefaultProperties.CACHE = true;
 		}
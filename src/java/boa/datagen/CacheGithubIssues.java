@@ -19,6 +19,7 @@ import com.google.gson.JsonElement;
 import boa.datagen.forges.github.IssueMetaData;
 import boa.datagen.util.FileIO;
 import boa.datagen.util.Properties;
+import boa.io.IssuePages;
 import boa.types.Issues.Issue;
 import boa.types.Issues.IssuesRoot;
 
@@ -71,6 +72,11 @@ public class CacheGithubIssues {
 			}
 		}
 		CacheGithubIssues.closeWriters();
+		try {
+			IssuePages.write(fileSystem, conf, new Path(jsonCachePath + "/issues" + suffix), new Path(jsonCachePath));
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
 	}
 
 	private static void openWriters() {
@@ -27,8 +27,9 @@ public class DefaultProperties {
 	public static String MAX_PROJECTS = "1000";
 	public static String MAX_COMMITS = "10000";
 	public static String MAX_SIZE_FOR_PROJECT_WITH_COMMITS = String.valueOf(1 << 26); // Integer.MAX_VALUE / 3
+	public static String COMBINE_BUFFER_BYTES = String.valueOf(1 << 26);
 	
-	public static boolean DEBUG = false, DEBUGPARSE = false, CACHE = false;
+	public static boolean DEBUG = false, DEBUGPARSE = false, CACHE = false, SINGLEPASS = false, EDITS = false;
 
 	// HBase tables
 	public static final String HBASE_PROJECTS_TABLE = "projects";
@@ -18,6 +18,17 @@
 package boa.datagen;
 
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileStatus;
 import org.apache.hadoop.fs.FileSystem;
@@ -35,20 +46,30 @@ import org.apache.hadoop.io.compress.DefaultCodec;
 import org.apache.hadoop.io.compress.GzipCodec;
 import org.apache.hadoop.io.compress.SnappyCodec;
 
-import com.google.protobuf.CodedInputStream;
-
+import boa.datagen.util.KeyRemapper;
 import boa.datagen.util.Properties;
-import boa.types.Code.CodeRepository;
-import boa.types.Code.Revision;
-import boa.types.Diff.ChangedFile;
-import boa.types.Toplevel.Project;
+import boa.io.ProjectIndex;
 
 /**
+ * Combines the outputs of the repository importer's workers into one
+ * dataset.
+ *
+ * Each worker wrote its projects, commits, ASTs and edit scripts to files
+ * of its own, with keys starting over in every file, so the keys of each
+ * file are shifted past the keys of the files before it.  The files are
+ * read and their keys shifted by a pool of threads, while the combined
+ * dataset is written in file name order.  Each file hands its records over
+ * through a queue bounded by the bytes of its records (the
+ * <code>combine.buffer.bytes</code> property, 64MB by default).  Besides the
+ * file being written, only one file per thread is read ahead, and a record
+ * larger than the bound is still let into an empty queue, so at worst
+ * (threads + 1) bounds' worth of records are held in memory, plus one
+ * oversized record per file.
+ *
  * @author hoan
  * @author hridesh
  */
 public class SeqCombiner {
-
 	public static void main(String[] args) throws IOException {
 		CompressionType compressionType = CompressionType.BLOCK;
 		CompressionCodec compressionCode = new DefaultCodec();
@@ -70,10 +91,32 @@ public class SeqCombiner {
 			else if (args[1].toLowerCase().equals("s"))
 				compressionCode = new SnappyCodec();
 		}
-		
+		int threads = Integer.parseInt(Properties.getProperty("num.threads", DefaultProperties.NUM_THREADS));
+
+		combine(fileSystem, conf, base, compressionType, compressionCode, threads);
+
+		fileSystem.close();
+	}
+
+	/**
+	 * Combines the workers' outputs in a dataset directory.
+	 *
+	 * @param fileSystem the file system holding the dataset
+	 * @param conf the configuration to use
+	 * @param base the dataset directory
+	 * @param compressionType how to compress the combined files
+	 * @param compressionCode the codec to compress the combined files with
+	 * @param threads how many files to read at once
+	 * @throws IOException if the combined files can not be written
+	 */
+	public static void combine(final FileSystem fileSystem, final Configuration conf, final String base, final CompressionType compressionType, final CompressionCodec compressionCode, final int threads) throws IOException {
 		SequenceFile.Writer projectWriter = SequenceFile.createWriter(fileSystem, conf, new Path(base + "/projects.seq"), Text.class, BytesWritable.class, compressionType, compressionCode);
 		MapFile.Writer astWriter = new MapFile.Writer(conf, fileSystem, base + "/ast", LongWritable.class, BytesWritable.class, compressionType, compressionCode, null);
 		MapFile.Writer commitWriter = new MapFile.Writer(conf, fileSystem, base + "/commit", LongWritable.class, BytesWritable.class, compressionType, compressionCode, null);
+		// edit scripts are only there if the repositories were imported with them
+		MapFile.Writer editWriter = null;
+		if (fileSystem.exists(new Path(base + "/edits")))
+			editWriter = new MapFile.Writer(conf, fileSystem, base + "/edits", LongWritable.class, BytesWritable.class, compressionType, compressionCode, null);
 		
 		FileStatus[] files = fileSystem.listStatus(new Path(base + "/project"), new PathFilter() {
 			
@@ -83,99 +126,289 @@ public class SeqCombiner {
 				return name.endsWith(".seq") && name.contains("-");
 			}
 		});
-		long lastAstWriterKey = 0, lastCommitWriterKey = 0;
-		for (int i = 0; i < files.length; i++) {
-			FileStatus file = files[i];
-			String name = file.getPath().getName();
-			System.out.println("Reading file " + (i+1) + " in " + files.length + ": " + name);
-			SequenceFile.Reader r = new SequenceFile.Reader(fileSystem, file.getPath(), conf);
-			Text textKey = new Text();
-			BytesWritable value = new BytesWritable();
-			try {
-				while (r.next(textKey, value)) {
-					Project p = Project.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
-					Project.Builder pb = Project.newBuilder(p);
-					for (CodeRepository.Builder crb : pb.getCodeRepositoriesBuilderList()) {
-						if (crb.getRevisionsCount() > 0) {
-							for (Revision.Builder rb : crb.getRevisionsBuilderList()) {
-								for (ChangedFile.Builder cfb : rb.getFilesBuilderList()) {
-									long key = cfb.getKey();
-									if (key > 0)
-										cfb.setKey(lastAstWriterKey + key);
-								}
-							}
-						} else {
-							for (int j = 0; j < crb.getRevisionKeysCount(); j++) {
-								crb.setRevisionKeys(j, lastCommitWriterKey + crb.getRevisionKeys(j));
-							}
-						}
-						for (ChangedFile.Builder cfb : crb.getHeadSnapshotBuilderList()) {
-							long key = cfb.getKey();
-							if (key > 0)
-								cfb.setKey(lastAstWriterKey + key);
+		// the same order on every file system
+		Arrays.sort(files);
+
+		// how many bytes of records a file may buffer ahead of the writers
+		final long capacity = Long.parseLong(Properties.getProperty("combine.buffer.bytes", DefaultProperties.COMBINE_BUFFER_BYTES));
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		try {
+			// the keys of a file start after the last keys of the files before it
+			final List<Future<long[]>> lastKeys = new ArrayList<Future<long[]>>();
+			for (final FileStatus file : files)
+				lastKeys.add(pool.submit(new LastKeys(fileSystem, conf, base, file.getPath().getName())));
+
+			final long[] astKeys = new long[files.length], commitKeys = new long[files.length];
+			for (int i = 1; i < files.length; i++) {
+				final long[] last = get(lastKeys.get(i - 1));
+				astKeys[i] = astKeys[i - 1] + last[0];
+				commitKeys[i] = commitKeys[i - 1] + last[1];
+			}
+
+			// besides the file being written, only as many files as there are threads are read ahead;
+			// the pool starts files in order, so the file being written is always either done or being read
+			final int ahead = Math.max(1, threads);
+			final RecordQueue[] queues = new RecordQueue[files.length];
+			for (int i = 0; i < files.length && i < ahead; i++)
+				queues[i] = read(pool, fileSystem, conf, base, files[i], editWriter != null, astKeys[i], commitKeys[i], capacity);
+			for (int i = 0; i < files.length; i++) {
+				if (i + ahead < files.length)
+					queues[i + ahead] = read(pool, fileSystem, conf, base, files[i + ahead], editWriter != null, astKeys[i + ahead], commitKeys[i + ahead], capacity);
+
+				final String name = files[i].getPath().getName();
+				System.out.println("Reading file " + (i+1) + " in " + files.length + ": " + name);
+				final RecordQueue queue = queues[i];
+				queues[i] = null;
+				// like a record that can not be read, one that can not be written ends its file
+				final boolean[] failed = new boolean[Record.AST + 1];
+				for (Record r = take(queue); r != END; r = take(queue)) {
+					if (r.error != null) {
+						System.err.println(r.fileName);
+						r.error.printStackTrace();
+					} else if (!failed[r.kind]) {
+						try {
+							if (r.kind == Record.PROJECT)
+								projectWriter.append(r.text, r.value);
+							else if (r.kind == Record.COMMIT)
+								commitWriter.append(new LongWritable(r.key), r.value);
+							else if (r.kind == Record.EDIT)
+								editWriter.append(new LongWritable(r.key), r.value);
+							else
+								astWriter.append(new LongWritable(r.key), r.value);
+						} catch (IOException e) {
+							failed[r.kind] = true;
+							System.err.println(r.kind == Record.PROJECT ? name : base + "/" + Record.DIRS[r.kind] + "/" + name);
+							e.printStackTrace();
 						}
 					}
-					projectWriter.append(textKey, new BytesWritable(pb.build().toByteArray()));
 				}
+			}
+		} finally {
+			pool.shutdownNow();
+			projectWriter.close();
+			astWriter.close();
+			commitWriter.close();
+			if (editWriter != null)
+				editWriter.close();
+		}
+
+		// lets programs with guards skip projects without decoding them
+		ProjectIndex.write(fileSystem, conf, new Path(base));
+	}
+
+	private static RecordQueue read(final ExecutorService pool, final FileSystem fileSystem, final Configuration conf, final String base, final FileStatus file, final boolean edits, final long lastAstKey, final long lastCommitKey, final long capacity) {
+		final RecordQueue queue = new RecordQueue(capacity);
+		pool.execute(new FileTask(fileSystem, conf, base, file.getPath().getName(), edits, lastAstKey, lastCommitKey, queue));
+		return queue;
+	}
+
+	private static <T> T get(final Future<T> f) throws IOException {
+		try {
+			return f.get();
+		} catch (final InterruptedException e) {
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private static Record take(final RecordQueue queue) throws IOException {
+		try {
+			return queue.take();
+		} catch (final InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * A record read from a worker's file and ready to append, or a failure
+	 * to read the rest of the file.
+	 */
+	private static class Record {
+		static final int PROJECT = 0, COMMIT = 1, EDIT = 2, AST = 3;
+		static final String[] DIRS = { "project", "commit", "edits", "ast" };
+
+		final int kind;
+		final Text text;
+		final long key;
+		final BytesWritable value;
+		final String fileName;
+		final Exception error;
+
+		Record(final int kind, final Text text, final long key, final BytesWritable value) {
+			this(kind, text, key, value, null, null);
+		}
+
+		Record(final int kind, final Text text, final long key, final BytesWritable value, final String fileName, final Exception error) {
+			this.kind = kind;
+			this.text = text;
+			this.key = key;
+			this.value = value;
+			this.fileName = fileName;
+			this.error = error;
+		}
+	}
+
+	// marks the end of a file
+	private static final Record END = new Record(-1, null, 0, null);
+
+	/**
+	 * Hands a file's records to the writer, blocking the reader while the
+	 * records waiting in it hold more than a given number of bytes.
+	 */
+	private static class RecordQueue {
+		private final long capacity;
+		private final Queue<Record> records = new ArrayDeque<Record>();
+		private long bytes = 0;
+
+		RecordQueue(final long capacity) {
+			this.capacity = capacity;
+		}
+
+		private static long size(final Record r) {
+			return (r.text == null ? 0 : r.text.getLength()) + (r.value == null ? 0 : r.value.getLength());
+		}
+
+		synchronized void put(final Record r) throws InterruptedException {
+			final long size = size(r);
+			// an empty queue takes any record, so one larger than the bound still goes through
+			while (!records.isEmpty() && bytes + size > capacity)
+				wait();
+			records.add(r);
+			bytes += size;
+			notifyAll();
+		}
+
+		synchronized Record take() throws InterruptedException {
+			while (records.isEmpty())
+				wait();
+			final Record r = records.remove();
+			bytes -= size(r);
+			notifyAll();
+			return r;
+		}
+	}
+
+	// finds the last AST and commit keys of a worker's file, reading only the keys
+	private static class LastKeys implements Callable<long[]> {
+		private final FileSystem fileSystem;
+		private final Configuration conf;
+		private final String base;
+		private final String name;
+
+		LastKeys(final FileSystem fileSystem, final Configuration conf, final String base, final String name) {
+			this.fileSystem = fileSystem;
+			this.conf = conf;
+			this.base = base;
+			this.name = name;
+		}
+
+		@Override
+		public long[] call() throws IOException {
+			return new long[] { lastKey(base + "/ast/" + name), lastKey(base + "/commit/" + name) };
+		}
+
+		private long lastKey(final String fileName) throws IOException {
+			long lastKey = 0;
+			SequenceFile.Reader r = new SequenceFile.Reader(fileSystem, new Path(fileName), conf);
+			LongWritable longKey = new LongWritable();
+			try {
+				while (r.next(longKey))
+					lastKey = longKey.get();
 			} catch (Exception e) {
-				System.err.println(name);
-				e.printStackTrace();
+				// a corrupt file is combined up to where it is corrupt
 			} finally {
 				r.close();
 			}
-			lastCommitWriterKey = readAndAppendCommit(conf, fileSystem, commitWriter, base + "/commit/" + name, lastAstWriterKey, lastCommitWriterKey);
-			lastAstWriterKey = readAndAppendAst(conf, fileSystem, astWriter, base + "/ast/" + name, lastAstWriterKey);
+			return lastKey;
 		}
-		projectWriter.close();
-		astWriter.close();
-		commitWriter.close();
-		
-		fileSystem.close();
 	}
 
-	public static long readAndAppendCommit(Configuration conf, FileSystem fileSystem, MapFile.Writer writer, String fileName, long lastAstKey, long lastCommitKey) throws IOException {
-		long newLastKey = lastCommitKey;
-		SequenceFile.Reader r = new SequenceFile.Reader(fileSystem, new Path(fileName), conf);
-		LongWritable longKey = new LongWritable();
-		BytesWritable value = new BytesWritable();
-		try {
-			while (r.next(longKey, value)) {
-				newLastKey = longKey.get() + lastCommitKey;
-				Revision rev = Revision.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
-				Revision.Builder rb = Revision.newBuilder(rev);
-				for (ChangedFile.Builder cfb : rb.getFilesBuilderList()) {
-					long key = cfb.getKey();
-					if (key > 0)
-						cfb.setKey(lastAstKey + key);
+	// reads a worker's files, shifting their keys
+	private static class FileTask implements Runnable {
+		private final FileSystem fileSystem;
+		private final Configuration conf;
+		private final String base;
+		private final String name;
+		private final boolean edits;
+		private final long lastAstKey;
+		private final long lastCommitKey;
+		private final RecordQueue queue;
+
+		FileTask(final FileSystem fileSystem, final Configuration conf, final String base, final String name, final boolean edits, final long lastAstKey, final long lastCommitKey, final RecordQueue queue) {
+			this.fileSystem = fileSystem;
+			this.conf = conf;
+			this.base = base;
+			this.name = name;
+			this.edits = edits;
+			this.lastAstKey = lastAstKey;
+			this.lastCommitKey = lastCommitKey;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				try {
+					readProjects(base + "/project/" + name);
+					// commits hold the keys of their files' ASTs
+					readKeyed(Record.COMMIT, base + "/commit/" + name, lastCommitKey, new KeyRemapper(lastAstKey, 0));
+					// edit scripts are keyed like the ASTs they end in, so shift them the same way
+					if (edits && fileSystem.exists(new Path(base + "/edits/" + name)))
+						readKeyed(Record.EDIT, base + "/edits/" + name, lastAstKey, null);
+					readKeyed(Record.AST, base + "/ast/" + name, lastAstKey, null);
+				} catch (final IOException e) {
+					queue.put(new Record(-1, null, 0, null, name, e));
+				} catch (final RuntimeException e) {
+					queue.put(new Record(-1, null, 0, null, name, e));
 				}
-				writer.append(new LongWritable(newLastKey), new BytesWritable(rb.build().toByteArray()));
+				queue.put(END);
+			} catch (final InterruptedException e) {
+				// closed early
 			}
-		} catch (Exception e) {
-			System.err.println(fileName);
-			e.printStackTrace();
-		} finally {
-			r.close();
 		}
-		return newLastKey;
-	}
 
-	public static long readAndAppendAst(Configuration conf, FileSystem fileSystem, MapFile.Writer writer, String fileName, long lastKey) throws IOException {
-		long newLastKey = lastKey;
-		SequenceFile.Reader r = new SequenceFile.Reader(fileSystem, new Path(fileName), conf);
-		LongWritable longKey = new LongWritable();
-		BytesWritable value = new BytesWritable();
-		try {
-			while (r.next(longKey, value)) {
-				newLastKey = longKey.get() + lastKey;
-				writer.append(new LongWritable(newLastKey), value);
+		private void readProjects(final String fileName) throws IOException, InterruptedException {
+			final KeyRemapper remapper = new KeyRemapper(lastAstKey, lastCommitKey);
+			SequenceFile.Reader r = new SequenceFile.Reader(fileSystem, new Path(fileName), conf);
+			BytesWritable value = new BytesWritable();
+			try {
+				Text textKey = new Text();
+				while (r.next(textKey, value)) {
+					queue.put(new Record(Record.PROJECT, textKey, 0, new BytesWritable(remapper.project(value.getBytes(), value.getLength()))));
+					textKey = new Text();
+				}
+			} catch (IOException e) {
+				queue.put(new Record(-1, null, 0, null, name, e));
+			} catch (RuntimeException e) {
+				queue.put(new Record(-1, null, 0, null, name, e));
+			} finally {
+				r.close();
 			}
-		} catch (Exception e) {
-			System.err.println(fileName);
-			e.printStackTrace();
-		} finally {
-			r.close();
 		}
-		return newLastKey;
-	}
 
+		private void readKeyed(final int kind, final String fileName, final long lastKey, final KeyRemapper remapper) throws IOException, InterruptedException {
+			SequenceFile.Reader r = new SequenceFile.Reader(fileSystem, new Path(fileName), conf);
+			LongWritable longKey = new LongWritable();
+			BytesWritable value = new BytesWritable();
+			try {
+				while (r.next(longKey, value)) {
+					if (remapper != null) {
+						queue.put(new Record(kind, null, longKey.get() + lastKey, new BytesWritable(remapper.revision(value.getBytes(), value.getLength()))));
+					} else {
+						queue.put(new Record(kind, null, longKey.get() + lastKey, value));
+						value = new BytesWritable();
+					}
+				}
+			} catch (IOException e) {
+				queue.put(new Record(-1, null, 0, null, fileName, e));
+			} catch (RuntimeException e) {
+				queue.put(new Record(-1, null, 0, null, fileName, e));
+			} finally {
+				r.close();
+			}
+		}
+	}
 }
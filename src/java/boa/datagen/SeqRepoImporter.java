@@ -32,11 +32,8 @@ import org.apache.hadoop.io.SequenceFile;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.SequenceFile.CompressionType;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
 import boa.datagen.forges.github.RepoMetadata;
+import boa.datagen.forges.github.RepoMetadataPages;
 import boa.datagen.forges.github.RepositoryCloner;
 import boa.datagen.scm.AbstractConnector;
 import boa.datagen.scm.GitConnector;
@@ -63,6 +60,7 @@ public class SeqRepoImporter {
 	final static String jsonPath = Properties.getProperty("gh.json.path", DefaultProperties.GH_JSON_PATH);
 	final static String jsonCachePath = Properties.getProperty("output.path", DefaultProperties.OUTPUT);
 	final static boolean STORE_COMMITS = DefaultProperties.STORE_COMMITS;
+	final static boolean STORE_EDITS = Properties.getBoolean("edits", DefaultProperties.EDITS);
 	private static boolean done = false;
 	
 	public static void main(String[] args) throws IOException, InterruptedException {
@@ -83,47 +81,40 @@ public class SeqRepoImporter {
 		}
 		
 		int counter = 0;
-		File dir = new File(jsonPath);
-		for (File file : dir.listFiles()) {
-			if (file.getName().endsWith(".json")) {
-				String content = FileIO.readFileContents(file);
-				Gson parser = new Gson();
-
-				JsonArray repoArray = null;
-				try {
-					repoArray = parser.fromJson(content, JsonElement.class).getAsJsonArray();
-				} catch (Exception e) {
-					System.err.println("Error proccessing page: " + file.getPath());
-					e.printStackTrace();
-					continue;
-				}
-				for (int i = 0; i < repoArray.size(); i++) {
-					try {
-						JsonObject rp = repoArray.get(i).getAsJsonObject();
-						RepoMetadata repo = new RepoMetadata(rp);
-						if (repo.id != null && repo.name != null && !processedProjectIds.contains(repo.id)) {
-							Project protobufRepo = repo.toBoaMetaDataProtobuf();
-
-							// System.out.println(jRepo.toString());
-							boolean assigned = false;
-							while (!assigned) {
-								for (int j = 0; j < poolSize; j++) {
-									if (workers[j].isReady()) {
-										workers[j].setProject(protobufRepo);
-										workers[j].ready = false;
-										assigned = true;
-										break;
-									}
-								}
-								Thread.sleep(100);
+		RepoMetadataPages pages = new RepoMetadataPages(RepoMetadataPages.list(new File(jsonPath)));
+		RepoMetadataPages.Entry e;
+		while ((e = pages.next()) != null) {
+			if (e.error != null) {
+				if (e.index < 0)
+					System.err.println("Error proccessing page: " + e.page.getPath());
+				else
+					System.err.println("Error proccessing item " + e.index + " of page " + e.page.getPath());
+				e.error.printStackTrace();
+				continue;
+			}
+			try {
+				RepoMetadata repo = e.repo;
+				if (repo.id != null && repo.name != null && !processedProjectIds.contains(repo.id)) {
+					Project protobufRepo = repo.toBoaMetaDataProtobuf();
+
+					// System.out.println(jRepo.toString());
+					boolean assigned = false;
+					while (!assigned) {
+						for (int j = 0; j < poolSize; j++) {
+							if (workers[j].isReady()) {
+								workers[j].setProject(protobufRepo);
+								workers[j].ready = false;
+								assigned = true;
+								break;
 							}
-							System.out.println((++counter) + ": " + file.getPath() + ": " + i + ": " + repo.id + " " + repo.name);
 						}
-					} catch (Exception e) {
-						System.err.println("Error proccessing item " + i + " of page " + file.getPath());
-						e.printStackTrace();
+						Thread.sleep(100);
 					}
+					System.out.println((++counter) + ": " + e.page.getPath() + ": " + e.index + ": " + repo.id + " " + repo.name);
 				}
+			} catch (Exception ex) {
+				System.err.println("Error proccessing item " + e.index + " of page " + e.page.getPath());
+				ex.printStackTrace();
 			}
 		}
 		for (int j = 0; j < poolSize; j++) {
@@ -155,7 +146,7 @@ public class SeqRepoImporter {
 				} catch (IOException e) {
 					if (r != null)
 						r.close();
-					for (String dir : new String[] { "ast", "commit", "source" })
+					for (String dir : new String[] { "ast", "commit", "source", "edits" })
 						fileSystem.delete(new Path(base + "/" + dir + "/" + name), false);
 				}
 			}
@@ -168,7 +159,7 @@ public class SeqRepoImporter {
 		private int id;
 		private int counter = 0, allCounter = 0;
 		private String suffix;
-		private SequenceFile.Writer projectWriter, astWriter, commitWriter, contentWriter;
+		private SequenceFile.Writer projectWriter, astWriter, commitWriter, contentWriter, editWriter;
 		private long astWriterLen = 1, commitWriterLen = 1, contentWriterLen = 1;
 		private boolean ready = true;
 		Project project;
@@ -198,6 +189,9 @@ public class SeqRepoImporter {
 							LongWritable.class, BytesWritable.class, CompressionType.BLOCK);
 					contentWriter = SequenceFile.createWriter(fileSystem, conf, new Path(base + "/source/" + suffix),
 							LongWritable.class, BytesWritable.class, CompressionType.BLOCK);
+					if (STORE_EDITS)
+						editWriter = SequenceFile.createWriter(fileSystem, conf, new Path(base + "/edits/" + suffix),
+								LongWritable.class, BytesWritable.class, CompressionType.BLOCK);
 					astWriterLen = 1;
 					commitWriterLen = 1;
 					contentWriterLen = 1;
@@ -219,6 +213,8 @@ public class SeqRepoImporter {
 					astWriter.close();
 					commitWriter.close();
 					contentWriter.close();
+					if (editWriter != null)
+						editWriter.close();
 					try {
 						Thread.sleep(1000);
 					} catch (InterruptedException e) {
@@ -330,6 +326,7 @@ public class SeqRepoImporter {
 			try {
 				conn = new GitConnector(gitDir.getAbsolutePath(), project.getName(), astWriter, astWriterLen, commitWriter, commitWriterLen,
 						contentWriter, contentWriterLen);
+				conn.setEditWriter(editWriter);
 				final CodeRepository.Builder repoBuilder = CodeRepository.newBuilder(repo);
 				if (STORE_COMMITS) {
 					List<Object> revisions = conn.getRevisions(project.getName());
@@ -1,12 +1,8 @@
 package boa.datagen.forges.github;
 
 import java.io.File;
+import java.util.Arrays;
 
-import com.google.gson.Gson;
-import com.google.gson.JsonArray;
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import boa.datagen.util.FileIO;
 import gnu.trove.set.hash.THashSet;
 
 public class DuplicateRepoRemover {
@@ -35,18 +31,23 @@ public class DuplicateRepoRemover {
 		System.out.println("adding " + filePath + " to names");
 		File dir = new File(filePath);
 		File[] files = dir.listFiles();
-		String content;
-		Gson parser = new Gson();
-		JsonArray repos;
-		JsonObject repo;
-		for (int i = 1; i < files.length; i++) {
-			System.out.println("proccessing page " + files[i].getName());
-			content = FileIO.readFileContents(files[i]);
-			repos = parser.fromJson(content, JsonElement.class).getAsJsonArray();
-			for (JsonElement repoE : repos) {
-				repo = repoE.getAsJsonObject();
-				names.add(repo.get("full_name").getAsString());
+		RepoMetadataPages pages = new RepoMetadataPages(Arrays.copyOfRange(files, Math.min(1, files.length), files.length));
+		RepoMetadataPages.Entry e;
+		File page = null;
+		try {
+			while ((e = pages.next()) != null) {
+				if (e.page != page) {
+					page = e.page;
+					System.out.println("proccessing page " + page.getName());
+				}
+				if (e.error != null)
+					throw new RuntimeException(e.error);
+				names.add(e.repo.name);
 			}
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} finally {
+			pages.close();
 		}
 	}
 
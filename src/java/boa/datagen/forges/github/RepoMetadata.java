@@ -1,16 +1,22 @@
 package boa.datagen.forges.github;
 
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.HashSet;
 import java.util.Map.Entry;
+import java.util.Set;
 
 import com.google.gson.JsonArray;
 import com.google.gson.JsonElement;
 import com.google.gson.JsonNull;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import boa.types.Code.CodeRepository;
 import boa.types.Code.CodeRepository.RepositoryKind;
 import boa.types.Toplevel.Project;
@@ -89,6 +95,10 @@ public class RepoMetadata {
 	  "network_count": 448,
 	  "subscribers_count": 60*/
 
+	// the fields build() looks at, all others are skipped when streaming
+	private static final Set<String> GIT_FIELDS = new HashSet<String>(Arrays.asList(GIT_ID, GIT_NAME,
+			GIT_SHORT_DESCRIPTION, GIT_HOME_PAGE, GIT_SUMMARY_PAGE, GIT_CREATE, GIT_PROGRAMMING_LANGUAGE,
+			GIT_DESCRIPTION, GIT_PROGRAMMING_LANGUAGES, GIT_FORKED, GIT_FORKS, GIT_STARS, GIT_SIZE, GIT_GIT_REPO));
 
 	public String id;
 	public String name;
@@ -124,6 +134,31 @@ public class RepoMetadata {
 		build(jsonProject);
 	}
 
+	/**
+	 * Reads the fields of the repository object the reader is positioned on,
+	 * skipping every field {@link #build(JsonObject)} does not use, so the
+	 * rest of the object (owner, permissions, urls...) is never materialized.
+	 * The reader is left after the object.
+	 *
+	 * @param reader the reader, positioned on a repository object
+	 * @return the fields of the repository used for building its metadata
+	 * @throws IOException if the object is malformed
+	 */
+	public static JsonObject readFields(JsonReader reader) throws IOException {
+		JsonParser parser = new JsonParser();
+		JsonObject fields = new JsonObject();
+		reader.beginObject();
+		while (reader.hasNext()) {
+			String key = reader.nextName();
+			if (GIT_FIELDS.contains(key))
+				fields.add(key, parser.parse(reader));
+			else
+				reader.skipValue();
+		}
+		reader.endObject();
+		return fields;
+	}
+
 	public void build(JsonObject jsonProject) {
 		if (jsonProject.has(GIT_ID)) {
 			JsonElement e = jsonProject.get(GIT_ID);
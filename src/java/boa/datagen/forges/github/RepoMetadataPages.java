@@ -0,0 +1,188 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.datagen.forges.github;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Streams the repositories of a set of GitHub metadata pages, in page order.
+ *
+ * Pages are read by a small pool of threads, so parsing the next pages
+ * overlaps with whatever the consumer does with the current one.  Each page
+ * hands its repositories over through a bounded queue, so only a bounded
+ * number of repositories is ever held in memory, no matter how large the
+ * pages are.
+ */
+public class RepoMetadataPages {
+	/** how many parsed repositories a page may buffer ahead of the consumer */
+	private static final int CAPACITY = 256;
+
+	/**
+	 * One repository read from a page, or a failure to read it.
+	 */
+	public static class Entry {
+		/** the page the entry came from */
+		public final File page;
+		/** the index of the repository on the page, or -1 if the page itself is malformed */
+		public final int index;
+		/** the repository, or null if it could not be read */
+		public final RepoMetadata repo;
+		/** why the repository (or the rest of the page) could not be read, or null */
+		public final Exception error;
+
+		Entry(final File page, final int index, final RepoMetadata repo, final Exception error) {
+			this.page = page;
+			this.index = index;
+			this.repo = repo;
+			this.error = error;
+		}
+	}
+
+	// marks the end of a page
+	private static final Entry END = new Entry(null, -1, null, null);
+
+	private final File[] pages;
+	private final BlockingQueue<Entry>[] queues;
+	private final ExecutorService pool;
+	private int current = 0;
+
+	/**
+	 * Starts reading the pages, using one thread per available processor.
+	 *
+	 * @param pages the pages to read
+	 */
+	public RepoMetadataPages(final File[] pages) {
+		this(pages, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Starts reading the pages.
+	 *
+	 * @param pages the pages to read
+	 * @param threads how many pages to read at once
+	 */
+	@SuppressWarnings("unchecked")
+	public RepoMetadataPages(final File[] pages, final int threads) {
+		this.pages = pages;
+		this.queues = new BlockingQueue[pages.length];
+		this.pool = Executors.newFixedThreadPool(Math.max(1, threads), new ThreadFactory() {
+			@Override
+			public Thread newThread(final Runnable r) {
+				final Thread t = new Thread(r, "metadata-reader");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+
+		// the pool starts pages in order, so the page being consumed is always either done or being read
+		for (int i = 0; i < pages.length; i++) {
+			queues[i] = new LinkedBlockingQueue<Entry>(CAPACITY);
+			pool.execute(new PageTask(pages[i], queues[i]));
+		}
+		pool.shutdown();
+	}
+
+	/**
+	 * Lists the metadata pages (*.json files) in a directory.
+	 *
+	 * @param dir the directory
+	 * @return the pages in the directory
+	 */
+	public static File[] list(final File dir) {
+		final File[] files = dir.listFiles(new FileFilter() {
+			@Override
+			public boolean accept(final File f) {
+				return f.getName().endsWith(".json");
+			}
+		});
+		return files == null ? new File[0] : files;
+	}
+
+	/**
+	 * Waits for the next repository.
+	 *
+	 * @return the next repository (or failure), or null once all pages are read
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public Entry next() throws InterruptedException {
+		while (current < pages.length) {
+			final Entry e = queues[current].take();
+			if (e != END)
+				return e;
+			queues[current++] = null;
+		}
+		return null;
+	}
+
+	/**
+	 * Stops reading pages early.
+	 */
+	public void close() {
+		pool.shutdownNow();
+	}
+
+	private static class PageTask implements Runnable {
+		private final File page;
+		private final BlockingQueue<Entry> queue;
+
+		PageTask(final File page, final BlockingQueue<Entry> queue) {
+			this.page = page;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				try {
+					read();
+				} catch (final IOException e) {
+					queue.put(new Entry(page, -1, null, e));
+				} catch (final RuntimeException e) {
+					queue.put(new Entry(page, -1, null, e));
+				}
+				queue.put(END);
+			} catch (final InterruptedException e) {
+				// closed early
+			}
+		}
+
+		private void read() throws IOException, InterruptedException {
+			final RepoMetadataReader reader = new RepoMetadataReader(page);
+			try {
+				while (reader.hasNext()) {
+					RepoMetadata repo = null;
+					Exception error = null;
+					try {
+						repo = reader.next();
+					} catch (final RuntimeException e) {
+						error = e;
+					}
+					queue.put(new Entry(page, reader.getIndex(), repo, error));
+				}
+			} finally {
+				reader.close();
+			}
+		}
+	}
+}
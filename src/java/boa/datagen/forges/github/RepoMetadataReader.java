@@ -0,0 +1,115 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.datagen.forges.github;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+/**
+ * Reads the repositories of one GitHub metadata page (a JSON array of
+ * repository objects) one at a time, straight from the file, instead of
+ * loading the page into a string and parsing it into a tree first.
+ */
+public class RepoMetadataReader implements Closeable {
+	private final File page;
+	private final JsonReader reader;
+	private boolean started = false;
+	private int index = -1;
+
+	/**
+	 * Opens a metadata page.
+	 *
+	 * @param page the page to read
+	 * @throws IOException if the page can not be opened
+	 */
+	public RepoMetadataReader(final File page) throws IOException {
+		this.page = page;
+		this.reader = new JsonReader(Channels.newReader(new FileInputStream(page).getChannel(), "UTF-8"));
+	}
+
+	/**
+	 * @return the page being read
+	 */
+	public File getPage() {
+		return page;
+	}
+
+	/**
+	 * @return the index on the page of the repository last read by {@link #next()}
+	 */
+	public int getIndex() {
+		return index;
+	}
+
+	/**
+	 * @return true if the page has more repositories
+	 * @throws IOException if the page is malformed
+	 */
+	public boolean hasNext() throws IOException {
+		begin();
+		return reader.hasNext();
+	}
+
+	private void begin() throws IOException {
+		if (started)
+			return;
+		try {
+			reader.beginArray();
+		} catch (final IllegalStateException e) {
+			throw new IOException("not a JSON array: " + page.getPath(), e);
+		}
+		started = true;
+	}
+
+	/**
+	 * Reads the next repository on the page.  If the repository itself can
+	 * not be converted a runtime exception is thrown, but the reader is
+	 * still positioned after it, so the rest of the page can be read.
+	 *
+	 * @return the next repository
+	 * @throws IOException if the page is malformed
+	 */
+	public RepoMetadata next() throws IOException {
+		begin();
+		index++;
+		final JsonObject fields;
+		try {
+			if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+				reader.skipValue();
+				throw new IllegalStateException("item " + index + " of page " + page.getPath() + " is not an object");
+			}
+			fields = RepoMetadata.readFields(reader);
+		} catch (final JsonParseException e) {
+			throw new IOException("malformed page: " + page.getPath(), e);
+		}
+		return new RepoMetadata(fields);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void close() throws IOException {
+		reader.close();
+	}
+}
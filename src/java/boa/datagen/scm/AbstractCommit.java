@@ -44,20 +44,25 @@ import boa.types.Code.Revision;
 import boa.types.Diff.ChangedFile;
 import boa.types.Diff.ChangedFile.Builder;
 import boa.types.Diff.ChangedFile.FileKind;
+import boa.types.Edit.EditScript;
 import boa.types.Shared.ChangeKind;
 import boa.types.Shared.Person;
 import boa.datagen.DefaultProperties;
 import boa.datagen.dependencies.PomFile;
+import boa.datagen.treed.TreedMapper;
 import boa.datagen.util.CssVisitor;
 import boa.datagen.util.FileIO;
 import boa.datagen.util.HtmlVisitor;
 import boa.datagen.util.JavaScriptErrorCheckVisitor;
+import boa.datagen.util.JavaScriptVersionVisitor;
 import boa.datagen.util.JavaScriptVisitor;
 import boa.datagen.util.JavaVisitor;
 import boa.datagen.util.PHPErrorCheckVisitor;
+import boa.datagen.util.PHPVersionVisitor;
 import boa.datagen.util.PHPVisitor;
 import boa.datagen.util.Properties;
 import boa.datagen.util.XMLVisitor;
+import boa.datagen.util.JavaASTUtil;
 import boa.datagen.util.JavaErrorCheckVisitor;
 
 /**
@@ -66,6 +71,7 @@ import boa.datagen.util.JavaErrorCheckVisitor;
 public abstract class AbstractCommit {
 	protected static final boolean debug = Properties.getBoolean("debug", DefaultProperties.DEBUG);
 	protected static final boolean debugparse = Properties.getBoolean("debugparse", DefaultProperties.DEBUGPARSE);
+	protected static final boolean singlepass = Properties.getBoolean("singlepass", DefaultProperties.SINGLEPASS);
 	protected static final boolean STORE_ASCII_PRINTABLE_CONTENTS = Properties.getBoolean("ascii", DefaultProperties.STORE_ASCII_PRINTABLE_CONTENTS);
 
 	protected AbstractConnector connector;
@@ -79,6 +85,13 @@ public abstract class AbstractCommit {
 
 	protected List<ChangedFile.Builder> changedFiles = new ArrayList<ChangedFile.Builder>();
 
+	// how many Java files are parsed in one batch, which bounds the parsed files held at once
+	private static final int JAVA_BATCH_SIZE = 64;
+
+	// the contents and compilation units of the Java files parsed ahead of processing them
+	private final Map<String, String> javaContents = new HashMap<String, String>();
+	private final Map<String, CompilationUnit> javaUnits = new HashMap<String, CompilationUnit>();
+
 	protected ChangedFile.Builder getChangeFile(String path) {
 		ChangedFile.Builder cfb = null;
 		Integer index = fileNameIndices.get(path);
@@ -147,6 +160,16 @@ public abstract class AbstractCommit {
 
 	protected abstract String getFileContents(final String path);
 
+	/**
+	 * Returns the contents of a modified or renamed file before this commit.
+	 *
+	 * @param path the file's path in this commit
+	 * @return the previous contents, or null if they are not known
+	 */
+	protected String getPreviousFileContents(final String path) {
+		return null;
+	}
+
 	public abstract String writeFile(final String classpathRoot, final String path);
 
 	public abstract Set<String> getGradleDependencies(final String classpathRoot, final String path);
@@ -181,15 +204,21 @@ public abstract class AbstractCommit {
 			for (int parentIndex : this.parentIndices)
 				revision.addParents(parentIndex);
 
-		for (ChangedFile.Builder cfb : changedFiles) {
+		for (int i = 0; i < changedFiles.size(); i++) {
+			final ChangedFile.Builder cfb = changedFiles.get(i);
 			cfb.setKind(FileKind.OTHER);
 			if (cfb.getChange() == ChangeKind.DELETED || cfb.getChange() == ChangeKind.UNKNOWN) {
 				cfb.setKey(0);
 //				cfb.setKind(connector.revisions.get(cfb.getPreviousVersions(0)).changedFiles.get(cfb.getPreviousIndices(0)).getKind());
-			} else
+			} else {
+				if (isJavaFile(cfb) && !javaContents.containsKey(cfb.getName()))
+					parseJavaFiles(i);
 				processChangeFile(cfb);
+			}
 			revision.addFiles(cfb.build());
 		}
+		javaContents.clear();
+		javaUnits.clear();
 
 		return revision.build();
 	}
@@ -206,14 +235,18 @@ public abstract class AbstractCommit {
 		else if (lowerPath.endsWith(".jar") || lowerPath.endsWith(".class"))
 			fb.setKind(FileKind.BINARY);
 		else if (lowerPath.endsWith(".java")) {
-			final String content = getFileContents(path);
+			// files parsed ahead with the rest of their revision's Java files
+			final String content = javaContents.containsKey(path) ? javaContents.remove(path) : getFileContents(path);
 			fb.setKind(FileKind.SOURCE_JAVA_ERROR);
-			parseJavaFile(path, fb, content, false);
+			parseJavaFile(path, fb, content, javaUnits.remove(path), false);
 		} else if (lowerPath.endsWith(".js")) {
 			final String content = getFileContents(path);
 
 			fb.setKind(FileKind.SOURCE_JS_ES1);
-			if (!parseJavaScriptFile(path, fb, content, Context.VERSION_1_1, false)) {
+			if (singlepass && parseJavaScriptFile(path, fb, content)) {
+				if (debugparse)
+					System.err.println("Classified " + fb.getKind() + " in one pass: revision " + id + ": file " + path);
+			} else if (!parseJavaScriptFile(path, fb, content, Context.VERSION_1_1, false)) {
 				if (debugparse)
 					System.err.println("Found ES3 parse error in: revision " + id + ": file " + path);
 				fb.setKind(FileKind.SOURCE_JS_ES2);
@@ -261,7 +294,10 @@ public abstract class AbstractCommit {
 			final String content = getFileContents(path);
 
 			fb.setKind(FileKind.SOURCE_PHP5);
-			if (!parsePHPFile(path, fb, content, PHPVersion.PHP5, false)) {
+			if (singlepass && parsePHPFile(path, fb, content)) {
+				if (debugparse)
+					System.err.println("Classified " + fb.getKind() + " in one pass: revision " + id + ": file " + path);
+			} else if (!parsePHPFile(path, fb, content, PHPVersion.PHP5, false)) {
 				if (debugparse)
 					System.err.println("Found ES3 parse error in: revision " + id + ": file " + path);
 				fb.setKind(FileKind.SOURCE_PHP5_3);
@@ -471,8 +507,25 @@ public abstract class AbstractCommit {
 		return true;
 	}
 	
+	// parses once with the most permissive version and classifies the file by the
+	// features it uses; if that parse fails the caller falls back to trying each
+	// version in turn, as some older files (e.g., using newer keywords as names)
+	// only parse with older versions
+	private boolean parsePHPFile(final String path, final ChangedFile.Builder fb, final String content) {
+		final PHPVersionVisitor versionCheck = new PHPVersionVisitor();
+		if (!parsePHPFile(path, fb, content, PHPVersion.PHP7_1, false, versionCheck))
+			return false;
+		fb.setKind(versionCheck.getKind());
+		return true;
+	}
+
 	private boolean parsePHPFile(final String path, final ChangedFile.Builder fb, final String content,
 			final PHPVersion astLevel, final boolean storeOnError) {
+		return parsePHPFile(path, fb, content, astLevel, storeOnError, null);
+	}
+
+	private boolean parsePHPFile(final String path, final ChangedFile.Builder fb, final String content,
+			final PHPVersion astLevel, final boolean storeOnError, final PHPVersionVisitor versionCheck) {
 		org.eclipse.php.internal.core.ast.nodes.ASTParser parser = org.eclipse.php.internal.core.ast.nodes.ASTParser
 				.newParser(astLevel);
 		Program cu = null;
@@ -487,7 +540,11 @@ public abstract class AbstractCommit {
 			// e.printStackTrace();
 			return false;
 		}
+		// the parser recovers from errors, so a version only accepts a file it parses without them
 		PHPErrorCheckVisitor errorCheck = new PHPErrorCheckVisitor();
+		cu.accept(errorCheck);
+		if (!errorCheck.hasError && versionCheck != null)
+			cu.accept(versionCheck);
 		if (!errorCheck.hasError || storeOnError) {
 			final ASTRoot.Builder ast = ASTRoot.newBuilder();
 			PHPVisitor visitor = new PHPVisitor(content);
@@ -514,8 +571,25 @@ public abstract class AbstractCommit {
 		return !errorCheck.hasError;
 	}
 
+	// parses once with the most permissive version and classifies the file by the
+	// features it uses; if that parse fails the caller falls back to trying each
+	// version in turn, as some older files (e.g., using let or yield as names)
+	// only parse with older versions
+	private boolean parseJavaScriptFile(final String path, final ChangedFile.Builder fb, final String content) {
+		final JavaScriptVersionVisitor versionCheck = new JavaScriptVersionVisitor();
+		if (!parseJavaScriptFile(path, fb, content, Context.VERSION_1_8, false, versionCheck))
+			return false;
+		fb.setKind(versionCheck.getKind());
+		return true;
+	}
+
 	private boolean parseJavaScriptFile(final String path, final ChangedFile.Builder fb, final String content,
 			final int astLevel, final boolean storeOnError) {
+		return parseJavaScriptFile(path, fb, content, astLevel, storeOnError, null);
+	}
+
+	private boolean parseJavaScriptFile(final String path, final ChangedFile.Builder fb, final String content,
+			final int astLevel, final boolean storeOnError, final JavaScriptVersionVisitor versionCheck) {
 		try {
 			// System.out.println("parsing=" + (++count) + "\t" + path);
 			CompilerEnvirons cp = new CompilerEnvirons();
@@ -533,6 +607,8 @@ public abstract class AbstractCommit {
 
 			final JavaScriptErrorCheckVisitor errorCheck = new JavaScriptErrorCheckVisitor();
 			cu.visit(errorCheck);
+			if (!errorCheck.hasError && versionCheck != null)
+				cu.visit(versionCheck);
 
 			if (!errorCheck.hasError || storeOnError) {
 				final ASTRoot.Builder ast = ASTRoot.newBuilder();
@@ -585,31 +661,56 @@ public abstract class AbstractCommit {
 		return l;
 	}
 
-	private boolean parseJavaFile(final String path, final ChangedFile.Builder fb, final String content, final boolean storeOnError) {
-		try {
-			final org.eclipse.jdt.core.dom.ASTParser parser = org.eclipse.jdt.core.dom.ASTParser.newParser(AST.JLS8);
-			parser.setKind(org.eclipse.jdt.core.dom.ASTParser.K_COMPILATION_UNIT);
-//			parser.setResolveBindings(true);
-//			parser.setUnitName(FileIO.getFileName(path));
-//			parser.setEnvironment(null, null, null, true);
-			parser.setSource(content.toCharArray());
+	private static boolean isJavaFile(final ChangedFile.Builder fb) {
+		return fb.getName().toLowerCase().endsWith(".java");
+	}
 
-			final Map<?, ?> options = JavaCore.getOptions();
-			JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
-			parser.setCompilerOptions(options);
+	/**
+	 * Parses the next Java files of the revision, starting with the given
+	 * one, in one batch.  The files a failed batch did not get to are parsed
+	 * on their own when they are processed.
+	 *
+	 * @param start the index of the first changed file to parse
+	 */
+	private void parseJavaFiles(final int start) {
+		final Map<String, String> contents = new LinkedHashMap<String, String>();
+		for (int i = start; i < changedFiles.size() && contents.size() < JAVA_BATCH_SIZE; i++) {
+			final ChangedFile.Builder cfb = changedFiles.get(i);
+			if (cfb.getChange() != ChangeKind.DELETED && cfb.getChange() != ChangeKind.UNKNOWN && isJavaFile(cfb))
+				contents.put(cfb.getName(), getFileContents(cfb.getName()));
+		}
+		javaContents.putAll(contents);
+
+		try {
+			JavaASTUtil.parseJava8(contents, new FileASTRequestor() {
+				@Override
+				public void acceptAST(final String sourceFilePath, final CompilationUnit cu) {
+					javaUnits.put(sourceFilePath, cu);
+				}
+			});
+		} catch (final Throwable e) {
+			if (debug)
+				System.err.println("Error parsing the Java files of revision " + id + " from: " + projectName);
+		}
+	}
 
+	private boolean parseJavaFile(final String path, final ChangedFile.Builder fb, final String content, final CompilationUnit parsed, final boolean storeOnError) {
+		try {
 			final CompilationUnit cu;
 			
-			try {
-				cu = (CompilationUnit) parser.createAST(null);
-			} catch(Throwable e) {
-				return false;
+			if (parsed != null) {
+				cu = parsed;
+			} else {
+				try {
+					cu = JavaASTUtil.parseJava8(content);
+				} catch(Throwable e) {
+					return false;
+				}
 			}
 
-			final JavaErrorCheckVisitor errorCheck = new JavaErrorCheckVisitor();
-			cu.accept(errorCheck);
+			final boolean hasError = JavaErrorCheckVisitor.hasError(cu);
 			
-			if (!errorCheck.hasError || storeOnError) {
+			if (!hasError || storeOnError) {
 				final ASTRoot.Builder ast = ASTRoot.newBuilder();
 				// final CommentsRoot.Builder comments = CommentsRoot.newBuilder();
 				final JavaVisitor visitor = new JavaVisitor(content);
@@ -646,9 +747,12 @@ public abstract class AbstractCommit {
 				}
 
 				try {
+					final long key = connector.astWriterLen;
 					BytesWritable bw = new BytesWritable(ast.build().toByteArray());
 					connector.astWriter.append(new LongWritable(connector.astWriterLen), bw);
 					connector.astWriterLen += bw.getLength();
+					if (connector.editWriter != null && (fb.getChange() == ChangeKind.MODIFIED || fb.getChange() == ChangeKind.RENAMED))
+						writeEditScript(path, key, cu);
 				} catch (IOException e) {
 					if (debug) 
 						e.printStackTrace();
@@ -657,13 +761,35 @@ public abstract class AbstractCommit {
 				// fb.setComments(comments);
 			}
 
-			return !errorCheck.hasError;
+			return !hasError;
 		} catch (final Throwable e) {
 			if (debug)
 				e.printStackTrace();
 			return false;
 		}
 	}
+
+	private void writeEditScript(final String path, final long key, final CompilationUnit cu) throws IOException {
+		final String previous = getPreviousFileContents(path);
+		if (previous == null)
+			return;
+
+		final EditScript edits;
+		try {
+			final CompilationUnit previousCu = JavaASTUtil.parseJava8(previous);
+			if (JavaErrorCheckVisitor.hasError(previousCu))
+				return;
+			final TreedMapper mapper = new TreedMapper(previousCu, cu);
+			mapper.map();
+			edits = mapper.getEditScript();
+		} catch (final Throwable e) {
+			if (debug)
+				System.err.println("Error computing the edits of Java file: " + path + " from: " + projectName);
+			return;
+		}
+
+		connector.editWriter.append(new LongWritable(key), new BytesWritable(edits.toByteArray()));
+	}
 	
 	protected String processLOC(final String path) {
 		String loc = "";
@@ -47,11 +47,17 @@ public abstract class AbstractConnector implements AutoCloseable {
 	protected int headCommitOffset = -1;
 	protected SequenceFile.Writer astWriter, commitWriter, contentWriter;
 	protected long astWriterLen = 1, commitWriterLen = 1, contentWriterLen = 1;
+	/** when set, receives the edit script of each modified Java file, keyed like its AST */
+	protected SequenceFile.Writer editWriter;
 
 	public long getAstWriterLen() {
 		return astWriterLen;
 	}
 
+	public void setEditWriter(final SequenceFile.Writer editWriter) {
+		this.editWriter = editWriter;
+	}
+
 	public long getCommitWriterLen() {
 		return commitWriterLen;
 	}
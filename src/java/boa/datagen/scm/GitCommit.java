@@ -63,6 +63,8 @@ public class GitCommit extends AbstractCommit {
 	private Repository repository;
 	private RevWalk revwalk;
 	Map<String, ObjectId> filePathGitObjectIds = new HashMap<String, ObjectId>();
+	// the object id of each modified or renamed file in the first parent it was diffed against
+	Map<String, ObjectId> filePathPreviousGitObjectIds = new HashMap<String, ObjectId>();
 
 	public GitCommit(final GitConnector cnn, final Repository repository, final RevWalk revwalk, String projectName) {
 		super(cnn);
@@ -85,6 +87,23 @@ public class GitCommit extends AbstractCommit {
 		return buffer.toString();
 	}
 
+	@Override
+	/** {@inheritDoc} */
+	protected String getPreviousFileContents(final String path) {
+		final ObjectId fileid = filePathPreviousGitObjectIds.get(path);
+		if (fileid == null)
+			return null;
+		try {
+			buffer.reset();
+			buffer.write(repository.open(fileid, Constants.OBJ_BLOB).getCachedBytes());
+		} catch (final Throwable e) {
+			if (debug)
+				System.err.println("Git Error getting previous contents for '" + path + "' at revision " + id + ": " + e.getMessage());
+			return null;
+		}
+		return buffer.toString();
+	}
+
 	@Override
 	public String writeFile(final String classpathRoot, final String path) {
 		String name = FileIO.getFileName(path);
@@ -322,6 +341,8 @@ public class GitCommit extends AbstractCommit {
 //			cfb.addPreviousVersions(values[1]);
 //		}
 		filePathGitObjectIds.put(path, diff.getNewId().toObjectId());
+		if (kind != ChangeKind.COPIED && !filePathPreviousGitObjectIds.containsKey(path))
+			filePathPreviousGitObjectIds.put(path, diff.getOldId().toObjectId());
 	}
 	
 	public int countChangedFiles(RevCommit rc) {
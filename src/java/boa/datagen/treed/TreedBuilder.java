@@ -1,6 +1,6 @@
 package boa.datagen.treed;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -9,42 +9,109 @@ import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTVisitor;
 import org.eclipse.jdt.core.dom.ArrayCreation;
 import org.eclipse.jdt.core.dom.ArrayInitializer;
+import org.eclipse.jdt.core.dom.Assignment;
 import org.eclipse.jdt.core.dom.Block;
 import org.eclipse.jdt.core.dom.InfixExpression;
 import org.eclipse.jdt.core.dom.MethodInvocation;
+import org.eclipse.jdt.core.dom.PostfixExpression;
+import org.eclipse.jdt.core.dom.PrefixExpression;
 import org.eclipse.jdt.core.dom.SwitchStatement;
 import org.eclipse.jdt.core.dom.Type;
 
+/**
+ * Numbers the nodes of one or more trees in preorder and keeps everything the
+ * {@link TreedMapper} needs about them in flat arrays indexed by that number:
+ * the parent and children, height and depth, a structural class shared by
+ * exactly the identical subtrees, and the feature vector.
+ *
+ * Each tree is added with {@link #build(ASTNode)}; its nodes take the numbers
+ * following the previous tree.  {@link #PROPERTY_INDEX} still holds the
+ * preorder index of a node within its own tree, starting at 1.
+ */
 public class TreedBuilder extends ASTVisitor implements TreedConstants {
-	private int index = 1;
-	private ASTNode root;
-	HashMap<ASTNode, ArrayList<ASTNode>> tree = new HashMap<ASTNode, ArrayList<ASTNode>>();
-	HashMap<ASTNode, Integer> treeHeight = new HashMap<ASTNode, Integer>(), treeDepth = new HashMap<ASTNode, Integer>();
-	HashMap<ASTNode, HashMap<String, Integer>> treeVector = new HashMap<ASTNode, HashMap<String, Integer>>(), treeRootVector = new HashMap<ASTNode, HashMap<String, Integer>>();
-	
-	public TreedBuilder(ASTNode root) {
-		super();
-		this.root = root;
-		treeDepth.put(root, 0);
+	private int index;
+	private int size = 0;
+	private int[] stack = new int[16];
+	private int top = 0;
+	private final HashMap<String, Integer> shapes = new HashMap<String, Integer>();
+
+	ASTNode[] nodes = new ASTNode[64];
+	int[] parent = new int[64];
+	int[][] children;
+	int[] height, depth;
+	/** nodes have the same shape exactly when their subtrees are identical */
+	int[] shape;
+	/** the sorted features of each node's vector, their counts and the sum of the counts */
+	long[][] features;
+	int[][] counts;
+	int[] length;
+
+	/**
+	 * Adds a tree.
+	 *
+	 * @param root the root of the tree
+	 * @return the number of the root
+	 */
+	public int build(ASTNode root) {
+		int first = size;
+		index = 1;
+		top = 0;
+		root.accept(this);
+		return first;
 	}
-	
+
+	/**
+	 * @return the number of nodes in all trees added so far
+	 */
+	public int size() {
+		return size;
+	}
+
 	@Override
 	public void preVisit(ASTNode node) {
 		node.setProperty(PROPERTY_INDEX, index++);
-		tree.put(node, new ArrayList<ASTNode>());
-		if (node != root) {
-			ASTNode p = node.getParent();
-			treeDepth.put(node, treeDepth.get(p) + 1);
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			parent = Arrays.copyOf(parent, size * 2);
 		}
+		nodes[size] = node;
+		parent[size] = top == 0 ? -1 : stack[top - 1];
+		if (top == stack.length)
+			stack = Arrays.copyOf(stack, top * 2);
+		stack[top++] = size++;
 	}
-	
+
 	@Override
 	public void postVisit(ASTNode node) {
-		buildTree(node);
-		buildTreeHeight(node);
-		buildVector(node);
+		top--;
 	}
-	
+
+	/**
+	 * Computes the children, heights, depths, shapes and vectors of all nodes
+	 * added so far.  The trees can not be added to afterwards.
+	 */
+	public void finish() {
+		nodes = Arrays.copyOf(nodes, size);
+		parent = Arrays.copyOf(parent, size);
+		buildTree();
+		height = new int[size];
+		depth = new int[size];
+		shape = new int[size];
+		features = new long[size][];
+		counts = new int[size][];
+		length = new int[size];
+		for (int id = 0; id < size; id++)
+			if (parent[id] >= 0)
+				depth[id] = depth[parent[id]] + 1;
+		// children are numbered after their parent, so this sees them first
+		for (int id = size - 1; id >= 0; id--) {
+			buildTreeHeight(id);
+			buildShape(id);
+			buildVector(id);
+		}
+		shapes.clear();
+	}
+
 	@Override
 	public boolean visit(ArrayCreation node) {
 		if (node.dimensions().size() > 10) {
@@ -100,54 +167,102 @@ public class TreedBuilder extends ASTVisitor implements TreedConstants {
 		return super.visit(node);
 	}
 
-	public void buildTree(ASTNode node) {
-		if (node != root) {
-			ASTNode p = node.getParent();
-			ArrayList<ASTNode> children = tree.get(p);
-			children.add(node);
+	private void buildTree() {
+		int[] n = new int[size];
+		for (int id = 0; id < size; id++)
+			if (parent[id] >= 0)
+				n[parent[id]]++;
+		children = new int[size][];
+		for (int id = 0; id < size; id++)
+			children[id] = new int[n[id]];
+		Arrays.fill(n, 0);
+		for (int id = 0; id < size; id++) {
+			int p = parent[id];
+			if (p >= 0)
+				children[p][n[p]++] = id;
 		}
 	}
 
-	public void buildTreeHeight(ASTNode node) {
-		ArrayList<ASTNode> children = tree.get(node);
+	private void buildTreeHeight(int id) {
 		int max = 0;
-		for (ASTNode child : children) {
-			int h = treeHeight.get(child);
-			if (h > max)
-				max = h;
-		}
-		treeHeight.put(node, max + 1);
+		for (int child : children[id])
+			if (height[child] > max)
+				max = height[child];
+		height[id] = max + 1;
 	}
 
-	private void buildVector(ASTNode node) {
-		ArrayList<ASTNode> children = tree.get(node);
-		HashMap<String, Integer> vector = new HashMap<String, Integer>(), rootVector = new HashMap<String, Integer>();
-		char label = TreedUtils.buildLabelForVector(node);
-		String feature = "" + label;
-		rootVector.put(feature, 1);
-		for (ASTNode child : children) {
-			add(vector, treeVector.get(child));
-			HashMap<String, Integer> childRootVector = treeRootVector.get(child);
-			for (String cf : childRootVector.keySet()) {
-				if (cf.length() < GRAM_MAX_LENGTH) {
-					String rf = label + cf;
-					rootVector.put(rf, childRootVector.get(cf));
-				}
-			}
-			childRootVector.clear();
-			treeRootVector.remove(child);
+	private void buildShape(int id) {
+		ASTNode node = nodes[id];
+		StringBuilder key = new StringBuilder();
+		key.append(node.getNodeType()).append(':');
+		if (node instanceof Assignment)
+			key.append(((Assignment) node).getOperator());
+		else if (node instanceof InfixExpression)
+			key.append(((InfixExpression) node).getOperator());
+		else if (node instanceof PostfixExpression)
+			key.append(((PostfixExpression) node).getOperator());
+		else if (node instanceof PrefixExpression)
+			key.append(((PrefixExpression) node).getOperator());
+		key.append('\n');
+		if (children[id].length == 0) {
+			key.append('=').append(node.toString());
+		} else {
+			for (int child : children[id])
+				key.append(',').append(shape[child]);
 		}
-		add(vector, rootVector);
-		treeVector.put(node, vector);
-		treeRootVector.put(node, rootVector);
+		String k = key.toString();
+		Integer s = shapes.get(k);
+		if (s == null) {
+			s = shapes.size();
+			shapes.put(k, s);
+		}
+		shape[id] = s;
 	}
 
-	private void add(HashMap<String, Integer> vector, HashMap<String, Integer> other) {
-		for (String key : other.keySet()) {
-			int c = other.get(key);
-			if (vector.containsKey(key))
-				c += vector.get(key);
-			vector.put(key, c);
+	private void buildVector(int id) {
+		// a feature is the label of a node, or that label followed by one of its children's labels
+		int[] kids = children[id];
+		long label = TreedUtils.buildLabelForVector(nodes[id]);
+		long[] labels = new long[kids.length];
+		int n = 1;
+		for (int i = 0; i < kids.length; i++) {
+			labels[i] = TreedUtils.buildLabelForVector(nodes[kids[i]]);
+			n += 1 + features[kids[i]].length;
+		}
+		Arrays.sort(labels);
+
+		// features are packed above their counts, so sorting brings equal ones together
+		long[] packed = new long[n];
+		int k = 0;
+		packed[k++] = label << 30 | 1;
+		for (int i = 0; i < labels.length; i++)
+			if (i == 0 || labels[i] != labels[i - 1])
+				packed[k++] = ((label + 1) << 16 | labels[i]) << 30 | 1;
+		for (int child : kids) {
+			long[] f = features[child];
+			int[] c = counts[child];
+			for (int i = 0; i < f.length; i++)
+				packed[k++] = f[i] << 30 | c[i];
+		}
+		Arrays.sort(packed, 0, k);
+
+		int distinct = 0;
+		for (int i = 0; i < k; i++)
+			if (i == 0 || packed[i] >>> 30 != packed[i - 1] >>> 30)
+				distinct++;
+		long[] f = new long[distinct];
+		int[] c = new int[distinct];
+		int len = 0;
+		for (int i = 0, j = -1; i < k; i++) {
+			long feature = packed[i] >>> 30;
+			if (j < 0 || f[j] != feature)
+				f[++j] = feature;
+			int count = (int) (packed[i] & ((1 << 30) - 1));
+			c[j] += count;
+			len += count;
 		}
+		features[id] = f;
+		counts[id] = c;
+		length[id] = len;
 	}
 }
@@ -4,32 +4,22 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Set;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTVisitor;
-import org.eclipse.jdt.core.dom.AnnotationTypeMemberDeclaration;
-import org.eclipse.jdt.core.dom.Assignment;
 import org.eclipse.jdt.core.dom.BreakStatement;
 import org.eclipse.jdt.core.dom.CatchClause;
 import org.eclipse.jdt.core.dom.ClassInstanceCreation;
 import org.eclipse.jdt.core.dom.ContinueStatement;
 import org.eclipse.jdt.core.dom.DoStatement;
 import org.eclipse.jdt.core.dom.EnhancedForStatement;
-import org.eclipse.jdt.core.dom.EnumConstantDeclaration;
 import org.eclipse.jdt.core.dom.Expression;
-import org.eclipse.jdt.core.dom.FieldDeclaration;
 import org.eclipse.jdt.core.dom.ForStatement;
-import org.eclipse.jdt.core.dom.InfixExpression;
-import org.eclipse.jdt.core.dom.Initializer;
 import org.eclipse.jdt.core.dom.MethodDeclaration;
 import org.eclipse.jdt.core.dom.MethodInvocation;
 import org.eclipse.jdt.core.dom.Modifier;
-import org.eclipse.jdt.core.dom.PostfixExpression;
-import org.eclipse.jdt.core.dom.PrefixExpression;
 import org.eclipse.jdt.core.dom.ReturnStatement;
 import org.eclipse.jdt.core.dom.SimpleName;
 import org.eclipse.jdt.core.dom.Statement;
@@ -40,16 +30,36 @@ import org.eclipse.jdt.core.dom.TryStatement;
 import org.eclipse.jdt.core.dom.TypeDeclarationStatement;
 import org.eclipse.jdt.core.dom.WhileStatement;
 import boa.datagen.util.JavaASTUtil;
+import boa.types.Edit.EditScript;
 import boa.types.Shared.ChangeKind;
 
+/**
+ * Maps the nodes of an old tree onto those of a new one and marks each node
+ * with how it changed.
+ *
+ * Nodes are numbered in preorder by {@link TreedBuilder}, the old tree first,
+ * and all per node state lives in arrays indexed by that number.  Identical
+ * subtrees share a shape number, so they are matched without walking them;
+ * feature vectors are only compared for the nodes left over.
+ */
 public class TreedMapper implements TreedConstants {
 	private ASTNode astM, astN;
-	private HashMap<ASTNode, ArrayList<ASTNode>> tree = new HashMap<ASTNode, ArrayList<ASTNode>>();
-	private HashMap<ASTNode, Integer> treeHeight = new HashMap<ASTNode, Integer>(), treeDepth = new HashMap<ASTNode, Integer>();
-	private HashMap<ASTNode, HashMap<String, Integer>> treeVector = new HashMap<ASTNode, HashMap<String, Integer>>();
-	private HashMap<ASTNode, HashMap<ASTNode, Double>> treeMap = new HashMap<ASTNode, HashMap<ASTNode, Double>>();
-	private HashSet<ASTNode> pivotsM = new HashSet<ASTNode>(), pivotsN = new HashSet<ASTNode>();
+	private int rootM, rootN;
+	private ASTNode[] nodes;
+	private int[] parent, height, depth, shape, length;
+	private int[][] children, counts;
+	private long[][] features;
+	/** the node each node is mapped to, or -1 */
+	private int[] partner;
+	private boolean[] pivot;
 	private int numOfChanges = 0, numOfUnmaps = 0, numOfNonNameUnMaps = 0;
+
+	private final Comparator<Integer> byHeight = new Comparator<Integer>() {
+		@Override
+		public int compare(Integer node1, Integer node2) {
+			return height[node2] - height[node1];
+		}
+	};
 	
 	public TreedMapper(ASTNode astM, ASTNode astN) {
 		this.astM = astM;
@@ -83,31 +93,69 @@ public class TreedMapper implements TreedConstants {
 		mapMoving();
 		mapTopDown();
 		markChanges();
-		markUnchanges(astM);
+		markUnchanges(rootM);
+	}
+
+	/**
+	 * Builds the edit script of the last call to {@link #map()}: the deleted,
+	 * moved and renamed nodes of the old tree followed by the added nodes of
+	 * the new tree, each in preorder.  Nodes are identified by their
+	 * {@link #PROPERTY_INDEX} and labeled with {@link TreedUtils#buildASTLabel(ASTNode)}.
+	 * Unchanged nodes and nodes that are only modified below are left out, as
+	 * they follow from the other edits.
+	 *
+	 * @return the edit script
+	 */
+	public EditScript getEditScript() {
+		final EditScript.Builder edits = EditScript.newBuilder();
+		addEdits(rootM, edits, true);
+		addEdits(rootN, edits, false);
+		return edits.build();
+	}
+
+	private void addEdits(int id, EditScript.Builder edits, boolean old) {
+		ASTNode node = nodes[id];
+		ChangeKind status = (ChangeKind) node.getProperty(PROPERTY_STATUS);
+		if (old) {
+			if (status == ChangeKind.DELETED) {
+				addEdit(edits, status, (Integer) node.getProperty(PROPERTY_INDEX), -1, node);
+			} else if (status == ChangeKind.MOVED || status == ChangeKind.RENAMED) {
+				ASTNode mappedNode = (ASTNode) node.getProperty(PROPERTY_MAP);
+				addEdit(edits, status, (Integer) node.getProperty(PROPERTY_INDEX), (Integer) mappedNode.getProperty(PROPERTY_INDEX), mappedNode);
+			}
+		} else if (status == ChangeKind.ADDED) {
+			addEdit(edits, status, -1, (Integer) node.getProperty(PROPERTY_INDEX), node);
+		}
+		for (int child : children[id])
+			addEdits(child, edits, old);
+	}
+
+	private static void addEdit(EditScript.Builder edits, ChangeKind kind, int oldNode, int newNode, ASTNode label) {
+		edits.addKinds(kind);
+		edits.addOldNodes(oldNode);
+		edits.addNewNodes(newNode);
+		edits.addLabels(TreedUtils.buildASTLabel(label));
 	}
 
-	private void markUnchanges(ASTNode node) {
-		ArrayList<ASTNode> children = tree.get(node);
-		for (ASTNode child : children)
+	private void markUnchanges(int id) {
+		for (int child : children[id])
 			markUnchanges(child);
+		ASTNode node = nodes[id];
 		ChangeKind status = (ChangeKind) node.getProperty(PROPERTY_STATUS);
 		if (status == ChangeKind.UNCHANGED) {
-			boolean unchanged = isUnchanged(children);
-			if (unchanged) {
-				ASTNode mappedNode = (ASTNode) node.getProperty(PROPERTY_MAP);
-				unchanged = isUnchanged(tree.get(mappedNode));
-			}
+			boolean unchanged = isUnchanged(children[id]);
+			if (unchanged)
+				unchanged = isUnchanged(children[partner[id]]);
 			if (!unchanged) {
-				ASTNode mappedNode = (ASTNode) node.getProperty(PROPERTY_MAP);
 				node.setProperty(PROPERTY_STATUS, ChangeKind.MODIFIED);
-				mappedNode.setProperty(PROPERTY_STATUS, ChangeKind.MODIFIED);
+				nodes[partner[id]].setProperty(PROPERTY_STATUS, ChangeKind.MODIFIED);
 			}
 		}
 	}
 
-	private boolean isUnchanged(ArrayList<ASTNode> children) {
-		for (ASTNode child : children)
-			if ((ChangeKind) child.getProperty(PROPERTY_STATUS) != ChangeKind.UNCHANGED)
+	private boolean isUnchanged(int[] ids) {
+		for (int id : ids)
+			if ((ChangeKind) nodes[id].getProperty(PROPERTY_STATUS) != ChangeKind.UNCHANGED)
 				return false;
 		return true;
 	}
@@ -146,11 +194,12 @@ public class TreedMapper implements TreedConstants {
 	}
 
 	private void markChanges() {
-		markAstM(astM);
-		markAstN(astN);
+		markAstM(rootM);
+		markAstN(rootN);
 	}
 
-	private void markAstN(ASTNode node) {
+	private void markAstN(int id) {
+		ASTNode node = nodes[id];
 		if (node.getProperty(PROPERTY_STATUS) == null) {
 			node.setProperty(PROPERTY_STATUS, ChangeKind.ADDED);
 			numOfChanges++;
@@ -158,29 +207,28 @@ public class TreedMapper implements TreedConstants {
 			if (!(node instanceof SimpleName))
 				numOfNonNameUnMaps++;
 		}
-		ArrayList<ASTNode> children = tree.get(node);
-		for (ASTNode child : children)
+		for (int child : children[id])
 			markAstN(child);
 	}
 
-	private void markAstM(ASTNode node) {
-		HashMap<ASTNode, Double> maps = treeMap.get(node);
-		if (maps.isEmpty()) {
+	private void markAstM(int id) {
+		ASTNode node = nodes[id];
+		if (partner[id] < 0) {
 			node.setProperty(PROPERTY_STATUS, ChangeKind.DELETED);
 			numOfChanges++;
 			numOfUnmaps++;
 			if (!(node instanceof SimpleName) && !(node instanceof ReturnStatement) && !(node instanceof BreakStatement) && !(node instanceof ContinueStatement))
 				numOfNonNameUnMaps++;
 		} else {
-			ASTNode mappedNode = maps.keySet().iterator().next();
+			int mapped = partner[id];
+			ASTNode mappedNode = nodes[mapped];
 			node.setProperty(PROPERTY_MAP, mappedNode);
 			mappedNode.setProperty(PROPERTY_MAP, node);
-			if (node == astM) {
+			if (id == rootM) {
 				astM.setProperty(PROPERTY_STATUS, ChangeKind.UNCHANGED);
 				astN.setProperty(PROPERTY_STATUS, ChangeKind.UNCHANGED);
 			} else {
-				ASTNode p = node.getParent(), mp = mappedNode.getParent();
-				if (!treeMap.get(p).containsKey(mp)) {
+				if (partner[parent[id]] != parent[mapped]) {
 					node.setProperty(PROPERTY_STATUS, ChangeKind.MOVED);
 					mappedNode.setProperty(PROPERTY_STATUS, ChangeKind.MOVED);
 					numOfChanges += 2;
@@ -193,31 +241,23 @@ public class TreedMapper implements TreedConstants {
 				}
 			}
 			// mark moving for children
-			ArrayList<ASTNode> children = tree.get(node), mappedChildren = tree.get(mappedNode);
-			if (!children.isEmpty() && !mappedChildren.isEmpty()) {
-				markChanges(children, mappedChildren);
-			}
+			if (children[id].length > 0 && children[mapped].length > 0)
+				markChanges(children[id], children[mapped]);
 		}
-		ArrayList<ASTNode> children = tree.get(node);
-		for (ASTNode child : children)
+		for (int child : children[id])
 			markAstM(child);
 	}
 
-	private void markChanges(ArrayList<ASTNode> nodes, ArrayList<ASTNode> mappedNodes) {
-		int len = nodes.size(), lenN = mappedNodes.size();
+	private void markChanges(int[] ids, int[] mappedIds) {
+		int len = ids.length, lenN = mappedIds.length;
 		int[][] d = new int[2][lenN + 1];
 		char[][] p = new char[len + 1][lenN + 1];
-		d[1][0] = 0;
-		for (int j = 1; j <= lenN; j++)
-			d[1][j] = 0;
 		for (int i = 1; i <= len; i++) {
-			ASTNode node = nodes.get(i - 1);
-			HashMap<ASTNode, Double> maps = treeMap.get(node);
+			int id = ids[i - 1];
 			for (int j = 0; j <= lenN; j++)
 				d[0][j] = d[1][j];
 			for (int j = 1; j <= lenN; j++) {
-				ASTNode nodeN = mappedNodes.get(j - 1);
-				if (maps.containsKey(nodeN)) {
+				if (partner[id] == mappedIds[j - 1]) {
 					d[1][j] = d[0][j - 1] + 1;
 					p[i][j] = 'D';
 				} else if (d[0][j] >= d[1][j - 1]) {
@@ -232,7 +272,7 @@ public class TreedMapper implements TreedConstants {
 		int i = len, j = lenN;
 		while (i > 0 && j > 0) {
 			if (p[i][j] == 'D') {
-				ASTNode node = nodes.get(i-1), node2 = mappedNodes.get(j-1);
+				ASTNode node = nodes[ids[i - 1]], node2 = nodes[mappedIds[j - 1]];
 				if (TreedUtils.buildLabelForVector(node) == TreedUtils.buildLabelForVector(node2)) {
 					node.setProperty(PROPERTY_STATUS, ChangeKind.UNCHANGED);
 					node2.setProperty(PROPERTY_STATUS, ChangeKind.UNCHANGED);
@@ -253,27 +293,15 @@ public class TreedMapper implements TreedConstants {
 	}
 
 	private void mapPivots() {
-		for (ASTNode node : tree.keySet())
-			treeMap.put(node, new HashMap<ASTNode, Double>());
-		setMap(astM, astN, 1.0);
-		ArrayList<ASTNode> lM = getChildrenContainers(astM), lN = getChildrenContainers(astN);
-		ArrayList<ASTNode> heightsM = new ArrayList<ASTNode>(lM), heightsN = new ArrayList<ASTNode>(lN);
-		Collections.sort(heightsM, new Comparator<ASTNode>() {
-			@Override
-			public int compare(ASTNode node1, ASTNode node2) {
-				return treeHeight.get(node2) - treeHeight.get(node1);
-			}
-		});
-		Collections.sort(heightsN, new Comparator<ASTNode>() {
-			@Override
-			public int compare(ASTNode node1, ASTNode node2) {
-				return treeHeight.get(node2) - treeHeight.get(node1);
-			}
-		});
+		setMap(rootM, rootN);
+		ArrayList<Integer> lM = getChildrenContainers(rootM), lN = getChildrenContainers(rootN);
+		ArrayList<Integer> heightsM = new ArrayList<Integer>(lM), heightsN = new ArrayList<Integer>(lN);
+		Collections.sort(heightsM, byHeight);
+		Collections.sort(heightsN, byHeight);
 		mapPivots(lM, lN, heightsM, heightsN);
 	}
 
-	private void mapPivots(ArrayList<ASTNode> lM, ArrayList<ASTNode> lN, ArrayList<ASTNode> heightsM, ArrayList<ASTNode> heightsN) {
+	private void mapPivots(ArrayList<Integer> lM, ArrayList<Integer> lN, ArrayList<Integer> heightsM, ArrayList<Integer> heightsN) {
 		if (lM.size() * lN.size() > MAX_BIPARTITE_MATCH_SIZE) {
 			lM.clear();
 			lN.clear();
@@ -282,23 +310,23 @@ public class TreedMapper implements TreedConstants {
 		lcs(lM, lN, lcsM, lcsN);
 		for (int i = lcsM.size()-1; i >= 0; i--) {
 			int indexM = lcsM.get(i), indexN = lcsN.get(i);
-			ASTNode nodeM = lM.get(indexM), nodeN = lN.get(indexN);
-			setMap(nodeM, nodeN, 1.0);
-			pivotsM.add(nodeM);
-			pivotsN.add(nodeN);
+			Integer nodeM = lM.get(indexM), nodeN = lN.get(indexN);
+			setMap(nodeM, nodeN);
+			pivot[nodeM] = true;
+			pivot[nodeN] = true;
 			lM.remove(indexM);
 			lN.remove(indexN);
 			heightsM.remove(nodeM);
 			heightsN.remove(nodeN);
 		}
 		while (!lM.isEmpty() && !lN.isEmpty()) {
-			int hM = treeHeight.get(heightsM.get(0));
-			int hN = treeHeight.get(heightsN.get(0));
+			int hM = height[heightsM.get(0)];
+			int hN = height[heightsN.get(0)];
 			boolean expandedM = false, expandedN = false;
 			if (hM >= hN)
-				expandedM = expandForPivots(lM, heightsM, hM);
+				expandedM = expand(lM, heightsM, hM, false);
 			if (hN >= hM)
-				expandedN = expandForPivots(lN, heightsN, hN);
+				expandedN = expand(lN, heightsN, hN, false);
 			if (expandedM || expandedN) {
 				mapPivots(lM, lN, heightsM, heightsN);
 				break;
@@ -306,68 +334,32 @@ public class TreedMapper implements TreedConstants {
 		}
 	}
 
-	private boolean expandForPivots(ArrayList<ASTNode> l, ArrayList<ASTNode> heights, int h) {
-		HashSet<ASTNode> nodes = new HashSet<ASTNode>();
-		for (ASTNode node : heights) {
-			if (treeHeight.get(node) == h)
-				nodes.add(node);
-			else
-				break;
-		}
-		boolean expanded = false;
-		for (int i = l.size()-1; i >= 0; i--) {
-			ASTNode node = l.get(i);
-			if (nodes.contains(node)) {
-				l.remove(i);
-				heights.remove(0);
-				ArrayList<ASTNode> children = getChildrenContainers(node);
-				if (!children.isEmpty() && children.size() <= MAX_EXPENSION_SIZE) {
-					expanded = true;
-					for (int j = 0; j < children.size(); j++) {
-						ASTNode child = children.get(j);
-						l.add(i+j, child);
-						int index = Collections.binarySearch(heights, child, new Comparator<ASTNode>() {
-							@Override
-							public int compare(ASTNode node1, ASTNode node2) {
-								return treeHeight.get(node2) - treeHeight.get(node1);
-							}
-						});
-						if (index < 0)
-							index = -(index + 1);
-						heights.add(index, child);
-					}
-				}
-			}
-		}
-		return expanded;
-	}
-
-	private boolean expandForMoving(ArrayList<ASTNode> l, ArrayList<ASTNode> heights, int h) {
-		HashSet<ASTNode> nodes = new HashSet<ASTNode>();
-		for (ASTNode node : heights) {
-			if (treeHeight.get(node) == h)
-				nodes.add(node);
+	/**
+	 * Replaces the highest nodes of a list by their children: their children
+	 * containers when looking for pivots, and their not yet mapped descendant
+	 * containers when looking for moves.
+	 */
+	private boolean expand(ArrayList<Integer> l, ArrayList<Integer> heights, int h, boolean moving) {
+		HashSet<Integer> highest = new HashSet<Integer>();
+		for (int id : heights) {
+			if (height[id] == h)
+				highest.add(id);
 			else
 				break;
 		}
 		boolean expanded = false;
 		for (int i = l.size()-1; i >= 0; i--) {
-			ASTNode node = l.get(i);
-			if (nodes.contains(node)) {
+			int id = l.get(i);
+			if (highest.contains(id)) {
 				l.remove(i);
 				heights.remove(0);
-				ArrayList<ASTNode> children = getNotYetMappedDescendantContainers(node);
-				if (!children.isEmpty()) {
+				ArrayList<Integer> kids = moving ? getNotYetMappedDescendantContainers(id) : getChildrenContainers(id);
+				if (!kids.isEmpty() && (moving || kids.size() <= MAX_EXPENSION_SIZE)) {
 					expanded = true;
-					for (int j = 0; j < children.size(); j++) {
-						ASTNode child = children.get(j);
+					for (int j = 0; j < kids.size(); j++) {
+						Integer child = kids.get(j);
 						l.add(i+j, child);
-						int index = Collections.binarySearch(heights, child, new Comparator<ASTNode>() {
-							@Override
-							public int compare(ASTNode node1, ASTNode node2) {
-								return treeHeight.get(node2) - treeHeight.get(node1);
-							}
-						});
+						int index = Collections.binarySearch(heights, child, byHeight);
 						if (index < 0)
 							index = -(index + 1);
 						heights.add(index, child);
@@ -378,23 +370,24 @@ public class TreedMapper implements TreedConstants {
 		return expanded;
 	}
 
-	private void lcs(ArrayList<ASTNode> lM, ArrayList<ASTNode> lN, ArrayList<Integer> lcsM, ArrayList<Integer> lcsN) {
+	/**
+	 * Finds the longest common subsequence of identical subtrees.  Subtrees
+	 * are identical when they have the same shape and the same vector.
+	 */
+	private void lcs(ArrayList<Integer> lM, ArrayList<Integer> lN, ArrayList<Integer> lcsM, ArrayList<Integer> lcsN) {
 		int lenM = lM.size(), lenN = lN.size();
+		int[] sM = new int[lenM], sN = new int[lenN];
+		for (int i = 0; i < lenM; i++)
+			sM[i] = shape[lM.get(i)];
+		for (int j = 0; j < lenN; j++)
+			sN[j] = shape[lN.get(j)];
 		int[][] d = new int[2][lenN + 1];
 		char[][] p = new char[lenM + 1][lenN + 1];
-		for (int j = 0; j <= lenN; j++)
-			d[1][j] = 0;
 		for (int i = lenM-1; i >= 0; i--) {
-			ASTNode nodeM = lM.get(i);
-			int hM = treeHeight.get(nodeM);
-			HashMap<String, Integer> vM = treeVector.get(nodeM);
 			for (int j = 0; j <= lenN; j++)
 				d[0][j] = d[1][j];
 			for (int j = lenN-1; j >= 0; j--) {
-				ASTNode nodeN = lN.get(j);
-				int hN = treeHeight.get(nodeN);
-				HashMap<String, Integer> vN = treeVector.get(nodeN);
-				if (hM == hN && nodeM.getNodeType() == nodeN.getNodeType() && vM.equals(vN) && subtreeMatch(nodeM, nodeN)) {
+				if (sM[i] == sN[j] && sameVector(lM.get(i), lN.get(j))) {
 					d[1][j] = d[0][j + 1] + 1;
 					p[i][j] = 'D';
 				} else if (d[0][j] >= d[1][j + 1]) {
@@ -420,145 +413,54 @@ public class TreedMapper implements TreedConstants {
 		}
 	}
 
-	private boolean subtreeMatch(ASTNode nodeM, ASTNode nodeN) {
-		if (!labelMatch(nodeM, nodeN))
-			return false;
-		ArrayList<ASTNode> childrenM = tree.get(nodeM), childrenN = tree.get(nodeN);
-		if (childrenM.size() != childrenN.size())
-			return false;
-		if (childrenM.size() == 0)
-			return nodeM.toString().equals(nodeN.toString());
-		for (int i = 0; i < childrenM.size(); i++) {
-			if (!subtreeMatch(childrenM.get(i), childrenN.get(i)))
-				return false;
-		}
-		return true;
-	}
-
-	private boolean labelMatch(ASTNode nodeM, ASTNode nodeN) {
-		if (nodeM.getNodeType() != nodeN.getNodeType())
-			return false;
-		if (nodeM instanceof Assignment)
-			return labelMatch((Assignment) nodeM, (Assignment) nodeN);
-		if (nodeM instanceof InfixExpression)
-			return labelMatch((InfixExpression) nodeM, (InfixExpression) nodeN);
-		if (nodeM instanceof PostfixExpression)
-			return labelMatch((PostfixExpression) nodeM, (PostfixExpression) nodeN);
-		if (nodeM instanceof PrefixExpression)
-			return labelMatch((PrefixExpression) nodeM, (PrefixExpression) nodeN);
-		return true;
-	}
-
-	private boolean labelMatch(Assignment nodeM, Assignment nodeN) {
-		return nodeM.getOperator().equals(nodeN.getOperator());
-	}
-
-	private boolean labelMatch(InfixExpression nodeM, InfixExpression nodeN) {
-		return nodeM.getOperator().equals(nodeN.getOperator());
-	}
-
-	private boolean labelMatch(PostfixExpression nodeM, PostfixExpression nodeN) {
-		return nodeM.getOperator().equals(nodeN.getOperator());
-	}
-
-	private boolean labelMatch(PrefixExpression nodeM, PrefixExpression nodeN) {
-		return nodeM.getOperator().equals(nodeN.getOperator());
-	}
-	
-	@SuppressWarnings("unused")
-	private void lss(ArrayList<ASTNode> lM, ArrayList<ASTNode> lN, ArrayList<Integer> lcsM, ArrayList<Integer> lcsN, double threshold) {
-		int lenM = lM.size(), lenN = lN.size();
-		double[][] d = new double[2][lenN + 1];
-		char[][] p = new char[lenM + 1][lenN + 1];
-		for (int j = 0; j <= lenN; j++)
-			d[1][j] = 0;
-		for (int i = lenM-1; i >= 0; i--) {
-			ASTNode nodeM = lM.get(i);
-			for (int j = 0; j <= lenN; j++)
-				d[0][j] = d[1][j];
-			for (int j = lenN-1; j >= 0; j--) {
-				ASTNode nodeN = lN.get(j);
-				double sim = computeSimilarity(nodeM, nodeN, threshold);
-				if (nodeM.getNodeType() == nodeN.getNodeType() && sim >= threshold) {
-					d[1][j] = d[0][j + 1] + sim;
-					p[i][j] = 'D';
-				} else if (d[0][j] >= d[1][j + 1]) {
-					d[1][j] = d[0][j];
-					p[i][j] = 'U';
-				} else {
-					d[1][j] = d[1][j + 1];
-					p[i][j] = 'R';
-				}
-			}
-		}
-		int i = 0, j = 0;
-		while (i < lenM && j < lenN) {
-			if (p[i][j] == 'D') {
-				lcsM.add(i);
-				lcsN.add(j);
-				i++;
-				j++;
-			} else if (p[i][j] == 'U')
-				i++;
-			else
-				j++;
-		}
+	private boolean sameVector(int idM, int idN) {
+		return length[idM] == length[idN] && Arrays.equals(features[idM], features[idN]) && Arrays.equals(counts[idM], counts[idN]);
 	}
 
-	private ArrayList<ASTNode> getChildrenContainers(ASTNode node) {
-		ArrayList<ASTNode> children = new ArrayList<ASTNode>();
-		for (ASTNode child : tree.get(node)) {
-			if (treeHeight.get(child) >= MIN_HEIGHT)
-				children.add(child);
+	private ArrayList<Integer> getChildrenContainers(int id) {
+		ArrayList<Integer> containers = new ArrayList<Integer>();
+		for (int child : children[id]) {
+			if (height[child] >= MIN_HEIGHT)
+				containers.add(child);
 		}
-		return children;
+		return containers;
 	}
 
 	private void mapBottomUp() {
-		ArrayList<ASTNode> heightsM = new ArrayList<ASTNode>(pivotsM);
-		Collections.sort(heightsM, new Comparator<ASTNode>() {
+		ArrayList<Integer> heightsM = new ArrayList<Integer>();
+		for (int id = rootM; id < rootN; id++)
+			if (pivot[id])
+				heightsM.add(id);
+		Collections.sort(heightsM, new Comparator<Integer>() {
 			@Override
-			public int compare(ASTNode node1, ASTNode node2) {
-				int d = treeHeight.get(node2) - treeHeight.get(node1);
+			public int compare(Integer node1, Integer node2) {
+				int d = height[node2] - height[node1];
 				if (d != 0)
 					return d;
-				d = treeDepth.get(node1) - treeDepth.get(node2);
+				d = depth[node1] - depth[node2];
 				if (d != 0)
 					return d;
-				return node1.getStartPosition() - node2.getStartPosition();
+				return nodes[node1].getStartPosition() - nodes[node2].getStartPosition();
 			}
 		});
-		Set<ASTNode> visitedAncestorsM = new HashSet<ASTNode>(), visitedAncestorsN = new HashSet<ASTNode>();
-		for (ASTNode nodeM : heightsM) {
-			ASTNode nodeN = treeMap.get(nodeM).keySet().iterator().next();
-			ArrayList<ASTNode> ancestorsM = new ArrayList<ASTNode>(), ancestorsN = new ArrayList<ASTNode>();
-			ancestorsM.removeAll(visitedAncestorsM);
-			ancestorsN.removeAll(visitedAncestorsN);
+		for (int nodeM : heightsM) {
+			ArrayList<Integer> ancestorsM = new ArrayList<Integer>(), ancestorsN = new ArrayList<Integer>();
 			getNotYetMappedAncestors(nodeM, ancestorsM);
-			getNotYetMappedAncestors(nodeN, ancestorsN);
+			getNotYetMappedAncestors(partner[nodeM], ancestorsN);
 			map(ancestorsM, ancestorsN, MIN_SIM);
-			visitedAncestorsM.addAll(ancestorsM);
-			visitedAncestorsN.addAll(ancestorsN);
 		}
 	}
 
-	private ArrayList<ASTNode> map(ArrayList<ASTNode> nodesM, ArrayList<ASTNode> nodesN, double threshold) {
-		HashMap<ASTNode, HashSet<Pair>> pairsOfAncestor = new HashMap<ASTNode, HashSet<Pair>>();
+	private ArrayList<Integer> map(ArrayList<Integer> nodesM, ArrayList<Integer> nodesN, double threshold) {
 		ArrayList<Pair> pairs = new ArrayList<Pair>();
 		PairDescendingOrder comparator = new PairDescendingOrder();
-		for (ASTNode nodeM : nodesM) {
-			HashSet<Pair> pairs1 = new HashSet<Pair>();
-			for (ASTNode nodeN : nodesN) {
+		for (int nodeM : nodesM) {
+			for (int nodeN : nodesN) {
 				double sim = computeSimilarity(nodeM, nodeN, threshold);
 				if (sim >= threshold) {
+					ASTNode m = nodes[nodeM], n = nodes[nodeN];
 					Pair pair = new Pair(nodeM, nodeN, sim, 
-							-Math.abs((nodeM.getParent().getStartPosition() - nodeM.getStartPosition()) - (nodeN.getParent().getStartPosition() - nodeN.getStartPosition())));
-					pairs1.add(pair);
-					HashSet<Pair> pairs2 = pairsOfAncestor.get(nodeN);
-					if (pairs2 == null)
-						pairs2 = new HashSet<Pair>();
-					pairs2.add(pair);
-					pairsOfAncestor.put(nodeN, pairs2);
+							-Math.abs((m.getParent().getStartPosition() - m.getStartPosition()) - (n.getParent().getStartPosition() - n.getStartPosition())));
 					int index = Collections.binarySearch(pairs, pair, comparator);
 					if (index < 0)
 						pairs.add(-1 - index, pair);
@@ -566,45 +468,34 @@ public class TreedMapper implements TreedConstants {
 						pairs.add(index, pair);
 				}
 			}
-			pairsOfAncestor.put(nodeM, pairs1);
 		}
-		ArrayList<ASTNode> nodes = new ArrayList<ASTNode>();
-		Set<ASTNode> matches = new HashSet<ASTNode>();
+		ArrayList<Integer> mapped = new ArrayList<Integer>();
+		HashSet<Integer> matches = new HashSet<Integer>();
 		for (int i = 0; i < pairs.size(); i++) {
 			Pair pair = pairs.get(i);
-			ASTNode nodeM = (ASTNode) pair.getObj1(), nodeN = (ASTNode) pair.getObj2();
+			Integer nodeM = (Integer) pair.getObj1(), nodeN = (Integer) pair.getObj2();
 			if (matches.contains(nodeM) || matches.contains(nodeN))
 				continue;
-			setMap(nodeM, nodeN, pair.getWeight());
-			nodes.add(nodeM);
-			nodes.add(nodeN);
+			setMap(nodeM, nodeN);
+			mapped.add(nodeM);
+			mapped.add(nodeN);
 			matches.add(nodeM);
 			matches.add(nodeN);
 		}
-		/*while (!pairs.isEmpty()) {
-			Pair pair = pairs.get(0);
-			ASTNode nodeM = (ASTNode) pair.getObj1(), nodeN = (ASTNode) pair.getObj2();
-			setMap(nodeM, nodeN, pair.getWeight());
-			nodes.add(nodeM);
-			nodes.add(nodeN);
-			for (Pair p : pairsOfAncestor.get(nodeM))
-				pairs.remove(p);
-			for (Pair p : pairsOfAncestor.get(nodeN))
-				pairs.remove(p);
-		}*/
-		return nodes;
+		return mapped;
 	}
 
-	private void setMap(ASTNode nodeM, ASTNode nodeN, double w) {
-		treeMap.get(nodeM).put(nodeN, w);
-		treeMap.get(nodeN).put(nodeM, w);
+	private void setMap(int nodeM, int nodeN) {
+		partner[nodeM] = nodeN;
+		partner[nodeN] = nodeM;
 	}
 
-	private double computeSimilarity(ASTNode nodeM, ASTNode nodeN, double threshold) {
+	private double computeSimilarity(int idM, int idN, double threshold) {
+		ASTNode nodeM = nodes[idM], nodeN = nodes[idN];
 		if (nodeM.getNodeType() != nodeN.getNodeType())
 			return 0;
-		ArrayList<ASTNode> childrenM = tree.get(nodeM), childrenN = tree.get(nodeN);
-		if (childrenM.isEmpty() && childrenN.isEmpty()) {
+		int[] childrenM = children[idM], childrenN = children[idN];
+		if (childrenM.length == 0 && childrenN.length == 0) {
 			if (nodeM instanceof Modifier) {
 				Modifier mnM = (Modifier) nodeM, mnN = (Modifier) nodeN;
 				if (JavaASTUtil.getType(mnM) != JavaASTUtil.getType(mnN))
@@ -636,101 +527,48 @@ public class TreedMapper implements TreedConstants {
 			sim = threshold + sim * (1 - threshold);
 			return sim;
 		}
-		if (!childrenM.isEmpty() && !childrenN.isEmpty()) {
-			HashMap<String, Integer> vM = treeVector.get(nodeM), vN = treeVector.get(nodeN);
-			double sim = computeSimilarity(vM, vN);
-			/*double[] sims = computeSimilarity(childrenM, childrenN);
-			for (double s : sims)
-				sim += s;
-			return sim / (sims.length + 1);*/
-			return sim;
-		}
+		if (childrenM.length > 0 && childrenN.length > 0)
+			return computeVectorSimilarity(idM, idN);
 		return 0;
 	}
 
-	@SuppressWarnings("unused")
-	private double[] computeSimilarity(ArrayList<ASTNode> l1, ArrayList<ASTNode> l2) {
-		double[] sims = new double[Math.max(l1.size(), l2.size())];
-		Arrays.fill(sims, 0.0);
-		HashMap<ASTNode, HashSet<Pair>> pairsOfNode = new HashMap<ASTNode, HashSet<Pair>>();
-		ArrayList<Pair> pairs = new ArrayList<Pair>();
-		PairDescendingOrder comparator = new PairDescendingOrder();
-		for (ASTNode node1 : l1) {
-			HashSet<Pair> pairs1 = new HashSet<Pair>();
-			for (ASTNode node2 : l2) {
-				double sim = computeSimilarity(treeVector.get(node1), treeVector.get(node2));
-				if (sim > 0) {
-					Pair pair = new Pair(node1, node2, sim);
-					pairs1.add(pair);
-					HashSet<Pair> pairs2 = pairsOfNode.get(node2);
-					if (pairs2 == null)
-						pairs2 = new HashSet<Pair>();
-					pairs2.add(pair);
-					pairsOfNode.put(node2, pairs2);
-					int index = Collections.binarySearch(pairs, pair,
-							comparator);
-					if (index < 0)
-						pairs.add(-1 - index, pair);
-					else
-						pairs.add(index, pair);
-				}
-			}
-			pairsOfNode.put(node1, pairs1);
-		}
-		int i = 0;
-		while (!pairs.isEmpty()) {
-			Pair pair = pairs.get(0);
-			sims[i++] = pair.getWeight();
-			for (Pair p : pairsOfNode.get(pair.getObj1()))
-				pairs.remove(p);
-			for (Pair p : pairsOfNode.get(pair.getObj2()))
-				pairs.remove(p);
+	private double computeVectorSimilarity(int idM, int idN) {
+		long[] fM = features[idM], fN = features[idN];
+		int[] cM = counts[idM], cN = counts[idN];
+		int common = 0;
+		for (int i = 0, j = 0; i < fM.length && j < fN.length; ) {
+			if (fM[i] < fN[j])
+				i++;
+			else if (fM[i] > fN[j])
+				j++;
+			else
+				common += Math.min(cM[i++], cN[j++]);
 		}
-		
-		return sims;
+		return 2 * (common + SIM_SMOOTH) / (length[idM] + length[idN] + 2 * SIM_SMOOTH);
 	}
 
-	private double computeSimilarity(HashMap<String, Integer> vM, HashMap<String, Integer> vN) {
-		double sim = 0.0;
-		HashSet<String> keys = new HashSet<String>(vM.keySet());
-		keys.retainAll(vN.keySet());
-		for (String key : keys)
-			sim += Math.min(vM.get(key), vN.get(key));
-		sim = 2 * (sim + SIM_SMOOTH) / (length(vM) + length(vN) + 2 * SIM_SMOOTH);
-		return sim;
-	}
-
-	private <E> int length(HashMap<E, Integer> vector) {
-		int len = 0;
-		for (int val : vector.values())
-			len += val;
-		return len;
-	}
-
-	private void getNotYetMappedAncestors(ASTNode node, ArrayList<ASTNode> ancestors) {
-		ASTNode p = node.getParent();
-		if (treeMap.get(p).isEmpty()) {
+	private void getNotYetMappedAncestors(int id, ArrayList<Integer> ancestors) {
+		int p = parent[id];
+		if (partner[p] < 0) {
 			ancestors.add(p);
 			getNotYetMappedAncestors(p, ancestors);
 		}
 	}
 
 	private void mapTopDown() {
-		mapTopDown(astM);
+		mapTopDown(rootM);
 	}
 
 	@SuppressWarnings("deprecation")
-	private void mapTopDown(ASTNode nodeM) {
-		ArrayList<ASTNode> childrenM = tree.get(nodeM);
-		HashMap<ASTNode, Double> maps = treeMap.get(nodeM);
-		if (!maps.isEmpty()) {
-			ASTNode nodeN = maps.keySet().iterator().next();
-			ArrayList<ASTNode> childrenN = tree.get(nodeN);
-			if (pivotsM.contains(nodeM)) {
-				mapUnchangedNodes(nodeM, nodeN);
+	private void mapTopDown(int idM) {
+		if (partner[idM] >= 0) {
+			int idN = partner[idM];
+			ASTNode nodeM = nodes[idM], nodeN = nodes[idN];
+			if (pivot[idM]) {
+				mapUnchangedNodes(idM, idN);
 				return;
 			} else {
-				ArrayList<ASTNode> nodesM = getNotYetMatchedNodes(childrenM), nodesN = getNotYetMatchedNodes(childrenN);
+				ArrayList<Integer> nodesM = getNotYetMatchedNodes(children[idM]), nodesN = getNotYetMatchedNodes(children[idN]);
 				ArrayList<ASTNode> mappedChildrenM = new ArrayList<ASTNode>(), mappedChildrenN = new ArrayList<ASTNode>();
 				if (nodeM instanceof Statement) {
 					if (nodeM instanceof DoStatement) {
@@ -793,221 +631,130 @@ public class TreedMapper implements TreedConstants {
 				}
 				if (!mappedChildrenM.isEmpty() && !mappedChildrenN.isEmpty()) {
 					for (int i = 0; i < mappedChildrenM.size(); i++) {
-						ASTNode childM = mappedChildrenM.get(i), childN = mappedChildrenN.get(i);
-						if (childM != null && childN != null) {
-							if (treeMap.get(childM).isEmpty() && treeMap.get(childN).isEmpty()) {
+						int childM = indexOf(children[idM], mappedChildrenM.get(i)), childN = indexOf(children[idN], mappedChildrenN.get(i));
+						if (childM >= 0 && childN >= 0) {
+							if (partner[childM] < 0 && partner[childN] < 0) {
 								double sim = 0;
-								if (childM.getNodeType() == childN.getNodeType()) {
-									int type = childM.getNodeType();
-									if (type == ASTNode.BLOCK || (treeMap.get(childM).isEmpty() && treeMap.get(childN).isEmpty()))
-										sim = 1.0;
-									else 
-										sim = computeSimilarity(childM, childN, MIN_SIM);
-									if (sim >= MIN_SIM) {
-										setMap(childM, childN, MIN_SIM);
-										if (TreedUtils.buildASTLabel(childM).equals(TreedUtils.buildASTLabel(childN))) {
-											childM.setProperty(PROPERTY_MAP, ChangeKind.UNCHANGED);
-											childN.setProperty(PROPERTY_MAP, ChangeKind.UNCHANGED);
-										} else {
-											childM.setProperty(PROPERTY_MAP, ChangeKind.RENAMED);
-											childN.setProperty(PROPERTY_MAP, ChangeKind.RENAMED);
-										}
+								if (nodes[childM].getNodeType() == nodes[childN].getNodeType()) {
+									// both are not yet mapped, so they are mapped whatever their similarity
+									sim = 1.0;
+									setMap(childM, childN);
+									if (TreedUtils.buildASTLabel(nodes[childM]).equals(TreedUtils.buildASTLabel(nodes[childN]))) {
+										nodes[childM].setProperty(PROPERTY_MAP, ChangeKind.UNCHANGED);
+										nodes[childN].setProperty(PROPERTY_MAP, ChangeKind.UNCHANGED);
+									} else {
+										nodes[childM].setProperty(PROPERTY_MAP, ChangeKind.RENAMED);
+										nodes[childN].setProperty(PROPERTY_MAP, ChangeKind.RENAMED);
 									}
 								}
 								if (sim < MIN_SIM) {
-									ArrayList<ASTNode> tempM = new ArrayList<ASTNode>(), tempN = new ArrayList<ASTNode>();
-									tempM.add(childM);
-									tempN.add(childN);
-									int hM = treeHeight.get(childM), hN = treeHeight.get(childN);
-									if (hM >= hN) {
-										tempM.remove(childM);
-										tempM.addAll(getNotYetMatchedNodes(tree.get(childM)));
-									}
-									if (hN >= hM) {
-										tempN.remove(childN);
-										tempN.addAll(getNotYetMatchedNodes(tree.get(childN)));
-									}
-									ArrayList<ASTNode> mappedNodes = map(tempM, tempN, MIN_SIM_MOVE);
-									for (int j = 0; j < mappedNodes.size(); j += 2) {
-										ASTNode mappedNodeM = mappedNodes.get(j), mappedNodeN = mappedNodes.get(j+1);
-										tempM.remove(mappedNodeM);
-										tempN.remove(mappedNodeN);
-									}
+									ArrayList<Integer> tempM = new ArrayList<Integer>(), tempN = new ArrayList<Integer>();
+									int hM = height[childM], hN = height[childN];
+									if (hM >= hN)
+										tempM.addAll(getNotYetMatchedNodes(children[childM]));
+									else
+										tempM.add(childM);
+									if (hN >= hM)
+										tempN.addAll(getNotYetMatchedNodes(children[childN]));
+									else
+										tempN.add(childN);
+									map(tempM, tempN, MIN_SIM_MOVE);
 								}
 							}
 						}
-						nodesM.remove(childM);
-						nodesN.remove(childN);
+						nodesM.remove((Integer) childM);
+						nodesN.remove((Integer) childN);
 					}
 				}
 				ArrayList<Integer> lcsM = new ArrayList<Integer>(), lcsN = new ArrayList<Integer>();
 				lcs(nodesM, nodesN, lcsM, lcsN);
 				for (int i = lcsM.size()-1; i >= 0; i--) {
 					int iM = lcsM.get(i), iN = lcsN.get(i);
-					ASTNode nM = nodesM.get(iM), nN = nodesN.get(iN);
-					setMap(nM, nN, 1.0);
+					setMap(nodesM.get(iM), nodesN.get(iN));
 					nodesM.remove(iM);
 					nodesN.remove(iN);
 				}
-				lcsM.clear(); lcsN.clear();
-				ArrayList<ASTNode> mappedNodes = map(nodesM, nodesN, MIN_SIM);
-				for (int i = 0; i < mappedNodes.size(); i += 2) {
-					ASTNode mappedNodeM = mappedNodes.get(i), mappedNodeN = mappedNodes.get(i+1);
-					nodesM.remove(mappedNodeM);
-					nodesN.remove(mappedNodeN);
-				}
-				/*ArrayList<ASTNode> maxsM = new ArrayList<ASTNode>(), maxsN = new ArrayList<ASTNode>();
-				int maxhM = maxHeight(nodesM, maxsM), maxhN = maxHeight(nodesN, maxsN);
-				if (maxhM >= maxhN) {
-					for (ASTNode node : maxsM) {
-						nodesM.remove(node);
-						nodesM.addAll(getNotYetMatchedNodes(tree.get(node)));
-					}
-				}
-				if (maxhN >= maxhM) {
-					for (ASTNode node : maxsN) {
-						nodesN.remove(node);
-						nodesN.addAll(getNotYetMatchedNodes(tree.get(node)));
-					}
-				}
-				mappedNodes = map(nodesM, nodesN, MIN_SIM_MOVE);
-				for (int i = 0; i < mappedNodes.size(); i += 2) {
-					ASTNode mappedNodeM = mappedNodes.get(i), mappedNodeN = mappedNodes.get(i+1);
-					nodesM.remove(mappedNodeM);
-					nodesN.remove(mappedNodeN);
-				}*/
+				map(nodesM, nodesN, MIN_SIM);
 			}
 		}
-		for (ASTNode child : childrenM)
+		for (int child : children[idM])
 			mapTopDown(child);
 	}
 
-	@SuppressWarnings("unused")
-	private int maxHeight(ArrayList<ASTNode> nodes, ArrayList<ASTNode> maxs) {
-		int max = 0;
-		for (ASTNode node : nodes) {
-			int h = treeHeight.get(node);
-			if (h >= max) {
-				if (h > max) {
-					max = h;
-					maxs.clear();
-				}
-				maxs.add(node);
-			}
-		}
-		return max;
+	private int indexOf(int[] ids, ASTNode node) {
+		if (node != null)
+			for (int id : ids)
+				if (nodes[id] == node)
+					return id;
+		return -1;
 	}
 
-	private void mapUnchangedNodes(ASTNode nodeM, ASTNode nodeN) {
-		setMap(nodeM, nodeN, 1.0);
-		ArrayList<ASTNode> childrenM = tree.get(nodeM), childrenN = tree.get(nodeN);
-		for (int i = 0; i < childrenM.size(); i++)
-			mapUnchangedNodes(childrenM.get(i), childrenN.get(i));
+	private void mapUnchangedNodes(int idM, int idN) {
+		setMap(idM, idN);
+		int[] childrenM = children[idM], childrenN = children[idN];
+		for (int i = 0; i < childrenM.length; i++)
+			mapUnchangedNodes(childrenM[i], childrenN[i]);
 	}
 
-	private ArrayList<ASTNode> getNotYetMatchedNodes(ArrayList<ASTNode> l) {
-		ArrayList<ASTNode> nodes = new ArrayList<ASTNode>();
-		for (ASTNode node : l)
-			if (treeMap.get(node).isEmpty())
-				nodes.add(node);
-		return nodes;
+	private ArrayList<Integer> getNotYetMatchedNodes(int[] ids) {
+		ArrayList<Integer> l = new ArrayList<Integer>();
+		for (int id : ids)
+			if (partner[id] < 0)
+				l.add(id);
+		return l;
 	}
 
 	private void mapMoving() {
-		astM.accept(new ASTVisitor() {
-			@Override
-			public boolean visit(AnnotationTypeMemberDeclaration node) {
-				HashMap<ASTNode, Double> maps = treeMap.get(node);
-				if (!maps.isEmpty()) {
-					ASTNode mapped = maps.keySet().iterator().next();
-					mapMoving(node, mapped);
-					return false;
-				}
-				return true;
-			}
-			
-			@Override
-			public boolean visit(EnumConstantDeclaration node) {
-				HashMap<ASTNode, Double> maps = treeMap.get(node);
-				if (!maps.isEmpty()) {
-					ASTNode mapped = maps.keySet().iterator().next();
-					mapMoving(node, mapped);
-					return false;
-				}
-				return true;
-			}
-			
-			@Override
-			public boolean visit(FieldDeclaration node) {
-				HashMap<ASTNode, Double> maps = treeMap.get(node);
-				if (!maps.isEmpty()) {
-					ASTNode mapped = maps.keySet().iterator().next();
-					mapMoving(node, mapped);
-					return false;
-				}
-				return true;
-			}
-			
-			@Override
-			public boolean visit(Initializer node) {
-				HashMap<ASTNode, Double> maps = treeMap.get(node);
-				if (!maps.isEmpty()) {
-					ASTNode mapped = maps.keySet().iterator().next();
-					mapMoving(node, mapped);
-					return false;
-				}
-				return true;
-			}
-			
-			@Override
-			public boolean visit(MethodDeclaration node) {
-				HashMap<ASTNode, Double> maps = treeMap.get(node);
-				if (!maps.isEmpty()) {
-					ASTNode mapped = maps.keySet().iterator().next();
-					mapMoving(node, mapped);
-					return false;
-				}
-				return true;
+		mapMoving(rootM);
+	}
+
+	/**
+	 * Looks for moves inside each mapped member declaration, outermost first.
+	 */
+	private void mapMoving(int id) {
+		switch (nodes[id].getNodeType()) {
+		case ASTNode.ANNOTATION_TYPE_MEMBER_DECLARATION:
+		case ASTNode.ENUM_CONSTANT_DECLARATION:
+		case ASTNode.FIELD_DECLARATION:
+		case ASTNode.INITIALIZER:
+		case ASTNode.METHOD_DECLARATION:
+			if (partner[id] >= 0) {
+				mapMoving(id, partner[id]);
+				return;
 			}
-		});
-//		mapMoving(astM, astN);
+			break;
+		default:
+			break;
+		}
+		for (int child : children[id])
+			mapMoving(child);
 	}
 
-	private void mapMoving(ASTNode astM, ASTNode astN) {
-		ArrayList<ASTNode> lM = getNotYetMappedDescendantContainers(astM), lN = getNotYetMappedDescendantContainers(astN);
-		ArrayList<ASTNode> heightsM = new ArrayList<ASTNode>(lM), heightsN = new ArrayList<ASTNode>(lN);
-		Collections.sort(heightsM, new Comparator<ASTNode>() {
-			@Override
-			public int compare(ASTNode node1, ASTNode node2) {
-				return treeHeight.get(node2) - treeHeight.get(node1);
-			}
-		});
-		Collections.sort(heightsN, new Comparator<ASTNode>() {
-			@Override
-			public int compare(ASTNode node1, ASTNode node2) {
-				return treeHeight.get(node2) - treeHeight.get(node1);
-			}
-		});
+	private void mapMoving(int idM, int idN) {
+		ArrayList<Integer> lM = getNotYetMappedDescendantContainers(idM), lN = getNotYetMappedDescendantContainers(idN);
+		ArrayList<Integer> heightsM = new ArrayList<Integer>(lM), heightsN = new ArrayList<Integer>(lN);
+		Collections.sort(heightsM, byHeight);
+		Collections.sort(heightsN, byHeight);
 		mapMoving(lM, lN, heightsM, heightsN);
 	}
 
-	private void mapMoving(ArrayList<ASTNode> lM, ArrayList<ASTNode> lN, ArrayList<ASTNode> heightsM, ArrayList<ASTNode> heightsN) {
-		ArrayList<ASTNode> mappedNodes = map(lM, lN, MIN_SIM_MOVE);
+	private void mapMoving(ArrayList<Integer> lM, ArrayList<Integer> lN, ArrayList<Integer> heightsM, ArrayList<Integer> heightsN) {
+		ArrayList<Integer> mappedNodes = map(lM, lN, MIN_SIM_MOVE);
 		for (int i = 0; i < mappedNodes.size(); i += 2) {
-			ASTNode nodeM = mappedNodes.get(i), nodeN = mappedNodes.get(i+1);
+			Integer nodeM = mappedNodes.get(i), nodeN = mappedNodes.get(i+1);
 			lM.remove(nodeM);
 			lN.remove(nodeN);
 			heightsM.remove(nodeM);
 			heightsN.remove(nodeN);
 		}
 		while (!lM.isEmpty() && !lN.isEmpty()) {
-			int hM = treeHeight.get(heightsM.get(0));
-			int hN = treeHeight.get(heightsN.get(0));
+			int hM = height[heightsM.get(0)];
+			int hN = height[heightsN.get(0)];
 			boolean expandedM = false, expandedN = false;
 			if (hM >= hN)
-				expandedM = expandForMoving(lM, heightsM, hM);
+				expandedM = expand(lM, heightsM, hM, true);
 			if (hN >= hM)
-				expandedN = expandForMoving(lN, heightsN, hN);
+				expandedN = expand(lN, heightsN, hN, true);
 			if (expandedM || expandedN) {
 				mapMoving(lM, lN, heightsM, heightsN);
 				break;
@@ -1015,31 +762,35 @@ public class TreedMapper implements TreedConstants {
 		}
 	}
 
-	private ArrayList<ASTNode> getNotYetMappedDescendantContainers(ASTNode node) {
-		ArrayList<ASTNode> children = new ArrayList<ASTNode>();
-		for (ASTNode child : tree.get(node)) {
-			if (!pivotsM.contains(child) && !pivotsN.contains(child) && treeHeight.get(child) >= MIN_HEIGHT) {
-				if (treeMap.get(child).isEmpty())
-					children.add(child);
+	private ArrayList<Integer> getNotYetMappedDescendantContainers(int id) {
+		ArrayList<Integer> containers = new ArrayList<Integer>();
+		for (int child : children[id]) {
+			if (!pivot[child] && height[child] >= MIN_HEIGHT) {
+				if (partner[child] < 0)
+					containers.add(child);
 				else
-					children.addAll(getNotYetMappedDescendantContainers(child));
+					containers.addAll(getNotYetMappedDescendantContainers(child));
 			}
 		}
-		return children;
+		return containers;
 	}
 
 	private void buildTrees() {
-		buildTree(astM);
-		buildTree(astN);
-	}
-
-	private void buildTree(final ASTNode root) {
-		final TreedBuilder visitor = new TreedBuilder(root);
-		root.accept(visitor);
-		tree.putAll(visitor.tree);
-		treeHeight.putAll(visitor.treeHeight);
-		treeDepth.putAll(visitor.treeDepth);
-		treeVector.putAll(visitor.treeVector);
+		final TreedBuilder builder = new TreedBuilder();
+		rootM = builder.build(astM);
+		rootN = builder.build(astN);
+		builder.finish();
+		nodes = builder.nodes;
+		parent = builder.parent;
+		children = builder.children;
+		height = builder.height;
+		depth = builder.depth;
+		shape = builder.shape;
+		features = builder.features;
+		counts = builder.counts;
+		length = builder.length;
+		partner = new int[nodes.length];
+		Arrays.fill(partner, -1);
+		pivot = new boolean[nodes.length];
 	}
-	
 }
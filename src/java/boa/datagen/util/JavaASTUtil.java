@@ -9,6 +9,7 @@ import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTParser;
 import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
 import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.eclipse.jdt.core.dom.FileASTRequestor;
 import org.eclipse.jdt.core.dom.Modifier;
 import org.eclipse.jdt.core.dom.Modifier.ModifierKeyword;
 
@@ -16,6 +17,16 @@ import boa.types.Diff.ChangedFile.FileKind;
 
 public class JavaASTUtil {
 	private static final HashMap<ModifierKeyword, Integer> modifierType = new HashMap<ModifierKeyword, Integer>();
+
+	// the parser copies its options, so each thread builds them once and reuses them
+	private static final ThreadLocal<Map<?, ?>> java8Options = new ThreadLocal<Map<?, ?>>() {
+		@Override
+		protected Map<?, ?> initialValue() {
+			final Map<?, ?> options = JavaCore.getOptions();
+			JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+			return options;
+		}
+	};
 	
 	static {
 		modifierType.put(ModifierKeyword.ABSTRACT_KEYWORD, 1);
@@ -54,6 +65,35 @@ public class JavaASTUtil {
 		return modifierType.get(mn.getKeyword());
 	}
 	
+	/**
+	 * Parses a Java 8 compilation unit.
+	 *
+	 * @param content the source to parse
+	 * @return the compilation unit
+	 */
+	public static CompilationUnit parseJava8(final String content) {
+		final ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setSource(content.toCharArray());
+		parser.setCompilerOptions(java8Options.get());
+		return (CompilationUnit) parser.createAST(null);
+	}
+
+	/**
+	 * Parses Java 8 compilation units with one parser.  Each is handed to
+	 * the requestor as soon as it is parsed, in the order of the paths.
+	 *
+	 * @param contents the sources to parse, by path
+	 * @param requestor receives each path and its compilation unit
+	 */
+	public static void parseJava8(final Map<String, String> contents, final FileASTRequestor requestor) {
+		final ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setCompilerOptions(java8Options.get());
+		parser.setEnvironment(new String[0], new String[0], new String[0], true);
+		parser.createASTs(contents, contents.keySet().toArray(new String[contents.size()]), null, new String[0], requestor, null);
+	}
+
 	@SuppressWarnings("deprecation")
 	public static ASTParser buildParser(FileKind fileKind) {
 		int astLevel = -1;
@@ -19,6 +19,7 @@ package boa.datagen.util;
 
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.ASTVisitor;
+import org.eclipse.jdt.core.dom.CompilationUnit;
 
 /**
  * @author rdyer
@@ -32,4 +33,20 @@ public class JavaErrorCheckVisitor extends ASTVisitor {
 			hasError = true;
 		return !hasError;
 	}
+
+	/**
+	 * Checks a compilation unit for syntax errors.  The parser only flags
+	 * nodes as malformed or recovered while reporting a problem, so units
+	 * it reported no problems for are not walked.
+	 *
+	 * @param cu the compilation unit to check
+	 * @return true if any node of the unit is malformed or recovered
+	 */
+	public static boolean hasError(final CompilationUnit cu) {
+		if (cu.getProblems().length == 0)
+			return false;
+		final JavaErrorCheckVisitor errorCheck = new JavaErrorCheckVisitor();
+		cu.accept(errorCheck);
+		return errorCheck.hasError;
+	}
 }
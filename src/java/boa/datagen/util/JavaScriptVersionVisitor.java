@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.datagen.util;
+
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Node;
+import org.mozilla.javascript.Token;
+import org.mozilla.javascript.ast.AstNode;
+import org.mozilla.javascript.ast.FunctionNode;
+import org.mozilla.javascript.ast.LetNode;
+import org.mozilla.javascript.ast.NodeVisitor;
+import org.mozilla.javascript.ast.ObjectProperty;
+import org.mozilla.javascript.ast.VariableDeclaration;
+import org.mozilla.javascript.ast.Yield;
+
+import boa.types.Diff.ChangedFile.FileKind;
+
+/**
+ * Finds the oldest language version a JavaScript file parses with, from the
+ * features used in its AST.  The AST must come from a parse with
+ * {@link Context#VERSION_1_8}, the most permissive version.
+ *
+ * Only constructs the parser rejects below some version raise the result:
+ * <code>let</code> and <code>yield</code> are only keywords from 1.7 on, and
+ * expression closures and destructuring shorthand (<code>var {x, y} = o</code>)
+ * are only accepted from 1.8 on.  Everything else parses with every version.
+ */
+public class JavaScriptVersionVisitor implements NodeVisitor {
+	protected int version = Context.VERSION_1_1;
+
+	@Override
+	public boolean visit(final AstNode node) {
+		if (node instanceof FunctionNode && ((FunctionNode) node).isExpressionClosure())
+			require(Context.VERSION_1_8);
+		else if (node instanceof ObjectProperty && node.getProp(Node.DESTRUCTURING_SHORTHAND) != null)
+			require(Context.VERSION_1_8);
+		else if (node instanceof LetNode || node instanceof Yield)
+			require(Context.VERSION_1_7);
+		else if (node instanceof VariableDeclaration && node.getType() == Token.LET)
+			require(Context.VERSION_1_7);
+		return version < Context.VERSION_1_8;
+	}
+
+	private void require(final int v) {
+		if (v > version)
+			version = v;
+	}
+
+	/**
+	 * @return the oldest version the file parses with
+	 */
+	public int getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the file kind for the oldest version the file parses with
+	 */
+	public FileKind getKind() {
+		switch (version) {
+		case Context.VERSION_1_8:
+			return FileKind.SOURCE_JS_ES8;
+		case Context.VERSION_1_7:
+			return FileKind.SOURCE_JS_ES7;
+		default:
+			return FileKind.SOURCE_JS_ES1;
+		}
+	}
+}
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.datagen.util;
+
+import java.util.Arrays;
+
+import com.google.protobuf.InvalidProtocolBufferException;
+
+import boa.types.Code.CodeRepository;
+import boa.types.Code.Revision;
+import boa.types.Diff.ChangedFile;
+import boa.types.Toplevel.Project;
+
+/**
+ * Shifts the AST and commit keys in serialized projects and revisions,
+ * as when combining the outputs of several workers into one dataset.
+ *
+ * The messages are rewritten on the wire: only the key fields are decoded,
+ * every other field is copied as is.  For messages protobuf serialized, the
+ * result is the same as parsing them, setting the keys with the builders
+ * and serializing them again.
+ *
+ * Like that, an AST key is shifted only if it is positive, and the
+ * revision keys of a repository only if it has no inlined revisions.
+ */
+public class KeyRemapper {
+	private static final int WIRETYPE_VARINT = 0;
+	private static final int WIRETYPE_FIXED64 = 1;
+	private static final int WIRETYPE_LENGTH_DELIMITED = 2;
+	private static final int WIRETYPE_FIXED32 = 5;
+
+	// revision keys are written unpacked, even if they were read packed
+	private static final int REVISION_KEYS_TAG = CodeRepository.REVISION_KEYS_FIELD_NUMBER << 3 | WIRETYPE_VARINT;
+
+	// the messages holding keys
+	private static final int REPOSITORY = 0, REVISION = 1, FILE = 2;
+
+	private final long astBase;
+	private final long commitBase;
+
+	private byte[] in;
+	private int limit;
+	private int pos;
+
+	/**
+	 * @param astBase what to add to AST keys
+	 * @param commitBase what to add to revision keys
+	 */
+	public KeyRemapper(final long astBase, final long commitBase) {
+		this.astBase = astBase;
+		this.commitBase = commitBase;
+	}
+
+	/**
+	 * Shifts the keys of a serialized {@link Project}.
+	 *
+	 * @param b the serialized project
+	 * @param len the length of the serialized project
+	 * @return the serialized project with its keys shifted
+	 * @throws InvalidProtocolBufferException if the project is malformed
+	 */
+	public byte[] project(final byte[] b, final int len) throws InvalidProtocolBufferException {
+		if (astBase == 0 && commitBase == 0)
+			return Arrays.copyOf(b, len);
+		in = b;
+		limit = len;
+		pos = 0;
+		final Output out = new Output(len);
+		project(len, out);
+		in = null;
+		return out.toByteArray();
+	}
+
+	/**
+	 * Shifts the AST keys of a serialized {@link Revision}.
+	 *
+	 * @param b the serialized revision
+	 * @param len the length of the serialized revision
+	 * @return the serialized revision with its keys shifted
+	 * @throws InvalidProtocolBufferException if the revision is malformed
+	 */
+	public byte[] revision(final byte[] b, final int len) throws InvalidProtocolBufferException {
+		if (astBase == 0)
+			return Arrays.copyOf(b, len);
+		in = b;
+		limit = len;
+		pos = 0;
+		final Output out = new Output(len);
+		revision(len, out);
+		in = null;
+		return out.toByteArray();
+	}
+
+	private void project(final int end, final Output out) throws InvalidProtocolBufferException {
+		while (pos < end) {
+			final int start = pos;
+			final int tag = readVarint32();
+			if (tag >>> 3 == Project.CODE_REPOSITORIES_FIELD_NUMBER && (tag & 7) == WIRETYPE_LENGTH_DELIMITED) {
+				out.writeVarint(tag);
+				message(out, REPOSITORY);
+			} else {
+				skipField(tag);
+				out.write(in, start, pos - start);
+			}
+		}
+	}
+
+	private void repository(final int end, final Output out) throws InvalidProtocolBufferException {
+		final boolean revisions = hasField(end, CodeRepository.REVISIONS_FIELD_NUMBER);
+		while (pos < end) {
+			final int start = pos;
+			final int tag = readVarint32();
+			final int field = tag >>> 3;
+			if (field == CodeRepository.REVISIONS_FIELD_NUMBER && (tag & 7) == WIRETYPE_LENGTH_DELIMITED) {
+				out.writeVarint(tag);
+				message(out, REVISION);
+			} else if (field == CodeRepository.HEAD_SNAPSHOT_FIELD_NUMBER && (tag & 7) == WIRETYPE_LENGTH_DELIMITED) {
+				out.writeVarint(tag);
+				message(out, FILE);
+			} else if (field == CodeRepository.REVISION_KEYS_FIELD_NUMBER && !revisions && (tag & 7) == WIRETYPE_VARINT) {
+				out.writeVarint(tag);
+				out.writeVarint(readVarint64() + commitBase);
+			} else if (field == CodeRepository.REVISION_KEYS_FIELD_NUMBER && !revisions && (tag & 7) == WIRETYPE_LENGTH_DELIMITED) {
+				final int packedEnd = pushLimit();
+				while (pos < packedEnd) {
+					out.writeVarint(REVISION_KEYS_TAG);
+					out.writeVarint(readVarint64() + commitBase);
+				}
+			} else {
+				skipField(tag);
+				out.write(in, start, pos - start);
+			}
+		}
+	}
+
+	private void revision(final int end, final Output out) throws InvalidProtocolBufferException {
+		while (pos < end) {
+			final int start = pos;
+			final int tag = readVarint32();
+			if (tag >>> 3 == Revision.FILES_FIELD_NUMBER && (tag & 7) == WIRETYPE_LENGTH_DELIMITED) {
+				out.writeVarint(tag);
+				message(out, FILE);
+			} else {
+				skipField(tag);
+				out.write(in, start, pos - start);
+			}
+		}
+	}
+
+	private void file(final int end, final Output out) throws InvalidProtocolBufferException {
+		while (pos < end) {
+			final int start = pos;
+			final int tag = readVarint32();
+			if (tag >>> 3 == ChangedFile.KEY_FIELD_NUMBER && (tag & 7) == WIRETYPE_VARINT) {
+				final long key = readVarint64();
+				out.writeVarint(tag);
+				out.writeVarint(key > 0 ? astBase + key : key);
+			} else {
+				skipField(tag);
+				out.write(in, start, pos - start);
+			}
+		}
+	}
+
+	// rewrites a length delimited message, whose length may change
+	private void message(final Output out, final int kind) throws InvalidProtocolBufferException {
+		final int end = pushLimit();
+		final Output sub = new Output(end - pos);
+		switch (kind) {
+		case REPOSITORY: repository(end, sub); break;
+		case REVISION: revision(end, sub); break;
+		default: file(end, sub); break;
+		}
+		if (pos != end)
+			throw new InvalidProtocolBufferException("truncated message");
+		out.writeVarint(sub.len);
+		out.write(sub.buf, 0, sub.len);
+	}
+
+	// whether a message has a field, without moving
+	private boolean hasField(final int end, final int field) throws InvalidProtocolBufferException {
+		final int start = pos;
+		boolean found = false;
+		while (pos < end && !found) {
+			final int tag = readVarint32();
+			found = tag >>> 3 == field;
+			skipField(tag);
+		}
+		pos = start;
+		return found;
+	}
+
+	// reads the length of a length delimited field, returning where it ends
+	private int pushLimit() throws InvalidProtocolBufferException {
+		final int len = readVarint32();
+		if (len < 0)
+			throw new InvalidProtocolBufferException("negative size");
+		if (len > limit - pos)
+			throw new InvalidProtocolBufferException("truncated message");
+		return pos + len;
+	}
+
+	private void skipField(final int tag) throws InvalidProtocolBufferException {
+		switch (tag & 7) {
+		case WIRETYPE_VARINT:
+			readVarint64();
+			break;
+		case WIRETYPE_FIXED64:
+			skip(8);
+			break;
+		case WIRETYPE_LENGTH_DELIMITED:
+			pos = pushLimit();
+			break;
+		case WIRETYPE_FIXED32:
+			skip(4);
+			break;
+		default:
+			// groups are not used by any of the messages
+			throw new InvalidProtocolBufferException("invalid wire type");
+		}
+	}
+
+	private void skip(final int n) throws InvalidProtocolBufferException {
+		if (n > limit - pos)
+			throw new InvalidProtocolBufferException("truncated message");
+		pos += n;
+	}
+
+	private int readVarint32() throws InvalidProtocolBufferException {
+		return (int) readVarint64();
+	}
+
+	private long readVarint64() throws InvalidProtocolBufferException {
+		long result = 0;
+		for (int shift = 0; shift < 64; shift += 7) {
+			if (pos >= limit)
+				throw new InvalidProtocolBufferException("truncated message");
+			final byte b = in[pos++];
+			result |= (long) (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return result;
+		}
+		throw new InvalidProtocolBufferException("malformed varint");
+	}
+
+	// a growable byte buffer
+	private static class Output {
+		byte[] buf;
+		int len;
+
+		Output(final int capacity) {
+			buf = new byte[Math.max(16, capacity + 16)];
+		}
+
+		void ensure(final int n) {
+			if (len + n > buf.length)
+				buf = Arrays.copyOf(buf, Math.max(buf.length * 2, len + n));
+		}
+
+		void write(final byte[] b, final int off, final int n) {
+			ensure(n);
+			System.arraycopy(b, off, buf, len, n);
+			len += n;
+		}
+
+		void writeVarint(long v) {
+			ensure(10);
+			while ((v & ~0x7FL) != 0) {
+				buf[len++] = (byte) ((v & 0x7F) | 0x80);
+				v >>>= 7;
+			}
+			buf[len++] = (byte) v;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(buf, len);
+		}
+	}
+}
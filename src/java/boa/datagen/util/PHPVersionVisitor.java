@@ -0,0 +1,117 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.datagen.util;
+
+import org.eclipse.php.internal.core.PHPVersion;
+import org.eclipse.php.internal.core.ast.nodes.*;
+import org.eclipse.php.internal.core.ast.visitor.ApplyAll;
+
+import boa.types.Diff.ChangedFile.FileKind;
+
+/**
+ * Finds the oldest language version a PHP file parses with, from the
+ * features used in its AST.  The AST must come from a parse with
+ * {@link PHPVersion#PHP7_1}, the most permissive version.
+ *
+ * Each feature raises the result to the version whose grammar introduced
+ * it; a file using none of them parses as PHP 5.
+ */
+public class PHPVersionVisitor extends ApplyAll {
+	protected PHPVersion version = PHPVersion.PHP5;
+
+	@Override
+	protected boolean apply(final ASTNode node) {
+		if (node instanceof NamespaceDeclaration || node instanceof LambdaFunctionDeclaration
+				|| node instanceof GotoLabel || node instanceof GotoStatement)
+			require(PHPVersion.PHP5_3);
+		else if (node instanceof UseStatement) {
+			final int type = ((UseStatement) node).getStatementType();
+			require(type == UseStatement.T_FUNCTION || type == UseStatement.T_CONST ? PHPVersion.PHP5_6 : PHPVersion.PHP5_3);
+		} else if (node instanceof TraitDeclaration || node instanceof TraitUseStatement)
+			require(PHPVersion.PHP5_4);
+		else if (node instanceof ArrayCreation && !((ArrayCreation) node).isHasArrayKey()) {
+			// short array syntax, or a short list() when assigned to
+			final ASTNode parent = node.getParent();
+			if (parent instanceof Assignment && ((Assignment) parent).getLeftHandSide() == node)
+				require(PHPVersion.PHP7_1);
+			else
+				require(PHPVersion.PHP5_4);
+		} else if (node instanceof YieldExpression)
+			require(((YieldExpression) node).getOperator() == YieldExpression.OP_FROM ? PHPVersion.PHP7_0 : PHPVersion.PHP5_5);
+		else if (node instanceof FinallyClause)
+			require(PHPVersion.PHP5_5);
+		else if (node instanceof InfixExpression) {
+			final int op = ((InfixExpression) node).getOperator();
+			if (op == InfixExpression.OP_SPACESHIP)
+				require(PHPVersion.PHP7_0);
+			else if (op == InfixExpression.OP_POW)
+				require(PHPVersion.PHP5_6);
+		} else if (node instanceof Assignment && ((Assignment) node).getOperator() == Assignment.OP_POW_EQUAL)
+			require(PHPVersion.PHP5_6);
+		else if (node instanceof FormalParameter) {
+			final FormalParameter p = (FormalParameter) node;
+			if (p.getParameterType() instanceof Identifier && ((Identifier) p.getParameterType()).isNullable())
+				require(PHPVersion.PHP7_1);
+			else if (p.isVariadic())
+				require(PHPVersion.PHP5_6);
+		} else if (node instanceof ConditionalExpression && ((ConditionalExpression) node).getOperatorType() == ConditionalExpression.OP_COALESCE)
+			require(PHPVersion.PHP7_0);
+		else if (node instanceof AnonymousClassDeclaration)
+			require(PHPVersion.PHP7_0);
+		else if (node instanceof FunctionDeclaration) {
+			final Identifier type = ((FunctionDeclaration) node).getReturnType();
+			if (type != null)
+				require(type.isNullable() || "void".equalsIgnoreCase(type.getName()) ? PHPVersion.PHP7_1 : PHPVersion.PHP7_0);
+		} else if (node instanceof CatchClause && ((CatchClause) node).getClassNames().size() > 1)
+			require(PHPVersion.PHP7_1);
+		return version != PHPVersion.PHP7_1;
+	}
+
+	private void require(final PHPVersion v) {
+		if (v.compareTo(version) > 0)
+			version = v;
+	}
+
+	/**
+	 * @return the oldest version the file parses with
+	 */
+	public PHPVersion getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return the file kind for the oldest version the file parses with
+	 */
+	public FileKind getKind() {
+		switch (version) {
+		case PHP5_3:
+			return FileKind.SOURCE_PHP5_3;
+		case PHP5_4:
+			return FileKind.SOURCE_PHP5_4;
+		case PHP5_5:
+			return FileKind.SOURCE_PHP5_5;
+		case PHP5_6:
+			return FileKind.SOURCE_PHP5_6;
+		case PHP7_0:
+			return FileKind.SOURCE_PHP7_0;
+		case PHP7_1:
+			return FileKind.SOURCE_PHP7_1;
+		default:
+			return FileKind.SOURCE_PHP5;
+		}
+	}
+}
@@ -29,11 +29,15 @@ import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.Options;
 import org.apache.commons.cli.PosixParser;
 import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
 
 import boa.BoaMain;
 import boa.compiler.BoaCompiler;
 import boa.datagen.DefaultProperties;
 import boa.datagen.util.FileIO;
+import boa.runtime.BoaLocalExecutor;
+import boa.runtime.BoaProfiler;
 
 /**
  * The main entry point for Boa REPL.
@@ -46,6 +50,7 @@ public class BoaEvaluator extends BoaMain {
 	private final String DATA_PATH;
 	private final String COMPILATION_DIR;
 	private final String OUTPUT_DIR;
+	private boolean profile = false;
 
 	public BoaEvaluator(final String prog, final String data) throws IOException {
 		this(prog, data, System.getProperty("java.io.tmpdir") + File.separator + UUID.randomUUID().toString());
@@ -66,6 +71,9 @@ public class BoaEvaluator extends BoaMain {
 		options.addOption("i", "input",  true, "input Boa source file (*.boa)");
 		options.addOption("d", "data",   true, "path to local data directory");
 		options.addOption("o", "output", true, "output directory");
+		options.addOption("l", "local",  false, "run in-process on a pool of threads, instead of through Hadoop's local job runner");
+		options.addOption("t", "threads", true, "number of threads to run on with -l (default: one per core)");
+		options.addOption("p", "profile", false, "profile the program, reporting the calls and time of each clause, intrinsic call and emit");
 
 		options.getOption("i").setRequired(true);
 		options.getOption("d").setRequired(true);
@@ -90,17 +98,24 @@ public class BoaEvaluator extends BoaMain {
 						return;
 					}
 
+					evaluator.profile = cl.hasOption('p');
 					if (!evaluator.compile()) {
 						System.err.println("Compilation Failed");
 						return;
 					}
 
 					final long start = System.currentTimeMillis();
-					evaluator.evaluate();
+					if (cl.hasOption('l'))
+						evaluator.evaluateLocal(cl.hasOption('t') ? Integer.parseInt(cl.getOptionValue('t')) : Runtime.getRuntime().availableProcessors());
+					else
+						evaluator.evaluate();
 					final long end = System.currentTimeMillis();
 
 					System.out.println("Total Time Taken: "+ (end - start));
 					System.out.println(evaluator.getResults());
+					// when run through Hadoop, the program reports its own profile
+					if (evaluator.profile && cl.hasOption('l'))
+						evaluator.printProfile();
 				} else {
 					printHelp(options, "missing required options: -i <arg> and -d <arg>");
 					return;
@@ -134,6 +149,41 @@ public class BoaEvaluator extends BoaMain {
 		}
 	}
 
+	/**
+	 * Runs the compiled program in this JVM on a pool of threads, skipping
+	 * Hadoop's job runner (and its sorting, spilling and compression).
+	 *
+	 * @param threads the number of threads to map projects on
+	 */
+	public void evaluateLocal(final int threads) {
+		final File srcDir = new File(this.COMPILATION_DIR);
+
+		URLClassLoader cl = null;
+		try {
+			cl = new URLClassLoader(new URL[] { srcDir.toURI().toURL() }, ClassLoader.getSystemClassLoader());
+			new BoaLocalExecutor(cl, "boa." + jarToClassname(this.PROG_PATH), threads).run(this.DATA_PATH, this.OUTPUT_DIR);
+		} catch (final Throwable e) {
+			System.err.print(e);
+		} finally {
+			if (cl != null)
+				try {
+					cl.close();
+				} catch (final IOException e) { }
+		}
+	}
+
+	/**
+	 * Prints the profile of a program compiled with profiling.
+	 */
+	public void printProfile() {
+		try {
+			if (!BoaProfiler.report(new Configuration(), BoaProfiler.getDir(new Path(new File(this.OUTPUT_DIR).getAbsolutePath())), System.out))
+				System.err.println("no profile found");
+		} catch (final IOException e) {
+			System.err.print(e);
+		}
+	}
+
 	public String getResults() {
 		for (final File f : new File(this.OUTPUT_DIR).listFiles()) {
 			if (f.getName().startsWith("part")) {
@@ -156,7 +206,7 @@ public class BoaEvaluator extends BoaMain {
 	}
 
 	private String[] createCompilerArguments() {
-		final String[] compilationArgs = new String[6];
+		final String[] compilationArgs = new String[this.profile ? 7 : 6];
 
 		compilationArgs[0] = "-i";
 		compilationArgs[1] = this.PROG_PATH;
@@ -164,6 +214,8 @@ public class BoaEvaluator extends BoaMain {
 		compilationArgs[3] = "./dist/boa-runtime.jar";
 		compilationArgs[4] = "-cd";
 		compilationArgs[5] = this.COMPILATION_DIR;
+		if (this.profile)
+			compilationArgs[6] = "-prof";
 
 		return compilationArgs;
 	}
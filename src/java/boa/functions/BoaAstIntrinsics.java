@@ -22,6 +22,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
+import java.util.regex.Pattern;
 
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.fs.FileSystem;
@@ -42,10 +43,15 @@ import com.google.protobuf.InvalidProtocolBufferException;
 import boa.datagen.DefaultProperties;
 import boa.datagen.util.JavaErrorCheckVisitor;
 import boa.datagen.util.JavaVisitor;
+import boa.io.IssuePages;
+import boa.runtime.BoaBudget;
+import boa.runtime.BoaStringLongMap;
 import boa.types.Ast.*;
 import boa.types.Code.CodeRepository;
 import boa.types.Code.Revision;
 import boa.types.Diff.ChangedFile;
+import boa.types.Edit.EditScript;
+import boa.types.Issues.Issue.IssueStatus;
 import boa.types.Issues.IssueRepository;
 import boa.types.Issues.IssuesRoot;
 import boa.types.Shared.ChangeKind;
@@ -76,6 +82,12 @@ public class BoaAstIntrinsics {
 	
 	private static MapFile.Reader commitMap;
 
+	private static MapFile.Reader editsMap;
+	private static boolean editsMissing;
+
+	private static IssuePages.Reader issuePages;
+	private static boolean issuePagesMissing;
+
 	public static enum COMMITCOUNTER {
 		GETS_ATTEMPTED,
 		GETS_SUCCEED,
@@ -94,7 +106,7 @@ public class BoaAstIntrinsics {
 		GETS_FAIL_BADLOC,
 	};
 
-	@FunctionSpec(name = "url", returnType = "string", formalParameters = { "ChangedFile" })
+	@FunctionSpec(name = "url", returnType = "string", formalParameters = { "ChangedFile" }, pure = true, speculative = true)
 	public static String changedfileToString(final ChangedFile f) {
 		return f.getKey() + "!!" + f.getName();
 	}
@@ -102,6 +114,7 @@ public class BoaAstIntrinsics {
 	private static final ASTRoot emptyAst = ASTRoot.newBuilder().build();
 	private static final CommentsRoot emptyComments = CommentsRoot.newBuilder().build();
 	private static final IssuesRoot emptyIssues = IssuesRoot.newBuilder().build();
+	private static final EditScript emptyEdits = EditScript.newBuilder().build();
 
 	/**
 	 * Given a ChangedFile, return the AST for that file at that revision.
@@ -110,11 +123,12 @@ public class BoaAstIntrinsics {
 	 * @return the AST, or an empty AST on any sort of error
 	 */
 	@SuppressWarnings("unchecked")
-	@FunctionSpec(name = "getast", returnType = "ASTRoot", formalParameters = { "ChangedFile" })
+	@FunctionSpec(name = "getast", returnType = "ASTRoot", formalParameters = { "ChangedFile" }, pure = true)
 	public static ASTRoot getast(final ChangedFile f) {
 		if (!f.getAst())
 			return emptyAst;
 
+		BoaBudget.ast();
 		context.getCounter(ASTCOUNTER.GETS_ATTEMPTED).increment(1);
 
 		if (map == null)
@@ -195,7 +209,7 @@ public class BoaAstIntrinsics {
 	 * @param f the ChangedFile to get a snapshot of the comments for
 	 * @return the comments list, or an empty list on any sort of error
 	 */
-	@FunctionSpec(name = "getcomments", returnType = "CommentsRoot", formalParameters = { "ChangedFile" })
+	@FunctionSpec(name = "getcomments", returnType = "CommentsRoot", formalParameters = { "ChangedFile" }, pure = true)
 	public static CommentsRoot getcomments(final ChangedFile f) {
 		// since we know only certain kinds have comments, filter before looking up
 		final ChangedFile.FileKind kind = f.getKind();
@@ -232,13 +246,56 @@ public class BoaAstIntrinsics {
 		return emptyComments;
 	}
 
+	/**
+	 * Given a modified or renamed ChangedFile, return the edits that turn the AST of its
+	 * previous version into its AST at this revision.  The edit scripts are
+	 * computed when the dataset is generated, so this is a lookup instead of
+	 * parsing and differencing both versions of the file.
+	 *
+	 * @param f the ChangedFile to get the edits for
+	 * @return the edit script, or an empty script if the file was not modified, the dataset has no edit scripts or on any sort of error
+	 */
+	@FunctionSpec(name = "getedits", returnType = "EditScript", formalParameters = { "ChangedFile" }, pure = true)
+	public static EditScript getedits(final ChangedFile f) {
+		if (!f.getAst() || (f.getChange() != ChangeKind.MODIFIED && f.getChange() != ChangeKind.RENAMED))
+			return emptyEdits;
+
+		if (editsMap == null) {
+			if (editsMissing)
+				return emptyEdits;
+			openEditsMap();
+			if (editsMap == null) {
+				editsMissing = true;
+				return emptyEdits;
+			}
+		}
+
+		try {
+			final BytesWritable value = new BytesWritable();
+			if (editsMap.get(new LongWritable(f.getKey()), value) == null)
+				return emptyEdits;
+			return EditScript.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+		} catch (final InvalidProtocolBufferException e) {
+			e.printStackTrace();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		} catch (final RuntimeException e) {
+			e.printStackTrace();
+		} catch (final Error e) {
+			e.printStackTrace();
+		}
+
+		System.err.println("error with edits: " + f.getKey() + " from " + f.getName());
+		return emptyEdits;
+	}
+
 	/**
 	 * Given an IssueRepository, return the issues.
 	 *
 	 * @param f the IssueRepository to get issues for
 	 * @return the issues list, or an empty list on any sort of error
 	 */
-	@FunctionSpec(name = "getissues", returnType = "IssuesRoot", formalParameters = { "IssueRepository" })
+	@FunctionSpec(name = "getissues", returnType = "IssuesRoot", formalParameters = { "IssueRepository" }, pure = true)
 	public static IssuesRoot getissues(final IssueRepository f) {
 		if (issuesMap == null)
 			openIssuesMap();
@@ -264,6 +321,70 @@ public class BoaAstIntrinsics {
 		return emptyIssues;
 	}
 
+	/**
+	 * Given an IssueRepository, return the issues created in a time range.
+	 *
+	 * @param f the IssueRepository to get issues for
+	 * @param start the earliest creation time wanted
+	 * @param end the creation time wanted issues are before
+	 * @return the issues list sorted by creation time, or an empty list on any sort of error
+	 */
+	@FunctionSpec(name = "getissues", returnType = "IssuesRoot", formalParameters = { "IssueRepository", "time", "time" }, pure = true)
+	public static IssuesRoot getissues(final IssueRepository f, final long start, final long end) {
+		return getissues(f, start, end, null);
+	}
+
+	/**
+	 * Given an IssueRepository, return the issues with a status.
+	 *
+	 * @param f the IssueRepository to get issues for
+	 * @param status the status wanted
+	 * @return the issues list sorted by creation time, or an empty list on any sort of error
+	 */
+	@FunctionSpec(name = "getissues", returnType = "IssuesRoot", formalParameters = { "IssueRepository", "IssueStatus" }, pure = true)
+	public static IssuesRoot getissues(final IssueRepository f, final IssueStatus status) {
+		return getissues(f, Long.MIN_VALUE, Long.MAX_VALUE, status);
+	}
+
+	/**
+	 * Given an IssueRepository, return the issues with a status created in a
+	 * time range.  Only the issue pages that can hold such issues are read,
+	 * if the dataset has pages.
+	 *
+	 * @param f the IssueRepository to get issues for
+	 * @param start the earliest creation time wanted
+	 * @param end the creation time wanted issues are before
+	 * @param status the status wanted, or null for any
+	 * @return the issues list sorted by creation time, or an empty list on any sort of error
+	 */
+	@FunctionSpec(name = "getissues", returnType = "IssuesRoot", formalParameters = { "IssueRepository", "time", "time", "IssueStatus" }, pure = true)
+	public static IssuesRoot getissues(final IssueRepository f, final long start, final long end, final IssueStatus status) {
+		if (issuePages == null && !issuePagesMissing) {
+			openIssuePages();
+			if (issuePages == null)
+				issuePagesMissing = true;
+		}
+
+		// datasets without pages only have the whole list of each project
+		if (issuePages == null)
+			return IssuePages.filter(getissues(f), start, end, status);
+
+		try {
+			return issuePages.get(f.getKey(), start, end, status);
+		} catch (final InvalidProtocolBufferException e) {
+			e.printStackTrace();
+		} catch (final IOException e) {
+			e.printStackTrace();
+		} catch (final RuntimeException e) {
+			e.printStackTrace();
+		} catch (final Error e) {
+			e.printStackTrace();
+		}
+
+		System.err.println("error with issues: " + f.getKey());
+		return emptyIssues;
+	}
+
 	@SuppressWarnings("rawtypes")
 	public static void setup(final Context context) {
 		BoaAstIntrinsics.context = context;
@@ -341,6 +462,25 @@ public class BoaAstIntrinsics {
 		}
 	}
 
+	private static void openIssuePages() {
+		try {
+			final Configuration conf = context.getConfiguration();
+			final FileSystem fs;
+			final Path p;
+			if (DefaultProperties.localDataPath != null) {
+				p = new Path(DefaultProperties.localDataPath);
+				fs = FileSystem.getLocal(conf);
+			} else {
+				p = new Path(context.getConfiguration().get("fs.default.name", "hdfs://boa-njt/"),
+						conf.get("boa.issues.dir", conf.get("boa.input.dir", "repcache/live")));
+				fs = FileSystem.get(conf);
+			}
+			issuePages = IssuePages.Reader.open(fs, conf, p);
+		} catch (final Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	private static void openCommitMap() {
 		try {
 			final Configuration conf = context.getConfiguration();
@@ -360,12 +500,35 @@ public class BoaAstIntrinsics {
 		}
 	}
 
+	private static void openEditsMap() {
+		try {
+			final Configuration conf = context.getConfiguration();
+			final FileSystem fs;
+			final Path p;
+			if (DefaultProperties.localDataPath != null) {
+				p = new Path(DefaultProperties.localDataPath, "edits");
+				fs = FileSystem.getLocal(conf);
+			} else {
+				p = new Path(context.getConfiguration().get("fs.default.name", "hdfs://boa-njt/"),
+						new Path(conf.get("boa.edits.dir", conf.get("boa.ast.dir", conf.get("boa.input.dir", "repcache/live"))), new Path("edits")));
+				fs = FileSystem.get(conf);
+			}
+			// datasets generated without edit scripts have no edits map
+			if (fs.exists(new Path(p, MapFile.INDEX_FILE_NAME)))
+				editsMap = new MapFile.Reader(fs, p.toString(), conf);
+		} catch (final Exception e) {
+			e.printStackTrace();
+		}
+	}
+
 	@SuppressWarnings("rawtypes")
 	public static void cleanup(final Context context) {
 		closeMap();
 		closeCommentMap();
 		closeIssuesMap();
+		closeIssuePages();
 		closeCommitMap();
+		closeEditsMap();
 	}
 
 	private static void closeMap() {
@@ -398,6 +561,17 @@ public class BoaAstIntrinsics {
 		issuesMap = null;
 	}
 
+	private static void closeIssuePages() {
+		if (issuePages != null)
+			try {
+				issuePages.close();
+			} catch (final IOException e) {
+				e.printStackTrace();
+			}
+		issuePages = null;
+		issuePagesMissing = false;
+	}
+
 	private static void closeCommitMap() {
 		if (commitMap != null)
 			try {
@@ -408,6 +582,17 @@ public class BoaAstIntrinsics {
 		commitMap = null;
 	}
 
+	private static void closeEditsMap() {
+		if (editsMap != null)
+			try {
+				editsMap.close();
+			} catch (final IOException e) {
+				e.printStackTrace();
+			}
+		editsMap = null;
+		editsMissing = false;
+	}
+
 	@FunctionSpec(name = "type_name", returnType = "string", formalParameters = { "string" })
 	public static String type_name(final String s) {
 		// first, normalize the string
@@ -531,6 +716,25 @@ public class BoaAstIntrinsics {
 	// Literal testing functions */
 	///////////////////////////////
 
+	// literal grammars for the is*lit functions, compiled once
+	private static final Pattern[] intLitPatterns = {
+		Pattern.compile("^[0-9][lL]?$"),
+		Pattern.compile("^[1-9][0-9]([0-9_]*[0-9])?[lL]?$"),
+		Pattern.compile("^[1-9][_]+[0-9]([0-9_]*[0-9])?[lL]?$"),
+		Pattern.compile("^0[xX][0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?[lL]?$"),
+		Pattern.compile("^0[_]*[0-7]([0-7_]*[0-7])?[lL]?$"),
+		Pattern.compile("^0[bB][01]([01_]*[01])?[lL]?$")
+	};
+
+	private static final Pattern[] floatLitPatterns = {
+		Pattern.compile("^[0-9]([0-9_]*[0-9])?\\.([0-9]([0-9_]*[0-9])?)?([eE][+-]?[0-9]([0-9_]*[0-9])?)?[fFdD]?$"),
+		Pattern.compile("^\\.[0-9]([0-9_]*[0-9])?([eE][+-]?[0-9]([0-9_]*[0-9])?)?[fFdD]?$"),
+		Pattern.compile("^[0-9]([0-9_]*[0-9])?[eE][+-]?[0-9]([0-9_]*[0-9])?[fFdD]?$"),
+		Pattern.compile("^[0-9]([0-9_]*[0-9])?([eE][+-]?[0-9]([0-9_]*[0-9])?)?[fFdD]$"),
+		Pattern.compile("^0[Xx][0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?\\.?[pP][+-]?[0-9]([0-9_]*[0-9])?[fFdD]?$"),
+		Pattern.compile("^0[Xx]([0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?)?\\.[0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?[pP][+-]?[0-9]([0-9_]*[0-9])?[fFdD]?$")
+	};
+
 	/**
 	 * Returns <code>true</code> if the expression <code>e</code> is of kind
 	 * <code>LITERAL</code> and is an integer literal.
@@ -562,12 +766,9 @@ public class BoaAstIntrinsics {
 	public static boolean isIntLit(final Expression e) throws Exception {
 		if (e.getKind() != Expression.ExpressionKind.LITERAL) return false;
 		if (!e.hasLiteral()) return false;
-		if (e.getLiteral().matches("^[0-9][lL]?$")) return true;
-		if (e.getLiteral().matches("^[1-9][0-9]([0-9_]*[0-9])?[lL]?$")) return true;
-		if (e.getLiteral().matches("^[1-9][_]+[0-9]([0-9_]*[0-9])?[lL]?$")) return true;
-		if (e.getLiteral().matches("^0[xX][0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?[lL]?$")) return true;
-		if (e.getLiteral().matches("^0[_]*[0-7]([0-7_]*[0-7])?[lL]?$")) return true;
-		return e.getLiteral().matches("^0[bB][01]([01_]*[01])?[lL]?$");
+		for (final Pattern p : intLitPatterns)
+			if (p.matcher(e.getLiteral()).matches()) return true;
+		return false;
 	}
 
 	/**
@@ -594,12 +795,9 @@ public class BoaAstIntrinsics {
 	public static boolean isFloatLit(final Expression e) throws Exception {
 		if (e.getKind() != Expression.ExpressionKind.LITERAL) return false;
 		if (!e.hasLiteral()) return false;
-		if (e.getLiteral().matches("^[0-9]([0-9_]*[0-9])?\\.([0-9]([0-9_]*[0-9])?)?([eE][+-]?[0-9]([0-9_]*[0-9])?)?[fFdD]?$")) return true;
-		if (e.getLiteral().matches("^\\.[0-9]([0-9_]*[0-9])?([eE][+-]?[0-9]([0-9_]*[0-9])?)?[fFdD]?$")) return true;
-		if (e.getLiteral().matches("^[0-9]([0-9_]*[0-9])?[eE][+-]?[0-9]([0-9_]*[0-9])?[fFdD]?$")) return true;
-		if (e.getLiteral().matches("^[0-9]([0-9_]*[0-9])?([eE][+-]?[0-9]([0-9_]*[0-9])?)?[fFdD]$")) return true;
-		if (e.getLiteral().matches("^0[Xx][0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?\\.?[pP][+-]?[0-9]([0-9_]*[0-9])?[fFdD]?$")) return true;
-		return e.getLiteral().matches("^0[Xx]([0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?)?\\.[0-9a-fA-F]([0-9a-fA-F_]*[0-9a-fA-F])?[pP][+-]?[0-9]([0-9_]*[0-9])?[fFdD]?$");
+		for (final Pattern p : floatLitPatterns)
+			if (p.matcher(e.getLiteral()).matches()) return true;
+		return false;
 	}
 
 	/**
@@ -702,9 +900,9 @@ public class BoaAstIntrinsics {
 	private static AnnotationCollectingVisitor annotationCollectingVisitor = new AnnotationCollectingVisitor();
 
 	@FunctionSpec(name = "collect_annotations", returnType = "map[string] of int", formalParameters = { "ASTRoot", "map[string] of int" })
-	public static HashMap<String,Long> collect_annotations(final ASTRoot f, final HashMap<String,Long> map) throws Exception {
+	public static BoaStringLongMap collect_annotations(final ASTRoot f, final BoaStringLongMap map) throws Exception {
 		annotationCollectingVisitor.initialize(map).visit(f);
-		return annotationCollectingVisitor.map;
+		return map;
 	}
 
 	///////////////////////////
@@ -728,9 +926,9 @@ public class BoaAstIntrinsics {
 	private static GenericsCollectingVisitor genericsCollectingVisitor = new GenericsCollectingVisitor();
 
 	@FunctionSpec(name = "collect_generic_types", returnType = "map[string] of int", formalParameters = { "ASTRoot", "map[string] of int" })
-	public static HashMap<String,Long> collect_generic_types(final ASTRoot f, final HashMap<String,Long> map) throws Exception {
+	public static BoaStringLongMap collect_generic_types(final ASTRoot f, final BoaStringLongMap map) throws Exception {
 		genericsCollectingVisitor.initialize(map).visit(f);
-		return genericsCollectingVisitor.map;
+		return map;
 	}
 
 	@SuppressWarnings("unused")
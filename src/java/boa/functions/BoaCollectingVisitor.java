@@ -16,7 +16,7 @@
  */
 package boa.functions;
 
-import java.util.HashMap;
+import java.util.Map;
 
 import boa.runtime.BoaAbstractVisitor;
 
@@ -26,9 +26,9 @@ import boa.runtime.BoaAbstractVisitor;
  * @author rdyer
  */
 public class BoaCollectingVisitor<K,V> extends BoaAbstractVisitor {
-	public HashMap<K,V> map;
+	public Map<K,V> map;
 
-	public BoaCollectingVisitor<K,V> initialize(final HashMap<K,V> map) {
+	public BoaCollectingVisitor<K,V> initialize(final Map<K,V> map) {
 		initialize();
 		this.map = map;
 		return this;
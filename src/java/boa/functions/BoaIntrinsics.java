@@ -81,7 +81,7 @@ public class BoaIntrinsics {
 		return -1;
 	}
 
-	@FunctionSpec(name = "getrevisionscount", returnType = "int", formalParameters = { "CodeRepository" })
+	@FunctionSpec(name = "getrevisionscount", returnType = "int", formalParameters = { "CodeRepository" }, pure = true)
 	public static int getRevisionsCount(CodeRepository cr) {
 		return Math.max(cr.getRevisionKeysCount(), cr.getRevisionsCount());
 	}
@@ -95,7 +95,7 @@ public class BoaIntrinsics {
 		return cr.getRevisions((int) index);
 	}
 
-	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "time", "string..." })
+	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "time", "string..." }, pure = true)
 	public static ChangedFile[] getSnapshot(final CodeRepository cr, final long timestamp, final String... kinds) throws Exception {
 //		snapshot.initialize(timestamp, kinds).visit(cr);
 //		return snapshot.map.values().toArray(new ChangedFile[0]);
@@ -105,14 +105,14 @@ public class BoaIntrinsics {
 		return getSnapshotByIndex(cr, revisionOffset, kinds);
 	}
 	
-	@FunctionSpec(name = "getsnapshotbyindex", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "int"})
+	@FunctionSpec(name = "getsnapshotbyindex", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "int"}, pure = true)
 	public static ChangedFile[] getSnapshotByIndex(final CodeRepository cr, final long commitOffset) {
 		if (commitOffset == cr.getHead())
 			return getSnapshot(cr);
 		return getSnapshotByIndex(cr, commitOffset, new String[0]);
 	}
 
-	@FunctionSpec(name = "getsnapshotbyindex", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "int", "string..." })
+	@FunctionSpec(name = "getsnapshotbyindex", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "int", "string..." }, pure = true)
 	public static ChangedFile[] getSnapshotByIndex(final CodeRepository cr, final long commitOffset, final String... kinds) {
 		if (commitOffset == cr.getHead())
 			return getSnapshot(cr, kinds);
@@ -135,12 +135,12 @@ public class BoaIntrinsics {
 		return snapshot.toArray(new ChangedFile[0]);
 	}
 
-	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "Revision"})
+	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "Revision"}, pure = true)
 	public static ChangedFile[] getSnapshot(final CodeRepository cr, final Revision commit) {
 		return getSnapshot(cr, commit, new String[0]);
 	}
 
-	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "Revision", "string..." })
+	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "Revision", "string..." }, pure = true)
 	public static ChangedFile[] getSnapshot(final CodeRepository cr, final Revision commit, final String... kinds) {
 		List<ChangedFile> snapshot = new LinkedList<ChangedFile>();
 		Set<String> adds = new HashSet<String>(), dels = new HashSet<String>(); 
@@ -243,12 +243,12 @@ public class BoaIntrinsics {
 		return false;
 	}
 	
-	@FunctionSpec(name = "getsnapshotbyid", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "string" })
+	@FunctionSpec(name = "getsnapshotbyid", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "string" }, pure = true)
 	public static ChangedFile[] getSnapshotById(final CodeRepository cr, final String id) {
 		return getSnapshotById(cr, id, new String[0]);
 	}
 	
-	@FunctionSpec(name = "getsnapshotbyid", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "string", "string..." })
+	@FunctionSpec(name = "getsnapshotbyid", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "string", "string..." }, pure = true)
 	public static ChangedFile[] getSnapshotById(final CodeRepository cr, final String id, final String... kinds) {
 		if (getRevisionsCount(cr) == 0)
 			return new ChangedFile[0];
@@ -258,7 +258,7 @@ public class BoaIntrinsics {
 		return getSnapshotByIndex(cr, revisionOffset, kinds);
 	}
 
-	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "string..." })
+	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "string..." }, pure = true)
 	public static ChangedFile[] getSnapshot(final CodeRepository cr, final String... kinds) {
 //		return getSnapshot(cr, Long.MAX_VALUE, kinds);
 		List<ChangedFile> files = new ArrayList<ChangedFile>();
@@ -269,18 +269,18 @@ public class BoaIntrinsics {
 		return files.toArray(new ChangedFile[0]);
 	}
 
-	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "time" })
+	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "time" }, pure = true)
 	public static ChangedFile[] getSnapshot(final CodeRepository cr, final long timestamp) throws Exception {
 		return getSnapshot(cr, timestamp, new String[0]);
 	}
 
-	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository" })
+	@FunctionSpec(name = "getsnapshot", returnType = "array of ChangedFile", formalParameters = { "CodeRepository" }, pure = true)
 	public static ChangedFile[] getSnapshot(final CodeRepository cr) {
 //		return getSnapshot(cr, Long.MAX_VALUE, new String[0]);
 		return cr.getHeadSnapshotList().toArray(new ChangedFile[0]);
 	}
 
-	@FunctionSpec(name = "getpreviousversion", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "ChangedFile" })
+	@FunctionSpec(name = "getpreviousversion", returnType = "array of ChangedFile", formalParameters = { "CodeRepository", "ChangedFile" }, pure = true)
 	public static ChangedFile[] getPreviousVersion(final CodeRepository cr, final ChangedFile cf) throws Exception {
 		List<ChangedFile> l = new ArrayList<ChangedFile>();
 		for (int i = 0; i < cf.getChangesCount(); i++) {
@@ -333,7 +333,7 @@ public class BoaIntrinsics {
 	 * @param rev the revision to mine
 	 * @return true if the revision's log indicates a fixing revision
 	 */
-	@FunctionSpec(name = "isfixingrevision", returnType = "bool", formalParameters = { "Revision" })
+	@FunctionSpec(name = "isfixingrevision", returnType = "bool", formalParameters = { "Revision" }, pure = true)
 	public static boolean isfixingrevision(final Revision rev) {
 		return isfixingrevision(rev.getLog());
 	}
@@ -344,7 +344,7 @@ public class BoaIntrinsics {
 	 * @param log the revision's log message to mine
 	 * @return true if the log indicates a fixing revision
 	 */
-	@FunctionSpec(name = "isfixingrevision", returnType = "bool", formalParameters = { "string" })
+	@FunctionSpec(name = "isfixingrevision", returnType = "bool", formalParameters = { "string" }, pure = true)
 	public static boolean isfixingrevision(final String log) {
 		final String lower = log.toLowerCase();
 		for (final Matcher m : fixingMatchers)
@@ -361,7 +361,7 @@ public class BoaIntrinsics {
 	 * @param ext the file extension to look for
 	 * @return true if the Project contains at least 1 file with the specified extension
 	 */
-	@FunctionSpec(name = "hasfiletype", returnType = "bool", formalParameters = { "Project", "string" })
+	@FunctionSpec(name = "hasfiletype", returnType = "bool", formalParameters = { "Project", "string" }, pure = true)
 	public static boolean hasfile(final Project p, final String ext) {
 		for (int i = 0; i < p.getCodeRepositoriesCount(); i++)
 			if (hasfile(p.getCodeRepositories(i), ext))
@@ -376,7 +376,7 @@ public class BoaIntrinsics {
 	 * @param ext the file extension to look for
 	 * @return true if the CodeRepository contains at least 1 file with the specified extension
 	 */
-	@FunctionSpec(name = "hasfiletype", returnType = "bool", formalParameters = { "CodeRepository", "string" })
+	@FunctionSpec(name = "hasfiletype", returnType = "bool", formalParameters = { "CodeRepository", "string" }, pure = true)
 	public static boolean hasfile(final CodeRepository cr, final String ext) {
 		for (int i = 0; i < getRevisionsCount(cr); i++)
 			if (hasfile(getRevision(cr, i), ext))
@@ -391,7 +391,7 @@ public class BoaIntrinsics {
 	 * @param ext the file extension to look for
 	 * @return true if the Revision contains at least 1 file with the specified extension
 	 */
-	@FunctionSpec(name = "hasfiletype", returnType = "bool", formalParameters = { "Revision", "string" })
+	@FunctionSpec(name = "hasfiletype", returnType = "bool", formalParameters = { "Revision", "string" }, pure = true)
 	public static boolean hasfile(final Revision rev, final String ext) {
 		for (int i = 0; i < rev.getFilesCount(); i++)
 			if (rev.getFiles(i).getName().toLowerCase().endsWith("." + ext.toLowerCase()))
@@ -406,7 +406,7 @@ public class BoaIntrinsics {
 	 * @param kind the FileKind to match
 	 * @return true if the string matches the given kind
 	 */
-	@FunctionSpec(name = "iskind", returnType = "bool", formalParameters = { "string", "FileKind" })
+	@FunctionSpec(name = "iskind", returnType = "bool", formalParameters = { "string", "FileKind" }, pure = true, speculative = true)
 	public static boolean iskind(final String s, final ChangedFile.FileKind kind) {
 		return kind.name().startsWith(s);
 	}
@@ -423,6 +423,14 @@ public class BoaIntrinsics {
 		return s.peek();
 	}
 
+	public static long stack_pop(final boa.runtime.BoaLongStack s) {
+		return s.pop();
+	}
+
+	public static long stack_peek(final boa.runtime.BoaLongStack s) {
+		return s.peek();
+	}
+
 	public static String protolistToString(final List<String> l) {
 		String s = "";
 		for (final String str : l)
@@ -587,18 +595,24 @@ public class BoaIntrinsics {
 	}
 
 	public static <T> java.util.HashSet<T> set_union(final java.util.Set<T> s1, final java.util.Set<T> s2) {
+		if (s1 instanceof boa.runtime.BoaPersistentSet)
+			return ((boa.runtime.BoaPersistentSet<T>) s1).union(s2);
 		final java.util.HashSet<T> s = new java.util.HashSet<T>(s1);
 		s.addAll(s2);
 		return s;
 	}
 
 	public static <T> java.util.HashSet<T> set_intersect(final java.util.Set<T> s1, final java.util.Set<T> s2) {
+		if (s1 instanceof boa.runtime.BoaPersistentSet)
+			return ((boa.runtime.BoaPersistentSet<T>) s1).intersect(s2);
 		final java.util.HashSet<T> s = new java.util.HashSet<T>(s1);
 		s.retainAll(s2);
 		return s;
 	}
 
 	public static <T> java.util.HashSet<T> set_difference(final java.util.Set<T> s1, final java.util.Set<T> s2) {
+		if (s1 instanceof boa.runtime.BoaPersistentSet)
+			return ((boa.runtime.BoaPersistentSet<T>) s1).difference(s2);
 		final java.util.HashSet<T> s = new java.util.HashSet<T>(s1);
 		s.removeAll(s2);
 		return s;
@@ -607,4 +621,39 @@ public class BoaIntrinsics {
 	public static <T> java.util.HashSet<T> set_symdiff(final java.util.Set<T> s1, final java.util.Set<T> s2) {
 		return set_union(set_difference(s1, s2), set_difference(s2, s1));
 	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> java.util.HashSet<T> set_clone(final java.util.HashSet<T> s) {
+		return (java.util.HashSet<T>) s.clone();
+	}
+
+	public static boa.runtime.BoaLongSet set_union(final boa.runtime.BoaLongSet s1, final boa.runtime.BoaLongSet s2) {
+		final boa.runtime.BoaLongSet s = s1.clone();
+		s.addAll(s2);
+		return s;
+	}
+
+	public static boa.runtime.BoaLongSet set_intersect(final boa.runtime.BoaLongSet s1, final boa.runtime.BoaLongSet s2) {
+		final boa.runtime.BoaLongSet s = new boa.runtime.BoaLongSet();
+		for (final long v : s1)
+			if (s2.contains(v))
+				s.add(v);
+		return s;
+	}
+
+	public static boa.runtime.BoaLongSet set_difference(final boa.runtime.BoaLongSet s1, final boa.runtime.BoaLongSet s2) {
+		final boa.runtime.BoaLongSet s = new boa.runtime.BoaLongSet();
+		for (final long v : s1)
+			if (!s2.contains(v))
+				s.add(v);
+		return s;
+	}
+
+	public static boa.runtime.BoaLongSet set_symdiff(final boa.runtime.BoaLongSet s1, final boa.runtime.BoaLongSet s2) {
+		return set_union(set_difference(s1, s2), set_difference(s2, s1));
+	}
+
+	public static boa.runtime.BoaLongSet set_clone(final boa.runtime.BoaLongSet s) {
+		return s.clone();
+	}
 }
@@ -16,29 +16,270 @@
  */
 package boa.functions;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Stack;
 
+import boa.runtime.BoaAbstractVisitor;
+import boa.runtime.BoaStringLongMap;
 import boa.types.Ast.*;
+import boa.types.Code.CodeRepository;
+import boa.types.Diff.ChangedFile;
+import boa.types.Toplevel.Project;
 
 /**
  * Boa domain-specific functions for computing software engineering metrics.
  * 
+ * The per-declaration metrics are all computed together, in one traversal
+ * of the declaration, and remembered for later calls on the same node.
+ * Metrics relating a declaration to other types (DIT, CBC and CA) look them
+ * up in an index of the types declared in the current project's snapshot,
+ * built the first time one of them is asked for.
+ * 
  * @author rdyer
  */
 public class BoaMetricIntrinsics {
-	////////////////////////////////
-	// Number of Attributes (NOA) //
-	////////////////////////////////
+	///////////////////
+	// Metric engine //
+	///////////////////
+
+	/**
+	 * The metrics of one declaration.
+	 */
+	static final class Metrics {
+		/** the simple name of the declaration */
+		String name;
+		/** the simple name of the declaration's superclass, or null */
+		String parent;
+		/** the simple names of the types the declaration itself uses */
+		final Set<String> uses = new HashSet<String>();
+
+		long noa, noo, npm, lcoo, rfc;
+	}
+
+	// the state of a declaration whose traversal is not finished yet
+	private static final class Frame {
+		final Metrics metrics = new Metrics();
+		final Set<String> fields = new HashSet<String>();
+		final List<Set<String>> methodFields = new ArrayList<Set<String>>();
+		final Set<String> response = new HashSet<String>();
+		Set<String> method;
+	}
+
+	/**
+	 * Computes the metrics of a declaration and of every declaration nested
+	 * in it.  NOA, NOO and NPM are over the declaration's whole subtree,
+	 * the others over the declaration's own members.
+	 */
+	private static class MetricsVisitor extends BoaAbstractVisitor {
+		private final Map<Declaration, Metrics> memo;
+		private final List<Metrics> types;
+		private final Stack<Frame> frames = new Stack<Frame>();
+
+		MetricsVisitor(final Map<Declaration, Metrics> memo, final List<Metrics> types) {
+			this.memo = memo;
+			this.types = types;
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public BoaAbstractVisitor initialize() {
+			frames.clear();
+			return super.initialize();
+		}
+
+		@Override
+		protected boolean preVisit(final Declaration node) throws Exception {
+			final Frame f = new Frame();
+			f.metrics.name = simpleName(node.getName());
+			for (final Type t : node.getParentsList())
+				if (t.getKind() == TypeKind.CLASS) {
+					f.metrics.parent = simpleName(t.getName());
+					break;
+				}
+			for (final Variable v : node.getFieldsList())
+				f.fields.add(v.getName());
+			if (node.getKind() == TypeKind.CLASS) {
+				f.metrics.noa = node.getFieldsCount();
+				f.metrics.noo = node.getMethodsCount();
+			}
+			frames.push(f);
+			return true;
+		}
+
+		@Override
+		protected void postVisit(final Declaration node) throws Exception {
+			final Frame f = frames.pop();
+			final Metrics m = f.metrics;
+
+			// LCOO is the pairs of methods sharing no field less the pairs sharing one
+			long disjoint = 0, shared = 0;
+			for (int i = 0; i < f.methodFields.size(); i++)
+				for (int j = i + 1; j < f.methodFields.size(); j++)
+					if (intersects(f.methodFields.get(i), f.methodFields.get(j)))
+						shared++;
+					else
+						disjoint++;
+			m.lcoo = Math.max(disjoint - shared, 0);
+			m.rfc = f.response.size();
+
+			if (!frames.isEmpty()) {
+				final Metrics outer = frames.peek().metrics;
+				outer.noa += m.noa;
+				outer.noo += m.noo;
+				outer.npm += m.npm;
+			}
+
+			if (memo != null)
+				memo.put(node, m);
+			if (types != null)
+				types.add(m);
+		}
 
-	private static class BoaNOAVisitor extends BoaCountingVisitor {
 		@Override
-		public boolean preVisit(final Declaration node) {
-			if (node.getKind() == TypeKind.CLASS)
-				count += node.getFieldsCount();
+		protected boolean preVisit(final Method node) throws Exception {
+			if (frames.isEmpty())
+				return true;
+			final Frame f = frames.peek();
+			if (BoaModifierIntrinsics.hasModifierPublic(node))
+				f.metrics.npm++;
+			f.response.add(node.getName() + "/" + node.getArgumentsCount());
+			f.method = new HashSet<String>();
+			f.methodFields.add(f.method);
 			return true;
 		}
+
+		@Override
+		protected void postVisit(final Method node) throws Exception {
+			if (!frames.isEmpty())
+				frames.peek().method = null;
+		}
+
+		@Override
+		protected boolean preVisit(final Type node) throws Exception {
+			if (!frames.isEmpty() && node.hasName())
+				frames.peek().metrics.uses.add(simpleName(node.getName()));
+			return true;
+		}
+
+		@Override
+		protected boolean preVisit(final Expression node) throws Exception {
+			if (frames.isEmpty())
+				return true;
+			if (node.getKind() == Expression.ExpressionKind.METHODCALL) {
+				frames.peek().response.add(node.getMethod() + "/" + node.getMethodArgsCount());
+			} else if (node.getKind() == Expression.ExpressionKind.VARACCESS) {
+				if (node.getExpressionsCount() == 0) {
+					// the innermost declaration with that field
+					for (int i = frames.size() - 1; i >= 0; i--)
+						if (frames.get(i).fields.contains(node.getVariable())) {
+							useField(frames.get(i), node.getVariable());
+							break;
+						}
+				} else if (node.getExpressionsCount() == 1 && isThis(node.getExpressions(0))) {
+					if (frames.peek().fields.contains(node.getVariable()))
+						useField(frames.peek(), node.getVariable());
+				}
+			}
+			return true;
+		}
+
+		private static void useField(final Frame f, final String field) {
+			if (f.method != null)
+				f.method.add(field);
+		}
+
+		private static boolean isThis(final Expression e) {
+			return e.getKind() == Expression.ExpressionKind.LITERAL && e.getLiteral().equals("this");
+		}
+
+		private static boolean intersects(final Set<String> a, final Set<String> b) {
+			for (final String s : a)
+				if (b.contains(s))
+					return true;
+			return false;
+		}
 	}
-	private static BoaNOAVisitor noaVisitor = new BoaNOAVisitor();
+
+	// the most declarations to remember metrics for, before forgetting them all
+	private static final int MAX_MEMO = 1 << 14;
+
+	private static final Map<Declaration, Metrics> memo = new IdentityHashMap<Declaration, Metrics>();
+	private static final MetricsVisitor memoVisitor = new MetricsVisitor(memo, null);
+
+	private static Project project;
+	private static Map<String, Metrics> index;
+	private static Map<String, Long> afferent;
+
+	/**
+	 * Sets the project being processed, forgetting everything known about
+	 * the previous one.
+	 * 
+	 * @param p the project
+	 */
+	public static void setProject(final Project p) {
+		project = p;
+		memo.clear();
+		index = null;
+		afferent = null;
+	}
+
+	static Metrics metrics(final Declaration node) throws Exception {
+		Metrics m = memo.get(node);
+		if (m == null) {
+			if (memo.size() >= MAX_MEMO)
+				memo.clear();
+			memoVisitor.initialize().visit(node);
+			m = memo.get(node);
+		}
+		return m;
+	}
+
+	// indexes, by simple name, the types declared in the current project's snapshot
+	private static Map<String, Metrics> index() throws Exception {
+		if (index == null) {
+			index = new HashMap<String, Metrics>();
+			afferent = new HashMap<String, Long>();
+			if (project != null) {
+				final List<Metrics> types = new ArrayList<Metrics>();
+				final MetricsVisitor v = new MetricsVisitor(null, types);
+				for (final CodeRepository cr : project.getCodeRepositoriesList())
+					for (final ChangedFile f : BoaIntrinsics.getSnapshot(cr))
+						v.initialize().visit(BoaAstIntrinsics.getast(f));
+				for (final Metrics t : types) {
+					if (!index.containsKey(t.name))
+						index.put(t.name, t);
+					for (final String u : t.uses)
+						if (!u.equals(t.name))
+							afferent.put(u, afferent.containsKey(u) ? afferent.get(u) + 1 : 1);
+				}
+			}
+		}
+		return index;
+	}
+
+	// the simple name of a type, without its package, type arguments or array dimensions
+	static String simpleName(final String type) {
+		String s = type;
+		final int lt = s.indexOf('<');
+		if (lt >= 0)
+			s = s.substring(0, lt);
+		final int lb = s.indexOf('[');
+		if (lb >= 0)
+			s = s.substring(0, lb);
+		if (s.endsWith("..."))
+			s = s.substring(0, s.length() - 3);
+		return s.substring(s.lastIndexOf('.') + 1).trim();
+	}
+
+	////////////////////////////////
+	// Number of Attributes (NOA) //
+	////////////////////////////////
 
 	/**
 	 * Computes the Number of Attributes (NOA) metric for a node.
@@ -48,24 +289,13 @@ public class BoaMetricIntrinsics {
 	 */
 	@FunctionSpec(name = "get_metric_noa", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricNOA(final Declaration node) throws Exception {
-		noaVisitor.initialize().visit(node);
-		return noaVisitor.count;
+		return metrics(node).noa;
 	}
 
 	////////////////////////////////
 	// Number of Operations (NOO) //
 	////////////////////////////////
 
-	private static class BoaNOOVisitor extends BoaCountingVisitor {
-		@Override
-		public boolean preVisit(final Declaration node) {
-			if (node.getKind() == TypeKind.CLASS)
-				count += node.getMethodsCount();
-    		return true;
-		}
-	}
-	private static BoaNOOVisitor nooVisitor = new BoaNOOVisitor();
-
 	/**
 	 * Computes the Number of Operations (NOO) metric for a node.
 	 * 
@@ -74,24 +304,13 @@ public class BoaMetricIntrinsics {
 	 */
 	@FunctionSpec(name = "get_metric_noo", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricNOO(final Declaration node) throws Exception {
-		nooVisitor.initialize().visit(node);
-		return nooVisitor.count;
+		return metrics(node).noo;
 	}
 
 	////////////////////////////////////
 	// Number of Public Methods (NPM) //
 	////////////////////////////////////
 
-	private static class BoaNPMVisitor extends BoaCountingVisitor {
-		@Override
-		public boolean preVisit(final Method node) {
-    		if (BoaModifierIntrinsics.hasModifierPublic(node))
-    			count++;
-    		return true;
-		}
-	}
-	private static BoaNPMVisitor npmVisitor = new BoaNPMVisitor();
-
 	/**
 	 * Computes the Number of Public Methods (NPM) metric for a node.
 	 * 
@@ -100,8 +319,7 @@ public class BoaMetricIntrinsics {
 	 */
 	@FunctionSpec(name = "get_metric_npm", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricNPM(final Declaration node) throws Exception {
-		npmVisitor.initialize().visit(node);
-		return npmVisitor.count;
+		return metrics(node).npm;
 	}
 
 	////////////////////////////////
@@ -134,113 +352,111 @@ public class BoaMetricIntrinsics {
 	 * @return a map containing partial computation of the NOC metric
 	 */
 	@FunctionSpec(name = "get_metric_noc", returnType = "map[string] of int", formalParameters = { "ASTRoot" })
-	public static HashMap<String,Long> getMetricNOC(final ASTRoot node) throws Exception {
-		nocVisitor.initialize(new HashMap<String,Long>()).visit(node);
-		return nocVisitor.map;
+	public static BoaStringLongMap getMetricNOC(final ASTRoot node) throws Exception {
+		final BoaStringLongMap map = new BoaStringLongMap();
+		nocVisitor.initialize(map).visit(node);
+		return map;
 	}
 
 	///////////////////////////////////////////
 	// Lack of Cohesion in Operations (LCOO) //
 	///////////////////////////////////////////
 
-	private static class BoaLCOOVisitor extends BoaCountingVisitor {
-		// TODO
-	}
-	private static BoaLCOOVisitor lcooVisitor = new BoaLCOOVisitor();
-
 	/**
-	 * Computes the Lack of Cohesion in Operations (LCOO) metric for a node.
+	 * Computes the Lack of Cohesion in Operations (LCOO) metric for a node:
+	 * the number of pairs of its methods using no common field, less the
+	 * number of pairs using one, or 0 if that is negative.
 	 * 
 	 * @param node the node to compute LCOO for
 	 * @return the LCOO value for node
 	 */
 	@FunctionSpec(name = "get_metric_lcoo", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricLCOO(final Declaration node) throws Exception {
-		lcooVisitor.initialize().visit(node);
-		return lcooVisitor.count;
+		return metrics(node).lcoo;
 	}
 
 	/////////////////////////////////////
 	// Depth of Inheritance Tree (DIT) //
 	/////////////////////////////////////
 
-	private static class BoaDITVisitor extends BoaCountingVisitor {
-		// TODO
-	}
-	private static BoaDITVisitor ditVisitor = new BoaDITVisitor();
-
 	/**
-	 * Computes the Depth of Inheritance Tree (DIT) metric for a node.
+	 * Computes the Depth of Inheritance Tree (DIT) metric for a node: the
+	 * number of its superclasses.  A superclass not declared in the project
+	 * ends the chain.
 	 * 
 	 * @param node the node to compute DIT for
 	 * @return the DIT value for node
 	 */
 	@FunctionSpec(name = "get_metric_dit", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricDIT(final Declaration node) throws Exception {
-		ditVisitor.initialize().visit(node);
-		return ditVisitor.count;
+		final Metrics m = metrics(node);
+		final Map<String, Metrics> types = index();
+		final Set<String> seen = new HashSet<String>();
+		seen.add(m.name);
+
+		long dit = 0;
+		for (String parent = m.parent; parent != null && seen.add(parent); dit++) {
+			final Metrics p = types.get(parent);
+			parent = p == null ? null : p.parent;
+		}
+		return dit;
 	}
 
 	////////////////////////////////
 	// Response For a Class (RFC) //
 	////////////////////////////////
 
-	private static class BoaRFCVisitor extends BoaCountingVisitor {
-		// TODO
-	}
-	private static BoaRFCVisitor rfcVisitor = new BoaRFCVisitor();
-
 	/**
-	 * Computes the Response For a Class (RFC) metric for a node.
+	 * Computes the Response For a Class (RFC) metric for a node: the number
+	 * of distinct methods it declares or calls.
 	 * 
 	 * @param node the node to compute RFC for
 	 * @return the RFC value for node
 	 */
 	@FunctionSpec(name = "get_metric_rfc", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricRFC(final Declaration node) throws Exception {
-		rfcVisitor.initialize().visit(node);
-		return rfcVisitor.count;
+		return metrics(node).rfc;
 	}
 
 	////////////////////////////////////
 	// Coupling Between Classes (CBC) //
 	////////////////////////////////////
 
-	private static class BoaCBCVisitor extends BoaCountingVisitor {
-		// TODO
-	}
-	private static BoaCBCVisitor cbcVisitor = new BoaCBCVisitor();
-
 	/**
-	 * Computes the Coupling Between Classes (CBC) metric for a node.
+	 * Computes the Coupling Between Classes (CBC) metric for a node: the
+	 * number of other types declared in the project that it uses.
 	 * 
 	 * @param node the node to compute CBC for
 	 * @return the CBC value for node
 	 */
 	@FunctionSpec(name = "get_metric_cbc", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricCBC(final Declaration node) throws Exception {
-		cbcVisitor.initialize().visit(node);
-		return cbcVisitor.count;
+		final Metrics m = metrics(node);
+		final Map<String, Metrics> types = index();
+
+		long cbc = 0;
+		for (final String u : m.uses)
+			if (!u.equals(m.name) && types.containsKey(u))
+				cbc++;
+		return cbc;
 	}
 
 	////////////////////////////
 	// Afferent Coupling (CA) //
 	////////////////////////////
 
-	private static class BoaCAVisitor extends BoaCountingVisitor {
-		// TODO
-	}
-	private static BoaCAVisitor caVisitor = new BoaCAVisitor();
-
 	/**
-	 * Computes the Afferent Coupling (CA) metric for a node.
+	 * Computes the Afferent Coupling (CA) metric for a node: the number of
+	 * other types declared in the project that use it.
 	 * 
 	 * @param node the node to compute CA for
 	 * @return the CA value for node
 	 */
 	@FunctionSpec(name = "get_metric_ca", returnType = "int", formalParameters = { "Declaration" })
 	public static long getMetricCA(final Declaration node) throws Exception {
-		caVisitor.initialize().visit(node);
-		return caVisitor.count;
+		final Metrics m = metrics(node);
+		index();
+		final Long ca = afferent.get(m.name);
+		return ca == null ? 0 : ca;
 	}
 }
@@ -20,9 +20,13 @@ import java.io.UnsupportedEncodingException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.util.*;
+import java.util.regex.Pattern;
+
+import org.apache.hadoop.mapreduce.Mapper;
 
 import boa.graphs.pdg.PDG;
 import boa.graphs.pdg.PDGEdge;
+import boa.graphs.pdg.PDGFingerprint;
 import boa.graphs.pdg.PDGNode;
 import boa.graphs.slicers.PDGSlicer;
 import boa.types.Ast;
@@ -42,6 +46,8 @@ import static boa.functions.BoaAstIntrinsics.prettyprint;
  * @author cheshianhung
  */
 public class BoaNormalFormIntrinsics {
+	private static final Pattern argVariable = Pattern.compile("arg\\$[0-9]+");
+
 	/**
 	 * Gives list of non-argument variables present in a predicate expression
 	 *
@@ -55,7 +61,7 @@ public class BoaNormalFormIntrinsics {
 
 		if (e.getKind() == ExpressionKind.VARACCESS) {
 			final String var = e.getVariable();
-			if (!var.matches("arg\\$[0-9]+") && !"rcv$".equals(var))
+			if (!argVariable.matcher(var).matches() && !"rcv$".equals(var))
 				variableList.add(e);
 		} else {
 			for (final Expression sub : e.getExpressionsList())
@@ -2939,6 +2945,69 @@ public class BoaNormalFormIntrinsics {
 		return sBDigest.toString();
 	}
 
+	public static enum FINGERPRINTCOUNTER {
+		COMPUTED,
+		COLLISIONS,
+	};
+
+	// recently seen fingerprints and their checksums, for collision counting
+	private static final int MAX_SEEN_FINGERPRINTS = 1 << 16;
+	private static final Map<Long, Long> seenFingerprints = new LinkedHashMap<Long, Long>(1024, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(final Map.Entry<Long, Long> eldest) {
+			return size() > MAX_SEEN_FINGERPRINTS;
+		}
+	};
+
+	/**
+	 * Returns a canonical structural fingerprint of the pdg. Structurally
+	 * identical graphs (after normalization, if any) get the same fingerprint
+	 * regardless of node ids, so the value can be used directly as an output
+	 * index for clone detection.
+	 *
+	 * @param pdg PDG graph
+	 * @return the fingerprint of the pdg
+	 */
+	@FunctionSpec(name = "getfingerprint", returnType = "int", formalParameters = { "PDG" })
+	public static long getFingerprint(final PDG pdg) {
+		return getFingerprint(pdg.getNodes());
+	}
+
+	/**
+	 * Returns a canonical structural fingerprint of the slice.
+	 *
+	 * @param pdgslice slice of the PDG graph
+	 * @return the fingerprint of the slice
+	 */
+	@FunctionSpec(name = "getfingerprint", returnType = "int", formalParameters = { "PDGSlicer" })
+	public static long getFingerprint(final PDGSlicer pdgslice) {
+		return getFingerprint(pdgslice.getSlice());
+	}
+
+	/**
+	 * Returns the fingerprint of the given pdg nodes and updates the
+	 * fingerprint counters. A collision is counted whenever a recently seen
+	 * fingerprint comes back with a different checksum.
+	 *
+	 * @param nodes the pdg nodes
+	 * @return the fingerprint of the nodes
+	 */
+	private static long getFingerprint(final Collection<PDGNode> nodes) {
+		final PDGFingerprint fp = new PDGFingerprint(nodes);
+		final Long checksum = seenFingerprints.put(fp.getFingerprint(), fp.getChecksum());
+
+		final Mapper<?, ?, ?, ?>.Context context = BoaAstIntrinsics.context;
+		if (context != null) {
+			context.getCounter(FINGERPRINTCOUNTER.COMPUTED).increment(1);
+			if (checksum != null && checksum.longValue() != fp.getChecksum())
+				context.getCounter(FINGERPRINTCOUNTER.COLLISIONS).increment(1);
+		}
+
+		return fp.getFingerprint();
+	}
+
 	/**
 	 * Returns the normalized statement given the normalized variable map
 	 *
@@ -2958,7 +3027,7 @@ public class BoaNormalFormIntrinsics {
 					return stmt;
 				final Statement.Builder sb = Statement.newBuilder(stmt);
 				sb.setKind(stmt.getKind());
-				sb.addExpressions(normalizeExpression(stmt.getExpressions(0), normalizedVars));
+				sb.setExpressions(0, normalizeExpression(stmt.getExpressions(0), normalizedVars));
 				return sb.build();
 
 			case OTHER:
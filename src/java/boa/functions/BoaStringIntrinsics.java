@@ -16,8 +16,8 @@
  */
 package boa.functions;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -36,7 +36,7 @@ public class BoaStringIntrinsics {
 	 * 
 	 * @return A copy of <i>s</i> with all leading and trailing whitespace removed.
 	 */
-	@FunctionSpec(name = "trim", returnType = "string", formalParameters = { "string" })
+	@FunctionSpec(name = "trim", returnType = "string", formalParameters = { "string" }, pure = true, speculative = true)
 	public static String trim(final String s) {
 		return s.trim();
 	}
@@ -50,7 +50,7 @@ public class BoaStringIntrinsics {
 	 * @return A copy of <i>s</i> with all characters converted to lower case,
 	 *         as defined by Unicode.
 	 */
-	@FunctionSpec(name = "lowercase", returnType = "string", formalParameters = { "string" })
+	@FunctionSpec(name = "lowercase", returnType = "string", formalParameters = { "string" }, pure = true, speculative = true)
 	public static String lowerCase(final String s) {
 		return s.toLowerCase();
 	}
@@ -64,7 +64,7 @@ public class BoaStringIntrinsics {
 	 * @return A copy of <i>s</i> with all characters converted to upper case,
 	 *         as defined by Unicode.
 	 */
-	@FunctionSpec(name = "uppercase", returnType = "string", formalParameters = { "string" })
+	@FunctionSpec(name = "uppercase", returnType = "string", formalParameters = { "string" }, pure = true, speculative = true)
 	public static String upperCase(final String s) {
 		return s.toUpperCase();
 	}
@@ -84,7 +84,7 @@ public class BoaStringIntrinsics {
 	 *         <em>p</em> within <em>s</em> and return the integer index of its
 	 *         first character, or -1 if it does not occur
 	 */
-	@FunctionSpec(name = "strfind", returnType = "int", formalParameters = { "string", "string" })
+	@FunctionSpec(name = "strfind", returnType = "int", formalParameters = { "string", "string" }, pure = true, speculative = true)
 	public static long indexOf(final String p, final String s) {
 		return s.indexOf(p);
 	}
@@ -104,7 +104,7 @@ public class BoaStringIntrinsics {
 	 *         <em>p</em> within <em>s</em> and return the integer index of its
 	 *         first character, or -1 if it does not occur
 	 */
-	@FunctionSpec(name = "strrfind", returnType = "int", formalParameters = { "string", "string" })
+	@FunctionSpec(name = "strrfind", returnType = "int", formalParameters = { "string", "string" }, pure = true, speculative = true)
 	public static long lastIndexOf(final String p, final String s) {
 		return s.lastIndexOf(p);
 	}
@@ -144,9 +144,13 @@ public class BoaStringIntrinsics {
 	 * 
 	 * @return the substrings of <em>str</em>, split once by <em>regex</em>
 	 */
-	@FunctionSpec(name = "split", returnType = "array of string", formalParameters = { "string", "string"})
+	@FunctionSpec(name = "split", returnType = "array of string", formalParameters = { "string", "string"}, pure = true)
 	public static String[] split(final String str, final String regex) {
-		return str.split(regex, 1);
+		return split(str, getPattern(regex));
+	}
+
+	public static String[] split(final String str, final Pattern regex) {
+		return regex.split(str, 1);
 	}
 
 	/**
@@ -158,9 +162,13 @@ public class BoaStringIntrinsics {
 	 * 
 	 * @return the substrings of <em>str</em>, split at most <em>n</em> times by <em>regex</em>
 	 */
-	@FunctionSpec(name = "splitn", returnType = "array of string", formalParameters = { "string", "string", "int"})
+	@FunctionSpec(name = "splitn", returnType = "array of string", formalParameters = { "string", "string", "int"}, pure = true)
 	public static String[] splitn(final String str, final String regex, final long n) {
-		return str.split(regex, (int)n);
+		return splitn(str, getPattern(regex), n);
+	}
+
+	public static String[] splitn(final String str, final Pattern regex, final long n) {
+		return regex.split(str, (int)n);
 	}
 
 	/**
@@ -171,9 +179,13 @@ public class BoaStringIntrinsics {
 	 * 
 	 * @return the substrings of <em>str</em>, split entirely by <em>regex</em>
 	 */
-	@FunctionSpec(name = "splitall", returnType = "array of string", formalParameters = { "string", "string"})
+	@FunctionSpec(name = "splitall", returnType = "array of string", formalParameters = { "string", "string"}, pure = true)
 	public static String[] splitall(final String str, final String regex) {
-		return str.split(regex);
+		return splitall(str, getPattern(regex));
+	}
+
+	public static String[] splitall(final String str, final Pattern regex) {
+		return regex.split(str);
 	}
 
 	/**
@@ -197,7 +209,7 @@ public class BoaStringIntrinsics {
 	 * @return A copy of {@link String} <em>str</em>, with non-overlapping
 	 *         instances of <em>lit</em> replaced by <em>rep</em>
 	 */
-	@FunctionSpec(name = "strreplace", returnType = "string", formalParameters = { "string", "string", "string", "bool" })
+	@FunctionSpec(name = "strreplace", returnType = "string", formalParameters = { "string", "string", "string", "bool" }, pure = true)
 	public static String stringReplace(final String str, final String lit, final String rep, final boolean replaceAll) {
 		if (replaceAll)
 			return str.replace(lit, rep);
@@ -206,12 +218,20 @@ public class BoaStringIntrinsics {
 	}
 
 	// cache the regular expression patterns for performance
-	private static Map<String, Matcher> matchers = new HashMap<String, Matcher>();
+	// regex arguments that are literals are instead compiled once into the generated job class
+	private static final int MAX_PATTERNS = 1024;
+	private static final ConcurrentMap<String, Pattern> patterns = new ConcurrentHashMap<String, Pattern>();
 
-	private static Matcher getMatcher(final String r) {
-		if (!matchers.containsKey(r))
-			matchers.put(r, Pattern.compile(r).matcher(""));
-		return matchers.get(r);
+	static Pattern getPattern(final String r) {
+		Pattern p = patterns.get(r);
+		if (p == null) {
+			p = Pattern.compile(r);
+			// keep the cache bounded: programs building regexes from data would otherwise grow it forever
+			if (patterns.size() >= MAX_PATTERNS)
+				patterns.clear();
+			patterns.putIfAbsent(r, p);
+		}
+		return p;
 	}
 
 	/**
@@ -228,10 +248,13 @@ public class BoaStringIntrinsics {
 	 * @return A boolean representing whether the regular expression <em>r</em>
 	 *         was found within <em>s</em>
 	 */
-	@FunctionSpec(name = "match", returnType = "bool", formalParameters = { "string", "string" })
+	@FunctionSpec(name = "match", returnType = "bool", formalParameters = { "string", "string" }, pure = true)
 	public static boolean match(final String r, final String s) {
-		final Matcher m = getMatcher(r).reset(s);
-		return m.find();
+		return match(getPattern(r), s);
+	}
+
+	public static boolean match(final Pattern r, final String s) {
+		return r.matcher(s).find();
 	}
 
 	/**
@@ -250,9 +273,13 @@ public class BoaStringIntrinsics {
 	 * @return An array of long consisting of character positions within
 	 *         <em>s</em> defined by the match
 	 */
-	@FunctionSpec(name = "matchposns", returnType = "array of int", formalParameters = { "string", "string" })
+	@FunctionSpec(name = "matchposns", returnType = "array of int", formalParameters = { "string", "string" }, pure = true)
 	public static long[] matchPositions(final String r, final String s) {
-		final Matcher m = getMatcher(r).reset(s);
+		return matchPositions(getPattern(r), s);
+	}
+
+	public static long[] matchPositions(final Pattern r, final String s) {
+		final Matcher m = r.matcher(s);
 
 		if (!m.find())
 			return new long[0];
@@ -286,9 +313,13 @@ public class BoaStringIntrinsics {
 	 * @return an array of {@link String} consisting of matched substrings of
 	 *         <em>s</em>
 	 */
-	@FunctionSpec(name = "matchstrs", returnType = "array of string", formalParameters = { "string", "string" })
+	@FunctionSpec(name = "matchstrs", returnType = "array of string", formalParameters = { "string", "string" }, pure = true)
 	public static String[] matchStrings(final String r, final String s) {
-		final Matcher m = getMatcher(r).reset(s);
+		return matchStrings(getPattern(r), s);
+	}
+
+	public static String[] matchStrings(final Pattern r, final String s) {
+		final Matcher m = r.matcher(s);
 
 		if (!m.find())
 			return new String[0];
@@ -18,9 +18,9 @@ package boa.functions;
 
 import java.text.SimpleDateFormat;
 import java.util.Calendar;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.TimeZone;
 
 /**
  * These functions manipulate time values. Although one may do simple arithmetic
@@ -34,38 +34,133 @@ import java.util.TimeZone;
  * @author anthonyu
  */
 public class BoaTimeIntrinsics {
-	private static Map<Character, SimpleDateFormat> strftimeMap = new HashMap<Character, SimpleDateFormat>();
+	private static final long MILLIS_PER_DAY = TimeZoneRules.MILLIS_PER_DAY;
+
+	private static final TimeZoneRules defaultZone = TimeZoneRules.forId("PST8PDT");
+
+	private static Map<Character, String> strftimeMap = new HashMap<Character, String>();
 
 	static {
-		BoaTimeIntrinsics.strftimeMap.put('a', new SimpleDateFormat("E"));
-		BoaTimeIntrinsics.strftimeMap.put('A', new SimpleDateFormat("EEEE"));
-		BoaTimeIntrinsics.strftimeMap.put('b', new SimpleDateFormat("MMM"));
-		BoaTimeIntrinsics.strftimeMap.put('B', new SimpleDateFormat("MMMM"));
-		BoaTimeIntrinsics.strftimeMap.put('c', new SimpleDateFormat("E MMM d HH:mm:ss yyyy"));
-		BoaTimeIntrinsics.strftimeMap.put('d', new SimpleDateFormat("dd"));
-		BoaTimeIntrinsics.strftimeMap.put('H', new SimpleDateFormat("HH"));
-		BoaTimeIntrinsics.strftimeMap.put('I', new SimpleDateFormat("hh"));
-		BoaTimeIntrinsics.strftimeMap.put('j', new SimpleDateFormat("DDD"));
-		BoaTimeIntrinsics.strftimeMap.put('m', new SimpleDateFormat("MM"));
-		BoaTimeIntrinsics.strftimeMap.put('M', new SimpleDateFormat("mm"));
-		BoaTimeIntrinsics.strftimeMap.put('p', new SimpleDateFormat("aa"));
-		BoaTimeIntrinsics.strftimeMap.put('S', new SimpleDateFormat("ss"));
-		BoaTimeIntrinsics.strftimeMap.put('U', new SimpleDateFormat("ww"));
-		BoaTimeIntrinsics.strftimeMap.put('w', new SimpleDateFormat("F"));
-		BoaTimeIntrinsics.strftimeMap.put('W', new SimpleDateFormat("ww"));
-		BoaTimeIntrinsics.strftimeMap.put('x', new SimpleDateFormat("MM/dd/yy"));
-		BoaTimeIntrinsics.strftimeMap.put('X', new SimpleDateFormat("HH:mm:ss"));
-		BoaTimeIntrinsics.strftimeMap.put('y', new SimpleDateFormat("yy"));
-		BoaTimeIntrinsics.strftimeMap.put('Y', new SimpleDateFormat("yyyy"));
-		BoaTimeIntrinsics.strftimeMap.put('Z', new SimpleDateFormat("zzz"));
-	}
-
-	private static long addPart(final int part, final long t, final long n, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
-
-		calendar.add(part, (int) n);
+		BoaTimeIntrinsics.strftimeMap.put('a', "E");
+		BoaTimeIntrinsics.strftimeMap.put('A', "EEEE");
+		BoaTimeIntrinsics.strftimeMap.put('b', "MMM");
+		BoaTimeIntrinsics.strftimeMap.put('B', "MMMM");
+		BoaTimeIntrinsics.strftimeMap.put('c', "E MMM d HH:mm:ss yyyy");
+		BoaTimeIntrinsics.strftimeMap.put('d', "dd");
+		BoaTimeIntrinsics.strftimeMap.put('H', "HH");
+		BoaTimeIntrinsics.strftimeMap.put('I', "hh");
+		BoaTimeIntrinsics.strftimeMap.put('j', "DDD");
+		BoaTimeIntrinsics.strftimeMap.put('m', "MM");
+		BoaTimeIntrinsics.strftimeMap.put('M', "mm");
+		BoaTimeIntrinsics.strftimeMap.put('p', "aa");
+		BoaTimeIntrinsics.strftimeMap.put('S', "ss");
+		BoaTimeIntrinsics.strftimeMap.put('U', "ww");
+		BoaTimeIntrinsics.strftimeMap.put('w', "F");
+		BoaTimeIntrinsics.strftimeMap.put('W', "ww");
+		BoaTimeIntrinsics.strftimeMap.put('x', "MM/dd/yy");
+		BoaTimeIntrinsics.strftimeMap.put('X', "HH:mm:ss");
+		BoaTimeIntrinsics.strftimeMap.put('y', "yy");
+		BoaTimeIntrinsics.strftimeMap.put('Y', "yyyy");
+		BoaTimeIntrinsics.strftimeMap.put('Z', "zzz");
+	}
+
+	// SimpleDateFormat is not thread-safe, so every thread gets its own
+	private static final ThreadLocal<Map<Character, SimpleDateFormat>> formatters = new ThreadLocal<Map<Character, SimpleDateFormat>>() {
+		@Override
+		protected Map<Character, SimpleDateFormat> initialValue() {
+			return new HashMap<Character, SimpleDateFormat>();
+		}
+	};
+
+	/*
+	 * The fast paths below work on local milliseconds (an instant plus its
+	 * zone offset) and days since 1970-01-01 in the proleptic Gregorian
+	 * calendar.  Anything the zone rules can not resolve unambiguously falls
+	 * back to a Calendar, so results match the Calendar based implementation.
+	 */
+
+	private static long floorDiv(final long a, final long b) {
+		final long q = a / b;
+		return (a % b != 0 && (a < 0) != (b < 0)) ? q - 1 : q;
+	}
+
+	private static long floorMod(final long a, final long b) {
+		return a - floorDiv(a, b) * b;
+	}
+
+	private static long daysFromCivil(final long year, final long month, final long day) {
+		final long y = month <= 2 ? year - 1 : year;
+		final long era = floorDiv(y, 400);
+		final long yoe = y - era * 400;
+		final long doy = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		final long doe = yoe * 365 + yoe / 4 - yoe / 100 + doy;
+		return era * 146097 + doe - 719468;
+	}
+
+	// returns the year, month (1-12) and day of month packed as (year * 16 + month) * 32 + day
+	private static long civilFromDays(final long days) {
+		final long z = days + 719468;
+		final long era = floorDiv(z, 146097);
+		final long doe = z - era * 146097;
+		final long yoe = (doe - doe / 1460 + doe / 36524 - doe / 146096) / 365;
+		final long doy = doe - (365 * yoe + yoe / 4 - yoe / 100);
+		final long mp = (5 * doy + 2) / 153;
+		final long day = doy - (153 * mp + 2) / 5 + 1;
+		final long month = mp < 10 ? mp + 3 : mp - 9;
+		final long year = yoe + era * 400 + (month <= 2 ? 1 : 0);
+		return (year * 16 + month) * 32 + day;
+	}
+
+	private static boolean isLeapYear(final long year) {
+		return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+	}
+
+	private static long lengthOfMonth(final long year, final long month) {
+		if (month == 2)
+			return isLeapYear(year) ? 29 : 28;
+		return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+	}
+
+	private static long addPart(final int part, final long t, final long n, final TimeZoneRules tz) {
+		final long millis = t / 1000;
+		final int amount = (int) n;
+
+		if (tz.isTabulated(millis)) {
+			final int offset = tz.getOffset(millis);
+			final long local = millis + offset;
+			long days = floorDiv(local, MILLIS_PER_DAY);
+			final long timeOfDay = local - days * MILLIS_PER_DAY;
+
+			boolean inRange = true;
+			if (part == Calendar.DAY_OF_MONTH) {
+				days += amount;
+			} else {
+				final long civil = civilFromDays(days);
+				long year = civil / 512;
+				long month = civil / 32 % 16;
+				if (part == Calendar.MONTH) {
+					final long months = year * 12 + month - 1 + amount;
+					year = floorDiv(months, 12);
+					month = months - year * 12 + 1;
+				} else {
+					year += amount;
+				}
+				// the zone rules can not resolve these anyway, and this keeps the arithmetic from overflowing
+				inRange = year >= 1900 && year <= 2100;
+				if (inRange)
+					days = daysFromCivil(year, month, Math.min(civil % 32, lengthOfMonth(year, month)));
+			}
+
+			if (inRange) {
+				final long resolved = tz.resolve(days * MILLIS_PER_DAY + timeOfDay, offset);
+				if (resolved != TimeZoneRules.UNRESOLVED)
+					return resolved * 1000;
+			}
+		}
+
+		final Calendar calendar = tz.getCalendar(millis);
+
+		calendar.add(part, amount);
 
 		return calendar.getTimeInMillis() * 1000;
 	}
@@ -90,7 +185,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addday", returnType = "time", formalParameters = { "time", "int", "string" })
 	public static long addDay(final long t, final long n, final String tz) {
-		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -109,7 +204,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addday", returnType = "time", formalParameters = { "time", "int" })
 	public static long addDay(final long t, final long n) {
-		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -125,7 +220,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addday", returnType = "time", formalParameters = { "time" })
 	public static long addDay(final long t) {
-		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, 1, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, 1, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -146,7 +241,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addmonth", returnType = "time", formalParameters = { "time", "int", "string" })
 	public static long addMonth(final long t, final long n, final String tz) {
-		return BoaTimeIntrinsics.addPart(Calendar.MONTH, t, n, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.addPart(Calendar.MONTH, t, n, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -163,7 +258,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addmonth", returnType = "time", formalParameters = { "time", "int" })
 	public static long addMonth(final long t, final long n) {
-		return BoaTimeIntrinsics.addPart(Calendar.MONTH, t, n, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.MONTH, t, n, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -177,7 +272,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addmonth", returnType = "time", formalParameters = { "time" })
 	public static long addMonth(final long t) {
-		return BoaTimeIntrinsics.addPart(Calendar.MONTH, t, 1, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.MONTH, t, 1, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -198,7 +293,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addweek", returnType = "time", formalParameters = { "time", "int", "string" })
 	public static long addWeek(final long t, final long n, final String tz) {
-		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n * 7, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n * 7, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -215,7 +310,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addweek", returnType = "time", formalParameters = { "time", "int" })
 	public static long addWeek(final long t, final long n) {
-		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n * 7, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, n * 7, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -229,7 +324,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addweek", returnType = "time", formalParameters = { "time" })
 	public static long addWeek(final long t) {
-		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, 7, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.DAY_OF_MONTH, t, 7, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -250,7 +345,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addyear", returnType = "time", formalParameters = { "time", "int", "string" })
 	public static long addYear(final long t, final long n, final String tz) {
-		return BoaTimeIntrinsics.addPart(Calendar.YEAR, t, n, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.addPart(Calendar.YEAR, t, n, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -267,7 +362,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addyear", returnType = "time", formalParameters = { "time", "int" })
 	public static long addYear(final long t, final long n) {
-		return BoaTimeIntrinsics.addPart(Calendar.YEAR, t, n, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.YEAR, t, n, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -281,15 +376,46 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "addyear", returnType = "time", formalParameters = { "time" })
 	public static long addYear(final long t) {
-		return BoaTimeIntrinsics.addPart(Calendar.YEAR, t, 1, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.addPart(Calendar.YEAR, t, 1, BoaTimeIntrinsics.defaultZone);
 	}
 
-	private static long partOf(final int which, final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
-
-		return calendar.get(which);
+	private static long partOf(final int which, final long t, final TimeZoneRules tz) {
+		final long millis = t / 1000;
+
+		if (!tz.isTabulated(millis))
+			return tz.getCalendar(millis).get(which);
+
+		final long local = millis + tz.getOffset(millis);
+		final long days = floorDiv(local, MILLIS_PER_DAY);
+		final long timeOfDay = local - days * MILLIS_PER_DAY;
+
+		switch (which) {
+		case Calendar.HOUR_OF_DAY:
+			return timeOfDay / (60 * 60 * 1000);
+		case Calendar.MINUTE:
+			return timeOfDay / (60 * 1000) % 60;
+		case Calendar.SECOND:
+			return timeOfDay / 1000 % 60;
+		case Calendar.DAY_OF_WEEK:
+			// 1970-01-01 was a Thursday
+			return floorMod(days + 4, 7) + Calendar.SUNDAY;
+		default:
+			break;
+		}
+
+		final long civil = civilFromDays(days);
+		switch (which) {
+		case Calendar.YEAR:
+			return civil / 512;
+		case Calendar.MONTH:
+			return civil / 32 % 16 - 1 + Calendar.JANUARY;
+		case Calendar.DAY_OF_MONTH:
+			return civil % 32;
+		case Calendar.DAY_OF_YEAR:
+			return days - daysFromCivil(civil / 512, 1, 1) + 1;
+		default:
+			return tz.getCalendar(millis).get(which);
+		}
 	}
 
 	/**
@@ -309,7 +435,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "dayofmonth", returnType = "int", formalParameters = { "time", "string" })
 	public static long dayOfMonth(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_MONTH, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_MONTH, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -324,7 +450,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "dayofmonth", returnType = "int", formalParameters = { "time" })
 	public static long dayOfMonth(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_MONTH, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_MONTH, t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -344,7 +470,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "dayofweek", returnType = "int", formalParameters = { "time", "string" })
 	public static long dayOfWeek(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_WEEK, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_WEEK, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -359,7 +485,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "dayofweek", returnType = "int", formalParameters = { "time" })
 	public static long dayOfWeek(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_WEEK, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_WEEK, t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -379,7 +505,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "dayofyear", returnType = "int", formalParameters = { "time", "string" })
 	public static long dayOfYear(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_YEAR, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_YEAR, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -394,7 +520,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "dayofyear", returnType = "int", formalParameters = { "time" })
 	public static long dayOfYear(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_YEAR, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.DAY_OF_YEAR, t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -414,7 +540,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "hourof", returnType = "int", formalParameters = { "time", "string" })
 	public static long hourOf(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.HOUR_OF_DAY, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.HOUR_OF_DAY, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -429,7 +555,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "hourof", returnType = "int", formalParameters = { "time" })
 	public static long hourOf(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.HOUR_OF_DAY, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.HOUR_OF_DAY, t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -447,7 +573,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "minuteof", returnType = "int", formalParameters = { "time", "string" })
 	public static long minuteOf(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.MINUTE, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.MINUTE, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -461,7 +587,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "minuteof", returnType = "int", formalParameters = { "time" })
 	public static long minuteOf(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.MINUTE, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.MINUTE, t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -479,7 +605,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "monthof", returnType = "int", formalParameters = { "time", "string" })
 	public static long monthOf(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.MONTH, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.MONTH, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -493,7 +619,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "monthof", returnType = "int", formalParameters = { "time" })
 	public static long monthOf(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.MONTH, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.MONTH, t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -511,7 +637,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "secondof", returnType = "int", formalParameters = { "time", "string" })
 	public static long secondOf(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.SECOND, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.SECOND, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -525,7 +651,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "secondof", returnType = "int", formalParameters = { "time" })
 	public static long secondOf(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.SECOND, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.SECOND, t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -544,7 +670,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "yearof", returnType = "int", formalParameters = { "time", "string" })
 	public static long yearOf(final long t, final String tz) {
-		return BoaTimeIntrinsics.partOf(Calendar.YEAR, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.partOf(Calendar.YEAR, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -559,21 +685,66 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "yearof", returnType = "int", formalParameters = { "time" })
 	public static long yearOf(final long t) {
-		return BoaTimeIntrinsics.partOf(Calendar.YEAR, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.partOf(Calendar.YEAR, t, BoaTimeIntrinsics.defaultZone);
 	}
 
-	private static long truncToDay(final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
+	private static final int[] secondFields = { Calendar.MILLISECOND };
+	private static final int[] minuteFields = { Calendar.SECOND, Calendar.MILLISECOND };
+	private static final int[] hourFields = { Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND };
+	private static final int[] dayFields = { Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND };
+	private static final int[] monthFields = { Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND };
+	private static final int[] yearFields = { Calendar.DAY_OF_YEAR, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND };
+
+	// truncates the local time by setting the given fields to zero, as Calendar.set would
+	private static long truncate(final long t, final TimeZoneRules tz, final int[] fields) {
+		final long millis = t / 1000;
+
+		if (tz.isTabulated(millis)) {
+			final int offset = tz.getOffset(millis);
+			final long local = millis + offset;
+			final long days = floorDiv(local, MILLIS_PER_DAY);
+
+			long truncated;
+			switch (fields[0]) {
+			case Calendar.MILLISECOND:
+				truncated = local - floorMod(local, 1000);
+				break;
+			case Calendar.SECOND:
+				truncated = local - floorMod(local, 60 * 1000);
+				break;
+			case Calendar.MINUTE:
+				truncated = local - floorMod(local, 60 * 60 * 1000);
+				break;
+			case Calendar.HOUR_OF_DAY:
+				truncated = days * MILLIS_PER_DAY;
+				break;
+			case Calendar.DAY_OF_MONTH:
+				// day 0 of a month is the last day of the previous month
+				final long civil = civilFromDays(days);
+				truncated = (daysFromCivil(civil / 512, civil / 32 % 16, 1) - 1) * MILLIS_PER_DAY;
+				break;
+			default:
+				// day 0 of a year is the last day of the previous year
+				truncated = (daysFromCivil(civilFromDays(days) / 512, 1, 1) - 1) * MILLIS_PER_DAY;
+				break;
+			}
+
+			final long resolved = tz.resolve(truncated, offset);
+			if (resolved != TimeZoneRules.UNRESOLVED)
+				return resolved * 1000;
+		}
 
-		calendar.setTimeInMillis(t / 1000);
-		calendar.set(Calendar.HOUR_OF_DAY, 0);
-		calendar.set(Calendar.MINUTE, 0);
-		calendar.set(Calendar.SECOND, 0);
-		calendar.set(Calendar.MILLISECOND, 0);
+		final Calendar calendar = tz.getCalendar(millis);
+		for (final int field : fields)
+			calendar.set(field, 0);
 
 		return calendar.getTimeInMillis() * 1000;
 	}
 
+	private static long truncToDay(final long t, final TimeZoneRules tz) {
+		return BoaTimeIntrinsics.truncate(t, tz, dayFields);
+	}
+
 	/**
 	 * Truncate t to the zeroth microsecond of the day. Useful when creating
 	 * variables indexed to a particular day, since all times in the day
@@ -593,7 +764,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctoday", returnType = "time", formalParameters = { "time", "string" })
 	public static long truncToDay(final long t, final String tz) {
-		return BoaTimeIntrinsics.truncToDay(t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.truncToDay(t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -611,18 +782,11 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctoday", returnType = "time", formalParameters = { "time" })
 	public static long truncToDay(final long t) {
-		return BoaTimeIntrinsics.truncToDay(t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.truncToDay(t, BoaTimeIntrinsics.defaultZone);
 	}
 
-	private static long truncToHour(final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
-		calendar.set(Calendar.MINUTE, 0);
-		calendar.set(Calendar.SECOND, 0);
-		calendar.set(Calendar.MILLISECOND, 0);
-
-		return calendar.getTimeInMillis() * 1000;
+	private static long truncToHour(final long t, final TimeZoneRules tz) {
+		return BoaTimeIntrinsics.truncate(t, tz, hourFields);
 	}
 
 	/**
@@ -639,7 +803,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctohour", returnType = "time", formalParameters = { "time", "string" })
 	public static long truncToHour(final long t, final String tz) {
-		return BoaTimeIntrinsics.truncToHour(t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.truncToHour(t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -652,17 +816,11 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctohour", returnType = "time", formalParameters = { "time" })
 	public static long truncToHour(final long t) {
-		return BoaTimeIntrinsics.truncToHour(t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.truncToHour(t, BoaTimeIntrinsics.defaultZone);
 	}
 
-	private static long truncToMinute(final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
-		calendar.set(Calendar.SECOND, 0);
-		calendar.set(Calendar.MILLISECOND, 0);
-
-		return calendar.getTimeInMillis() * 1000;
+	private static long truncToMinute(final long t, final TimeZoneRules tz) {
+		return BoaTimeIntrinsics.truncate(t, tz, minuteFields);
 	}
 
 	/**
@@ -679,7 +837,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctominute", returnType = "time", formalParameters = { "time", "string" })
 	public static long truncToMinute(final long t, final String tz) {
-		return BoaTimeIntrinsics.truncToMinute(t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.truncToMinute(t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -692,20 +850,11 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctominute", returnType = "time", formalParameters = { "time" })
 	public static long truncToMinute(final long t) {
-		return BoaTimeIntrinsics.truncToMinute(t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.truncToMinute(t, BoaTimeIntrinsics.defaultZone);
 	}
 
-	private static long truncToMonth(final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
-		calendar.set(Calendar.DAY_OF_MONTH, 0);
-		calendar.set(Calendar.HOUR_OF_DAY, 0);
-		calendar.set(Calendar.MINUTE, 0);
-		calendar.set(Calendar.SECOND, 0);
-		calendar.set(Calendar.MILLISECOND, 0);
-
-		return calendar.getTimeInMillis() * 1000;
+	private static long truncToMonth(final long t, final TimeZoneRules tz) {
+		return BoaTimeIntrinsics.truncate(t, tz, monthFields);
 	}
 
 	/**
@@ -722,7 +871,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctomonth", returnType = "time", formalParameters = { "time", "string" })
 	public static long truncToMonth(final long t, final String tz) {
-		return BoaTimeIntrinsics.truncToMonth(t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.truncToMonth(t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -735,16 +884,11 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctomonth", returnType = "time", formalParameters = { "time" })
 	public static long truncToMonth(final long t) {
-		return BoaTimeIntrinsics.truncToMonth(t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.truncToMonth(t, BoaTimeIntrinsics.defaultZone);
 	}
 
-	private static long truncToSecond(final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
-		calendar.set(Calendar.MILLISECOND, 0);
-
-		return calendar.getTimeInMillis() * 1000;
+	private static long truncToSecond(final long t, final TimeZoneRules tz) {
+		return BoaTimeIntrinsics.truncate(t, tz, secondFields);
 	}
 
 	/**
@@ -761,7 +905,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctosecond", returnType = "time", formalParameters = { "time", "string" })
 	public static long truncToSecond(final long t, final String tz) {
-		return BoaTimeIntrinsics.truncToSecond(t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.truncToSecond(t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -774,20 +918,11 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctosecond", returnType = "time", formalParameters = { "time" })
 	public static long truncToSecond(final long t) {
-		return BoaTimeIntrinsics.truncToSecond(t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.truncToSecond(t, BoaTimeIntrinsics.defaultZone);
 	}
 
-	private static long truncToYear(final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
-		calendar.set(Calendar.DAY_OF_YEAR, 0);
-		calendar.set(Calendar.HOUR_OF_DAY, 0);
-		calendar.set(Calendar.MINUTE, 0);
-		calendar.set(Calendar.SECOND, 0);
-		calendar.set(Calendar.MILLISECOND, 0);
-
-		return calendar.getTimeInMillis() * 1000;
+	private static long truncToYear(final long t, final TimeZoneRules tz) {
+		return BoaTimeIntrinsics.truncate(t, tz, yearFields);
 	}
 
 	/**
@@ -804,7 +939,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctoyear", returnType = "time", formalParameters = { "time", "string" })
 	public static long truncToYear(final long t, final String tz) {
-		return BoaTimeIntrinsics.truncToYear(t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.truncToYear(t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -817,7 +952,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "trunctoyear", returnType = "time", formalParameters = { "time" })
 	public static long truncToYear(final long t) {
-		return BoaTimeIntrinsics.truncToYear(t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.truncToYear(t, BoaTimeIntrinsics.defaultZone);
 	}
 
 	/**
@@ -831,10 +966,9 @@ public class BoaTimeIntrinsics {
 		return System.currentTimeMillis() * 1000;
 	}
 
-	private static String formatTime(final String formatstring, final long t, final TimeZone tz) {
-		final Calendar calendar = Calendar.getInstance(tz);
-
-		calendar.setTimeInMillis(t / 1000);
+	private static String formatTime(final String formatstring, final long t, final TimeZoneRules tz) {
+		final Date date = new Date(t / 1000);
+		final Map<Character, SimpleDateFormat> formats = BoaTimeIntrinsics.formatters.get();
 
 		final StringBuilder sb = new StringBuilder();
 
@@ -851,13 +985,15 @@ public class BoaTimeIntrinsics {
 				break;
 			default:
 				if (inEscape) {
-					if (BoaTimeIntrinsics.strftimeMap.containsKey(Character.valueOf(c))) {
-						final SimpleDateFormat simpleDateFormat = BoaTimeIntrinsics.strftimeMap.get(Character.valueOf(c));
-						simpleDateFormat.setTimeZone(tz);
-						sb.append(simpleDateFormat.format(calendar.getTime()));
-					} else {
-						throw new RuntimeException("invalid escape string: %" + c);
+					SimpleDateFormat simpleDateFormat = formats.get(Character.valueOf(c));
+					if (simpleDateFormat == null) {
+						if (!BoaTimeIntrinsics.strftimeMap.containsKey(Character.valueOf(c)))
+							throw new RuntimeException("invalid escape string: %" + c);
+						simpleDateFormat = new SimpleDateFormat(BoaTimeIntrinsics.strftimeMap.get(Character.valueOf(c)));
+						formats.put(Character.valueOf(c), simpleDateFormat);
 					}
+					simpleDateFormat.setTimeZone(tz.getZone());
+					sb.append(simpleDateFormat.format(date));
 					inEscape = false;
 				} else {
 					sb.append(c);
@@ -887,7 +1023,7 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "formattime", returnType = "string", formalParameters = { "string", "time", "string" })
 	public static String formatTime(final String formatstring, final long t, final String tz) {
-		return BoaTimeIntrinsics.formatTime(formatstring, t, TimeZone.getTimeZone(tz));
+		return BoaTimeIntrinsics.formatTime(formatstring, t, TimeZoneRules.forId(tz));
 	}
 
 	/**
@@ -906,6 +1042,6 @@ public class BoaTimeIntrinsics {
 	 */
 	@FunctionSpec(name = "formattime", returnType = "string", formalParameters = { "string", "time" })
 	public static String formatTime(final String formatstring, final long t) {
-		return BoaTimeIntrinsics.formatTime(formatstring, t, TimeZone.getTimeZone("PST8PDT"));
+		return BoaTimeIntrinsics.formatTime(formatstring, t, BoaTimeIntrinsics.defaultZone);
 	}
 }
@@ -53,4 +53,25 @@ public @interface FunctionSpec {
 	 * 
 	 */
 	String[] typeDependencies() default {};
+
+	/**
+	 * Whether the function is pure: its value only depends on its
+	 * arguments.  The compiler may then share the value between equal
+	 * calls, or compute it once before a loop instead of in every
+	 * iteration, so anything else the function does (e.g., charging the
+	 * budget for reading an AST, or counting the read) may happen fewer
+	 * times than the program makes the call.
+	 * 
+	 */
+	boolean pure() default false;
+
+	/**
+	 * Whether a pure function can also be called where the program would
+	 * not have called it: given defined arguments it can not fail, never
+	 * returns undefined and does nothing besides returning its value.  Only
+	 * such calls, with arguments known to be defined, are moved out of a
+	 * loop that may not run.
+	 * 
+	 */
+	boolean speculative() default false;
 }
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.functions;
+
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * The offset rules of a time zone, tabulated once so the time intrinsics can
+ * do their calendar arithmetic on epoch milliseconds instead of allocating a
+ * {@link Calendar} per call.
+ *
+ * Offset transitions are tabulated between 1900 and 2100.  Times outside that
+ * range, and local times that fall near a transition (where the local time
+ * may be skipped or repeated), are left to a per-thread {@link Calendar} so
+ * the results are always the same as the {@link Calendar} based ones.
+ */
+final class TimeZoneRules {
+	static final long MILLIS_PER_DAY = 24 * 60 * 60 * 1000L;
+
+	/** returned by {@link #resolve(long, int)} when a {@link Calendar} must decide */
+	static final long UNRESOLVED = Long.MIN_VALUE;
+
+	// 1900-01-01T00:00Z and 2100-01-01T00:00Z
+	private static final long TABLE_START = -2208988800000L;
+	private static final long TABLE_END = 4102444800000L;
+
+	// the zone is sampled at this interval, then each change is bisected
+	private static final long SCAN_STEP = 6 * 60 * 60 * 1000L;
+
+	// the table is indexed in buckets of 2^30 ms (about 12 days)
+	private static final int BUCKET_SHIFT = 30;
+
+	// larger than any difference between two offsets, so a local time at
+	// least this far from every transition has exactly one instant
+	private static final long STABLE_WINDOW = 2 * MILLIS_PER_DAY;
+
+	private static final int MAX_ZONES = 256;
+	private static final ConcurrentMap<String, TimeZoneRules> rules = new ConcurrentHashMap<String, TimeZoneRules>();
+
+	private final TimeZone zone;
+	private final long[] transitions;
+	private final int[] offsets;
+	private final int[] buckets;
+
+	private final ThreadLocal<Calendar> calendar = new ThreadLocal<Calendar>() {
+		@Override
+		protected Calendar initialValue() {
+			return Calendar.getInstance(zone);
+		}
+	};
+
+	/**
+	 * Returns the rules for the named time zone, with the same fallback to GMT
+	 * as {@link TimeZone#getTimeZone(String)} for unknown names.
+	 *
+	 * @param id the name of the time zone
+	 * @return the rules for the time zone
+	 */
+	static TimeZoneRules forId(final String id) {
+		TimeZoneRules r = rules.get(id);
+		if (r == null) {
+			r = new TimeZoneRules(TimeZone.getTimeZone(id));
+			if (rules.size() >= MAX_ZONES)
+				rules.clear();
+			final TimeZoneRules prev = rules.putIfAbsent(id, r);
+			if (prev != null)
+				r = prev;
+		}
+		return r;
+	}
+
+	private TimeZoneRules(final TimeZone zone) {
+		this.zone = zone;
+
+		long[] trans = new long[16];
+		int[] offs = new int[17];
+		int count = 0;
+
+		long from = TABLE_START;
+		int current = zone.getOffset(from);
+		offs[0] = current;
+		while (from < TABLE_END) {
+			final long to = Math.min(from + SCAN_STEP, TABLE_END);
+			if (zone.getOffset(to) == current) {
+				from = to;
+				continue;
+			}
+
+			long lo = from, hi = to;
+			while (hi - lo > 1) {
+				final long mid = lo + (hi - lo) / 2;
+				if (zone.getOffset(mid) == current)
+					lo = mid;
+				else
+					hi = mid;
+			}
+
+			if (count == trans.length) {
+				trans = Arrays.copyOf(trans, count * 2);
+				offs = Arrays.copyOf(offs, count * 2 + 1);
+			}
+			current = zone.getOffset(hi);
+			trans[count++] = hi;
+			offs[count] = current;
+			from = hi;
+		}
+
+		this.transitions = Arrays.copyOf(trans, count);
+		this.offsets = Arrays.copyOf(offs, count + 1);
+
+		// the number of transitions at or before the start of each bucket
+		this.buckets = new int[(int) ((TABLE_END - TABLE_START) >>> BUCKET_SHIFT) + 1];
+		for (int b = 0, i = 0; b < buckets.length; b++) {
+			final long start = TABLE_START + ((long) b << BUCKET_SHIFT);
+			while (i < count && transitions[i] <= start)
+				i++;
+			buckets[b] = i;
+		}
+	}
+
+	/**
+	 * Returns the time zone these rules were built from.
+	 *
+	 * @return the time zone
+	 */
+	TimeZone getZone() {
+		return zone;
+	}
+
+	/**
+	 * Returns this thread's {@link Calendar} for the zone, set to the given time.
+	 *
+	 * @param millis the time, in milliseconds since the epoch
+	 * @return the calendar
+	 */
+	Calendar getCalendar(final long millis) {
+		final Calendar c = calendar.get();
+		c.setTimeInMillis(millis);
+		return c;
+	}
+
+	/**
+	 * Returns true if the offset at the given instant comes from the table.
+	 *
+	 * @param millis the time, in milliseconds since the epoch
+	 * @return true if the time lies within the tabulated range
+	 */
+	boolean isTabulated(final long millis) {
+		return millis >= TABLE_START && millis < TABLE_END;
+	}
+
+	/**
+	 * Returns the offset from UTC, including daylight saving, at the given instant.
+	 *
+	 * @param millis the time, in milliseconds since the epoch
+	 * @return the offset, in milliseconds
+	 */
+	int getOffset(final long millis) {
+		if (!isTabulated(millis))
+			return zone.getOffset(millis);
+		return offsets[indexOf(millis)];
+	}
+
+	/**
+	 * Converts a local time back to an instant.  Only local times with exactly
+	 * one instant, well away from any transition, are resolved.
+	 *
+	 * @param local the local time, in milliseconds since the local epoch
+	 * @param offset the offset expected to apply, usually the one the local time was derived with
+	 * @return the instant, or {@link #UNRESOLVED} if a {@link Calendar} must decide
+	 */
+	long resolve(final long local, final int offset) {
+		long millis = local - offset;
+		final int actual = getOffset(millis);
+		if (actual != offset) {
+			millis = local - actual;
+			if (getOffset(millis) != actual)
+				return UNRESOLVED;
+		}
+		return isStable(millis) ? millis : UNRESOLVED;
+	}
+
+	private boolean isStable(final long millis) {
+		if (millis - STABLE_WINDOW < TABLE_START || millis + STABLE_WINDOW >= TABLE_END)
+			return false;
+		final int i = indexOf(millis - STABLE_WINDOW);
+		return i == transitions.length || transitions[i] > millis + STABLE_WINDOW;
+	}
+
+	// returns the number of transitions at or before the given (tabulated) instant
+	private int indexOf(final long millis) {
+		int i = buckets[(int) ((millis - TABLE_START) >>> BUCKET_SHIFT)];
+		while (i < transitions.length && transitions[i] <= millis)
+			i++;
+		return i;
+	}
+}
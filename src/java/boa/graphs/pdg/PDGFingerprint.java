@@ -0,0 +1,321 @@
+/*
+ * Copyright 2018, Robert Dyer, Mohd Arafat
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.graphs.pdg;
+
+import boa.types.Ast.*;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Canonical structural fingerprint of a program dependence graph, or of any
+ * subset of its nodes such as a slice.
+ *
+ * Every node starts with a label hashed from its kind and its (possibly
+ * normalized) statement or expression.  Each refinement round then relabels a
+ * node from its own label and the sorted labels of its neighbors, keyed by
+ * edge kind, edge label and direction (Weisfeiler-Lehman style).  The
+ * fingerprint folds the sorted final labels, so it does not depend on node ids,
+ * hash set iteration order or traversal order.  Source positions, AST keys
+ * and comments are not part of a node's label.
+ *
+ * A checksum computed the same way from different seeds is also kept, so
+ * callers can detect fingerprint collisions.
+ */
+public class PDGFingerprint {
+    /** number of refinement rounds used when none is given */
+    public static final int DEFAULT_ROUNDS = 3;
+
+    private static final long SEED = 0x2545F4914F6CDD1DL;
+    private static final long CHECK_SEED = 0x3C6EF372FE94F82BL;
+    private static final long OUT_EDGE = 0x7A3D5C1B9E6F8024L;
+    private static final long IN_EDGE = 0x41C64E6DA3B2F519L;
+    private static final long NULL_VALUE = 0x6A09E667F3BCC909L;
+
+    private final long fingerprint;
+    private final long checksum;
+
+    /**
+     * Computes the fingerprint of the given nodes using {@link #DEFAULT_ROUNDS} rounds
+     *
+     * @param nodes the nodes of the graph; edges leaving this set are ignored
+     */
+    public PDGFingerprint(final Collection<PDGNode> nodes) {
+        this(nodes, DEFAULT_ROUNDS);
+    }
+
+    /**
+     * Computes the fingerprint of the given nodes
+     *
+     * @param nodes the nodes of the graph; edges leaving this set are ignored
+     * @param rounds number of label refinement rounds
+     */
+    public PDGFingerprint(final Collection<PDGNode> nodes, final int rounds) {
+        final int n = nodes.size();
+        final PDGNode[] index = nodes.toArray(new PDGNode[n]);
+        final Map<PDGNode, Integer> ids = new HashMap<PDGNode, Integer>(n * 2);
+        for (int i = 0; i < n; i++)
+            ids.put(index[i], i);
+
+        // adjacency in compressed rows, both directions, restricted to the given nodes
+        final int[] degree = new int[n + 1];
+        int edgeCount = 0;
+        for (int i = 0; i < n; i++) {
+            for (final PDGEdge e : index[i].getOutEdges()) {
+                final Integer j = ids.get(e.getDest());
+                if (j == null)
+                    continue;
+                degree[i]++;
+                degree[j]++;
+                edgeCount++;
+            }
+        }
+
+        final int[] offsets = new int[n + 1];
+        for (int i = 0; i < n; i++)
+            offsets[i + 1] = offsets[i] + degree[i];
+
+        final int[] neighbors = new int[offsets[n]];
+        final PDGEdge[] edges = new PDGEdge[offsets[n]];
+        final boolean[] outgoing = new boolean[offsets[n]];
+        final int[] fill = Arrays.copyOf(offsets, n);
+        for (int i = 0; i < n; i++) {
+            for (final PDGEdge e : index[i].getOutEdges()) {
+                final Integer j = ids.get(e.getDest());
+                if (j == null)
+                    continue;
+                neighbors[fill[i]] = j;
+                edges[fill[i]] = e;
+                outgoing[fill[i]++] = true;
+                neighbors[fill[j]] = i;
+                edges[fill[j]++] = e;
+            }
+        }
+
+        // the checksum repeats the whole computation with different seeds, strings
+        // included, so graphs whose fingerprints collide almost never share it
+        this.fingerprint = fold(new Hasher(SEED), index, offsets, neighbors, edges, outgoing, edgeCount, rounds);
+        this.checksum = fold(new Hasher(CHECK_SEED), index, offsets, neighbors, edges, outgoing, edgeCount, rounds);
+    }
+
+    // labels the nodes, refines the labels and folds the sorted final labels
+    private static long fold(final Hasher hasher, final PDGNode[] index, final int[] offsets, final int[] neighbors,
+            final PDGEdge[] edges, final boolean[] outgoing, final int edgeCount, final int rounds) {
+        final int n = index.length;
+        final long seed = hasher.seed;
+
+        final long[] edgeLabels = new long[edges.length];
+        for (int k = 0; k < edges.length; k++) {
+            final PDGEdge e = edges[k];
+            final long h = combine(e.getKind() == null ? NULL_VALUE : e.getKind().getNumber(), hasher.hash(e.getLabel()));
+            edgeLabels[k] = h ^ (outgoing[k] ? OUT_EDGE : IN_EDGE);
+        }
+
+        // initial labels
+        long[] labels = new long[n];
+        int maxDegree = 0;
+        for (int i = 0; i < n; i++) {
+            labels[i] = hasher.label(index[i]);
+            maxDegree = Math.max(maxDegree, offsets[i + 1] - offsets[i]);
+        }
+
+        // refinement
+        long[] next = new long[n];
+        final long[] buffer = new long[maxDegree];
+        for (int round = 0; round < rounds; round++) {
+            for (int i = 0; i < n; i++) {
+                final int from = offsets[i];
+                final int count = offsets[i + 1] - from;
+                for (int k = 0; k < count; k++)
+                    buffer[k] = combine(edgeLabels[from + k], labels[neighbors[from + k]]);
+                Arrays.sort(buffer, 0, count);
+
+                long h = combine(seed + round, labels[i]);
+                for (int k = 0; k < count; k++)
+                    h = combine(h, buffer[k]);
+                next[i] = h;
+            }
+            final long[] tmp = labels;
+            labels = next;
+            next = tmp;
+        }
+
+        Arrays.sort(labels);
+        long h = combine(combine(seed, n), edgeCount);
+        for (int i = 0; i < n; i++)
+            h = combine(h, labels[i]);
+        return h;
+    }
+
+    /**
+     * Returns the fingerprint of the graph
+     *
+     * @return the fingerprint of the graph
+     */
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Returns an independent checksum of the graph. Two graphs with the same
+     * fingerprint but different checksums are a fingerprint collision.
+     *
+     * @return the checksum of the graph
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
+    // hashes nodes and their contents, with every hash started from its seed
+    private static class Hasher {
+        final long seed;
+
+        Hasher(final long seed) {
+            this.seed = seed;
+        }
+
+        /**
+         * Returns the initial label of a node
+         *
+         * @param node the node
+         * @return the label of the node
+         */
+        long label(final PDGNode node) {
+            long h = combine(seed, node.getKind() == null ? NULL_VALUE : node.getKind().getNumber());
+            h = combine(h, node.hasStmt() ? hash(node.getStmt()) : NULL_VALUE);
+            h = combine(h, node.hasExpr() ? hash(node.getExpr()) : NULL_VALUE);
+            return h;
+        }
+
+        long hash(final Statement s) {
+            long h = combine(seed, 0x100 + s.getKind().getNumber());
+            h = combine(h, hashStatements(s.getStatementsList()));
+            h = combine(h, hashExpressions(s.getInitializationsList()));
+            h = combine(h, hashExpressions(s.getConditionsList()));
+            h = combine(h, hashExpressions(s.getUpdatesList()));
+            h = combine(h, hashExpressions(s.getExpressionsList()));
+            if (s.hasVariableDeclaration())
+                h = combine(h, hash(s.getVariableDeclaration()));
+            for (final Variable v : s.getVariableDeclarationsList())
+                h = combine(h, hash(v));
+            if (s.hasTypeDeclaration())
+                h = combine(h, hash(s.getTypeDeclaration()));
+            for (final Declaration d : s.getTypeDeclarationsList())
+                h = combine(h, hash(d));
+            for (final Method m : s.getMethodsList())
+                h = combine(h, hash(m));
+            for (final String name : s.getNamesList())
+                h = combine(h, hash(name));
+            return h;
+        }
+
+        long hash(final Expression e) {
+            long h = combine(seed, 0x200 + e.getKind().getNumber());
+            if (e.hasLiteral())
+                h = combine(h, hash(e.getLiteral()));
+            if (e.hasVariable())
+                h = combine(h, hash(e.getVariable()));
+            if (e.hasMethod())
+                h = combine(h, hash(e.getMethod()));
+            if (e.hasIsPostfix())
+                h = combine(h, e.getIsPostfix() ? 1 : 2);
+            if (e.hasNewType())
+                h = combine(h, hash(e.getNewType()));
+            h = combine(h, hashExpressions(e.getExpressionsList()));
+            h = combine(h, hashExpressions(e.getMethodArgsList()));
+            for (final Variable v : e.getVariableDeclsList())
+                h = combine(h, hash(v));
+            for (final Type t : e.getGenericParametersList())
+                h = combine(h, hash(t));
+            h = combine(h, hashStatements(e.getStatementsList()));
+            for (final Method m : e.getMethodsList())
+                h = combine(h, hash(m));
+            if (e.hasAnonDeclaration())
+                h = combine(h, hash(e.getAnonDeclaration()));
+            return h;
+        }
+
+        long hash(final Variable v) {
+            long h = combine(seed, 0x300);
+            h = combine(h, hash(v.getName()));
+            if (v.hasVariableType())
+                h = combine(h, hash(v.getVariableType()));
+            if (v.hasInitializer())
+                h = combine(h, hash(v.getInitializer()));
+            return h;
+        }
+
+        long hash(final Type t) {
+            return combine(combine(seed, 0x400 + t.getKind().getNumber()), hash(t.getName()));
+        }
+
+        long hash(final Method m) {
+            long h = combine(seed, 0x500);
+            h = combine(h, hash(m.getName()));
+            return combine(h, hashStatements(m.getStatementsList()));
+        }
+
+        // nested type declarations contribute their shape, not their bodies
+        long hash(final Declaration d) {
+            long h = combine(seed, 0x600 + d.getKind().getNumber());
+            h = combine(h, hash(d.getName()));
+            h = combine(h, d.getFieldsCount());
+            return combine(h, d.getMethodsCount());
+        }
+
+        long hashStatements(final List<Statement> stmts) {
+            long h = combine(seed, stmts.size());
+            for (final Statement s : stmts)
+                h = combine(h, hash(s));
+            return h;
+        }
+
+        long hashExpressions(final List<Expression> exps) {
+            long h = combine(seed, exps.size());
+            for (final Expression e : exps)
+                h = combine(h, hash(e));
+            return h;
+        }
+
+        long hash(final String s) {
+            if (s == null)
+                return NULL_VALUE;
+            // 64-bit FNV-1a over the characters, started from the seed
+            long h = seed ^ 0xCBF29CE484222325L;
+            for (int i = 0; i < s.length(); i++)
+                h = (h ^ s.charAt(i)) * 0x100000001B3L;
+            return combine(h, s.length());
+        }
+    }
+
+    private static long combine(final long h, final long v) {
+        return mix(h * 0x9E3779B97F4A7C15L + v);
+    }
+
+    // 64-bit finalizer from MurmurHash3
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
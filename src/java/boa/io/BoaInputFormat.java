@@ -0,0 +1,119 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.io;
+
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.lib.input.FileSplit;
+import org.apache.hadoop.mapreduce.lib.input.SequenceFileInputFormat;
+
+/**
+ * Reads projects.seq, skipping the projects the program's
+ * {@link ProjectGuard} rejects.  Rejected projects are looked up in the
+ * dataset's {@link ProjectIndex} and their values are never read, so they
+ * are neither decompressed nor parsed.  Without a guard or an index, every
+ * project is read.
+ */
+public class BoaInputFormat extends SequenceFileInputFormat<Text, BytesWritable> {
+	/** {@inheritDoc} */
+	@Override
+	public RecordReader<Text, BytesWritable> createRecordReader(final InputSplit split, final TaskAttemptContext context) throws IOException {
+		if (context.getConfiguration().get(ProjectGuard.PROPERTY) == null)
+			return super.createRecordReader(split, context);
+		return new GuardedRecordReader();
+	}
+
+	private static class GuardedRecordReader extends RecordReader<Text, BytesWritable> {
+		private SequenceFile.Reader in;
+		private ProjectIndex.Reader index;
+		private ProjectGuard guard;
+		private long start;
+		private long end;
+		private boolean more = true;
+		private final Text key = new Text();
+		private final BytesWritable value = new BytesWritable();
+
+		@Override
+		public void initialize(final InputSplit split, final TaskAttemptContext context) throws IOException {
+			final FileSplit fileSplit = (FileSplit) split;
+			final Configuration conf = context.getConfiguration();
+			final Path path = fileSplit.getPath();
+
+			in = new SequenceFile.Reader(path.getFileSystem(conf), path, conf);
+			end = fileSplit.getStart() + fileSplit.getLength();
+			if (fileSplit.getStart() > in.getPosition())
+				in.sync(fileSplit.getStart());
+			start = in.getPosition();
+			more = start < end;
+
+			index = ProjectIndex.Reader.open(path.getFileSystem(conf), conf, path.getParent());
+			if (index != null)
+				guard = ProjectGuard.parse(conf.get(ProjectGuard.PROPERTY));
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			while (more) {
+				final long pos = in.getPosition();
+				if (!in.next(key) || (pos >= end && in.syncSeen())) {
+					more = false;
+					break;
+				}
+				if (index != null) {
+					final ProjectIndex.Entry e = index.get(key);
+					if (e != null && !guard.accepts(e))
+						continue;
+				}
+				in.getCurrentValue(value);
+				return true;
+			}
+			return false;
+		}
+
+		@Override
+		public Text getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public BytesWritable getCurrentValue() {
+			return value;
+		}
+
+		@Override
+		public float getProgress() throws IOException {
+			if (end == start)
+				return 0.0f;
+			return Math.min(1.0f, (in.getPosition() - start) / (float) (end - start));
+		}
+
+		@Override
+		public void close() throws IOException {
+			in.close();
+			if (index != null)
+				index.close();
+		}
+	}
+}
@@ -17,10 +17,12 @@
  */
 package boa.io;
 
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
 import java.sql.*;
 
 import org.apache.hadoop.fs.FileSystem;
-import org.apache.hadoop.fs.FSDataInputStream;
 import org.apache.hadoop.fs.FSDataOutputStream;
 import org.apache.hadoop.fs.Path;
 import org.apache.hadoop.mapred.JobClient;
@@ -36,9 +38,16 @@ import org.apache.hadoop.mapreduce.TaskAttemptContext;
 /**
  * A {@link FileOutputCommitter} that stores the job results into a database.
  *
+ * The part files are assembled into one output.txt, next to an output.index
+ * giving each part's offset and length in it.
+ *
  * @author rdyer
  */
 public class BoaOutputCommitter extends FileOutputCommitter {
+	/** the property setting how many part files are read at once when assembling the output */
+	public static final String THREADS = "boa.output.threads";
+	private static final int DEFAULT_THREADS = 4;
+
 	private final Path outputPath;
 	private final TaskAttemptContext context;
 	public static Throwable lastSeenEx = null;
@@ -118,8 +127,8 @@ public class BoaOutputCommitter extends FileOutputCommitter {
 
 		Connection con = null;
 		FileSystem fileSystem = null;
-		FSDataInputStream in = null;
 		FSDataOutputStream out = null;
+		FSDataOutputStream index = null;
 
 		try {
 			fileSystem = outputPath.getFileSystem(context.getConfiguration());
@@ -137,40 +146,37 @@ public class BoaOutputCommitter extends FileOutputCommitter {
 
 			fileSystem.mkdirs(new Path("/boa", new Path("" + jobId)));
 			out = fileSystem.create(new Path("/boa", new Path("" + jobId, new Path("output.txt"))));
+			index = fileSystem.create(new Path("/boa", new Path("" + jobId, new Path("output.index"))));
 
-			int partNum = 0;
-
-			final byte[] b = new byte[64 * 1024 * 1024];
-			long length = 0;
-			int webLength = 0;
+			// the start of the output is also shown on the web
 			final int webSize = 64 * 1024 - 1;
-
-			while (true) {
-				final Path path = new Path(outputPath, "part-r-" + String.format("%05d", partNum++));
-				if (!fileSystem.exists(path))
-					break;
-
-				if (in != null)
-					try { in.close(); } catch (final Exception e) { e.printStackTrace(); }
-				in = fileSystem.open(path);
-
-				int numBytes = 0;
-
-				while ((numBytes = in.read(b)) > 0) {
-					if (webLength < webSize) {
-						try {
-							ps = con.prepareStatement("UPDATE boa_output SET web_result=CONCAT(web_result, ?) WHERE id=" + jobId);
-							ps.setString(1, new String(b, 0, webLength + numBytes < webSize ? numBytes : webSize - webLength));
-							ps.executeUpdate();
-                            webLength += numBytes;
-						} finally {
-							try { if (ps != null) ps.close(); } catch (final Exception e) { e.printStackTrace(); }
-						}
-					}
-					out.write(b, 0, numBytes);
-					length += numBytes;
-
-					this.context.progress();
+			final ByteArrayOutputStream web = new ByteArrayOutputStream();
+			final FSDataOutputStream indexOut = index;
+
+			// the parts are read (and rendered, if binary) in parallel, and written in order
+			final long length = BoaOutputReader.assemble(fileSystem, context.getConfiguration(), outputPath, new FilterOutputStream(out) {
+				@Override
+				public void write(final byte[] b, final int off, final int len) throws IOException {
+					if (web.size() < webSize)
+						web.write(b, off, Math.min(len, webSize - web.size()));
+					out.write(b, off, len);
+
+					BoaOutputCommitter.this.context.progress();
+				}
+			}, context.getConfiguration().getInt(THREADS, DEFAULT_THREADS), new BoaOutputReader.Listener() {
+				@Override
+				public void written(final Path part, final long offset, final long partLength) throws IOException {
+					indexOut.writeBytes(part.getName() + "\t" + offset + "\t" + partLength + "\n");
+				}
+			});
+
+			if (web.size() > 0) {
+				try {
+					ps = con.prepareStatement("UPDATE boa_output SET web_result=CONCAT(web_result, ?) WHERE id=" + jobId);
+					ps.setString(1, new String(web.toByteArray()));
+					ps.executeUpdate();
+				} finally {
+					try { if (ps != null) ps.close(); } catch (final Exception e) { e.printStackTrace(); }
 				}
 			}
 
@@ -185,7 +191,7 @@ public class BoaOutputCommitter extends FileOutputCommitter {
 			e.printStackTrace();
 		} finally {
 			try { if (con != null) con.close(); } catch (final Exception e) { e.printStackTrace(); }
-			try { if (in != null) in.close(); } catch (final Exception e) { e.printStackTrace(); }
+			try { if (index != null) index.close(); } catch (final Exception e) { e.printStackTrace(); }
 			try { if (out != null) out.close(); } catch (final Exception e) { e.printStackTrace(); }
 			try { if (fileSystem != null) fileSystem.close(); } catch (final Exception e) { e.printStackTrace(); }
 		}
@@ -16,13 +16,26 @@
  */
 package boa.io;
 
+import java.io.IOException;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
 import org.apache.hadoop.mapreduce.OutputCommitter;
+import org.apache.hadoop.mapreduce.RecordWriter;
 import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.hadoop.mapreduce.lib.output.FileOutputCommitter;
 import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
 
 /**
  * Uses our custom output committer.
+ *
+ * Output is written as text, one line per key.  If {@link #BINARY} is set,
+ * it is instead written to a SequenceFile of {@link OutputRecord}s, which
+ * skips rendering the lines until {@link BoaOutputReader} does.
  * 
  * @author rdyer
  *
@@ -30,8 +43,55 @@ import org.apache.hadoop.mapreduce.lib.output.TextOutputFormat;
  * @param <V> the type of values
  */
 public class BoaOutputFormat<K, V> extends TextOutputFormat<K, V> {
+	/** the property that makes jobs write binary output */
+	public static final String BINARY = "boa.output.binary";
+
 	private FileOutputCommitter committer = null;
 
+	/**
+	 * @param conf the configuration of the job
+	 * @return whether the job writes binary output
+	 */
+	public static boolean isBinary(final Configuration conf) {
+		return conf.getBoolean(BINARY, false);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	@SuppressWarnings("unchecked")
+	public RecordWriter<K, V> getRecordWriter(final TaskAttemptContext context) throws IOException, InterruptedException {
+		if (!isBinary(context.getConfiguration()))
+			return super.getRecordWriter(context);
+
+		final Path file = getDefaultWorkFile(context, "");
+		return (RecordWriter<K, V>) newBinaryWriter(file.getFileSystem(context.getConfiguration()), context.getConfiguration(), file);
+	}
+
+	/**
+	 * Creates a writer of binary output.  Lines written as text are kept as
+	 * formatted lines.
+	 *
+	 * @param fs the file system to write to
+	 * @param conf the configuration to use
+	 * @param file the file to write
+	 * @return the writer
+	 * @throws IOException if the file can not be created
+	 */
+	public static RecordWriter<Object, NullWritable> newBinaryWriter(final FileSystem fs, final Configuration conf, final Path file) throws IOException {
+		final SequenceFile.Writer out = SequenceFile.createWriter(fs, conf, file, OutputRecord.class, NullWritable.class, CompressionType.BLOCK);
+		return new RecordWriter<Object, NullWritable>() {
+			@Override
+			public void write(final Object key, final NullWritable value) throws IOException {
+				out.append(key instanceof OutputRecord ? key : new OutputRecord(key.toString()), NullWritable.get());
+			}
+
+			@Override
+			public void close(final TaskAttemptContext context) throws IOException {
+				out.close();
+			}
+		};
+	}
+
 	@Override
 	public synchronized OutputCommitter getOutputCommitter(TaskAttemptContext context) throws java.io.IOException {
 		if (committer == null)
@@ -0,0 +1,308 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.io;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FSDataInputStream;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+
+/**
+ * Reads a job's output as text, whether the job wrote it as text or, with
+ * {@link BoaOutputFormat#BINARY}, as {@link OutputRecord}s.
+ *
+ * A job's output is its part files, in order.  Assembling them into one
+ * file renders and reads them on a pool of threads, while a single stream
+ * writes them out in order; each part hands its bytes over through a
+ * bounded queue, so only a bounded amount of output is ever held in memory.
+ */
+public class BoaOutputReader {
+	// how much of a part is handed over at once
+	private static final int CHUNK = 1 << 20;
+	// how many chunks a part may buffer ahead of the writer
+	private static final int CAPACITY = 16;
+
+	/**
+	 * Lists the part files of a job's output, in order.
+	 *
+	 * @param fs the file system holding the output
+	 * @param dir the job's output directory
+	 * @return the part files
+	 * @throws IOException if the directory can not be read
+	 */
+	public static List<Path> parts(final FileSystem fs, final Path dir) throws IOException {
+		final List<Path> parts = new ArrayList<Path>();
+		for (int partNum = 0; ; partNum++) {
+			final Path path = new Path(dir, "part-r-" + String.format("%05d", partNum));
+			if (!fs.exists(path))
+				break;
+			parts.add(path);
+		}
+		return parts;
+	}
+
+	/**
+	 * @param fs the file system holding the part
+	 * @param part a part file
+	 * @return whether the part was written as {@link OutputRecord}s
+	 * @throws IOException if the part can not be read
+	 */
+	public static boolean isBinary(final FileSystem fs, final Path part) throws IOException {
+		final FSDataInputStream in = fs.open(part);
+		try {
+			final byte[] magic = new byte[3];
+			int n = 0;
+			for (int read; n < magic.length && (read = in.read(magic, n, magic.length - n)) > 0; )
+				n += read;
+			return n == magic.length && magic[0] == 'S' && magic[1] == 'E' && magic[2] == 'Q';
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Writes a part file as text.
+	 *
+	 * @param fs the file system holding the part
+	 * @param conf the configuration to use
+	 * @param part the part file
+	 * @param out where to write the text
+	 * @throws IOException if the part can not be read or the text can not be written
+	 */
+	public static void render(final FileSystem fs, final Configuration conf, final Path part, final OutputStream out) throws IOException {
+		if (!isBinary(fs, part)) {
+			final InputStream in = fs.open(part);
+			try {
+				final byte[] b = new byte[64 * 1024];
+				for (int n; (n = in.read(b)) > 0; )
+					out.write(b, 0, n);
+			} finally {
+				in.close();
+			}
+			return;
+		}
+
+		final SequenceFile.Reader in = new SequenceFile.Reader(fs, part, conf);
+		try {
+			final OutputRecord record = new OutputRecord();
+			final Text line = new Text();
+			while (in.next(record, NullWritable.get())) {
+				line.set(record.toString());
+				out.write(line.getBytes(), 0, line.getLength());
+				out.write('\n');
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Is told about each part as it is assembled.
+	 */
+	public interface Listener {
+		/**
+		 * Called after each part is written.
+		 *
+		 * @param part the part file
+		 * @param offset where the part's text starts in the assembled output
+		 * @param length the length of the part's text
+		 * @throws IOException if the listener fails
+		 */
+		void written(Path part, long offset, long length) throws IOException;
+	}
+
+	/**
+	 * Assembles a job's output into one stream of text.
+	 *
+	 * @param fs the file system holding the output
+	 * @param conf the configuration to use
+	 * @param dir the job's output directory
+	 * @param out where to write the text
+	 * @param threads how many parts to read at once
+	 * @param listener told about each part as it is written, or null
+	 * @return the length of the text
+	 * @throws IOException if a part can not be read or the text can not be written
+	 */
+	@SuppressWarnings("unchecked")
+	public static long assemble(final FileSystem fs, final Configuration conf, final Path dir, final OutputStream out, final int threads, final Listener listener) throws IOException {
+		final List<Path> parts = parts(fs, dir);
+		final BlockingQueue<Chunk>[] queues = new BlockingQueue[parts.size()];
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+		long length = 0;
+		try {
+			// the pool starts parts in order, so the part being written is always either done or being read
+			for (int i = 0; i < queues.length; i++) {
+				queues[i] = new LinkedBlockingQueue<Chunk>(CAPACITY);
+				pool.execute(new PartTask(fs, conf, parts.get(i), queues[i]));
+			}
+			pool.shutdown();
+
+			for (int i = 0; i < queues.length; i++) {
+				final long offset = length;
+				for (Chunk c = take(queues[i]); c != END; c = take(queues[i])) {
+					if (c.error != null)
+						throw c.error;
+					out.write(c.b, 0, c.len);
+					length += c.len;
+				}
+				queues[i] = null;
+				if (listener != null)
+					listener.written(parts.get(i), offset, length - offset);
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		return length;
+	}
+
+	private static Chunk take(final BlockingQueue<Chunk> queue) throws IOException {
+		try {
+			return queue.take();
+		} catch (final InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Converts a job's binary output to text.
+	 *
+	 * @param args the job's output directory or a part file, and optionally
+	 *             the file to write the text to (by default, standard output)
+	 * @throws IOException if the output can not be read or the text can not be written
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length < 1) {
+			System.err.println("usage: BoaOutputReader <output dir or part file> [text file]");
+			System.exit(-1);
+		}
+
+		final Configuration conf = new Configuration();
+		final Path path = new Path(args[0]);
+		final FileSystem fs = path.getFileSystem(conf);
+		final OutputStream out = args.length > 1 ? new BufferedOutputStream(new FileOutputStream(args[1])) : new PrintStream(System.out);
+		try {
+			if (fs.getFileStatus(path).isDir())
+				assemble(fs, conf, path, out, Runtime.getRuntime().availableProcessors(), null);
+			else
+				render(fs, conf, path, out);
+		} finally {
+			out.close();
+		}
+	}
+
+	// some of a part's text, or the failure to read the rest of it
+	private static class Chunk {
+		final byte[] b;
+		final int len;
+		final IOException error;
+
+		Chunk(final byte[] b, final int len, final IOException error) {
+			this.b = b;
+			this.len = len;
+			this.error = error;
+		}
+	}
+
+	// marks the end of a part
+	private static final Chunk END = new Chunk(null, 0, null);
+
+	private static class PartTask implements Runnable {
+		private final FileSystem fs;
+		private final Configuration conf;
+		private final Path part;
+		private final BlockingQueue<Chunk> queue;
+
+		PartTask(final FileSystem fs, final Configuration conf, final Path part, final BlockingQueue<Chunk> queue) {
+			this.fs = fs;
+			this.conf = conf;
+			this.part = part;
+			this.queue = queue;
+		}
+
+		@Override
+		public void run() {
+			try {
+				try {
+					final OutputStream chunks = new OutputStream() {
+						private byte[] b = new byte[CHUNK];
+						private int len = 0;
+
+						@Override
+						public void write(final int c) throws IOException {
+							if (len == b.length)
+								flush();
+							b[len++] = (byte) c;
+						}
+
+						@Override
+						public void write(final byte[] src, int off, int n) throws IOException {
+							while (n > 0) {
+								if (len == b.length)
+									flush();
+								final int m = Math.min(n, b.length - len);
+								System.arraycopy(src, off, b, len, m);
+								len += m;
+								off += m;
+								n -= m;
+							}
+						}
+
+						@Override
+						public void flush() throws IOException {
+							if (len == 0)
+								return;
+							try {
+								queue.put(new Chunk(b, len, null));
+							} catch (final InterruptedException e) {
+								// closed early, so stop on the way out too
+								Thread.currentThread().interrupt();
+								throw new IOException(e);
+							}
+							b = new byte[CHUNK];
+							len = 0;
+						}
+					};
+					render(fs, conf, part, chunks);
+					chunks.flush();
+				} catch (final IOException e) {
+					queue.put(new Chunk(null, 0, e));
+				} catch (final RuntimeException e) {
+					queue.put(new Chunk(null, 0, new IOException(e)));
+				}
+				queue.put(END);
+			} catch (final InterruptedException e) {
+				// closed early
+			}
+		}
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import boa.types.Issues.Issue;
+import boa.types.Issues.Issue.IssueStatus;
+import boa.types.Issues.IssuesRoot;
+
+/**
+ * Issues stored as fixed-size pages, next to a dataset's issues map.  A
+ * project's issues are sorted by creation time and split into pages of
+ * {@link #PAGE_SIZE} issues, and a small index records the creation times
+ * and statuses found on each page.  Queries for a time range or a status
+ * then only read and parse the pages that can hold matching issues.
+ *
+ * The pages are a {@link MapFile} from project key and page number to an
+ * {@link IssuesRoot}, and the index a {@link MapFile} from project key to an
+ * encoded {@link Entry}.
+ */
+public class IssuePages {
+	/** the name of the pages directory, next to the issues map */
+	public static final String PAGES = "issue-pages";
+	/** the name of the index directory, next to the issues map */
+	public static final String INDEX = "issue-index";
+	/** the number of issues on each page */
+	public static final int PAGE_SIZE = 256;
+
+	private static final Comparator<Issue> byCreation = new Comparator<Issue>() {
+		@Override
+		public int compare(final Issue i1, final Issue i2) {
+			if (i1.getCreatedDate() < i2.getCreatedDate())
+				return -1;
+			if (i1.getCreatedDate() > i2.getCreatedDate())
+				return 1;
+			return 0;
+		}
+	};
+
+	/**
+	 * What the index knows about one page.
+	 */
+	public static class Page {
+		/** the earliest creation time on the page */
+		public final long first;
+		/** the latest creation time on the page */
+		public final long last;
+		/** the statuses on the page, one bit per {@link IssueStatus} number */
+		public final int statuses;
+
+		public Page(final long first, final long last, final int statuses) {
+			this.first = first;
+			this.last = last;
+			this.statuses = statuses;
+		}
+
+		/**
+		 * @param start the earliest creation time wanted
+		 * @param end the creation time wanted issues are before
+		 * @param status the status wanted, or null for any
+		 * @return false if no issue on the page can match
+		 */
+		public boolean matches(final long start, final long end, final IssueStatus status) {
+			return last >= start && first < end && (status == null || (statuses & bit(status)) != 0);
+		}
+	}
+
+	/**
+	 * The index entry of one project: its pages, in order.
+	 */
+	public static class Entry {
+		public final List<Page> pages;
+
+		public Entry(final List<Page> pages) {
+			this.pages = pages;
+		}
+
+		/**
+		 * Computes the entry for a project's pages.
+		 *
+		 * @param pages the pages, as returned by {@link IssuePages#paginate(IssuesRoot)}
+		 * @return the project's entry
+		 */
+		public static Entry of(final List<IssuesRoot> pages) {
+			final List<Page> l = new ArrayList<Page>(pages.size());
+			for (final IssuesRoot page : pages) {
+				int statuses = 0;
+				for (final Issue issue : page.getIssuesList())
+					statuses |= bit(issue.getStatus());
+				l.add(new Page(page.getIssues(0).getCreatedDate(), page.getIssues(page.getIssuesCount() - 1).getCreatedDate(), statuses));
+			}
+			return new Entry(l);
+		}
+
+		/**
+		 * Decodes an entry.
+		 *
+		 * @param b the encoded entry
+		 * @param len the length of the encoded entry
+		 * @return the entry
+		 * @throws IOException if the entry is malformed
+		 */
+		public static Entry decode(final byte[] b, final int len) throws IOException {
+			final CodedInputStream in = CodedInputStream.newInstance(b, 0, len);
+
+			final int npages = in.readRawVarint32();
+			final List<Page> pages = new ArrayList<Page>(npages);
+			for (int i = 0; i < npages; i++)
+				pages.add(new Page(in.readRawVarint64(), in.readRawVarint64(), in.readRawVarint32()));
+
+			return new Entry(Collections.unmodifiableList(pages));
+		}
+
+		/**
+		 * @return the encoded entry
+		 */
+		public byte[] encode() {
+			int size = CodedOutputStream.computeRawVarint32Size(pages.size());
+			for (final Page p : pages)
+				size += CodedOutputStream.computeRawVarint64Size(p.first) + CodedOutputStream.computeRawVarint64Size(p.last) + CodedOutputStream.computeRawVarint32Size(p.statuses);
+
+			final byte[] b = new byte[size];
+			final CodedOutputStream out = CodedOutputStream.newInstance(b);
+			try {
+				out.writeRawVarint32(pages.size());
+				for (final Page p : pages) {
+					out.writeRawVarint64(p.first);
+					out.writeRawVarint64(p.last);
+					out.writeRawVarint32(p.statuses);
+				}
+				out.checkNoSpaceLeft();
+			} catch (final IOException e) {
+				// can not happen, the buffer is exactly the right size
+				throw new RuntimeException(e);
+			}
+			return b;
+		}
+	}
+
+	private static int bit(final IssueStatus status) {
+		return 1 << Math.min(status.getNumber(), 31);
+	}
+
+	/**
+	 * @param project the project's key
+	 * @param page the page's number
+	 * @return the key of the page in the pages map
+	 */
+	public static Text pageKey(final String project, final int page) {
+		return new Text(project + "/" + page);
+	}
+
+	/**
+	 * Splits a project's issues into pages, sorted by creation time.
+	 *
+	 * @param root all of the project's issues
+	 * @return the pages
+	 */
+	public static List<IssuesRoot> paginate(final IssuesRoot root) {
+		final List<Issue> issues = new ArrayList<Issue>(root.getIssuesList());
+		Collections.sort(issues, byCreation);
+
+		final List<IssuesRoot> pages = new ArrayList<IssuesRoot>();
+		for (int i = 0; i < issues.size(); i += PAGE_SIZE)
+			pages.add(IssuesRoot.newBuilder().addAllIssues(issues.subList(i, Math.min(i + PAGE_SIZE, issues.size()))).build());
+		return pages;
+	}
+
+	/**
+	 * Selects issues the same way {@link Reader#get(String, long, long, IssueStatus)}
+	 * does, from all of a project's issues.  This is used for datasets
+	 * without pages.
+	 *
+	 * @param root all of the project's issues
+	 * @param start the earliest creation time wanted
+	 * @param end the creation time wanted issues are before
+	 * @param status the status wanted, or null for any
+	 * @return the matching issues, sorted by creation time
+	 */
+	public static IssuesRoot filter(final IssuesRoot root, final long start, final long end, final IssueStatus status) {
+		final List<Issue> issues = new ArrayList<Issue>();
+		for (final Issue issue : root.getIssuesList())
+			if (matches(issue, start, end, status))
+				issues.add(issue);
+		Collections.sort(issues, byCreation);
+		return IssuesRoot.newBuilder().addAllIssues(issues).build();
+	}
+
+	private static boolean matches(final Issue issue, final long start, final long end, final IssueStatus status) {
+		return issue.getCreatedDate() >= start && issue.getCreatedDate() < end && (status == null || issue.getStatus() == status);
+	}
+
+	/**
+	 * Writes the pages and index for a dataset.  The pages and entries are
+	 * first written in the order of the issues and then sorted by key, like
+	 * the {@link ProjectIndex}.
+	 *
+	 * @param fs the file system holding the dataset
+	 * @param conf the configuration to use
+	 * @param issues a sequence file from project key to all of the project's issues
+	 * @param dataset the dataset directory to write the pages and index to
+	 * @throws IOException if the issues can not be read or the pages can not be written
+	 */
+	public static void write(final FileSystem fs, final Configuration conf, final Path issues, final Path dataset) throws IOException {
+		final Path unsortedPages = new Path(dataset, PAGES + ".unsorted");
+		final Path unsortedIndex = new Path(dataset, INDEX + ".unsorted");
+
+		final SequenceFile.Reader r = new SequenceFile.Reader(fs, issues, conf);
+		final SequenceFile.Writer pw = SequenceFile.createWriter(fs, conf, unsortedPages, Text.class, BytesWritable.class, CompressionType.NONE);
+		final SequenceFile.Writer iw = SequenceFile.createWriter(fs, conf, unsortedIndex, Text.class, BytesWritable.class, CompressionType.NONE);
+		try {
+			final Text key = new Text();
+			final BytesWritable value = new BytesWritable();
+			while (r.next(key, value)) {
+				final IssuesRoot root = IssuesRoot.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+				final List<IssuesRoot> pages = paginate(root);
+				for (int i = 0; i < pages.size(); i++)
+					pw.append(pageKey(key.toString(), i), new BytesWritable(pages.get(i).toByteArray()));
+				iw.append(key, new BytesWritable(Entry.of(pages).encode()));
+			}
+		} finally {
+			r.close();
+			pw.close();
+			iw.close();
+		}
+
+		sort(fs, conf, unsortedPages, new Path(dataset, PAGES));
+		sort(fs, conf, unsortedIndex, new Path(dataset, INDEX));
+	}
+
+	private static void sort(final FileSystem fs, final Configuration conf, final Path unsorted, final Path dir) throws IOException {
+		fs.delete(dir, true);
+		final SequenceFile.Sorter sorter = new SequenceFile.Sorter(fs, Text.class, BytesWritable.class, conf);
+		sorter.sort(new Path[] { unsorted }, new Path(dir, MapFile.DATA_FILE_NAME), true);
+		try {
+			MapFile.fix(fs, dir, Text.class, BytesWritable.class, false, conf);
+		} catch (final IOException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new IOException("unable to index " + dir, e);
+		}
+	}
+
+	/**
+	 * Pages the issues of datasets that were generated without pages.
+	 *
+	 * @param args the dataset directories, holding the issues map
+	 * @throws IOException if a dataset can not be paged
+	 */
+	public static void main(final String[] args) throws IOException {
+		final Configuration conf = new Configuration();
+		for (final String dataset : args) {
+			final Path path = new Path(dataset);
+			write(path.getFileSystem(conf), conf, new Path(new Path(path, "issues"), MapFile.DATA_FILE_NAME), path);
+		}
+	}
+
+	/**
+	 * Reads the pages of a dataset.
+	 */
+	public static class Reader implements Closeable {
+		private final MapFile.Reader pages, index;
+		private final BytesWritable value = new BytesWritable();
+
+		/**
+		 * Opens the pages of a dataset.
+		 *
+		 * @param fs the file system holding the dataset
+		 * @param conf the configuration to use
+		 * @param dataset the dataset directory
+		 * @return the pages, or null if the dataset has none
+		 * @throws IOException if the pages exist but can not be opened
+		 */
+		public static Reader open(final FileSystem fs, final Configuration conf, final Path dataset) throws IOException {
+			final Path pages = new Path(dataset, PAGES), index = new Path(dataset, INDEX);
+			if (!fs.exists(new Path(pages, MapFile.INDEX_FILE_NAME)) || !fs.exists(new Path(index, MapFile.INDEX_FILE_NAME)))
+				return null;
+			return new Reader(new MapFile.Reader(fs, pages.toString(), conf), new MapFile.Reader(fs, index.toString(), conf));
+		}
+
+		private Reader(final MapFile.Reader pages, final MapFile.Reader index) {
+			this.pages = pages;
+			this.index = index;
+		}
+
+		/**
+		 * Looks up a project's index entry.
+		 *
+		 * @param project the project's key
+		 * @return the project's entry, or null if it has no issues
+		 * @throws IOException if the index can not be read
+		 */
+		public Entry getEntry(final String project) throws IOException {
+			if (index.get(new Text(project), value) == null)
+				return null;
+			return Entry.decode(value.getBytes(), value.getLength());
+		}
+
+		/**
+		 * Reads the issues of a project created in a time range and with a
+		 * status, parsing only the pages that can hold them.
+		 *
+		 * @param project the project's key
+		 * @param start the earliest creation time wanted
+		 * @param end the creation time wanted issues are before
+		 * @param status the status wanted, or null for any
+		 * @return the matching issues, sorted by creation time
+		 * @throws IOException if the pages can not be read
+		 */
+		public IssuesRoot get(final String project, final long start, final long end, final IssueStatus status) throws IOException {
+			final IssuesRoot.Builder b = IssuesRoot.newBuilder();
+			final Entry e = getEntry(project);
+			if (e == null)
+				return b.build();
+
+			for (int i = 0; i < e.pages.size(); i++) {
+				if (!e.pages.get(i).matches(start, end, status))
+					continue;
+				if (pages.get(pageKey(project, i), value) == null)
+					throw new IOException("missing issue page " + i + " of " + project);
+				final IssuesRoot page = IssuesRoot.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+				for (final Issue issue : page.getIssuesList())
+					if (matches(issue, start, end, status))
+						b.addIssues(issue);
+			}
+			return b.build();
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void close() throws IOException {
+			try {
+				pages.close();
+			} finally {
+				index.close();
+			}
+		}
+	}
+}
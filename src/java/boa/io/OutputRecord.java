@@ -0,0 +1,150 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.io;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.Writable;
+
+/**
+ * One line of a job's output, kept typed instead of rendered.  Jobs write
+ * these to a SequenceFile when run with {@link BoaOutputFormat#BINARY}, and
+ * {@link BoaOutputReader} renders them to the text output on demand.
+ *
+ * A record is either a value in a table, rendered like
+ * <code>table[index] = value weight w</code>, or a line the table already
+ * formatted itself, as graph tables do.
+ */
+public class OutputRecord implements Writable {
+	private static final byte VALUE = 0;
+	private static final byte LINE = 1;
+
+	private String table;
+	private String index;
+	private String value;
+	private String weight;
+	private String line;
+
+	/**
+	 * Construct an OutputRecord.
+	 */
+	public OutputRecord() {
+		// default constructor for Writable
+	}
+
+	/**
+	 * Construct an OutputRecord for a value in a table.
+	 *
+	 * @param key the table and index the value is in
+	 * @param value the value
+	 * @param weight the value's weight, or null
+	 */
+	public OutputRecord(final EmitKey key, final String value, final String weight) {
+		this.table = key.getName();
+		this.index = key.getIndex();
+		this.value = value;
+		this.weight = weight;
+	}
+
+	/**
+	 * Construct an OutputRecord for an already formatted line.
+	 *
+	 * @param line the line, without its line terminator
+	 */
+	public OutputRecord(final String line) {
+		this.line = line;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void readFields(final DataInput in) throws IOException {
+		if (in.readByte() == LINE) {
+			this.table = this.index = this.value = this.weight = null;
+			this.line = Text.readString(in);
+			return;
+		}
+
+		this.line = null;
+		this.table = Text.readString(in);
+		this.index = Text.readString(in);
+		this.value = Text.readString(in);
+		this.weight = in.readBoolean() ? Text.readString(in) : null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void write(final DataOutput out) throws IOException {
+		if (this.line != null) {
+			out.writeByte(LINE);
+			Text.writeString(out, this.line);
+			return;
+		}
+
+		out.writeByte(VALUE);
+		Text.writeString(out, this.table);
+		Text.writeString(out, this.index);
+		Text.writeString(out, this.value);
+		out.writeBoolean(this.weight != null);
+		if (this.weight != null)
+			Text.writeString(out, this.weight);
+	}
+
+	/**
+	 * @return the table's name, or null for a formatted line
+	 */
+	public String getTable() {
+		return this.table;
+	}
+
+	/**
+	 * @return the index into the table, or null for a formatted line
+	 */
+	public String getIndex() {
+		return this.index;
+	}
+
+	/**
+	 * @return the value, or null for a formatted line
+	 */
+	public String getValue() {
+		return this.value;
+	}
+
+	/**
+	 * @return the value's weight, or null
+	 */
+	public String getWeight() {
+		return this.weight;
+	}
+
+	/**
+	 * Renders the record as the line the text output would hold.
+	 *
+	 * @return the line, without its line terminator
+	 */
+	@Override
+	public String toString() {
+		if (this.line != null)
+			return this.line;
+		if (this.weight != null)
+			return this.table + this.index + " = " + this.value + " weight " + this.weight;
+		return this.table + this.index + " = " + this.value;
+	}
+}
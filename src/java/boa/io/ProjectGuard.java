@@ -0,0 +1,273 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.io;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import boa.functions.BoaStringIntrinsics;
+
+/**
+ * A condition every project must meet for a program to do anything with
+ * it, checked against the project's {@link ProjectIndex} entry.  A guard is
+ * a disjunction of alternatives (one per job), each a conjunction of
+ * clauses.
+ *
+ * Guards are passed to the input in the job configuration, under
+ * {@link #PROPERTY}, in a compact text form: alternatives are separated by
+ * ';', clauses by ',', and the parts of a clause by ':'.
+ */
+public class ProjectGuard {
+	/** the configuration property holding the guard */
+	public static final String PROPERTY = "boa.input.guard";
+
+	/**
+	 * One condition on an index entry.
+	 */
+	public static abstract class Clause {
+		/**
+		 * @param e the index entry of a project
+		 * @return true if the project meets the condition
+		 */
+		public abstract boolean accepts(ProjectIndex.Entry e);
+	}
+
+	/**
+	 * Some language (optionally lowercased) matches a regex, as with
+	 * {@link BoaStringIntrinsics#match(String, String)}.
+	 */
+	private static class LanguageMatches extends Clause {
+		private final String regex;
+		private final boolean lowercase;
+
+		LanguageMatches(final String regex, final boolean lowercase) {
+			this.regex = regex;
+			this.lowercase = lowercase;
+		}
+
+		@Override
+		public boolean accepts(final ProjectIndex.Entry e) {
+			for (final String l : e.languages)
+				if (BoaStringIntrinsics.match(regex, lowercase ? BoaStringIntrinsics.lowerCase(l) : l))
+					return true;
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "lang-match:" + (lowercase ? "lower" : "") + ":" + encode(regex);
+		}
+	}
+
+	/**
+	 * Some language (optionally lowercased) is equal to a string.
+	 */
+	private static class LanguageEquals extends Clause {
+		private final String s;
+		private final boolean lowercase;
+
+		LanguageEquals(final String s, final boolean lowercase) {
+			this.s = s;
+			this.lowercase = lowercase;
+		}
+
+		@Override
+		public boolean accepts(final ProjectIndex.Entry e) {
+			for (final String l : e.languages)
+				if (s.equals(lowercase ? BoaStringIntrinsics.lowerCase(l) : l))
+					return true;
+			return false;
+		}
+
+		@Override
+		public String toString() {
+			return "lang-eq:" + (lowercase ? "lower" : "") + ":" + encode(s);
+		}
+	}
+
+	/**
+	 * The number of code repositories compares to a constant.
+	 */
+	private static class Repositories extends Clause {
+		private final String op;
+		private final long n;
+
+		Repositories(final String op, final long n) {
+			if (!OPS.contains(op))
+				throw new IllegalArgumentException("unknown comparison '" + op + "'");
+			this.op = op;
+			this.n = n;
+		}
+
+		@Override
+		public boolean accepts(final ProjectIndex.Entry e) {
+			final long r = e.repositories;
+			if (op.equals("==")) return r == n;
+			if (op.equals("!=")) return r != n;
+			if (op.equals("<")) return r < n;
+			if (op.equals("<=")) return r <= n;
+			if (op.equals(">")) return r > n;
+			return r >= n;
+		}
+
+		@Override
+		public String toString() {
+			return "repos:" + encode(op) + ":" + n;
+		}
+	}
+
+	private static final List<String> OPS = Arrays.asList("==", "!=", "<", "<=", ">", ">=");
+
+	/**
+	 * @param regex the regex
+	 * @param lowercase whether languages are lowercased before matching
+	 * @return a clause accepting projects with a language matching the regex
+	 */
+	public static Clause languageMatches(final String regex, final boolean lowercase) {
+		return new LanguageMatches(regex, lowercase);
+	}
+
+	/**
+	 * @param s the language
+	 * @param lowercase whether languages are lowercased before comparing
+	 * @return a clause accepting projects with the language
+	 */
+	public static Clause languageEquals(final String s, final boolean lowercase) {
+		return new LanguageEquals(s, lowercase);
+	}
+
+	/**
+	 * @param op the comparison, one of ==, !=, &lt;, &lt;=, &gt; or &gt;=
+	 * @param n the number to compare to
+	 * @return a clause accepting projects whose number of code repositories compares to n
+	 */
+	public static Clause repositories(final String op, final long n) {
+		return new Repositories(op, n);
+	}
+
+	/**
+	 * Negates a comparison operator.
+	 *
+	 * @param op the comparison
+	 * @return the comparison that is true exactly when op is false
+	 */
+	public static String negate(final String op) {
+		if (op.equals("==")) return "!=";
+		if (op.equals("!=")) return "==";
+		if (op.equals("<")) return ">=";
+		if (op.equals("<=")) return ">";
+		if (op.equals(">")) return "<=";
+		if (op.equals(">=")) return "<";
+		throw new IllegalArgumentException("unknown comparison '" + op + "'");
+	}
+
+	private final List<List<Clause>> alternatives;
+
+	/**
+	 * Creates a guard.
+	 *
+	 * @param alternatives the alternatives, each a list of clauses that must all hold
+	 */
+	public ProjectGuard(final List<List<Clause>> alternatives) {
+		this.alternatives = alternatives;
+	}
+
+	/**
+	 * @param e the index entry of a project
+	 * @return true if the project meets the guard
+	 */
+	public boolean accepts(final ProjectIndex.Entry e) {
+		for (final List<Clause> alternative : alternatives) {
+			boolean all = true;
+			for (final Clause c : alternative)
+				if (!c.accepts(e)) {
+					all = false;
+					break;
+				}
+			if (all)
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Parses the text form of a guard.
+	 *
+	 * @param s the text form, as returned by {@link #toString()}
+	 * @return the guard
+	 * @throws IllegalArgumentException if the text is not a guard
+	 */
+	public static ProjectGuard parse(final String s) {
+		final List<List<Clause>> alternatives = new ArrayList<List<Clause>>();
+		for (final String alt : s.split(";", -1)) {
+			final List<Clause> clauses = new ArrayList<Clause>();
+			if (alt.length() > 0)
+				for (final String clause : alt.split(",", -1)) {
+					final String[] parts = clause.split(":", -1);
+					if (parts.length != 3)
+						throw new IllegalArgumentException("invalid guard clause '" + clause + "'");
+					if (parts[0].equals("lang-match"))
+						clauses.add(languageMatches(decode(parts[2]), parts[1].equals("lower")));
+					else if (parts[0].equals("lang-eq"))
+						clauses.add(languageEquals(decode(parts[2]), parts[1].equals("lower")));
+					else if (parts[0].equals("repos"))
+						clauses.add(repositories(decode(parts[1]), Long.parseLong(parts[2])));
+					else
+						throw new IllegalArgumentException("invalid guard clause '" + clause + "'");
+				}
+			alternatives.add(clauses);
+		}
+		return new ProjectGuard(alternatives);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public String toString() {
+		final StringBuilder sb = new StringBuilder();
+		for (int j = 0; j < alternatives.size(); j++) {
+			if (j > 0)
+				sb.append(';');
+			final List<Clause> alternative = alternatives.get(j);
+			for (int i = 0; i < alternative.size(); i++) {
+				if (i > 0)
+					sb.append(',');
+				sb.append(alternative.get(i));
+			}
+		}
+		return sb.toString();
+	}
+
+	private static String encode(final String s) {
+		try {
+			return URLEncoder.encode(s, "UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private static String decode(final String s) {
+		try {
+			return URLDecoder.decode(s, "UTF-8");
+		} catch (final UnsupportedEncodingException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
@@ -0,0 +1,257 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.io;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+
+import boa.types.Code.CodeRepository;
+import boa.types.Diff.ChangedFile;
+import boa.types.Toplevel.Project;
+
+/**
+ * A side index of the project attributes queries most often filter on,
+ * stored next to a dataset's projects.seq.  Reading an entry is far cheaper
+ * than reading and parsing the project, so the input can skip projects a
+ * program's guard would reject without decoding them.
+ *
+ * The index is a {@link MapFile} from project key to an encoded
+ * {@link Entry}.
+ */
+public class ProjectIndex {
+	/** the name of the index directory, next to projects.seq */
+	public static final String NAME = "projects-index";
+
+	/**
+	 * The indexed attributes of one project.
+	 */
+	public static class Entry {
+		/** the project's programming languages */
+		public final List<String> languages;
+		/** the number of code repositories */
+		public final int repositories;
+		/** the number of revisions, over all code repositories */
+		public final int revisions;
+		/** the number of files of each kind (by FileKind number) in the head snapshots */
+		public final Map<Integer, Integer> kinds;
+
+		public Entry(final List<String> languages, final int repositories, final int revisions, final Map<Integer, Integer> kinds) {
+			this.languages = languages;
+			this.repositories = repositories;
+			this.revisions = revisions;
+			this.kinds = kinds;
+		}
+
+		/**
+		 * Computes the entry for a project.
+		 *
+		 * @param p the project
+		 * @return the project's entry
+		 */
+		public static Entry of(final Project p) {
+			int revisions = 0;
+			final Map<Integer, Integer> kinds = new TreeMap<Integer, Integer>();
+			for (final CodeRepository cr : p.getCodeRepositoriesList()) {
+				revisions += cr.getRevisionsCount() + cr.getRevisionKeysCount();
+				for (final ChangedFile cf : cr.getHeadSnapshotList()) {
+					final Integer n = kinds.get(cf.getKind().getNumber());
+					kinds.put(cf.getKind().getNumber(), n == null ? 1 : n + 1);
+				}
+			}
+			return new Entry(p.getProgrammingLanguagesList(), p.getCodeRepositoriesCount(), revisions, kinds);
+		}
+
+		/**
+		 * Decodes an entry.
+		 *
+		 * @param b the encoded entry
+		 * @param len the length of the encoded entry
+		 * @return the entry
+		 * @throws IOException if the entry is malformed
+		 */
+		public static Entry decode(final byte[] b, final int len) throws IOException {
+			final CodedInputStream in = CodedInputStream.newInstance(b, 0, len);
+
+			final int nlanguages = in.readRawVarint32();
+			final List<String> languages = new ArrayList<String>(nlanguages);
+			for (int i = 0; i < nlanguages; i++)
+				languages.add(in.readString());
+
+			final int repositories = in.readRawVarint32();
+			final int revisions = in.readRawVarint32();
+
+			final int nkinds = in.readRawVarint32();
+			final Map<Integer, Integer> kinds = new TreeMap<Integer, Integer>();
+			for (int i = 0; i < nkinds; i++)
+				kinds.put(in.readRawVarint32(), in.readRawVarint32());
+
+			return new Entry(Collections.unmodifiableList(languages), repositories, revisions, Collections.unmodifiableMap(kinds));
+		}
+
+		/**
+		 * @return the encoded entry
+		 */
+		public byte[] encode() {
+			int size = CodedOutputStream.computeRawVarint32Size(languages.size());
+			for (final String l : languages)
+				size += CodedOutputStream.computeStringSizeNoTag(l);
+			size += CodedOutputStream.computeRawVarint32Size(repositories);
+			size += CodedOutputStream.computeRawVarint32Size(revisions);
+			size += CodedOutputStream.computeRawVarint32Size(kinds.size());
+			for (final Map.Entry<Integer, Integer> e : kinds.entrySet())
+				size += CodedOutputStream.computeRawVarint32Size(e.getKey()) + CodedOutputStream.computeRawVarint32Size(e.getValue());
+
+			final byte[] b = new byte[size];
+			final CodedOutputStream out = CodedOutputStream.newInstance(b);
+			try {
+				out.writeRawVarint32(languages.size());
+				for (final String l : languages)
+					out.writeStringNoTag(l);
+				out.writeRawVarint32(repositories);
+				out.writeRawVarint32(revisions);
+				out.writeRawVarint32(kinds.size());
+				for (final Map.Entry<Integer, Integer> e : kinds.entrySet()) {
+					out.writeRawVarint32(e.getKey());
+					out.writeRawVarint32(e.getValue());
+				}
+				out.checkNoSpaceLeft();
+			} catch (final IOException e) {
+				// can not happen, the buffer is exactly the right size
+				throw new RuntimeException(e);
+			}
+			return b;
+		}
+	}
+
+	/**
+	 * Builds the index for a dataset.  The entries are first written in
+	 * projects.seq order and then sorted by key, so this needs no more
+	 * memory than sorting does.
+	 *
+	 * @param fs the file system holding the dataset
+	 * @param conf the configuration to use
+	 * @param dataset the dataset directory, holding projects.seq
+	 * @throws IOException if the projects can not be read or the index can not be written
+	 */
+	public static void write(final FileSystem fs, final Configuration conf, final Path dataset) throws IOException {
+		final Path dir = new Path(dataset, NAME);
+		final Path unsorted = new Path(dataset, NAME + ".unsorted");
+		fs.delete(dir, true);
+
+		final SequenceFile.Reader r = new SequenceFile.Reader(fs, new Path(dataset, "projects.seq"), conf);
+		final SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, unsorted, Text.class, BytesWritable.class, CompressionType.NONE);
+		try {
+			final Text key = new Text();
+			final BytesWritable value = new BytesWritable();
+			while (r.next(key, value)) {
+				final Project p = Project.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+				w.append(key, new BytesWritable(Entry.of(p).encode()));
+			}
+		} finally {
+			r.close();
+			w.close();
+		}
+
+		final SequenceFile.Sorter sorter = new SequenceFile.Sorter(fs, Text.class, BytesWritable.class, conf);
+		sorter.sort(new Path[] { unsorted }, new Path(dir, MapFile.DATA_FILE_NAME), true);
+		try {
+			MapFile.fix(fs, dir, Text.class, BytesWritable.class, false, conf);
+		} catch (final IOException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new IOException("unable to index " + dir, e);
+		}
+	}
+
+	/**
+	 * Indexes datasets that were generated without an index.
+	 *
+	 * @param args the dataset directories
+	 * @throws IOException if a dataset can not be indexed
+	 */
+	public static void main(final String[] args) throws IOException {
+		final Configuration conf = new Configuration();
+		for (final String dataset : args) {
+			final Path path = new Path(dataset);
+			write(path.getFileSystem(conf), conf, path);
+		}
+	}
+
+	/**
+	 * Looks up projects in a dataset's index.
+	 */
+	public static class Reader implements Closeable {
+		private final MapFile.Reader in;
+		private final BytesWritable value = new BytesWritable();
+
+		/**
+		 * Opens the index of a dataset.
+		 *
+		 * @param fs the file system holding the dataset
+		 * @param conf the configuration to use
+		 * @param dataset the dataset directory
+		 * @return the index, or null if the dataset has none
+		 * @throws IOException if the index exists but can not be opened
+		 */
+		public static Reader open(final FileSystem fs, final Configuration conf, final Path dataset) throws IOException {
+			final Path dir = new Path(dataset, NAME);
+			if (!fs.exists(new Path(dir, MapFile.INDEX_FILE_NAME)))
+				return null;
+			return new Reader(new MapFile.Reader(fs, dir.toString(), conf));
+		}
+
+		private Reader(final MapFile.Reader in) {
+			this.in = in;
+		}
+
+		/**
+		 * Looks up a project.
+		 *
+		 * @param key the project's key in projects.seq
+		 * @return the project's entry, or null if it is not in the index
+		 * @throws IOException if the index can not be read
+		 */
+		public Entry get(final Text key) throws IOException {
+			if (in.get(key, value) == null)
+				return null;
+			return Entry.decode(value.getBytes(), value.getLength());
+		}
+
+		/** {@inheritDoc} */
+		@Override
+		public void close() throws IOException {
+			in.close();
+		}
+	}
+}
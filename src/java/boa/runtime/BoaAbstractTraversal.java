@@ -396,6 +396,8 @@ public abstract class BoaAbstractTraversal<T1> {
 				case RANDOM:
 					boolean fixpFlag;
 					do {
+						// a fixpoint may take many rounds, so stop when the project runs out of time
+						BoaBudget.check();
 						prevOutputMapObj = new java.util.HashMap<Long, T1>(outputMapObj);
 						traverse(cfg, direction, kind);
 						fixpFlag = true;
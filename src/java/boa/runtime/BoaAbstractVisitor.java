@@ -41,6 +41,8 @@ import boa.types.Toplevel.Project;
  * By default, all <code>preVisit()</code> methods call {@link #defaultPreVisit()} and return <code>true</code>.
  * By default, all <code>postVisit()</code> methods call {@link #defaultPostVisit()}.
  * 
+ * Each node visited counts against the project's {@link BoaBudget}.
+ * 
  * @author rdyer
  */
 public abstract class BoaAbstractVisitor {
@@ -217,6 +219,7 @@ public abstract class BoaAbstractVisitor {
 	}
 
 	public final void visit(final Project node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -224,6 +227,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final CodeRepository node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			final int revisionsSize = BoaIntrinsics.getRevisionsCount(node);
 			for (int i = 0; i < revisionsSize; i++)
@@ -233,6 +237,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Revision node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -240,6 +245,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final ChangedFile node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visit(BoaAstIntrinsics.getast(node));
 
@@ -247,6 +253,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final ASTRoot node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -254,6 +261,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Namespace node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -261,6 +269,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Declaration node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -268,6 +277,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Type node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 			
@@ -275,6 +285,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Method node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -282,6 +293,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Variable node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -289,6 +301,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Statement node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -296,6 +309,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Expression node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -303,6 +317,7 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Modifier node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			visitChildren(node);
 
@@ -310,11 +325,13 @@ public abstract class BoaAbstractVisitor {
 		}
 	}
 	public final void visit(final Comment node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			postVisit(node);
 		}
 	}
 	public final void visit(final Person node) throws Exception {
+		BoaBudget.node();
 		if (preVisit(node)) {
 			postVisit(node);
 		}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import org.apache.hadoop.conf.Configuration;
+
+/**
+ * Limits how much work a program may do on one project.  The visitors,
+ * traversals and {@link boa.functions.BoaAstIntrinsics#getast} report
+ * their progress here, and once a project goes over its budget an
+ * {@link ExceededException} aborts it.  The mapper then drops the
+ * project's emits, counts it and logs its key, so it can be re-run with a
+ * larger budget.
+ *
+ * The budget lives in static fields, as a map task runs on one thread.
+ */
+public class BoaBudget {
+	/** the property holding the most time to spend on a project, in milliseconds */
+	public static final String MILLIS = "boa.budget.millis";
+	/** the property holding the most nodes to visit or traverse in a project */
+	public static final String NODES = "boa.budget.nodes";
+	/** the property holding the most ASTs to read for a project */
+	public static final String ASTS = "boa.budget.asts";
+
+	public static enum BUDGETCOUNTER {
+		PROJECTS_OVER_BUDGET,
+	};
+
+	/**
+	 * Thrown when a project goes over its budget.
+	 */
+	public static class ExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+
+		public ExceededException(final String message) {
+			super(message);
+		}
+	}
+
+	// the time is only checked once every this many nodes (minus 1)
+	private static final int CHECK_MASK = 0x3ff;
+
+	private static long maxMillis = 0;
+	private static long maxNodes = Long.MAX_VALUE;
+	private static long maxAsts = Long.MAX_VALUE;
+
+	private static long started;
+	private static long deadline = Long.MAX_VALUE;
+	private static long nodes;
+	private static long asts;
+
+	/**
+	 * Reads the budget of a task.
+	 *
+	 * @param conf the configuration of the task
+	 * @return true if projects have a budget
+	 */
+	public static boolean setup(final Configuration conf) {
+		maxMillis = conf.getLong(MILLIS, 0);
+		maxNodes = conf.getLong(NODES, 0) > 0 ? conf.getLong(NODES, 0) : Long.MAX_VALUE;
+		maxAsts = conf.getLong(ASTS, 0) > 0 ? conf.getLong(ASTS, 0) : Long.MAX_VALUE;
+		return maxMillis > 0 || maxNodes != Long.MAX_VALUE || maxAsts != Long.MAX_VALUE;
+	}
+
+	/**
+	 * Starts the budget of a project.
+	 */
+	public static void start() {
+		started = System.currentTimeMillis();
+		deadline = maxMillis > 0 ? started + maxMillis : Long.MAX_VALUE;
+		nodes = 0;
+		asts = 0;
+	}
+
+	/**
+	 * Accounts for visiting or traversing a node.
+	 *
+	 * @throws ExceededException if the project is over budget
+	 */
+	public static void node() {
+		if (++nodes > maxNodes || ((nodes & CHECK_MASK) == 0 && System.currentTimeMillis() > deadline))
+			throw exceeded();
+	}
+
+	/**
+	 * Accounts for reading an AST.
+	 *
+	 * @throws ExceededException if the project is over budget
+	 */
+	public static void ast() {
+		if (++asts > maxAsts)
+			throw exceeded();
+		check();
+	}
+
+	/**
+	 * Checks the project has time left.
+	 *
+	 * @throws ExceededException if the project is over budget
+	 */
+	public static void check() {
+		if (System.currentTimeMillis() > deadline)
+			throw exceeded();
+	}
+
+	private static ExceededException exceeded() {
+		return new ExceededException("over budget after " + (System.currentTimeMillis() - started) + " ms, " + nodes + " nodes and " + asts + " ASTs");
+	}
+}
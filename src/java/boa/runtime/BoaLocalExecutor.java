@@ -0,0 +1,583 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.conf.Configurable;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.WritableUtils;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.Counter;
+import org.apache.hadoop.mapreduce.Counters;
+import org.apache.hadoop.mapreduce.InputSplit;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordReader;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.util.Progress;
+import org.apache.log4j.Logger;
+
+import boa.io.BoaOutputFormat;
+import boa.io.EmitKey;
+import boa.io.EmitValue;
+import boa.io.ProjectGuard;
+import boa.io.ProjectIndex;
+
+/**
+ * Runs a compiled Boa program inside this JVM, without Hadoop's job runner.
+ * Projects are read straight from the input's projects.seq and mapped on a
+ * pool of threads, the emitted values are kept in memory, and each output
+ * table is then reduced by the program's own aggregators.  The output is
+ * written in the same format and to the same part-r-NNNNN files as a Hadoop
+ * job would.
+ *
+ * Generated programs and the Boa functions keep state in static fields, so
+ * every worker thread loads its own copy of the Boa classes, much like every
+ * Hadoop map task runs in its own JVM.  Only the classes handed back to the
+ * executor (and protobuf messages, which are immutable) are shared.
+ */
+public class BoaLocalExecutor {
+	private static final Logger LOG = Logger.getLogger(BoaLocalExecutor.class);
+
+	// prefixes of the Boa classes that workers share instead of loading their own copy
+	private static final String[] SHARED = { "boa.io.", "boa.types.", "boa.datagen." };
+
+	private final ClassLoader loader;
+	private final String className;
+	private final int threads;
+
+	private final Configuration conf = new Configuration();
+	private final Counters counters = new Counters();
+	private final Stats stats = new Stats();
+	private final StatusReporter reporter = new StatusReporter() {
+		@Override
+		public Counter getCounter(final Enum<?> name) {
+			return counters.findCounter(name);
+		}
+
+		@Override
+		public Counter getCounter(final String group, final String name) {
+			synchronized (counters) {
+				return counters.findCounter(group, name);
+			}
+		}
+
+		@Override
+		public void progress() {
+		}
+
+		@Override
+		public void setStatus(final String status) {
+		}
+	};
+
+	/**
+	 * Creates an executor for a compiled program.
+	 *
+	 * @param loader the class loader that can load the compiled program
+	 * @param className the fully qualified name of the program's class, e.g. boa.Counts
+	 * @param threads the number of threads to map projects on
+	 */
+	public BoaLocalExecutor(final ClassLoader loader, final String className, final int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("need at least one thread");
+		this.loader = loader;
+		this.className = className;
+		this.threads = threads;
+	}
+
+	/**
+	 * Runs the program over a local dataset.
+	 *
+	 * @param inputDir the dataset directory, holding projects.seq (and ast, commit, etc)
+	 * @param outputDir the directory to write the part-r-NNNNN files to
+	 * @throws IOException if the input can not be read, the output can not be
+	 *         written, or the program fails
+	 */
+	public void run(final String inputDir, final String outputDir) throws IOException {
+		conf.set("boa.input.dir", inputDir);
+
+		final FileSystem fs = FileSystem.getLocal(conf);
+
+		// programs compiled with profiling write a profile per worker
+		final Path profile = BoaProfiler.getDir(new Path(new File(outputDir).getAbsolutePath()));
+		fs.delete(profile, true);
+		conf.set(BoaProfiler.PROPERTY, profile.toString());
+		final SequenceFile.Reader in = new SequenceFile.Reader(fs, new Path(inputDir, "projects.seq"), conf);
+		final String guard = newProgram(loader).getInputGuard();
+		final ProjectIndex.Reader index = guard == null ? null : ProjectIndex.Reader.open(fs, conf, new Path(inputDir));
+		final Input input = new Input(in, index, index == null ? null : ProjectGuard.parse(guard));
+
+		final long start = System.currentTimeMillis();
+		final ExecutorService pool = Executors.newFixedThreadPool(threads);
+		final SortedMap<EmitKey, Emits> emits = new TreeMap<EmitKey, Emits>();
+		try {
+			final List<Future<Map<EmitKey, Emits>>> workers = new ArrayList<Future<Map<EmitKey, Emits>>>();
+			for (int i = 0; i < threads; i++)
+				workers.add(pool.submit(new Worker(i, conf, input)));
+
+			for (final Future<Map<EmitKey, Emits>> f : workers)
+				for (final Map.Entry<EmitKey, Emits> e : get(f).entrySet()) {
+					final Emits old = emits.get(e.getKey());
+					emits.put(e.getKey(), old == null ? e.getValue() : Emits.merge(old, e.getValue()));
+				}
+		} finally {
+			pool.shutdownNow();
+			in.close();
+			if (index != null)
+				index.close();
+		}
+		stats.mapMillis = System.currentTimeMillis() - start;
+		stats.projects = input.records;
+		stats.skipped = input.skipped;
+		LOG.info("mapped " + input.records + " projects (" + input.skipped + " skipped by the guard) on " + threads + " threads in " + stats.mapMillis + "ms");
+
+		stats.keys = emits.size();
+		stats.values = 0;
+		stats.shuffleBytes = 0;
+		for (final Map.Entry<EmitKey, Emits> e : emits.entrySet()) {
+			final long key = 4 + size(e.getKey().getIndex()) + size(e.getKey().getName());
+			for (final EmitValue v : e.getValue().values) {
+				long value = 4 + size(v.getMetadata() == null ? "" : v.getMetadata());
+				for (final String d : v.getData())
+					value += size(d);
+				stats.shuffleBytes += key + value;
+			}
+			stats.values += e.getValue().values.size();
+		}
+
+		final long reduceStart = System.currentTimeMillis();
+		reduce(conf, emits, new File(outputDir));
+		stats.reduceMillis = System.currentTimeMillis() - reduceStart;
+	}
+
+	/**
+	 * Returns the configuration the program runs with, so options such as
+	 * a {@link BoaBudget} can be set before running it.
+	 *
+	 * @return the configuration
+	 */
+	public Configuration getConf() {
+		return conf;
+	}
+
+	/**
+	 * What the last run did and how long it took.
+	 */
+	public static class Stats {
+		/** the time spent mapping, in milliseconds */
+		public long mapMillis;
+		/** the time spent reducing and writing the output, in milliseconds */
+		public long reduceMillis;
+		/** the number of projects mapped */
+		public long projects;
+		/** the number of projects the input guard skipped */
+		public long skipped;
+		/** the number of distinct keys emitted */
+		public long keys;
+		/** the number of values emitted */
+		public long values;
+		/** the size of the emitted keys and values, serialized as Hadoop would shuffle them without a combiner */
+		public long shuffleBytes;
+	}
+
+	/**
+	 * Returns what the last run did and how long it took.
+	 *
+	 * @return the statistics of the last run
+	 */
+	public Stats getStats() {
+		return stats;
+	}
+
+	// the size of a string written with Text.writeString
+	private static long size(final String s) {
+		long n = 0;
+		for (int i = 0; i < s.length(); i++) {
+			final char c = s.charAt(i);
+			if (c < 0x80)
+				n += 1;
+			else if (c < 0x800)
+				n += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+				n += 4;
+				i++;
+			} else
+				n += 3;
+		}
+		return WritableUtils.getVIntSize(n) + n;
+	}
+
+	/**
+	 * Returns the counters the program incremented, such as the number of ASTs read.
+	 *
+	 * @return the counters
+	 */
+	public Counters getCounters() {
+		return counters;
+	}
+
+	private static Map<EmitKey, Emits> get(final Future<Map<EmitKey, Emits>> f) throws IOException {
+		try {
+			return f.get();
+		} catch (final InterruptedException e) {
+			throw new IOException(e);
+		} catch (final ExecutionException e) {
+			if (e.getCause() instanceof IOException)
+				throw (IOException) e.getCause();
+			throw new IOException(e.getCause());
+		}
+	}
+
+	private void reduce(final Configuration conf, final SortedMap<EmitKey, Emits> emits, final File outputDir) throws IOException {
+		if (!outputDir.isDirectory() && !outputDir.mkdirs())
+			throw new IOException("unable to mkdir " + outputDir);
+
+		// like BoaPartitioner, with one reducer per job
+		int partitions = 1;
+		for (final EmitKey key : emits.keySet())
+			partitions = Math.max(partitions, key.getId() + 1);
+
+		for (int p = 0; p < partitions; p++) {
+			final File part = new File(outputDir, String.format("part-r-%05d", p));
+			final RecordWriter<Text, NullWritable> out = newOutput(conf, part);
+			try {
+				try {
+					final BoaReducer reducer = newProgram(loader).getReducer();
+					reducer.setConf(conf);
+
+					final Reducer<EmitKey, EmitValue, Text, NullWritable>.Context context = reducer.new Context(conf, new TaskAttemptID("local", 0, false, p, 0), EMPTY,
+							counters.findCounter(getClass().getName(), "REDUCE_INPUT_GROUPS"), counters.findCounter(getClass().getName(), "REDUCE_INPUT_RECORDS"),
+							out, null, reporter, new EmitKey(), EmitKey.class, EmitValue.class);
+
+					for (final Map.Entry<EmitKey, Emits> e : emits.entrySet())
+						if (e.getKey().getId() == p)
+							reducer.reduce(e.getKey(), e.getValue().values, context);
+				} finally {
+					out.close(null);
+				}
+			} catch (final InterruptedException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static RecordWriter<Text, NullWritable> newOutput(final Configuration conf, final File part) throws IOException {
+		if (BoaOutputFormat.isBinary(conf))
+			return (RecordWriter) BoaOutputFormat.newBinaryWriter(FileSystem.getLocal(conf), conf, new Path(part.getAbsolutePath()));
+		return new Output(part);
+	}
+
+	private BoaRunner newProgram(final ClassLoader cl) throws IOException {
+		try {
+			return (BoaRunner) Class.forName(className, true, cl).getDeclaredConstructor().newInstance();
+		} catch (final Exception e) {
+			throw new IOException("unable to load " + className, e);
+		}
+	}
+
+	/**
+	 * Maps projects until the input runs out, using its own copy of the program.
+	 */
+	private class Worker implements Callable<Map<EmitKey, Emits>> {
+		private final int id;
+		private final Configuration conf;
+		private final Input input;
+
+		Worker(final int id, final Configuration conf, final Input input) {
+			this.id = id;
+			this.conf = conf;
+			this.input = input;
+		}
+
+		@SuppressWarnings("unchecked")
+		@Override
+		public Map<EmitKey, Emits> call() throws Exception {
+			final Map<EmitKey, Emits> emits = new HashMap<EmitKey, Emits>();
+			final Reader reader = new Reader(input);
+			final RecordWriter<EmitKey, EmitValue> writer = new RecordWriter<EmitKey, EmitValue>() {
+				@Override
+				public void write(final EmitKey key, final EmitValue value) {
+					Emits e = emits.get(key);
+					if (e == null) {
+						e = new Emits();
+						emits.put(key, e);
+					}
+					e.add(reader.record, value);
+				}
+
+				@Override
+				public void close(final TaskAttemptContext context) {
+				}
+			};
+
+			try {
+				// the program's classes can not be cast to ours, so go through reflection
+				final Object program = Class.forName(className, true, new IsolatingClassLoader(loader)).getDeclaredConstructor().newInstance();
+				final Mapper<Text, BytesWritable, EmitKey, EmitValue> mapper = (Mapper<Text, BytesWritable, EmitKey, EmitValue>) program.getClass().getMethod("getMapper").invoke(program);
+				if (mapper instanceof Configurable)
+					((Configurable) mapper).setConf(conf);
+
+				mapper.run(mapper.new Context(conf, new TaskAttemptID("local", 0, true, id, 0), reader, writer, null, reporter, null));
+			} catch (final Throwable e) {
+				// stop the other workers, rather than mapping the rest of the input for nothing
+				input.abort();
+				throw e instanceof Exception ? (Exception) e : new IOException(e);
+			}
+			return emits;
+		}
+	}
+
+	/**
+	 * The projects still to be mapped, shared by all workers.  Projects the
+	 * guard rejects are skipped without reading their values.
+	 */
+	private static class Input {
+		private final SequenceFile.Reader in;
+		private final ProjectIndex.Reader index;
+		private final ProjectGuard guard;
+		private long records = 0;
+		private long skipped = 0;
+		private boolean done = false;
+
+		Input(final SequenceFile.Reader in, final ProjectIndex.Reader index, final ProjectGuard guard) {
+			this.in = in;
+			this.index = index;
+			this.guard = guard;
+		}
+
+		/**
+		 * Reads the next project.
+		 *
+		 * @return the index of the project in the input, or -1 if there are none left
+		 */
+		synchronized long next(final Text key, final BytesWritable value) throws IOException {
+			while (!done && in.next(key)) {
+				if (index != null) {
+					final ProjectIndex.Entry e = index.get(key);
+					if (e != null && !guard.accepts(e)) {
+						skipped++;
+						continue;
+					}
+				}
+				in.getCurrentValue(value);
+				return records++;
+			}
+			done = true;
+			return -1;
+		}
+
+		synchronized void abort() {
+			done = true;
+		}
+	}
+
+	/**
+	 * A worker's view of the input.
+	 */
+	private static class Reader extends RecordReader<Text, BytesWritable> {
+		private final Input input;
+		private final Text key = new Text();
+		private final BytesWritable value = new BytesWritable();
+		long record = -1;
+
+		Reader(final Input input) {
+			this.input = input;
+		}
+
+		@Override
+		public void initialize(final InputSplit split, final TaskAttemptContext context) {
+		}
+
+		@Override
+		public boolean nextKeyValue() throws IOException {
+			record = input.next(key, value);
+			return record != -1;
+		}
+
+		@Override
+		public Text getCurrentKey() {
+			return key;
+		}
+
+		@Override
+		public BytesWritable getCurrentValue() {
+			return value;
+		}
+
+		@Override
+		public float getProgress() {
+			return 0;
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * The values emitted to one key, in the order of the projects that emitted them.
+	 */
+	private static class Emits {
+		final List<EmitValue> values = new ArrayList<EmitValue>();
+		private long[] records = new long[4];
+
+		void add(final long record, final EmitValue value) {
+			if (values.size() == records.length)
+				records = Arrays.copyOf(records, records.length * 2);
+			records[values.size()] = record;
+			values.add(value);
+		}
+
+		static Emits merge(final Emits a, final Emits b) {
+			final Emits m = new Emits();
+			m.records = new long[a.values.size() + b.values.size()];
+			int i = 0, j = 0;
+			while (i < a.values.size() || j < b.values.size())
+				if (j == b.values.size() || (i < a.values.size() && a.records[i] < b.records[j])) {
+					m.add(a.records[i], a.values.get(i));
+					i++;
+				} else {
+					m.add(b.records[j], b.values.get(j));
+					j++;
+				}
+			return m;
+		}
+	}
+
+	/**
+	 * Writes reduced output like TextOutputFormat, one key per line.
+	 */
+	private static class Output extends RecordWriter<Text, NullWritable> {
+		private final OutputStream out;
+
+		Output(final File f) throws IOException {
+			out = new BufferedOutputStream(new FileOutputStream(f));
+		}
+
+		@Override
+		public void write(final Text key, final NullWritable value) throws IOException {
+			out.write(key.getBytes(), 0, key.getLength());
+			out.write('\n');
+		}
+
+		@Override
+		public void close(final TaskAttemptContext context) throws IOException {
+			out.close();
+		}
+	}
+
+	// the reducer is called directly, so its context never reads any input
+	private static final RawKeyValueIterator EMPTY = new RawKeyValueIterator() {
+		@Override
+		public DataInputBuffer getKey() {
+			return null;
+		}
+
+		@Override
+		public DataInputBuffer getValue() {
+			return null;
+		}
+
+		@Override
+		public boolean next() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public Progress getProgress() {
+			return null;
+		}
+	};
+
+	/**
+	 * Loads its own copy of every Boa class that is not shared, so the static
+	 * state of a program and the functions it calls is private to one worker.
+	 */
+	private static class IsolatingClassLoader extends ClassLoader {
+		IsolatingClassLoader(final ClassLoader parent) {
+			super(parent);
+		}
+
+		@Override
+		protected synchronized Class<?> loadClass(final String name, final boolean resolve) throws ClassNotFoundException {
+			if (!isIsolated(name))
+				return super.loadClass(name, resolve);
+
+			Class<?> c = findLoadedClass(name);
+			if (c == null) {
+				final InputStream in = getParent().getResourceAsStream(name.replace('.', '/') + ".class");
+				if (in == null)
+					throw new ClassNotFoundException(name);
+				try {
+					final byte[] b = IOUtils.toByteArray(in);
+					c = defineClass(name, b, 0, b.length);
+				} catch (final IOException e) {
+					throw new ClassNotFoundException(name, e);
+				} finally {
+					IOUtils.closeQuietly(in);
+				}
+			}
+			if (resolve)
+				resolveClass(c);
+			return c;
+		}
+
+		private static boolean isIsolated(final String name) {
+			if (!name.startsWith("boa."))
+				return false;
+			for (final String prefix : SHARED)
+				if (name.startsWith(prefix))
+					return false;
+			return true;
+		}
+	}
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The Java type of a Boa map[int] of int, which keeps its keys and values
+ * unboxed.  The code generator calls the methods taking and returning
+ * primitives; the {@link Map} methods are there for functions that take any
+ * map and they box.  Iterates in insertion order.
+ */
+public class BoaLongLongMap extends AbstractMap<Long, Long> {
+	private final LongKeys keys;
+	private long[] values;
+
+	public BoaLongLongMap() {
+		keys = new LongKeys();
+		values = new long[keys.capacity()];
+	}
+
+	public BoaLongLongMap(final BoaLongLongMap m) {
+		keys = new LongKeys(m.keys);
+		values = m.values.clone();
+	}
+
+	/**
+	 * Returns the value of a key.
+	 *
+	 * @param key the key
+	 * @return the value
+	 * @throws NullPointerException if the map does not contain the key, like
+	 *         unboxing the missing value of a {@link java.util.HashMap}
+	 */
+	public long get(final long key) {
+		final int i = keys.find(key);
+		if (i == -1)
+			throw new NullPointerException("no value for key " + key);
+		return values[i];
+	}
+
+	public boolean containsKey(final long key) {
+		return keys.find(key) != -1;
+	}
+
+	public void put(final long key, final long value) {
+		int i = keys.find(key);
+		if (i == -1) {
+			if (keys.isFull())
+				values = LongKeys.gather(values, keys.grow(), keys.capacity());
+			i = keys.add(key);
+		}
+		values[i] = value;
+	}
+
+	// the mixed overloads keep calls with one boxed argument from being ambiguous
+	public void put(final long key, final Long value) {
+		put(key, value.longValue());
+	}
+
+	public void put(final Long key, final long value) {
+		put(key.longValue(), value);
+	}
+
+	public boolean remove(final long key) {
+		return keys.remove(key) != -1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return keys.size();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsKey(final Object key) {
+		return key instanceof Long && containsKey(((Long) key).longValue());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Long get(final Object key) {
+		if (!(key instanceof Long))
+			return null;
+		final int i = keys.find(((Long) key).longValue());
+		return i == -1 ? null : values[i];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Long put(final Long key, final Long value) {
+		final Long old = get(key);
+		put(key.longValue(), value.longValue());
+		return old;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Long remove(final Object key) {
+		if (!(key instanceof Long))
+			return null;
+		final int i = keys.remove(((Long) key).longValue());
+		return i == -1 ? null : values[i];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		keys.clear();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<Map.Entry<Long, Long>> entrySet() {
+		return new AbstractSet<Map.Entry<Long, Long>>() {
+			@Override
+			public Iterator<Map.Entry<Long, Long>> iterator() {
+				return new Iterator<Map.Entry<Long, Long>>() {
+					private int next = keys.next(0);
+					private int last = -1;
+
+					@Override
+					public boolean hasNext() {
+						return next < keys.end();
+					}
+
+					@Override
+					public Map.Entry<Long, Long> next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						last = next;
+						next = keys.next(next + 1);
+						return new AbstractMap.SimpleImmutableEntry<Long, Long>(keys.keys[last], values[last]);
+					}
+
+					@Override
+					public void remove() {
+						if (last == -1)
+							throw new IllegalStateException();
+						keys.remove(keys.keys[last]);
+						last = -1;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return keys.size();
+			}
+		};
+	}
+}
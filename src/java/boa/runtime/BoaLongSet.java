@@ -0,0 +1,128 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The Java type of a Boa set of int, which keeps its values unboxed.  The
+ * code generator calls the methods taking primitives; the
+ * {@link java.util.Set} methods box.  Iterates in insertion order.
+ */
+public class BoaLongSet extends AbstractSet<Long> {
+	private final LongKeys keys;
+
+	public BoaLongSet() {
+		keys = new LongKeys();
+	}
+
+	public BoaLongSet(final BoaLongSet s) {
+		keys = new LongKeys(s.keys);
+	}
+
+	public BoaLongSet(final Collection<Long> c) {
+		this();
+		addAll(c);
+	}
+
+	public boolean add(final long value) {
+		if (keys.find(value) != -1)
+			return false;
+		if (keys.isFull())
+			keys.grow();
+		keys.add(value);
+		return true;
+	}
+
+	public boolean contains(final long value) {
+		return keys.find(value) != -1;
+	}
+
+	public boolean remove(final long value) {
+		return keys.remove(value) != -1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean add(final Long value) {
+		return add(value.longValue());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean contains(final Object value) {
+		return value instanceof Long && contains(((Long) value).longValue());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean remove(final Object value) {
+		return value instanceof Long && remove(((Long) value).longValue());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return keys.size();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		keys.clear();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<Long> iterator() {
+		return new Iterator<Long>() {
+			private int next = keys.next(0);
+			private int last = -1;
+
+			@Override
+			public boolean hasNext() {
+				return next < keys.end();
+			}
+
+			@Override
+			public Long next() {
+				if (!hasNext())
+					throw new NoSuchElementException();
+				last = next;
+				next = keys.next(next + 1);
+				return keys.keys[last];
+			}
+
+			@Override
+			public void remove() {
+				if (last == -1)
+					throw new IllegalStateException();
+				keys.remove(keys.keys[last]);
+				last = -1;
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public BoaLongSet clone() {
+		return new BoaLongSet(this);
+	}
+}
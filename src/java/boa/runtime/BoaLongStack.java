@@ -0,0 +1,95 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+
+/**
+ * The Java type of a Boa stack of int, an unsynchronized array of unboxed
+ * values.  As a {@link java.util.List} it holds the bottom of the stack
+ * first, like {@link java.util.Stack}.
+ */
+public class BoaLongStack extends AbstractList<Long> {
+	private long[] values;
+	private int size = 0;
+
+	public BoaLongStack() {
+		values = new long[8];
+	}
+
+	public BoaLongStack(final BoaLongStack s) {
+		values = s.values.clone();
+		size = s.size;
+	}
+
+	public void push(final long value) {
+		if (size == values.length)
+			values = Arrays.copyOf(values, 2 * size);
+		values[size++] = value;
+	}
+
+	public boolean empty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes the top of the stack.
+	 *
+	 * @return the value that was on top
+	 * @throws NullPointerException if the stack is empty, like unboxing what
+	 *         {@link boa.functions.BoaIntrinsics#stack_pop} returns for an
+	 *         empty {@link java.util.Stack}
+	 */
+	public long pop() {
+		if (size == 0)
+			throw new NullPointerException("empty stack");
+		return values[--size];
+	}
+
+	/**
+	 * Returns the top of the stack.
+	 *
+	 * @return the value on top
+	 * @throws NullPointerException if the stack is empty
+	 */
+	public long peek() {
+		if (size == 0)
+			throw new NullPointerException("empty stack");
+		return values[size - 1];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Long get(final int index) {
+		if (index < 0 || index >= size)
+			throw new IndexOutOfBoundsException("index " + index + ", size " + size);
+		return values[index];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		size = 0;
+	}
+}
@@ -17,12 +17,18 @@
 package boa.runtime;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.apache.hadoop.conf.Configurable;
 import org.apache.hadoop.conf.Configuration;
 import org.apache.hadoop.io.Text;
 import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.mapreduce.Counter;
 import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.StatusReporter;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
 import org.apache.log4j.Logger;
 
 import boa.io.EmitKey;
@@ -39,6 +45,12 @@ public abstract class BoaMapper extends Mapper<Text, BytesWritable, EmitKey, Emi
 	private Configuration conf;
 	protected Context context;
 
+	// when projects have a budget, the emits of the current project are held
+	// back until it is done, so a project that goes over leaves no output
+	private final List<EmitKey> keys = new ArrayList<EmitKey>();
+	private final List<EmitValue> values = new ArrayList<EmitValue>();
+	private Context output;
+
 	/** {@inheritDoc} */
 	@Override
 	public Configuration getConf() {
@@ -57,5 +69,78 @@ public abstract class BoaMapper extends Mapper<Text, BytesWritable, EmitKey, Emi
 		super.setup(context);
 
 		this.context = context;
+
+		if (BoaBudget.setup(context.getConfiguration()))
+			this.output = new Context(context.getConfiguration(), context.getTaskAttemptID(), null, new RecordWriter<EmitKey, EmitValue>() {
+				@Override
+				public void write(final EmitKey key, final EmitValue value) {
+					keys.add(key);
+					values.add(value);
+				}
+
+				@Override
+				public void close(final TaskAttemptContext context) {
+				}
+			}, null, new StatusReporter() {
+				@Override
+				public Counter getCounter(final Enum<?> name) {
+					return context.getCounter(name);
+				}
+
+				@Override
+				public Counter getCounter(final String group, final String name) {
+					return context.getCounter(group, name);
+				}
+
+				@Override
+				public void progress() {
+					context.progress();
+				}
+
+				@Override
+				public void setStatus(final String status) {
+					context.setStatus(status);
+				}
+			}, null);
+		else
+			this.output = context;
+	}
+
+	/**
+	 * Starts mapping a project.
+	 *
+	 * @return the context the project's emits must be written to
+	 */
+	protected Context startProject() {
+		BoaBudget.start();
+		keys.clear();
+		values.clear();
+		return output;
+	}
+
+	/**
+	 * Finishes mapping a project that stayed within its budget, writing its emits.
+	 *
+	 * @throws IOException if an emit can not be written
+	 * @throws InterruptedException if interrupted while writing
+	 */
+	protected void endProject() throws IOException, InterruptedException {
+		for (int i = 0; i < keys.size(); i++)
+			context.write(keys.get(i), values.get(i));
+		keys.clear();
+		values.clear();
+	}
+
+	/**
+	 * Abandons a project that went over its budget, dropping its emits.
+	 *
+	 * @param key the key of the project
+	 * @param e why the project was abandoned
+	 */
+	protected void abortProject(final Text key, final BoaBudget.ExceededException e) {
+		keys.clear();
+		values.clear();
+		context.getCounter(BoaBudget.BUDGETCOUNTER.PROJECTS_OVER_BUDGET).increment(1);
+		LOG.warn("skipped project " + key + ": " + e.getMessage());
 	}
 }
@@ -0,0 +1,261 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.AbstractCollection;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A map whose copies share their storage.  It is a {@link java.util.HashMap},
+ * so it can stand in for the Java type of any Boa map, but its entries live
+ * in an immutable {@link HashTrie}: {@link #snapshot()} takes constant time,
+ * and a change to one copy only copies the path to the changed entry.
+ *
+ * Traversals and tuples copy their map values into these, so storing a
+ * result per node no longer copies the whole map.  Only the methods of the
+ * Java 6 {@link java.util.Map} interface are supported; the defaults that
+ * {@link java.util.HashMap} implements on its own table since Java 8
+ * (compute, merge, forEach and so on) would see an empty map.
+ */
+public class BoaPersistentMap<K, V> extends java.util.HashMap<K, V> {
+	private static final long serialVersionUID = 1L;
+
+	private Object root;
+
+	public BoaPersistentMap() {
+		super();
+	}
+
+	public BoaPersistentMap(final Map<? extends K, ? extends V> m) {
+		super();
+		putAll(m);
+	}
+
+	private BoaPersistentMap(final Object root) {
+		super();
+		this.root = root;
+	}
+
+	/**
+	 * Copies a map.  Maps that are already persistent are shared, others are
+	 * copied once.
+	 *
+	 * @param m the map to copy
+	 * @return a copy of the map
+	 */
+	public static <K, V> java.util.HashMap<K, V> copy(final java.util.HashMap<K, V> m) {
+		if (m instanceof BoaPersistentMap)
+			return ((BoaPersistentMap<K, V>) m).snapshot();
+		return new BoaPersistentMap<K, V>(m);
+	}
+
+	/**
+	 * @return a copy of this map, in constant time
+	 */
+	public BoaPersistentMap<K, V> snapshot() {
+		return new BoaPersistentMap<K, V>(root);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return HashTrie.size(root);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	@SuppressWarnings("unchecked")
+	public V get(final Object key) {
+		final HashTrie.Leaf l = HashTrie.find(root, HashTrie.hash(key), key, 0);
+		return l == null ? null : (V) l.value;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsKey(final Object key) {
+		return HashTrie.find(root, HashTrie.hash(key), key, 0) != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsValue(final Object value) {
+		for (final Iterator<HashTrie.Leaf> i = HashTrie.leaves(root); i.hasNext(); ) {
+			final Object v = i.next().value;
+			if (v == value || (v != null && v.equals(value)))
+				return true;
+		}
+		return false;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public V put(final K key, final V value) {
+		final V old = get(key);
+		root = HashTrie.put(root, new HashTrie.Leaf(key, value), 0);
+		return old;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void putAll(final Map<? extends K, ? extends V> m) {
+		for (final Map.Entry<? extends K, ? extends V> e : m.entrySet())
+			put(e.getKey(), e.getValue());
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public V remove(final Object key) {
+		final V old = get(key);
+		root = HashTrie.remove(root, HashTrie.hash(key), key, 0);
+		return old;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		root = null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object clone() {
+		return snapshot();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(final Object o) {
+		if (o instanceof BoaPersistentMap)
+			return HashTrie.equals(root, ((BoaPersistentMap<?, ?>) o).root, true);
+		return super.equals(o);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return super.hashCode();
+	}
+
+	// iterates the leaves of the current trie, removing through the map
+	private abstract class LeafIterator<E> implements Iterator<E> {
+		private final Iterator<HashTrie.Leaf> leaves = HashTrie.leaves(root);
+		private HashTrie.Leaf last;
+
+		protected abstract E get(HashTrie.Leaf l);
+
+		@Override
+		public boolean hasNext() {
+			return leaves.hasNext();
+		}
+
+		@Override
+		public E next() {
+			last = leaves.next();
+			return get(last);
+		}
+
+		@Override
+		public void remove() {
+			if (last == null)
+				throw new IllegalStateException();
+			BoaPersistentMap.this.remove(last.key);
+			last = null;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<K> keySet() {
+		return new AbstractSet<K>() {
+			@Override
+			public Iterator<K> iterator() {
+				return new LeafIterator<K>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					protected K get(final HashTrie.Leaf l) {
+						return (K) l.key;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return BoaPersistentMap.this.size();
+			}
+
+			@Override
+			public boolean contains(final Object o) {
+				return containsKey(o);
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Collection<V> values() {
+		return new AbstractCollection<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new LeafIterator<V>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					protected V get(final HashTrie.Leaf l) {
+						return (V) l.value;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return BoaPersistentMap.this.size();
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<Map.Entry<K, V>> entrySet() {
+		return new AbstractSet<Map.Entry<K, V>>() {
+			@Override
+			public Iterator<Map.Entry<K, V>> iterator() {
+				return new LeafIterator<Map.Entry<K, V>>() {
+					@Override
+					@SuppressWarnings("unchecked")
+					protected Map.Entry<K, V> get(final HashTrie.Leaf l) {
+						return new AbstractMap.SimpleImmutableEntry<K, V>((K) l.key, (V) l.value);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return BoaPersistentMap.this.size();
+			}
+		};
+	}
+}
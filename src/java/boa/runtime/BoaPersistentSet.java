@@ -0,0 +1,231 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.Collection;
+import java.util.Iterator;
+
+/**
+ * A set whose copies share their storage.  It is a {@link java.util.HashSet},
+ * so it can stand in for the Java type of any Boa set, but its elements live
+ * in an immutable {@link HashTrie}: {@link #snapshot()} takes constant time,
+ * and a change to one copy only copies the path to the changed element.
+ * Comparing two copies, or taking their union, intersection or difference,
+ * only looks at the parts that differ.
+ *
+ * Traversals and tuples copy their set values into these, so storing a
+ * result per node no longer copies the whole set.  Only the methods of the
+ * Java 6 {@link java.util.Set} interface are supported; the spliterator of
+ * {@link java.util.HashSet} would see an empty set.
+ */
+public class BoaPersistentSet<T> extends java.util.HashSet<T> {
+	private static final long serialVersionUID = 1L;
+
+	private Object root;
+
+	public BoaPersistentSet() {
+		super();
+	}
+
+	public BoaPersistentSet(final Collection<? extends T> c) {
+		super();
+		addAll(c);
+	}
+
+	private BoaPersistentSet(final Object root) {
+		super();
+		this.root = root;
+	}
+
+	/**
+	 * Copies a set.  Sets that are already persistent are shared, others are
+	 * copied once.
+	 *
+	 * @param s the set to copy
+	 * @return a copy of the set
+	 */
+	public static <T> java.util.HashSet<T> copy(final java.util.HashSet<T> s) {
+		if (s instanceof BoaPersistentSet)
+			return ((BoaPersistentSet<T>) s).snapshot();
+		return new BoaPersistentSet<T>(s);
+	}
+
+	/**
+	 * @return a copy of this set, in constant time
+	 */
+	public BoaPersistentSet<T> snapshot() {
+		return new BoaPersistentSet<T>(root);
+	}
+
+	/**
+	 * @param s the other set
+	 * @return a new set with the elements of both sets
+	 */
+	public BoaPersistentSet<T> union(final Collection<? extends T> s) {
+		if (s instanceof BoaPersistentSet)
+			return new BoaPersistentSet<T>(HashTrie.union(root, ((BoaPersistentSet<?>) s).root, 0));
+		final BoaPersistentSet<T> r = snapshot();
+		r.addAll(s);
+		return r;
+	}
+
+	/**
+	 * @param s the other set
+	 * @return a new set with the elements in both sets
+	 */
+	public BoaPersistentSet<T> intersect(final Collection<?> s) {
+		if (s instanceof BoaPersistentSet)
+			return new BoaPersistentSet<T>(HashTrie.intersect(root, ((BoaPersistentSet<?>) s).root, 0));
+		final BoaPersistentSet<T> r = snapshot();
+		r.retainAll(s);
+		return r;
+	}
+
+	/**
+	 * @param s the other set
+	 * @return a new set with the elements of this set that are not in the other
+	 */
+	public BoaPersistentSet<T> difference(final Collection<?> s) {
+		if (s instanceof BoaPersistentSet)
+			return new BoaPersistentSet<T>(HashTrie.difference(root, ((BoaPersistentSet<?>) s).root, 0));
+		final BoaPersistentSet<T> r = snapshot();
+		r.removeAll(s);
+		return r;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return HashTrie.size(root);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean isEmpty() {
+		return root == null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean contains(final Object o) {
+		return HashTrie.find(root, HashTrie.hash(o), o, 0) != null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean add(final T e) {
+		final Object r = HashTrie.put(root, new HashTrie.Leaf(e, null), 0);
+		if (r == root)
+			return false;
+		root = r;
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean remove(final Object o) {
+		final Object r = HashTrie.remove(root, HashTrie.hash(o), o, 0);
+		if (r == root)
+			return false;
+		root = r;
+		return true;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		root = null;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsAll(final Collection<?> c) {
+		if (c instanceof BoaPersistentSet)
+			return HashTrie.difference(((BoaPersistentSet<?>) c).root, root, 0) == null;
+		return super.containsAll(c);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Iterator<T> iterator() {
+		final Iterator<HashTrie.Leaf> leaves = HashTrie.leaves(root);
+		return new Iterator<T>() {
+			private HashTrie.Leaf last;
+
+			@Override
+			public boolean hasNext() {
+				return leaves.hasNext();
+			}
+
+			@Override
+			@SuppressWarnings("unchecked")
+			public T next() {
+				last = leaves.next();
+				return (T) last.key;
+			}
+
+			@Override
+			public void remove() {
+				if (last == null)
+					throw new IllegalStateException();
+				BoaPersistentSet.this.remove(last.key);
+				last = null;
+			}
+		};
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object[] toArray() {
+		return toArray(new Object[size()]);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	@SuppressWarnings("unchecked")
+	public <E> E[] toArray(E[] a) {
+		final int size = size();
+		if (a.length < size)
+			a = (E[]) java.lang.reflect.Array.newInstance(a.getClass().getComponentType(), size);
+		int i = 0;
+		for (final Iterator<HashTrie.Leaf> leaves = HashTrie.leaves(root); leaves.hasNext(); )
+			a[i++] = (E) leaves.next().key;
+		if (a.length > size)
+			a[size] = null;
+		return a;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Object clone() {
+		return snapshot();
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean equals(final Object o) {
+		if (o instanceof BoaPersistentSet)
+			return HashTrie.equals(root, ((BoaPersistentSet<?>) o).root, false);
+		return super.equals(o);
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int hashCode() {
+		return super.hashCode();
+	}
+}
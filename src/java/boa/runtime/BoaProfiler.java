@@ -0,0 +1,306 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileStatus;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.mapreduce.TaskInputOutputContext;
+
+/**
+ * Counts and times the sites of a Boa program compiled with profiling: its
+ * visitor clauses, traversal clauses, intrinsic calls and emits.  Every
+ * call of a site is counted, but only about one call in
+ * {@link #SAMPLE_PERIOD} is timed, and the time of the rest is estimated
+ * from those samples.
+ *
+ * The counts live in static arrays, as a map task runs on one thread.  At
+ * the end of each map task they are written to a file in the directory
+ * named by {@link #PROPERTY}, and {@link #report} sums the files of all
+ * tasks.
+ */
+public class BoaProfiler {
+	/** the property naming the directory each map task writes its profile to */
+	public static final String PROPERTY = "boa.profile.dir";
+
+	/** on average, one call in this many is timed */
+	public static final int SAMPLE_PERIOD = 16;
+
+	private static String[] sites;
+	private static long[] calls;
+	private static long[] samples;
+	private static long[] nanos;
+	private static int[] countdown;
+	private static int seed = 0x2545f491;
+
+	/**
+	 * Registers the sites of the program, before any of them runs.
+	 *
+	 * @param sites a description of each site, by site number
+	 */
+	public static void setup(final String[] sites) {
+		BoaProfiler.sites = sites;
+		calls = new long[sites.length];
+		samples = new long[sites.length];
+		nanos = new long[sites.length];
+		countdown = new int[sites.length];
+		Arrays.fill(countdown, 1);
+	}
+
+	/**
+	 * Counts a call of a site, and starts timing it if it is sampled.
+	 *
+	 * @param site the site number
+	 * @return the start time to pass to {@link #stop}, or 0 if the call is not timed
+	 */
+	public static long start(final int site) {
+		calls[site]++;
+		if (--countdown[site] > 0)
+			return 0;
+
+		// sample at random intervals, so regular patterns in the input do not bias the samples
+		seed ^= seed << 13;
+		seed ^= seed >>> 17;
+		seed ^= seed << 5;
+		countdown[site] = 1 + (seed & (2 * SAMPLE_PERIOD - 1));
+		return System.nanoTime();
+	}
+
+	/**
+	 * Stops timing a call of a site.
+	 *
+	 * @param site the site number
+	 * @param start what {@link #start} returned
+	 */
+	public static void stop(final int site, final long start) {
+		if (start != 0) {
+			samples[site]++;
+			nanos[site] += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Stops timing a call of a site that is an expression.
+	 *
+	 * @param site the site number
+	 * @param start what {@link #start} returned
+	 * @param value the value of the call
+	 * @return value
+	 */
+	public static long call(final int site, final long start, final long value) {
+		stop(site, start);
+		return value;
+	}
+
+	/**
+	 * Stops timing a call of a site that is an expression.
+	 *
+	 * @param site the site number
+	 * @param start what {@link #start} returned
+	 * @param value the value of the call
+	 * @return value
+	 */
+	public static double call(final int site, final long start, final double value) {
+		stop(site, start);
+		return value;
+	}
+
+	/**
+	 * Stops timing a call of a site that is an expression.
+	 *
+	 * @param site the site number
+	 * @param start what {@link #start} returned
+	 * @param value the value of the call
+	 * @return value
+	 */
+	public static boolean call(final int site, final long start, final boolean value) {
+		stop(site, start);
+		return value;
+	}
+
+	/**
+	 * Stops timing a call of a site that is an expression.
+	 *
+	 * @param site the site number
+	 * @param start what {@link #start} returned
+	 * @param value the value of the call
+	 * @return value
+	 */
+	public static <T> T call(final int site, final long start, final T value) {
+		stop(site, start);
+		return value;
+	}
+
+	/**
+	 * Writes the profile of this map task and starts over, as the next task
+	 * may run in the same JVM.
+	 *
+	 * @param context the context of the map task
+	 * @throws IOException if the profile can not be written
+	 */
+	public static void cleanup(final TaskInputOutputContext<?, ?, ?, ?> context) throws IOException {
+		if (sites == null)
+			return;
+
+		final String dir = context.getConfiguration().get(PROPERTY);
+		if (dir != null) {
+			final Path path = new Path(dir, "profile-" + context.getTaskAttemptID().getTaskID());
+			final PrintWriter out = new PrintWriter(path.getFileSystem(context.getConfiguration()).create(path, true));
+			try {
+				for (int i = 0; i < sites.length; i++)
+					out.println(calls[i] + "\t" + samples[i] + "\t" + nanos[i] + "\t" + sites[i]);
+			} finally {
+				out.close();
+			}
+		}
+
+		setup(sites);
+	}
+
+	/**
+	 * Returns the directory profiles are written to for a job.
+	 *
+	 * @param output the output directory of the job
+	 * @return the directory for the profiles
+	 */
+	public static Path getDir(final Path output) {
+		return new Path(output, "_profile");
+	}
+
+	/**
+	 * The profile of one site, summed over all map tasks.
+	 */
+	public static class Site {
+		/** the description of the site, with its line in the Boa program */
+		public final String description;
+		/** the number of calls */
+		public long calls;
+		/** the number of timed calls */
+		public long samples;
+		/** the total time of the timed calls, in nanoseconds */
+		public long nanos;
+
+		public Site(final String description) {
+			this.description = description;
+		}
+
+		/**
+		 * @return the estimated time of all calls, in nanoseconds
+		 */
+		public double getEstimatedNanos() {
+			return samples == 0 ? 0 : (double) nanos * calls / samples;
+		}
+	}
+
+	/**
+	 * Reads and sums the profiles of all map tasks of a job.
+	 *
+	 * @param conf the configuration to use
+	 * @param dir the directory the tasks wrote their profiles to
+	 * @return the sites, by site number, or null if there are no profiles
+	 * @throws IOException if a profile can not be read
+	 */
+	public static List<Site> read(final Configuration conf, final Path dir) throws IOException {
+		final FileSystem fs = dir.getFileSystem(conf);
+		if (!fs.exists(dir))
+			return null;
+
+		final FileStatus[] files = fs.listStatus(dir);
+		if (files == null || files.length == 0)
+			return null;
+
+		final List<Site> result = new ArrayList<Site>();
+		for (final FileStatus f : files) {
+			final BufferedReader in = new BufferedReader(new InputStreamReader(fs.open(f.getPath()), "UTF-8"));
+			try {
+				int i = 0;
+				String line;
+				while ((line = in.readLine()) != null) {
+					final String[] parts = line.split("\t", 4);
+					if (parts.length != 4)
+						throw new IOException("malformed profile " + f.getPath() + ": " + line);
+					if (i == result.size())
+						result.add(new Site(parts[3]));
+					final Site s = result.get(i++);
+					s.calls += Long.parseLong(parts[0]);
+					s.samples += Long.parseLong(parts[1]);
+					s.nanos += Long.parseLong(parts[2]);
+				}
+			} finally {
+				in.close();
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Prints the profile of a job, the most expensive sites first.  The time
+	 * of a site includes the time of the sites it calls.
+	 *
+	 * @param conf the configuration to use
+	 * @param dir the directory the tasks wrote their profiles to
+	 * @param out where to print the report
+	 * @return false if there are no profiles to report
+	 * @throws IOException if a profile can not be read
+	 */
+	public static boolean report(final Configuration conf, final Path dir, final PrintStream out) throws IOException {
+		final List<Site> sites = read(conf, dir);
+		if (sites == null)
+			return false;
+
+		Collections.sort(sites, new Comparator<Site>() {
+			@Override
+			public int compare(final Site a, final Site b) {
+				final int c = Double.compare(b.getEstimatedNanos(), a.getEstimatedNanos());
+				return c != 0 ? c : Long.signum(b.calls - a.calls);
+			}
+		});
+
+		out.println(String.format("%12s %12s %12s  %s", "calls", "time (ms)", "avg (us)", "site"));
+		for (final Site s : sites)
+			out.println(String.format("%12d %12.1f %12.2f  %s", s.calls, s.getEstimatedNanos() / 1e6,
+					s.samples == 0 ? 0.0 : s.nanos / 1e3 / s.samples, s.description));
+		return true;
+	}
+
+	/**
+	 * Prints the profile of a job that has finished.
+	 *
+	 * @param args the output directory of the job
+	 * @throws IOException if a profile can not be read
+	 */
+	public static void main(final String[] args) throws IOException {
+		if (args.length != 1) {
+			System.err.println("usage: BoaProfiler <outputDir>");
+			System.exit(-1);
+		}
+		if (!report(new Configuration(), getDir(new Path(args[0])), System.out))
+			System.err.println("no profile found in " + args[0]);
+	}
+}
@@ -100,6 +100,17 @@ public abstract class BoaRunner extends Configured implements Tool {
 		return job;
 	}
 
+	/**
+	 * Returns the condition a project must meet for this program to do
+	 * anything with it, in the text form of {@link boa.io.ProjectGuard}.
+	 * Projects that do not meet it may be skipped without being read.
+	 *
+	 * @return the guard, or null if every project must be read
+	 */
+	public String getInputGuard() {
+		return null;
+	}
+
 	protected static Options options = new Options();
 
 	static {
@@ -120,10 +131,43 @@ public abstract class BoaRunner extends Configured implements Tool {
 										.hasArg()
 										.withArgName("INPUT")
 										.create("c"));
+		options.addOption(OptionBuilder.withLongOpt("budget-millis")
+										.withDescription("skip projects taking more than MS milliseconds")
+										.hasArg()
+										.withArgName("MS")
+										.create());
+		options.addOption(OptionBuilder.withLongOpt("budget-nodes")
+										.withDescription("skip projects visiting or traversing more than N nodes")
+										.hasArg()
+										.withArgName("N")
+										.create());
+		options.addOption(OptionBuilder.withLongOpt("budget-asts")
+										.withDescription("skip projects reading more than N ASTs")
+										.hasArg()
+										.withArgName("N")
+										.create());
+		options.addOption(OptionBuilder.withLongOpt("binary-output")
+										.withDescription("write the output as typed records instead of text")
+										.create());
 	}
 
 	protected static Options getOptions() { return options; }
 
+	/**
+	 * Sets the per-project {@link BoaBudget} given on the command line.
+	 *
+	 * @param line the parsed command line
+	 * @param configuration the configuration of the job
+	 */
+	public static void setBudget(final CommandLine line, final Configuration configuration) {
+		if (line.hasOption("budget-millis"))
+			configuration.setLong(BoaBudget.MILLIS, Long.parseLong(line.getOptionValue("budget-millis")));
+		if (line.hasOption("budget-nodes"))
+			configuration.setLong(BoaBudget.NODES, Long.parseLong(line.getOptionValue("budget-nodes")));
+		if (line.hasOption("budget-asts"))
+			configuration.setLong(BoaBudget.ASTS, Long.parseLong(line.getOptionValue("budget-asts")));
+	}
+
 	public static CommandLine parseArgs(String[] args, String usage) {
 		CommandLine line = null;
 
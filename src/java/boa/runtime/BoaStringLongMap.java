@@ -0,0 +1,235 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * The Java type of a Boa map[string] of int, which keeps its values unboxed
+ * and the hashes of its keys next to them.  The code generator calls the
+ * methods taking and returning primitives; the {@link Map} methods are there
+ * for functions that take any map and they box.  Iterates in insertion order.
+ */
+public class BoaStringLongMap extends AbstractMap<String, Long> {
+	private static final int MIN_CAPACITY = 8;
+
+	// a slot holds the position of a key plus one, 0 if empty or -1 if its key was removed
+	private static final int REMOVED = -1;
+
+	private String[] keys = new String[MIN_CAPACITY];
+	private int[] hashes = new int[MIN_CAPACITY];
+	private long[] values = new long[MIN_CAPACITY];
+	private int[] slots = new int[2 * MIN_CAPACITY];
+	private int used = 0;
+	private int size = 0;
+
+	public BoaStringLongMap() {
+	}
+
+	public BoaStringLongMap(final BoaStringLongMap m) {
+		keys = m.keys.clone();
+		hashes = m.hashes.clone();
+		values = m.values.clone();
+		slots = m.slots.clone();
+		used = m.used;
+		size = m.size;
+	}
+
+	private static int hash(final String k) {
+		final int h = k.hashCode() * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	private int find(final String k, final int h) {
+		final int mask = slots.length - 1;
+		for (int i = h & mask; ; i = (i + 1) & mask) {
+			final int s = slots[i];
+			if (s == 0)
+				return -1;
+			if (s > 0 && hashes[s - 1] == h && k.equals(keys[s - 1]))
+				return i;
+		}
+	}
+
+	/**
+	 * Returns the value of a key.
+	 *
+	 * @param key the key
+	 * @return the value
+	 * @throws NullPointerException if the map does not contain the key, like
+	 *         unboxing the missing value of a {@link java.util.HashMap}
+	 */
+	public long get(final String key) {
+		final int i = find(key, hash(key));
+		if (i == -1)
+			throw new NullPointerException("no value for key " + key);
+		return values[slots[i] - 1];
+	}
+
+	public void put(final String key, final long value) {
+		final int h = hash(key);
+		final int i = find(key, h);
+		if (i != -1) {
+			values[slots[i] - 1] = value;
+			return;
+		}
+
+		if (used == keys.length)
+			grow();
+		final int mask = slots.length - 1;
+		int j = h & mask;
+		while (slots[j] > 0)
+			j = (j + 1) & mask;
+		keys[used] = key;
+		hashes[used] = h;
+		values[used] = value;
+		slots[j] = ++used;
+		size++;
+	}
+
+	// drops removed keys and makes room for more
+	private void grow() {
+		final int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(size) << 1);
+		final String[] oldKeys = keys;
+		final int[] oldHashes = hashes;
+		final long[] oldValues = values;
+		keys = new String[capacity];
+		hashes = new int[capacity];
+		values = new long[capacity];
+		slots = new int[2 * capacity];
+
+		final int oldUsed = used;
+		used = 0;
+		final int mask = slots.length - 1;
+		for (int i = 0; i < oldUsed; i++) {
+			if (oldKeys[i] == null)
+				continue;
+			int j = oldHashes[i] & mask;
+			while (slots[j] != 0)
+				j = (j + 1) & mask;
+			keys[used] = oldKeys[i];
+			hashes[used] = oldHashes[i];
+			values[used] = oldValues[i];
+			slots[j] = ++used;
+		}
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public boolean containsKey(final Object key) {
+		return key instanceof String && find((String) key, hash((String) key)) != -1;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Long get(final Object key) {
+		if (!(key instanceof String))
+			return null;
+		final int i = find((String) key, hash((String) key));
+		return i == -1 ? null : values[slots[i] - 1];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Long put(final String key, final Long value) {
+		final Long old = get((Object) key);
+		put(key, value.longValue());
+		return old;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Long remove(final Object key) {
+		if (!(key instanceof String))
+			return null;
+		final int i = find((String) key, hash((String) key));
+		if (i == -1)
+			return null;
+		final int e = slots[i] - 1;
+		slots[i] = REMOVED;
+		keys[e] = null;
+		size--;
+		return values[e];
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public void clear() {
+		Arrays.fill(slots, 0);
+		Arrays.fill(keys, 0, used, null);
+		used = size = 0;
+	}
+
+	/** {@inheritDoc} */
+	@Override
+	public Set<Map.Entry<String, Long>> entrySet() {
+		return new AbstractSet<Map.Entry<String, Long>>() {
+			@Override
+			public Iterator<Map.Entry<String, Long>> iterator() {
+				return new Iterator<Map.Entry<String, Long>>() {
+					private int next = skip(0);
+					private int last = -1;
+
+					private int skip(int i) {
+						while (i < used && keys[i] == null)
+							i++;
+						return i;
+					}
+
+					@Override
+					public boolean hasNext() {
+						return next < used;
+					}
+
+					@Override
+					public Map.Entry<String, Long> next() {
+						if (!hasNext())
+							throw new NoSuchElementException();
+						last = next;
+						next = skip(next + 1);
+						return new AbstractMap.SimpleImmutableEntry<String, Long>(keys[last], values[last]);
+					}
+
+					@Override
+					public void remove() {
+						if (last == -1)
+							throw new IllegalStateException();
+						BoaStringLongMap.this.remove(keys[last]);
+						last = -1;
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return size;
+			}
+		};
+	}
+}
@@ -0,0 +1,479 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * An immutable hash array mapped trie, the shared storage of
+ * {@link BoaPersistentSet} and {@link BoaPersistentMap}.  A trie is null when
+ * empty, a {@link Leaf} when it holds one entry, a {@link Collision} for
+ * entries whose hashes are equal, or else a {@link Node}.  Every operation
+ * returns the trie it was given if nothing changed, and otherwise copies only
+ * the path to the change, so tries derived from each other share most of
+ * their nodes.
+ *
+ * A node never holds a single leaf, which makes the shape of a trie a
+ * function of its contents: equal tries have equal shapes, and the
+ * operations on two tries skip the subtrees they share.
+ */
+final class HashTrie {
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private HashTrie() {
+	}
+
+	static final class Leaf {
+		final int hash;
+		final Object key;
+		final Object value;
+
+		Leaf(final Object key, final Object value) {
+			this.hash = hash(key);
+			this.key = key;
+			this.value = value;
+		}
+	}
+
+	static final class Node {
+		final int bitmap;
+		final Object[] children;
+		final int size;
+
+		Node(final int bitmap, final Object[] children, final int size) {
+			this.bitmap = bitmap;
+			this.children = children;
+			this.size = size;
+		}
+	}
+
+	static final class Collision {
+		final int hash;
+		final Leaf[] leaves;
+
+		Collision(final int hash, final Leaf[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+	}
+
+	static int hash(final Object key) {
+		if (key == null)
+			return 0;
+		final int h = key.hashCode();
+		return h ^ (h >>> 16);
+	}
+
+	private static boolean eq(final Object a, final Object b) {
+		return a == b || (a != null && a.equals(b));
+	}
+
+	private static int bit(final int hash, final int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	private static int index(final int bitmap, final int bit) {
+		return Integer.bitCount(bitmap & (bit - 1));
+	}
+
+	static int size(final Object t) {
+		if (t == null)
+			return 0;
+		if (t instanceof Leaf)
+			return 1;
+		if (t instanceof Collision)
+			return ((Collision) t).leaves.length;
+		return ((Node) t).size;
+	}
+
+	/** @return the leaf holding the key, or null */
+	static Leaf find(Object t, final int hash, final Object key, int shift) {
+		while (t instanceof Node) {
+			final Node n = (Node) t;
+			final int bit = bit(hash, shift);
+			if ((n.bitmap & bit) == 0)
+				return null;
+			t = n.children[index(n.bitmap, bit)];
+			shift += BITS;
+		}
+		if (t instanceof Leaf) {
+			final Leaf l = (Leaf) t;
+			return l.hash == hash && eq(l.key, key) ? l : null;
+		}
+		if (t instanceof Collision && ((Collision) t).hash == hash)
+			for (final Leaf l : ((Collision) t).leaves)
+				if (eq(l.key, key))
+					return l;
+		return null;
+	}
+
+	/** @return the trie with the leaf added, replacing any leaf with the same key */
+	static Object put(final Object t, final Leaf leaf, final int shift) {
+		if (t == null)
+			return leaf;
+
+		if (t instanceof Leaf) {
+			final Leaf l = (Leaf) t;
+			if (l.hash == leaf.hash && eq(l.key, leaf.key))
+				return eq(l.value, leaf.value) ? l : leaf;
+			return pair(l, leaf, shift);
+		}
+
+		if (t instanceof Collision) {
+			final Leaf[] leaves = ((Collision) t).leaves;
+			for (int i = 0; i < leaves.length; i++)
+				if (eq(leaves[i].key, leaf.key)) {
+					if (eq(leaves[i].value, leaf.value))
+						return t;
+					final Leaf[] a = leaves.clone();
+					a[i] = leaf;
+					return new Collision(leaf.hash, a);
+				}
+			final Leaf[] a = new Leaf[leaves.length + 1];
+			System.arraycopy(leaves, 0, a, 0, leaves.length);
+			a[leaves.length] = leaf;
+			return new Collision(leaf.hash, a);
+		}
+
+		final Node n = (Node) t;
+		final int bit = bit(leaf.hash, shift);
+		final int i = index(n.bitmap, bit);
+		if ((n.bitmap & bit) == 0) {
+			final Object[] a = new Object[n.children.length + 1];
+			System.arraycopy(n.children, 0, a, 0, i);
+			a[i] = leaf;
+			System.arraycopy(n.children, i, a, i + 1, n.children.length - i);
+			return new Node(n.bitmap | bit, a, n.size + 1);
+		}
+		final Object child = n.children[i];
+		final Object c = put(child, leaf, shift + BITS);
+		return c == child ? n : replace(n, i, child, c);
+	}
+
+	private static Object pair(final Leaf a, final Leaf b, final int shift) {
+		// every bit of the hashes matched on the way down
+		if (shift >= 32)
+			return new Collision(a.hash, new Leaf[] { a, b });
+
+		final int ba = bit(a.hash, shift);
+		final int bb = bit(b.hash, shift);
+		if (ba == bb)
+			return new Node(ba, new Object[] { pair(a, b, shift + BITS) }, 2);
+		if (index(ba | bb, ba) == 0)
+			return new Node(ba | bb, new Object[] { a, b }, 2);
+		return new Node(ba | bb, new Object[] { b, a }, 2);
+	}
+
+	private static Node replace(final Node n, final int i, final Object child, final Object c) {
+		final Object[] a = n.children.clone();
+		a[i] = c;
+		return new Node(n.bitmap, a, n.size - size(child) + size(c));
+	}
+
+	/** @return the trie without the key */
+	static Object remove(final Object t, final int hash, final Object key, final int shift) {
+		if (t == null)
+			return null;
+
+		if (t instanceof Leaf) {
+			final Leaf l = (Leaf) t;
+			return l.hash == hash && eq(l.key, key) ? null : t;
+		}
+
+		if (t instanceof Collision) {
+			final Leaf[] leaves = ((Collision) t).leaves;
+			for (int i = 0; i < leaves.length; i++)
+				if (eq(leaves[i].key, key)) {
+					if (leaves.length == 2)
+						return leaves[1 - i];
+					final Leaf[] a = new Leaf[leaves.length - 1];
+					System.arraycopy(leaves, 0, a, 0, i);
+					System.arraycopy(leaves, i + 1, a, i, a.length - i);
+					return new Collision(hash, a);
+				}
+			return t;
+		}
+
+		final Node n = (Node) t;
+		final int bit = bit(hash, shift);
+		if ((n.bitmap & bit) == 0)
+			return t;
+		final int i = index(n.bitmap, bit);
+		final Object child = n.children[i];
+		final Object c = remove(child, hash, key, shift + BITS);
+		if (c == child)
+			return t;
+		if (c != null)
+			return c instanceof Leaf && n.children.length == 1 ? c : replace(n, i, child, c);
+		return without(n, i, bit);
+	}
+
+	private static Object without(final Node n, final int i, final int bit) {
+		if (n.children.length == 2 && n.children[1 - i] instanceof Leaf)
+			return n.children[1 - i];
+		final Object[] a = new Object[n.children.length - 1];
+		System.arraycopy(n.children, 0, a, 0, i);
+		System.arraycopy(n.children, i + 1, a, i, a.length - i);
+		return new Node(n.bitmap & ~bit, a, n.size - size(n.children[i]));
+	}
+
+	/** @return the entries of either trie, taking a's leaf for keys in both */
+	static Object union(final Object a, final Object b, final int shift) {
+		if (a == b || b == null)
+			return a;
+		if (a == null)
+			return b;
+
+		if (b instanceof Leaf) {
+			final Leaf l = (Leaf) b;
+			return find(a, l.hash, l.key, shift) != null ? a : put(a, l, shift);
+		}
+		if (a instanceof Leaf) {
+			final Leaf l = (Leaf) a;
+			return put(b, l, shift);
+		}
+		if (a instanceof Collision || b instanceof Collision) {
+			Object t = a;
+			for (final Iterator<Leaf> i = leaves(b); i.hasNext(); ) {
+				final Leaf l = i.next();
+				if (find(t, l.hash, l.key, shift) == null)
+					t = put(t, l, shift);
+			}
+			return t;
+		}
+
+		final Node na = (Node) a;
+		final Node nb = (Node) b;
+		final int bitmap = na.bitmap | nb.bitmap;
+		final Object[] children = new Object[Integer.bitCount(bitmap)];
+		boolean sameAsA = bitmap == na.bitmap;
+		boolean sameAsB = bitmap == nb.bitmap;
+		int size = 0;
+		for (int bits = bitmap, i = 0; bits != 0; bits &= bits - 1, i++) {
+			final int bit = bits & -bits;
+			final Object ca = (na.bitmap & bit) == 0 ? null : na.children[index(na.bitmap, bit)];
+			final Object cb = (nb.bitmap & bit) == 0 ? null : nb.children[index(nb.bitmap, bit)];
+			children[i] = union(ca, cb, shift + BITS);
+			sameAsA &= children[i] == ca;
+			sameAsB &= children[i] == cb;
+			size += size(children[i]);
+		}
+		if (sameAsA)
+			return a;
+		if (sameAsB)
+			return b;
+		return new Node(bitmap, children, size);
+	}
+
+	/** @return the entries of a whose keys are not in b */
+	static Object difference(final Object a, final Object b, final int shift) {
+		if (a == null || a == b)
+			return null;
+		if (b == null)
+			return a;
+
+		if (a instanceof Leaf) {
+			final Leaf l = (Leaf) a;
+			return find(b, l.hash, l.key, shift) != null ? null : a;
+		}
+		if (b instanceof Leaf) {
+			final Leaf l = (Leaf) b;
+			return remove(a, l.hash, l.key, shift);
+		}
+		if (a instanceof Collision || b instanceof Collision)
+			return filter(a, b, shift, false);
+
+		final Node na = (Node) a;
+		final Node nb = (Node) b;
+		final Object[] children = new Object[na.children.length];
+		int bitmap = 0;
+		int count = 0;
+		int size = 0;
+		boolean same = true;
+		for (int bits = na.bitmap, i = 0; bits != 0; bits &= bits - 1, i++) {
+			final int bit = bits & -bits;
+			final Object ca = na.children[i];
+			final Object c = (nb.bitmap & bit) == 0 ? ca : difference(ca, nb.children[index(nb.bitmap, bit)], shift + BITS);
+			same &= c == ca;
+			if (c != null) {
+				bitmap |= bit;
+				children[count++] = c;
+				size += size(c);
+			}
+		}
+		return same ? a : node(bitmap, children, count, size);
+	}
+
+	/** @return the entries of a whose keys are also in b */
+	static Object intersect(final Object a, final Object b, final int shift) {
+		if (a == b)
+			return a;
+		if (a == null || b == null)
+			return null;
+
+		if (a instanceof Leaf) {
+			final Leaf l = (Leaf) a;
+			return find(b, l.hash, l.key, shift) != null ? a : null;
+		}
+		if (b instanceof Leaf) {
+			final Leaf l = (Leaf) b;
+			return find(a, l.hash, l.key, shift);
+		}
+		if (a instanceof Collision || b instanceof Collision)
+			return filter(a, b, shift, true);
+
+		final Node na = (Node) a;
+		final Node nb = (Node) b;
+		final Object[] children = new Object[na.children.length];
+		int bitmap = 0;
+		int count = 0;
+		int size = 0;
+		boolean same = true;
+		for (int bits = na.bitmap, i = 0; bits != 0; bits &= bits - 1, i++) {
+			final int bit = bits & -bits;
+			final Object ca = na.children[i];
+			final Object c = (nb.bitmap & bit) == 0 ? null : intersect(ca, nb.children[index(nb.bitmap, bit)], shift + BITS);
+			same &= c == ca;
+			if (c != null) {
+				bitmap |= bit;
+				children[count++] = c;
+				size += size(c);
+			}
+		}
+		return same ? a : node(bitmap, children, count, size);
+	}
+
+	// the leaves of a whose keys are (or are not) in b, one at a time
+	private static Object filter(final Object a, final Object b, final int shift, final boolean keep) {
+		Object t = a;
+		for (final Iterator<Leaf> i = leaves(a); i.hasNext(); ) {
+			final Leaf l = i.next();
+			if ((find(b, l.hash, l.key, shift) != null) != keep)
+				t = remove(t, l.hash, l.key, shift);
+		}
+		return t;
+	}
+
+	private static Object node(final int bitmap, final Object[] children, final int count, final int size) {
+		if (count == 0)
+			return null;
+		if (count == 1 && children[0] instanceof Leaf)
+			return children[0];
+		final Object[] a = new Object[count];
+		System.arraycopy(children, 0, a, 0, count);
+		return new Node(bitmap, a, size);
+	}
+
+	/** @return true if the tries hold the same keys, and the same values if compareValues */
+	static boolean equals(final Object a, final Object b, final boolean compareValues) {
+		if (a == b)
+			return true;
+		if (a == null || b == null || a.getClass() != b.getClass() || size(a) != size(b))
+			return false;
+
+		if (a instanceof Leaf) {
+			final Leaf la = (Leaf) a;
+			final Leaf lb = (Leaf) b;
+			return la.hash == lb.hash && eq(la.key, lb.key) && (!compareValues || eq(la.value, lb.value));
+		}
+
+		if (a instanceof Collision) {
+			for (final Leaf l : ((Collision) a).leaves) {
+				final Leaf other = find(b, l.hash, l.key, 32);
+				if (other == null || (compareValues && !eq(l.value, other.value)))
+					return false;
+			}
+			return true;
+		}
+
+		final Node na = (Node) a;
+		final Node nb = (Node) b;
+		if (na.bitmap != nb.bitmap)
+			return false;
+		for (int i = 0; i < na.children.length; i++)
+			if (!equals(na.children[i], nb.children[i], compareValues))
+				return false;
+		return true;
+	}
+
+	/** @return the leaves of the trie, in hash order */
+	static Iterator<Leaf> leaves(final Object t) {
+		return new Iterator<Leaf>() {
+			// the nodes on the path to the next leaf, and the next child of each
+			private final Object[] nodes = new Object[8];
+			private final int[] positions = new int[8];
+			private int depth = 0;
+			private Leaf next;
+
+			{
+				descend(t);
+			}
+
+			// walks down the leftmost path from t to its first leaf
+			private void descend(Object n) {
+				while (true) {
+					if (n instanceof Leaf) {
+						next = (Leaf) n;
+						return;
+					}
+					if (n == null)
+						return;
+					nodes[depth] = n;
+					positions[depth] = 1;
+					depth++;
+					n = n instanceof Node ? ((Node) n).children[0] : ((Collision) n).leaves[0];
+				}
+			}
+
+			private void advance() {
+				next = null;
+				while (depth > 0) {
+					final Object n = nodes[depth - 1];
+					final Object[] children = n instanceof Node ? ((Node) n).children : ((Collision) n).leaves;
+					final int i = positions[depth - 1];
+					if (i < children.length) {
+						positions[depth - 1]++;
+						descend(children[i]);
+						return;
+					}
+					depth--;
+				}
+			}
+
+			@Override
+			public boolean hasNext() {
+				return next != null;
+			}
+
+			@Override
+			public Leaf next() {
+				if (next == null)
+					throw new NoSuchElementException();
+				final Leaf l = next;
+				advance();
+				return l;
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+		};
+	}
+}
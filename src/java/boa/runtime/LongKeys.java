@@ -0,0 +1,163 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.util.Arrays;
+
+/**
+ * The keys of the primitive collections: an insertion ordered array of longs
+ * with an open-addressing hash table of positions into it.  Removed keys
+ * leave a hole in the array, which is squeezed out the next time it grows.
+ * The collections keep their values in arrays parallel to {@link #keys}.
+ */
+final class LongKeys {
+	private static final int MIN_CAPACITY = 8;
+
+	// a slot holds the position of a key plus one, 0 if empty or -1 if its key was removed
+	private static final int REMOVED = -1;
+
+	long[] keys = new long[MIN_CAPACITY];
+	private boolean[] removed = new boolean[MIN_CAPACITY];
+	private int[] slots = new int[2 * MIN_CAPACITY];
+	private int used = 0;
+	private int size = 0;
+
+	LongKeys() {
+	}
+
+	LongKeys(final LongKeys k) {
+		keys = k.keys.clone();
+		removed = k.removed.clone();
+		slots = k.slots.clone();
+		used = k.used;
+		size = k.size;
+	}
+
+	private static int hash(final long k) {
+		final long h = k * 0x9E3779B97F4A7C15L;
+		return (int) (h ^ (h >>> 32));
+	}
+
+	int size() {
+		return size;
+	}
+
+	/** @return the position of the key, or -1 */
+	int find(final long k) {
+		final int mask = slots.length - 1;
+		for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+			final int s = slots[i];
+			if (s == 0)
+				return -1;
+			if (s > 0 && keys[s - 1] == k)
+				return s - 1;
+		}
+	}
+
+	/** @return true if there is no room to {@link #add} a key without calling {@link #grow} first */
+	boolean isFull() {
+		return used == keys.length;
+	}
+
+	/**
+	 * Adds a key that is not already present.
+	 *
+	 * @return the position of the key
+	 */
+	int add(final long k) {
+		final int mask = slots.length - 1;
+		int i = hash(k) & mask;
+		while (slots[i] > 0)
+			i = (i + 1) & mask;
+		keys[used] = k;
+		slots[i] = ++used;
+		size++;
+		return used - 1;
+	}
+
+	/** @return the position the key had, or -1 */
+	int remove(final long k) {
+		final int mask = slots.length - 1;
+		for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+			final int s = slots[i];
+			if (s == 0)
+				return -1;
+			if (s > 0 && keys[s - 1] == k) {
+				slots[i] = REMOVED;
+				removed[s - 1] = true;
+				size--;
+				return s - 1;
+			}
+		}
+	}
+
+	void clear() {
+		Arrays.fill(slots, 0);
+		Arrays.fill(removed, 0, used, false);
+		used = size = 0;
+	}
+
+	/** @return the first position at or after i holding a key, or {@link #end()} */
+	int next(int i) {
+		while (i < used && removed[i])
+			i++;
+		return i;
+	}
+
+	int end() {
+		return used;
+	}
+
+	/**
+	 * Makes room for more keys, dropping the removed ones.
+	 *
+	 * @return the old positions of the keys, in their new order, to rearrange the values with
+	 */
+	int[] grow() {
+		final int[] live = new int[size];
+		for (int i = 0, j = 0; i < used; i++)
+			if (!removed[i])
+				live[j++] = i;
+
+		final int capacity = Math.max(MIN_CAPACITY, Integer.highestOneBit(size) << 1);
+		keys = gather(keys, live, capacity);
+		removed = new boolean[capacity];
+		slots = new int[2 * capacity];
+		used = size = 0;
+		for (int i = 0; i < live.length; i++)
+			add(keys[i]);
+		return live;
+	}
+
+	int capacity() {
+		return keys.length;
+	}
+
+	static long[] gather(final long[] a, final int[] from, final int capacity) {
+		final long[] b = new long[capacity];
+		for (int i = 0; i < from.length; i++)
+			b[i] = a[from[i]];
+		return b;
+	}
+
+	static double[] gather(final double[] a, final int[] from, final int capacity) {
+		final double[] b = new double[capacity];
+		for (int i = 0; i < from.length; i++)
+			b[i] = a[from[i]];
+		return b;
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.runtime;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.Descriptors.FieldDescriptor;
+import com.google.protobuf.WireFormat;
+
+import boa.types.Toplevel.Project;
+
+/**
+ * Decodes only some fields of serialized Projects.  The fields a program
+ * never reads are skipped on the wire without being parsed, so they cost
+ * no more than scanning past their bytes.  Required fields are always kept.
+ *
+ * Instances reuse a buffer, so each thread needs its own.
+ */
+public class ProjectProjection {
+	private final boolean[] keep;
+	private byte[] buf = new byte[4096];
+
+	/**
+	 * Creates a projection.  If any name is not a field of Project, nothing
+	 * is skipped.
+	 *
+	 * @param fields the names of the fields to decode
+	 */
+	public ProjectProjection(final String... fields) {
+		int max = 0;
+		for (final FieldDescriptor fd : Project.getDescriptor().getFields())
+			max = Math.max(max, fd.getNumber());
+
+		keep = new boolean[max + 1];
+		for (final FieldDescriptor fd : Project.getDescriptor().getFields())
+			keep[fd.getNumber()] = fd.isRequired();
+		for (final String f : fields) {
+			final FieldDescriptor fd = Project.getDescriptor().findFieldByName(f);
+			if (fd == null) {
+				Arrays.fill(keep, true);
+				break;
+			}
+			keep[fd.getNumber()] = true;
+		}
+	}
+
+	/**
+	 * Decodes a Project, leaving out every field not in the projection.
+	 *
+	 * @param b the buffer holding the serialized Project
+	 * @param off where the Project starts
+	 * @param len the length of the Project
+	 * @return the decoded Project
+	 * @throws IOException if the Project is malformed
+	 */
+	public Project parse(final byte[] b, final int off, final int len) throws IOException {
+		final CodedInputStream in = CodedInputStream.newInstance(b, off, len);
+		int size = 0;
+		while (true) {
+			final int start = in.getTotalBytesRead();
+			final int tag = in.readTag();
+			if (tag == 0 || !in.skipField(tag))
+				break;
+
+			final int field = WireFormat.getTagFieldNumber(tag);
+			if (field < keep.length && keep[field]) {
+				final int n = in.getTotalBytesRead() - start;
+				if (size + n > buf.length)
+					buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+				System.arraycopy(b, off + start, buf, size, n);
+				size += n;
+			}
+		}
+		return Project.parseFrom(CodedInputStream.newInstance(buf, 0, size));
+	}
+}
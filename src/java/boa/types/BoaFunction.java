@@ -32,6 +32,8 @@ public class BoaFunction extends BoaType {
 	private BoaType[] formalParameters;
 	private String name;
 	private String macro;
+	private boolean pure;
+	private boolean speculative;
 
 	/**
 	 * Construct a BoaFunction.
@@ -237,6 +239,37 @@ public class BoaFunction extends BoaType {
 		this.macro = macro;
 	}
 
+	/**
+	 * Returns whether this function is pure, so equal calls to it return
+	 * the same value.
+	 * 
+	 * @return True iff this function is pure
+	 * 
+	 */
+	public boolean isPure() {
+		return this.pure;
+	}
+
+	public void setPure(final boolean pure) {
+		this.pure = pure;
+	}
+
+	/**
+	 * Returns whether this function is pure and can be called where the
+	 * program would not have called it, as it can not fail and has no
+	 * other effect.
+	 * 
+	 * @return True iff this function can be called speculatively
+	 * 
+	 */
+	public boolean isSpeculative() {
+		return this.speculative;
+	}
+
+	public void setSpeculative(final boolean speculative) {
+		this.speculative = speculative;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toJavaType() {
@@ -145,9 +145,32 @@ public class BoaMap extends BoaType {
 		return "map[" + this.indexType + "] of " + this.valueType;
 	}
 
+	/**
+	 * Get the unboxed map from boa.runtime this map is generated as, if its
+	 * key and value types have one.
+	 * 
+	 * @return The name of the Java class, or null to use a java.util.HashMap
+	 */
+	public String getPrimitiveJavaType() {
+		final String index = this.indexType.toJavaType();
+		final String value = this.valueType.toJavaType();
+		if (index.equals("long")) {
+			if (value.equals("long"))
+				return "boa.runtime.BoaLongLongMap";
+			if (value.equals("double"))
+				return "boa.runtime.BoaLongDoubleMap";
+		} else if (index.equals("String") && value.equals("long")) {
+			return "boa.runtime.BoaStringLongMap";
+		}
+		return null;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toJavaType() {
+		final String primitive = getPrimitiveJavaType();
+		if (primitive != null)
+			return primitive;
 		return "java.util.HashMap<" + this.indexType.toBoxedJavaType() + ", " + this.valueType.toBoxedJavaType() + ">";
 	}
 
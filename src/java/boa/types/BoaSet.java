@@ -121,9 +121,24 @@ public class BoaSet extends BoaType {
 		return "set of " + this.type;
 	}
 
+	/**
+	 * Get the unboxed set from boa.runtime this set is generated as, if its
+	 * value type has one.
+	 * 
+	 * @return The name of the Java class, or null to use a java.util.HashSet
+	 */
+	public String getPrimitiveJavaType() {
+		if (this.type.toJavaType().equals("long"))
+			return "boa.runtime.BoaLongSet";
+		return null;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toJavaType() {
+		final String primitive = getPrimitiveJavaType();
+		if (primitive != null)
+			return primitive;
 		return "java.util.HashSet<" + this.type.toBoxedJavaType() + ">";
 	}
 
@@ -121,9 +121,24 @@ public class BoaStack extends BoaType {
 		return "stack of " + this.type;
 	}
 
+	/**
+	 * Get the unboxed stack from boa.runtime this stack is generated as, if its
+	 * value type has one.
+	 * 
+	 * @return The name of the Java class, or null to use a java.util.Stack
+	 */
+	public String getPrimitiveJavaType() {
+		if (this.type.toJavaType().equals("long"))
+			return "boa.runtime.BoaLongStack";
+		return null;
+	}
+
 	/** {@inheritDoc} */
 	@Override
 	public String toJavaType() {
+		final String primitive = getPrimitiveJavaType();
+		if (primitive != null)
+			return primitive;
 		return "java.util.Stack<" + this.type.toBoxedJavaType() + ">";
 	}
 
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.types.proto;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import boa.types.BoaInt;
+import boa.types.BoaProtoList;
+import boa.types.BoaProtoTuple;
+import boa.types.BoaString;
+import boa.types.BoaType;
+import boa.types.proto.enums.ChangeKindProtoMap;
+
+/**
+ * A {@link EditScriptProtoTuple}.
+ */
+public class EditScriptProtoTuple extends BoaProtoTuple {
+	private final static List<BoaType> members = new ArrayList<BoaType>();
+	private final static Map<String, Integer> names = new HashMap<String, Integer>();
+
+	static {
+		int counter = 0;
+
+		names.put("kinds", counter++);
+		members.add(new BoaProtoList(new ChangeKindProtoMap()));
+
+		names.put("old_nodes", counter++);
+		members.add(new BoaProtoList(new BoaInt()));
+
+		names.put("new_nodes", counter++);
+		members.add(new BoaProtoList(new BoaInt()));
+
+		names.put("labels", counter++);
+		members.add(new BoaProtoList(new BoaString()));
+	}
+
+	/**
+	 * Construct a {@link EditScriptProtoTuple}.
+	 */
+	public EditScriptProtoTuple() {
+		super(members, names);
+	}
+
+	/** @{inheritDoc} */
+	@Override
+	public String toJavaType() {
+		return "boa.types.Edit.EditScript";
+	}
+}
@@ -0,0 +1,233 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.mapred.RawKeyValueIterator;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.apache.hadoop.mapreduce.Reducer;
+import org.apache.hadoop.mapreduce.TaskAttemptContext;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.apache.hadoop.util.Progress;
+
+import boa.aggregators.Aggregator;
+import boa.aggregators.AggregatorSpec;
+import boa.aggregators.BottomAggregator;
+import boa.aggregators.CollectionAggregator;
+import boa.aggregators.ConfidenceIntervalAggregator;
+import boa.aggregators.DistinctAggregator;
+import boa.aggregators.FinishedException;
+import boa.aggregators.FloatHistogramAggregator;
+import boa.aggregators.FloatMeanAggregator;
+import boa.aggregators.FloatQuantileAggregator;
+import boa.aggregators.FloatSumAggregator;
+import boa.aggregators.IntHistogramAggregator;
+import boa.aggregators.IntMeanAggregator;
+import boa.aggregators.IntQuantileAggregator;
+import boa.aggregators.IntSumAggregator;
+import boa.aggregators.KurtosisAggregator;
+import boa.aggregators.MaximumAggregator;
+import boa.aggregators.MedianAggregator;
+import boa.aggregators.MinimumAggregator;
+import boa.aggregators.SetAggregator;
+import boa.aggregators.SkewnessAggregator;
+import boa.aggregators.StDevAggregator;
+import boa.aggregators.StatisticsAggregator;
+import boa.aggregators.TopAggregator;
+import boa.aggregators.UniqueAggregator;
+import boa.aggregators.VarianceAggregator;
+import boa.io.EmitKey;
+import boa.io.EmitValue;
+
+/**
+ * Measures each aggregator's combine and reduce paths, one call being one
+ * key's worth of values.  The combine path aggregates what mappers emit;
+ * the reduce path aggregates what the combine path wrote, or what mappers
+ * emit for aggregators that can not combine.
+ */
+public class AggregatorBenchmark extends Benchmark {
+	private static final int VALUES = 256;
+	private static final int ITERATIONS = 20000;
+
+	private enum Kind { INT, FLOAT, STRING, WEIGHTED }
+
+	private static class Case {
+		final String name;
+		final Aggregator aggregator;
+		final Kind kind;
+		List<EmitValue> mapped;
+		List<EmitValue> combined;
+
+		Case(final String name, final Aggregator aggregator, final Kind kind) {
+			this.name = name;
+			this.aggregator = aggregator;
+			this.kind = kind;
+		}
+
+		boolean canCombine() {
+			return aggregator.getClass().getAnnotation(AggregatorSpec.class).canCombine();
+		}
+	}
+
+	private final List<Case> cases = new ArrayList<Case>();
+	private final EmitKey key = new EmitKey("o", 0);
+
+	// where aggregators write, keeping what was written if anyone is listening
+	private List<EmitValue> written;
+	private Reducer<EmitKey, EmitValue, Object, Object>.Context context;
+
+	public AggregatorBenchmark() {
+		cases.add(new Case("sum", new IntSumAggregator(), Kind.INT));
+		cases.add(new Case("sum float", new FloatSumAggregator(), Kind.FLOAT));
+		cases.add(new Case("mean", new IntMeanAggregator(), Kind.INT));
+		cases.add(new Case("mean float", new FloatMeanAggregator(), Kind.FLOAT));
+		cases.add(new Case("histogram", new IntHistogramAggregator(0, 1000, 10), Kind.INT));
+		cases.add(new Case("histogram float", new FloatHistogramAggregator(0, 1000, 10), Kind.FLOAT));
+		cases.add(new Case("quantile", new IntQuantileAggregator(10), Kind.INT));
+		cases.add(new Case("quantile float", new FloatQuantileAggregator(10), Kind.FLOAT));
+		cases.add(new Case("median", new MedianAggregator(), Kind.INT));
+		cases.add(new Case("stdev", new StDevAggregator(), Kind.INT));
+		cases.add(new Case("variance", new VarianceAggregator(), Kind.INT));
+		cases.add(new Case("skewness", new SkewnessAggregator(), Kind.INT));
+		cases.add(new Case("kurtosis", new KurtosisAggregator(), Kind.INT));
+		cases.add(new Case("statistics", new StatisticsAggregator(), Kind.INT));
+		cases.add(new Case("confidence", new ConfidenceIntervalAggregator(95), Kind.INT));
+		cases.add(new Case("top", new TopAggregator(10), Kind.WEIGHTED));
+		cases.add(new Case("bottom", new BottomAggregator(10), Kind.WEIGHTED));
+		cases.add(new Case("maximum", new MaximumAggregator(10), Kind.WEIGHTED));
+		cases.add(new Case("minimum", new MinimumAggregator(10), Kind.WEIGHTED));
+		cases.add(new Case("collection", new CollectionAggregator(), Kind.STRING));
+		cases.add(new Case("set", new SetAggregator(), Kind.STRING));
+		cases.add(new Case("unique", new UniqueAggregator(100), Kind.STRING));
+		cases.add(new Case("distinct", new DistinctAggregator(100), Kind.STRING));
+	}
+
+	@Override
+	public String getName() {
+		return "aggregator";
+	}
+
+	@Override
+	public void setup() throws Exception {
+
+		context = new Reducer<EmitKey, EmitValue, Object, Object>().new Context(new Configuration(), new TaskAttemptID(), EMPTY,
+				null, null, new RecordWriter<Object, Object>() {
+					@Override
+					public void write(final Object k, final Object v) {
+						if (written != null && v instanceof EmitValue)
+							written.add((EmitValue) v);
+					}
+
+					@Override
+					public void close(final TaskAttemptContext context) {
+					}
+				}, null, null, key, EmitKey.class, EmitValue.class);
+
+		final Random r = new Random(42);
+		for (final Case c : cases) {
+			c.mapped = new ArrayList<EmitValue>(VALUES);
+			for (int i = 0; i < VALUES; i++)
+				c.mapped.add(value(c.kind, r));
+
+			if (c.canCombine()) {
+				written = new ArrayList<EmitValue>();
+				aggregate(c.aggregator, true, c.mapped);
+				c.combined = written;
+				written = null;
+			} else {
+				c.combined = c.mapped;
+			}
+		}
+	}
+
+	private static EmitValue value(final Kind kind, final Random r) {
+		switch (kind) {
+		case INT:
+			return new EmitValue(r.nextInt(1000));
+		case FLOAT:
+			return new EmitValue(r.nextDouble() * 1000);
+		case STRING:
+			return new EmitValue("value" + r.nextInt(VALUES / 2));
+		default:
+			return new EmitValue("value" + r.nextInt(VALUES / 2), r.nextInt(1000));
+		}
+	}
+
+	// what BoaCombiner and BoaReducer do for one key
+	private long aggregate(final Aggregator a, final boolean combining, final List<EmitValue> values) throws Exception {
+		a.setCombining(combining);
+		a.start(key);
+		a.setContext(context);
+		try {
+			for (final EmitValue value : values)
+				for (final String s : value.getData())
+					a.aggregate(s, value.getMetadata());
+		} catch (final FinishedException e) {
+			return 0;
+		}
+		a.finish();
+		return values.size();
+	}
+
+	@Override
+	public void run(final Harness h) throws Exception {
+		for (final Case c : cases) {
+			if (c.canCombine())
+				h.measure(c.name + ".combine", ITERATIONS, new Op() {
+					public long run(final int i) throws Exception {
+						return aggregate(c.aggregator, true, c.mapped);
+					}
+				});
+			h.measure(c.name + ".reduce", ITERATIONS, new Op() {
+				public long run(final int i) throws Exception {
+					return aggregate(c.aggregator, false, c.combined);
+				}
+			});
+		}
+	}
+
+	private static final RawKeyValueIterator EMPTY = new RawKeyValueIterator() {
+		@Override
+		public DataInputBuffer getKey() {
+			return null;
+		}
+
+		@Override
+		public DataInputBuffer getValue() {
+			return null;
+		}
+
+		@Override
+		public boolean next() {
+			return false;
+		}
+
+		@Override
+		public void close() {
+		}
+
+		@Override
+		public Progress getProgress() {
+			return null;
+		}
+	};
+}
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+/**
+ * A group of related measurements, run by {@link BenchmarkRunner}.
+ */
+public abstract class Benchmark {
+	/**
+	 * One measured operation.
+	 */
+	public interface Op {
+		/**
+		 * @param i the number of the call, to pick an input with
+		 * @return anything derived from the result, so it can not be optimized away
+		 * @throws Exception if the operation fails
+		 */
+		long run(int i) throws Exception;
+	}
+
+	/**
+	 * @return the name results are reported under
+	 */
+	public abstract String getName();
+
+	/**
+	 * Prepares the inputs.  Only called if some measurement of this
+	 * benchmark is going to run.
+	 *
+	 * @throws Exception if the inputs can not be prepared
+	 */
+	public void setup() throws Exception {
+	}
+
+	/**
+	 * Runs the measurements, each through {@link Harness#measure(String, int, Op)}.
+	 *
+	 * @param h the harness
+	 * @throws Exception if a measurement fails
+	 */
+	public abstract void run(Harness h) throws Exception;
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+
+/**
+ * Runs the runtime micro-benchmarks and writes their results as CSV, so
+ * runs on different versions can be compared.
+ *
+ * Usage: BenchmarkRunner [-o results.csv] [-f regex] [-r rounds] [-s scale]
+ */
+public class BenchmarkRunner {
+	public static Benchmark[] all() {
+		return new Benchmark[] {
+			new EmitBenchmark(),
+			new AggregatorBenchmark(),
+			new VisitorBenchmark(),
+			new GraphBenchmark(),
+			new SnapshotBenchmark(),
+			new StringBenchmark(),
+			new TimeBenchmark(),
+		};
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new Options();
+		options.addOption("o", "output", true, "file to write CSV results to");
+		options.addOption("f", "filter", true, "only run measurements whose 'benchmark.name' matches this regex");
+		options.addOption("r", "rounds", true, "number of timed rounds per measurement (default 5)");
+		options.addOption("s", "scale", true, "multiplies the number of calls per round (default 1.0)");
+
+		final CommandLine cl;
+		try {
+			cl = new PosixParser().parse(options, args);
+		} catch (final ParseException e) {
+			System.err.println(e.getMessage());
+			new HelpFormatter().printHelp("BenchmarkRunner", options);
+			return;
+		}
+
+		final Harness h = new Harness(cl.hasOption('f') ? Pattern.compile(cl.getOptionValue('f')) : null,
+				Integer.parseInt(cl.getOptionValue('r', "5")), Double.parseDouble(cl.getOptionValue('s', "1.0")));
+		for (final Benchmark b : all())
+			h.run(b);
+
+		if (cl.hasOption('o'))
+			write(h, new File(cl.getOptionValue('o')));
+	}
+
+	private static void write(final Harness h, final File f) throws IOException {
+		if (f.getParentFile() != null && !f.getParentFile().isDirectory() && !f.getParentFile().mkdirs())
+			throw new IOException("unable to mkdir " + f.getParentFile());
+		final Writer w = new FileWriter(f);
+		try {
+			h.writeCsv(w);
+		} finally {
+			w.close();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.util.Random;
+
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+
+import boa.io.EmitKey;
+import boa.io.EmitValue;
+
+/**
+ * Measures serializing, deserializing and comparing the keys and values
+ * mappers emit.
+ */
+public class EmitBenchmark extends Benchmark {
+	private static final int COUNT = 1 << 12;
+	private static final int ITERATIONS = 2000000;
+
+	private final EmitKey[] keys = new EmitKey[COUNT];
+	private final EmitValue[] values = new EmitValue[COUNT];
+	private final byte[][] keyBytes = new byte[COUNT][];
+	private final byte[][] valueBytes = new byte[COUNT][];
+
+	private final DataOutputBuffer out = new DataOutputBuffer();
+	private final DataInputBuffer in = new DataInputBuffer();
+	private final EmitKey key = new EmitKey();
+	private final EmitValue value = new EmitValue();
+
+	@Override
+	public String getName() {
+		return "emit";
+	}
+
+	@Override
+	public void setup() throws Exception {
+		final Random r = new Random(42);
+		for (int i = 0; i < COUNT; i++) {
+			// a few tables, some indexed, like a typical program's output
+			final String name = "table" + r.nextInt(4);
+			keys[i] = r.nextBoolean() ? new EmitKey(name, 0) : new EmitKey("[" + r.nextInt(1000) + "]", name, 0);
+			switch (i % 3) {
+			case 0: values[i] = new EmitValue(r.nextInt(100)); break;
+			case 1: values[i] = new EmitValue(r.nextDouble()); break;
+			default: values[i] = new EmitValue("project" + r.nextInt(100000), r.nextInt(1000)); break;
+			}
+
+			out.reset();
+			keys[i].write(out);
+			keyBytes[i] = copy(out);
+			out.reset();
+			values[i].write(out);
+			valueBytes[i] = copy(out);
+		}
+	}
+
+	private static byte[] copy(final DataOutputBuffer out) {
+		final byte[] b = new byte[out.getLength()];
+		System.arraycopy(out.getData(), 0, b, 0, b.length);
+		return b;
+	}
+
+	@Override
+	public void run(final Harness h) throws Exception {
+		h.measure("EmitKey.write", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				out.reset();
+				keys[i & (COUNT - 1)].write(out);
+				return out.getLength();
+			}
+		});
+		h.measure("EmitKey.readFields", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				final byte[] b = keyBytes[i & (COUNT - 1)];
+				in.reset(b, b.length);
+				key.readFields(in);
+				return key.getId();
+			}
+		});
+		h.measure("EmitKey.compareTo", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return keys[i & (COUNT - 1)].compareTo(keys[(i + 1) & (COUNT - 1)]);
+			}
+		});
+		h.measure("EmitKey.compare (raw)", ITERATIONS, new Op() {
+			public long run(final int i) {
+				final byte[] b1 = keyBytes[i & (COUNT - 1)];
+				final byte[] b2 = keyBytes[(i + 1) & (COUNT - 1)];
+				return key.compare(b1, 0, b1.length, b2, 0, b2.length);
+			}
+		});
+		h.measure("EmitValue.write", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				out.reset();
+				values[i & (COUNT - 1)].write(out);
+				return out.getLength();
+			}
+		});
+		h.measure("EmitValue.readFields", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				final byte[] b = valueBytes[i & (COUNT - 1)];
+				in.reset(b, b.length);
+				value.readFields(in);
+				return value.getData().length;
+			}
+		});
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import boa.functions.BoaGraphIntrinsics;
+import boa.types.Ast.Method;
+
+/**
+ * Measures building control flow, control dependence, data dependence and
+ * program dependence graphs for the methods of the Java sources.  Each graph
+ * is built from the method, so all but the CFG include building a CFG.
+ */
+public class GraphBenchmark extends Benchmark {
+	private static final int ITERATIONS = 20000;
+
+	private final List<Method> methods = new ArrayList<Method>();
+
+	@Override
+	public String getName() {
+		return "graph";
+	}
+
+	@Override
+	public void setup() throws Exception {
+		// only methods every graph can be built for, so each measures the same ones
+		for (final Method m : JavaSources.methods()) {
+			try {
+				BoaGraphIntrinsics.getpdg(m);
+			} catch (final Exception e) {
+				continue;
+			}
+			methods.add(m);
+		}
+		if (methods.isEmpty())
+			throw new IllegalStateException("no methods in " + JavaSources.DIR);
+	}
+
+	@Override
+	public void run(final Harness h) throws Exception {
+		h.measure("cfg", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaGraphIntrinsics.getcfg(methods.get(i % methods.size())).getNodes().size();
+			}
+		});
+		h.measure("cdg", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				return BoaGraphIntrinsics.getcdg(methods.get(i % methods.size())).getNodes().size();
+			}
+		});
+		h.measure("ddg", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				return BoaGraphIntrinsics.getddg(methods.get(i % methods.size())).getNodes().size();
+			}
+		});
+		h.measure("pdg", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				return BoaGraphIntrinsics.getpdg(methods.get(i % methods.size())).getNodes().size();
+			}
+		});
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Times benchmark operations.  Each measurement is warmed up for one round
+ * and then timed over several rounds, reporting the mean, standard deviation
+ * and minimum time per call across rounds.
+ */
+public class Harness {
+	/**
+	 * The timing of one operation.
+	 */
+	public static class Result {
+		public final String benchmark;
+		public final String name;
+		public final int iterations;
+		public final double mean;
+		public final double stddev;
+		public final double min;
+
+		Result(final String benchmark, final String name, final int iterations, final double[] rounds) {
+			this.benchmark = benchmark;
+			this.name = name;
+			this.iterations = iterations;
+
+			double sum = 0, min = Double.MAX_VALUE;
+			for (final double r : rounds) {
+				sum += r;
+				min = Math.min(min, r);
+			}
+			this.mean = sum / rounds.length;
+			double sq = 0;
+			for (final double r : rounds)
+				sq += (r - mean) * (r - mean);
+			this.stddev = rounds.length > 1 ? Math.sqrt(sq / (rounds.length - 1)) : 0;
+			this.min = min;
+		}
+	}
+
+	private final Pattern filter;
+	private final int rounds;
+	private final double scale;
+	private final List<Result> results = new ArrayList<Result>();
+
+	private Benchmark benchmark;
+	private boolean setup;
+	private long sink;
+
+	/**
+	 * Creates a harness.
+	 *
+	 * @param filter only measurements whose "benchmark.name" this finds something in are run, or null for all
+	 * @param rounds the number of timed rounds per measurement
+	 * @param scale multiplies the number of calls per round
+	 */
+	public Harness(final Pattern filter, final int rounds, final double scale) {
+		this.filter = filter;
+		this.rounds = rounds;
+		this.scale = scale;
+	}
+
+	/**
+	 * Runs a benchmark's measurements.  The benchmark is only set up once
+	 * the first of them that the filter selects is about to run.
+	 *
+	 * @param b the benchmark
+	 * @throws Exception if a measurement fails
+	 */
+	public void run(final Benchmark b) throws Exception {
+		benchmark = b;
+		setup = false;
+		b.run(this);
+	}
+
+	/**
+	 * Times an operation, unless the filter excludes it.
+	 *
+	 * @param name the operation's name
+	 * @param iterations the number of calls per round, before scaling
+	 * @param op the operation
+	 * @throws Exception if the operation fails
+	 */
+	public void measure(final String name, final int iterations, final Benchmark.Op op) throws Exception {
+		if (filter != null && !filter.matcher(benchmark.getName() + "." + name).find())
+			return;
+		if (!setup) {
+			benchmark.setup();
+			setup = true;
+		}
+
+		final int n = Math.max(1, (int) (iterations * scale));
+		round(n, op);
+
+		final double[] times = new double[rounds];
+		for (int r = 0; r < rounds; r++)
+			times[r] = round(n, op);
+
+		final Result result = new Result(benchmark.getName(), name, n, times);
+		results.add(result);
+		System.out.printf("%-12s %-36s %12.1f ns/op (+- %.1f)%n", benchmark.getName(), name, result.mean, result.stddev);
+	}
+
+	private double round(final int n, final Benchmark.Op op) throws Exception {
+		final long start = System.nanoTime();
+		for (int i = 0; i < n; i++)
+			sink += op.run(i);
+		return (double) (System.nanoTime() - start) / n;
+	}
+
+	/**
+	 * @return the results so far, in the order they were measured
+	 */
+	public List<Result> getResults() {
+		return results;
+	}
+
+	/**
+	 * Writes the results as CSV, one line per measurement, times in
+	 * nanoseconds per call.
+	 *
+	 * @param w where to write them
+	 * @throws IOException if writing fails
+	 */
+	public void writeCsv(final Writer w) throws IOException {
+		w.write("benchmark,name,iterations,rounds,mean_ns,stddev_ns,min_ns\n");
+		for (final Result r : results)
+			w.write(String.format("%s,%s,%d,%d,%.3f,%.3f,%.3f\n", r.benchmark, r.name, r.iterations, rounds, r.mean, r.stddev, r.min));
+		// keeps the results of every call alive
+		if (sink == 42)
+			w.write("\n");
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+import boa.functions.BoaAstIntrinsics;
+import boa.types.Ast.ASTRoot;
+import boa.types.Ast.Declaration;
+import boa.types.Ast.Method;
+import boa.types.Ast.Namespace;
+
+/**
+ * The Java sources the AST benchmarks run on, parsed once.
+ */
+class JavaSources {
+	/** where the sources are, relative to the repository root */
+	static final File DIR = new File("test/datagen/java");
+
+	private static List<String> sources;
+	private static List<ASTRoot> roots;
+	private static List<Method> methods;
+
+	private JavaSources() {
+	}
+
+	/**
+	 * @return the contents of every source file, in name order
+	 * @throws IOException if a file can not be read
+	 */
+	static synchronized List<String> sources() throws IOException {
+		if (sources == null) {
+			final File[] files = DIR.listFiles();
+			if (files == null)
+				throw new IOException("unable to list " + DIR);
+			Arrays.sort(files);
+			sources = new ArrayList<String>();
+			for (final File f : files)
+				if (f.getName().endsWith(".java"))
+					sources.add(FileUtils.readFileToString(f));
+		}
+		return sources;
+	}
+
+	/**
+	 * @return the ASTs of the sources that parsed
+	 * @throws IOException if a file can not be read
+	 */
+	static synchronized List<ASTRoot> roots() throws IOException {
+		if (roots == null) {
+			roots = new ArrayList<ASTRoot>();
+			for (final String s : sources()) {
+				final ASTRoot root = BoaAstIntrinsics.parse(s);
+				if (root.getNamespacesCount() > 0)
+					roots.add(root);
+			}
+		}
+		return roots;
+	}
+
+	/**
+	 * @return every method of every type (including nested types) in the ASTs
+	 * @throws IOException if a file can not be read
+	 */
+	static synchronized List<Method> methods() throws IOException {
+		if (methods == null) {
+			methods = new ArrayList<Method>();
+			for (final ASTRoot root : roots())
+				for (final Namespace ns : root.getNamespacesList())
+					for (final Declaration d : ns.getDeclarationsList())
+						addMethods(d);
+		}
+		return methods;
+	}
+
+	private static void addMethods(final Declaration d) {
+		methods.addAll(d.getMethodsList());
+		for (final Declaration nested : d.getNestedDeclarationsList())
+			addMethods(nested);
+	}
+}
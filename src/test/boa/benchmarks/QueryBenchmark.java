@@ -0,0 +1,316 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.HelpFormatter;
+import org.apache.commons.cli.Options;
+import org.apache.commons.cli.ParseException;
+import org.apache.commons.cli.PosixParser;
+import org.apache.commons.io.FileUtils;
+
+import boa.compiler.BoaCompileServer;
+import boa.datagen.DefaultProperties;
+import boa.runtime.BoaLocalExecutor;
+
+/**
+ * Compiles Boa programs and runs them over a local dataset with
+ * {@link BoaLocalExecutor}, recording how long each phase took, how much
+ * data the map phase emitted and how much heap it used.  Results can be
+ * compared to a baseline from an earlier run, flagging any metric that got
+ * worse by more than a threshold.
+ *
+ * The dataset must be a generated one (holding projects.seq), such as
+ * test/datagen/test_datagen or one generated from dataset/small_sample.
+ *
+ * Usage: QueryBenchmark [-d dataset] [-p dirs] [-f regex] [-n runs] [-t threads] [-o results.csv] [-b baseline.csv] [-x threshold]
+ */
+public class QueryBenchmark {
+	private static final String CLASS = "BenchmarkQuery";
+
+	// metrics compared against the baseline, and how much of a difference is just noise
+	private static final String[] COMPARED = { "compile_ms", "map_ms", "reduce_ms", "shuffle_bytes", "peak_heap_bytes" };
+	private static final long[] NOISE = { 20, 20, 20, 0, 16 * 1024 * 1024 };
+
+	private static final String[] COLUMNS = { "program", "status", "compile_ms", "map_ms", "reduce_ms", "projects", "keys", "values",
+			"shuffle_bytes", "peak_heap_bytes", "projects_per_sec" };
+
+	private final BoaCompileServer compiler;
+	private final File dataset;
+	private final File work;
+	private final int runs;
+	private final int threads;
+
+	QueryBenchmark(final File dataset, final int runs, final int threads) throws IOException {
+		this.compiler = new BoaCompileServer(new ArrayList<URL>(), null);
+		// so the first program's compile time does not include loading javac
+		this.compiler.warmup();
+		this.dataset = dataset;
+		this.runs = runs;
+		this.threads = threads;
+		this.work = new File(new File(System.getProperty("java.io.tmpdir")), "boa-query-benchmark-" + System.nanoTime());
+		if (!work.mkdirs())
+			throw new IOException("unable to mkdir " + work);
+
+		// programs read ASTs and commits from the local dataset
+		DefaultProperties.localDataPath = dataset.getPath();
+	}
+
+	public static void main(final String[] args) throws Exception {
+		final Options options = new Options();
+		options.addOption("d", "data", true, "the dataset to run on (default test/datagen/test_datagen)");
+		options.addOption("p", "programs", true, "comma-separated directories or files of programs (default test/known-good,test/program-analysis)");
+		options.addOption("f", "filter", true, "only run programs whose name matches this regex");
+		options.addOption("n", "runs", true, "number of times to run each program, reporting the median (default 3)");
+		options.addOption("t", "threads", true, "number of threads to map on (default 1)");
+		options.addOption("o", "output", true, "file to write CSV results to");
+		options.addOption("b", "baseline", true, "CSV results of an earlier run to compare to");
+		options.addOption("x", "threshold", true, "relative slowdown that counts as a regression (default 0.10)");
+
+		final CommandLine cl;
+		try {
+			cl = new PosixParser().parse(options, args);
+		} catch (final ParseException e) {
+			System.err.println(e.getMessage());
+			new HelpFormatter().printHelp("QueryBenchmark", options);
+			return;
+		}
+
+		final List<File> programs = new ArrayList<File>();
+		final Pattern filter = cl.hasOption('f') ? Pattern.compile(cl.getOptionValue('f')) : null;
+		for (final String p : cl.getOptionValue('p', "test/known-good,test/program-analysis").split(",")) {
+			final File f = new File(p);
+			final File[] files = f.isDirectory() ? f.listFiles() : new File[] { f };
+			Arrays.sort(files);
+			for (final File prog : files)
+				if (prog.getName().endsWith(".boa") && (filter == null || filter.matcher(prog.getName()).find()))
+					programs.add(prog);
+		}
+
+		final QueryBenchmark b = new QueryBenchmark(new File(cl.getOptionValue('d', "test/datagen/test_datagen")),
+				Integer.parseInt(cl.getOptionValue('n', "3")), Integer.parseInt(cl.getOptionValue('t', "1")));
+		final List<Map<String, String>> results = new ArrayList<Map<String, String>>();
+		try {
+			for (final File prog : programs) {
+				final Map<String, String> r = b.run(prog);
+				results.add(r);
+				System.out.printf("%-40s %-14s compile %6s ms  map %6s ms  reduce %6s ms  shuffle %10s B  heap %6d MB%n", r.get("program"), r.get("status"),
+						r.get("compile_ms"), r.get("map_ms"), r.get("reduce_ms"), r.get("shuffle_bytes"), Long.parseLong(r.get("peak_heap_bytes")) >> 20);
+			}
+		} finally {
+			FileUtils.deleteDirectory(b.work);
+		}
+
+		if (cl.hasOption('o'))
+			write(results, new File(cl.getOptionValue('o')));
+
+		if (cl.hasOption('b')) {
+			final List<String> regressions = compare(read(new File(cl.getOptionValue('b'))), results, Double.parseDouble(cl.getOptionValue('x', "0.10")));
+			for (final String r : regressions)
+				System.out.println("REGRESSION " + r);
+			System.out.println(regressions.size() + " regression(s) against " + cl.getOptionValue('b'));
+			if (!regressions.isEmpty())
+				System.exit(1);
+		}
+	}
+
+	/**
+	 * Compiles a program once and runs it several times.
+	 *
+	 * @param prog the program
+	 * @return the results, keyed by column name, with times the median over all runs
+	 */
+	Map<String, String> run(final File prog) throws IOException {
+		final Map<String, String> r = new LinkedHashMap<String, String>();
+		for (final String c : COLUMNS)
+			r.put(c, "0");
+		r.put("program", prog.getParentFile().getName() + "/" + prog.getName());
+
+		final File jar = new File(work, prog.getName() + ".jar");
+		// the runtime is already on the class path, so bundle the program itself instead
+		final BoaCompileServer.Result compiled = compiler.compile(new String[] { "-i", prog.getPath(), "-o", jar.getPath(), "-j", prog.getPath(), "-n", CLASS }, false);
+		if (compiled.error != null) {
+			r.put("status", "compile-failed");
+			return r;
+		}
+		long compile = 0;
+		for (final long ms : compiled.timings.values())
+			compile += ms;
+		r.put("compile_ms", "" + compile);
+
+		final long[] map = new long[runs];
+		final long[] reduce = new long[runs];
+		long heap = 0;
+		BoaLocalExecutor.Stats stats = null;
+		final URLClassLoader loader = new URLClassLoader(new URL[] { jar.toURI().toURL() }, QueryBenchmark.class.getClassLoader());
+		try {
+			for (int i = 0; i < runs; i++) {
+				final File out = new File(work, "out");
+				FileUtils.deleteDirectory(out);
+
+				resetPeakHeap();
+				final BoaLocalExecutor executor = new BoaLocalExecutor(loader, "boa." + CLASS, threads);
+				executor.run(dataset.getPath(), out.getPath());
+				heap = Math.max(heap, getPeakHeap());
+
+				stats = executor.getStats();
+				map[i] = stats.mapMillis;
+				reduce[i] = stats.reduceMillis;
+			}
+		} catch (final Exception e) {
+			r.put("status", "run-failed");
+			return r;
+		} finally {
+			loader.close();
+			jar.delete();
+		}
+
+		final long mapMillis = median(map);
+		r.put("status", "ok");
+		r.put("map_ms", "" + mapMillis);
+		r.put("reduce_ms", "" + median(reduce));
+		r.put("projects", "" + stats.projects);
+		r.put("keys", "" + stats.keys);
+		r.put("values", "" + stats.values);
+		r.put("shuffle_bytes", "" + stats.shuffleBytes);
+		r.put("peak_heap_bytes", "" + heap);
+		r.put("projects_per_sec", String.format("%.1f", stats.projects * 1000.0 / Math.max(1, mapMillis)));
+		return r;
+	}
+
+	private static long median(final long[] a) {
+		final long[] sorted = a.clone();
+		Arrays.sort(sorted);
+		return sorted[sorted.length / 2];
+	}
+
+	private static void resetPeakHeap() {
+		System.gc();
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				pool.resetPeakUsage();
+	}
+
+	// the sum of each heap pool's peak, which may be a little more than the heap ever held at once
+	private static long getPeakHeap() {
+		long peak = 0;
+		for (final MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+			if (pool.getType() == MemoryType.HEAP)
+				peak += pool.getPeakUsage().getUsed();
+		return peak;
+	}
+
+	/**
+	 * Compares results to a baseline.
+	 *
+	 * @param baseline the baseline results
+	 * @param results the new results
+	 * @param threshold the relative increase of a metric that counts as a regression
+	 * @return a description of each regression
+	 */
+	static List<String> compare(final List<Map<String, String>> baseline, final List<Map<String, String>> results, final double threshold) {
+		final Map<String, Map<String, String>> base = new LinkedHashMap<String, Map<String, String>>();
+		for (final Map<String, String> r : baseline)
+			base.put(r.get("program"), r);
+
+		final List<String> regressions = new ArrayList<String>();
+		for (final Map<String, String> r : results) {
+			final Map<String, String> b = base.get(r.get("program"));
+			if (b == null)
+				continue;
+			if (!r.get("status").equals(b.get("status"))) {
+				if (b.get("status").equals("ok"))
+					regressions.add(r.get("program") + ": " + r.get("status"));
+				continue;
+			}
+			if (!r.get("status").equals("ok"))
+				continue;
+
+			for (int i = 0; i < COMPARED.length; i++) {
+				final long before = Long.parseLong(b.get(COMPARED[i]));
+				final long after = Long.parseLong(r.get(COMPARED[i]));
+				if (after > before * (1 + threshold) && after - before > NOISE[i])
+					regressions.add(String.format("%s: %s %d -> %d (%+.0f%%)", r.get("program"), COMPARED[i], before, after, 100.0 * (after - before) / Math.max(1, before)));
+			}
+		}
+		return regressions;
+	}
+
+	static void write(final List<Map<String, String>> results, final File f) throws IOException {
+		if (f.getParentFile() != null && !f.getParentFile().isDirectory() && !f.getParentFile().mkdirs())
+			throw new IOException("unable to mkdir " + f.getParentFile());
+		final Writer w = new FileWriter(f);
+		try {
+			w.write(join(Arrays.asList(COLUMNS)) + "\n");
+			for (final Map<String, String> r : results)
+				w.write(join(r.values()) + "\n");
+		} finally {
+			w.close();
+		}
+	}
+
+	static List<Map<String, String>> read(final File f) throws IOException {
+		final List<Map<String, String>> results = new ArrayList<Map<String, String>>();
+		final BufferedReader in = new BufferedReader(new FileReader(f));
+		try {
+			final String header = in.readLine();
+			if (header == null)
+				return Collections.emptyList();
+			final String[] columns = header.split(",");
+			String line;
+			while ((line = in.readLine()) != null) {
+				final String[] values = line.split(",", -1);
+				final Map<String, String> r = new LinkedHashMap<String, String>();
+				for (int i = 0; i < columns.length && i < values.length; i++)
+					r.put(columns[i], values[i]);
+				results.add(r);
+			}
+		} finally {
+			in.close();
+		}
+		return results;
+	}
+
+	private static String join(final Iterable<String> values) {
+		final StringBuilder sb = new StringBuilder();
+		for (final String v : values) {
+			if (sb.length() > 0)
+				sb.append(',');
+			sb.append(v.replace(',', ';'));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import boa.functions.BoaIntrinsics;
+import boa.types.Code.CodeRepository;
+import boa.types.Code.Revision;
+import boa.types.Diff.ChangedFile;
+import boa.types.Shared.ChangeKind;
+import boa.types.Shared.Person;
+
+/**
+ * Measures computing snapshots of a repository with a long, linear history.
+ */
+public class SnapshotBenchmark extends Benchmark {
+	private static final int REVISIONS = 2000;
+	private static final int FILES = 500;
+	private static final int ITERATIONS = 200;
+
+	// one day apart, in microseconds
+	private static final long START = 1262304000000000L;
+	private static final long DAY = 86400000000L;
+
+	private CodeRepository repository;
+
+	@Override
+	public String getName() {
+		return "snapshot";
+	}
+
+	@Override
+	public void setup() {
+		final Random r = new Random(42);
+		final Person committer = Person.newBuilder().setUsername("dev").setRealName("dev").setEmail("dev@example.com").build();
+		final CodeRepository.Builder cr = CodeRepository.newBuilder();
+		cr.setUrl("https://example.com/repo.git");
+		cr.setKind(CodeRepository.RepositoryKind.GIT);
+
+		// files are added once, then modified, and some are deleted and added back later
+		final boolean[] exists = new boolean[FILES];
+		for (int i = 0; i < REVISIONS; i++) {
+			final Revision.Builder rev = Revision.newBuilder();
+			rev.setId(String.format("%040x", i));
+			rev.setCommitter(committer);
+			rev.setCommitDate(START + i * DAY);
+			rev.setLog("change " + i);
+			if (i > 0)
+				rev.addParents(i - 1);
+
+			for (int j = 0; j < 5; j++) {
+				final int f = r.nextInt(FILES);
+				final ChangeKind change;
+				if (!exists[f])
+					change = ChangeKind.ADDED;
+				else if (r.nextInt(20) == 0)
+					change = ChangeKind.DELETED;
+				else
+					change = ChangeKind.MODIFIED;
+				exists[f] = change != ChangeKind.DELETED;
+
+				final ChangedFile.Builder cf = ChangedFile.newBuilder();
+				cf.setName("src/F" + f + (f % 4 == 0 ? ".xml" : ".java"));
+				cf.setKind(f % 4 == 0 ? ChangedFile.FileKind.XML : ChangedFile.FileKind.SOURCE_JAVA_JLS8);
+				cf.setChange(change);
+				cf.setKey(0);
+				cf.setAst(false);
+				if (change != ChangeKind.ADDED) {
+					cf.addChanges(change);
+					cf.addPreviousNames("");
+				}
+				rev.addFiles(cf);
+			}
+			cr.addRevisions(rev);
+		}
+
+		// the head snapshot is stored, like in a real dataset
+		cr.setHead(REVISIONS - 1);
+		final CodeRepository withoutHead = cr.build();
+		cr.setHead(-1);
+		final List<ChangedFile> head = new ArrayList<ChangedFile>();
+		for (final ChangedFile cf : BoaIntrinsics.getSnapshotByIndex(cr.build(), REVISIONS - 1))
+			head.add(cf);
+		repository = withoutHead.toBuilder().addAllHeadSnapshot(head).build();
+	}
+
+	@Override
+	public void run(final Harness h) throws Exception {
+		h.measure("getsnapshot (head)", ITERATIONS * 100, new Op() {
+			public long run(final int i) {
+				return BoaIntrinsics.getSnapshot(repository).length;
+			}
+		});
+		h.measure("getsnapshot (time)", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				return BoaIntrinsics.getSnapshot(repository, START + (i * 7919L % REVISIONS) * DAY).length;
+			}
+		});
+		h.measure("getsnapshot (time, kind)", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				return BoaIntrinsics.getSnapshot(repository, START + (i * 7919L % REVISIONS) * DAY, "SOURCE_JAVA_").length;
+			}
+		});
+		h.measure("getsnapshotbyindex", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaIntrinsics.getSnapshotByIndex(repository, i * 7919L % REVISIONS).length;
+			}
+		});
+		h.measure("getsnapshotbyid", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaIntrinsics.getSnapshotById(repository, String.format("%040x", i * 7919L % REVISIONS)).length;
+			}
+		});
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.util.Random;
+
+import boa.functions.BoaStringIntrinsics;
+
+/**
+ * Measures the per-call cost of the string functions on strings shaped like
+ * file paths and commit messages.
+ */
+public class StringBenchmark extends Benchmark {
+	private static final int COUNT = 1 << 12;
+	private static final int ITERATIONS = 1000000;
+
+	private static final String[] DIRS = { "src", "main", "java", "org", "apache", "test", "util", "Core", "IO" };
+	private static final String[] WORDS = { "Fix", "bug", "in", "parser", "add", "tests", "for", "NPE", "refactor", "#123" };
+
+	private final String[] paths = new String[COUNT];
+	private final String[] messages = new String[COUNT];
+
+	@Override
+	public String getName() {
+		return "string";
+	}
+
+	@Override
+	public void setup() {
+		final Random r = new Random(42);
+		for (int i = 0; i < COUNT; i++) {
+			final StringBuilder path = new StringBuilder();
+			for (int j = 1 + r.nextInt(6); j > 0; j--)
+				path.append(DIRS[r.nextInt(DIRS.length)]).append('/');
+			paths[i] = path.append("File").append(i).append(r.nextBoolean() ? ".java" : ".js").toString();
+
+			final StringBuilder msg = new StringBuilder();
+			for (int j = 2 + r.nextInt(12); j > 0; j--)
+				msg.append(WORDS[r.nextInt(WORDS.length)]).append(' ');
+			messages[i] = msg.toString();
+		}
+	}
+
+	@Override
+	public void run(final Harness h) throws Exception {
+		h.measure("match", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.match("\\.java$", paths[i & (COUNT - 1)]) ? 1 : 0;
+			}
+		});
+		h.measure("match (fix|bug)", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.match("\\b(fix|bug)", BoaStringIntrinsics.lowerCase(messages[i & (COUNT - 1)])) ? 1 : 0;
+			}
+		});
+		h.measure("lowercase", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.lowerCase(messages[i & (COUNT - 1)]).length();
+			}
+		});
+		h.measure("strfind", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.indexOf("test", paths[i & (COUNT - 1)]);
+			}
+		});
+		h.measure("strrfind", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.lastIndexOf("/", paths[i & (COUNT - 1)]);
+			}
+		});
+		h.measure("substring", ITERATIONS, new Op() {
+			public long run(final int i) {
+				final String s = paths[i & (COUNT - 1)];
+				return BoaStringIntrinsics.substring(s, s.length() / 2).length();
+			}
+		});
+		h.measure("splitall", ITERATIONS / 4, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.splitall(paths[i & (COUNT - 1)], "/").length;
+			}
+		});
+		h.measure("strreplace", ITERATIONS / 4, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.stringReplace(paths[i & (COUNT - 1)], "/", ".", true).length();
+			}
+		});
+		h.measure("trim", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaStringIntrinsics.trim(messages[i & (COUNT - 1)]).length();
+			}
+		});
+	}
+}
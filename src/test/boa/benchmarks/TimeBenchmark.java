@@ -0,0 +1,101 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.util.Calendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import boa.functions.BoaTimeIntrinsics;
+
+/**
+ * Measures the per-call cost of the time functions, next to the cost of the
+ * same computation done with a new {@link Calendar} per call.
+ */
+public class TimeBenchmark extends Benchmark {
+	private static final int TIMES = 1 << 16;
+	private static final int ITERATIONS = 2000000;
+
+	private final long[] times = new long[TIMES];
+
+	@Override
+	public String getName() {
+		return "time";
+	}
+
+	@Override
+	public void setup() {
+		// commit times between 2000 and 2018, in microseconds
+		final Random r = new Random(42);
+		for (int i = 0; i < TIMES; i++)
+			times[i] = (946684800000L + (long) (r.nextDouble() * 568080000000L)) * 1000 + r.nextInt(1000);
+	}
+
+	@Override
+	public void run(final Harness h) throws Exception {
+		h.measure("dayofweek (Calendar)", ITERATIONS, new Op() {
+			public long run(final int i) {
+				final Calendar c = Calendar.getInstance(TimeZone.getTimeZone("PST8PDT"));
+				c.setTimeInMillis(times[i & (TIMES - 1)] / 1000);
+				return c.get(Calendar.DAY_OF_WEEK);
+			}
+		});
+		h.measure("dayofweek", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaTimeIntrinsics.dayOfWeek(times[i & (TIMES - 1)]);
+			}
+		});
+		h.measure("yearof", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaTimeIntrinsics.yearOf(times[i & (TIMES - 1)]);
+			}
+		});
+		h.measure("addday (Calendar)", ITERATIONS, new Op() {
+			public long run(final int i) {
+				final Calendar c = Calendar.getInstance(TimeZone.getTimeZone("PST8PDT"));
+				c.setTimeInMillis(times[i & (TIMES - 1)] / 1000);
+				c.add(Calendar.DAY_OF_MONTH, 1);
+				return c.getTimeInMillis() * 1000;
+			}
+		});
+		h.measure("addday", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaTimeIntrinsics.addDay(times[i & (TIMES - 1)]);
+			}
+		});
+		h.measure("addmonth", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaTimeIntrinsics.addMonth(times[i & (TIMES - 1)], 1, "America/New_York");
+			}
+		});
+		h.measure("trunctoday", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaTimeIntrinsics.truncToDay(times[i & (TIMES - 1)]);
+			}
+		});
+		h.measure("trunctomonth", ITERATIONS, new Op() {
+			public long run(final int i) {
+				return BoaTimeIntrinsics.truncToMonth(times[i & (TIMES - 1)]);
+			}
+		});
+		h.measure("formattime", ITERATIONS / 10, new Op() {
+			public long run(final int i) {
+				return BoaTimeIntrinsics.formatTime("%Y-%m-%d", times[i & (TIMES - 1)]).length();
+			}
+		});
+	}
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.benchmarks;
+
+import java.util.List;
+
+import boa.functions.BoaAstIntrinsics;
+import boa.runtime.BoaAbstractVisitor;
+import boa.types.Ast.ASTRoot;
+import boa.types.Ast.Declaration;
+import boa.types.Ast.Expression;
+
+/**
+ * Measures parsing Java into ASTs and traversing the ASTs with visitors
+ * shaped like typical Boa programs.
+ */
+public class VisitorBenchmark extends Benchmark {
+	private static final int ITERATIONS = 20000;
+
+	private List<String> sources;
+	private List<ASTRoot> roots;
+
+	// visits everything
+	private static class AllVisitor extends BoaAbstractVisitor {
+		long count;
+
+		@Override
+		protected boolean defaultPreVisit() {
+			count++;
+			return true;
+		}
+	}
+
+	// visits everything, doing something only for expressions
+	private static class ExpressionVisitor extends BoaAbstractVisitor {
+		long count;
+
+		@Override
+		protected boolean preVisit(final Expression node) {
+			count++;
+			return true;
+		}
+	}
+
+	// stops at the types, like programs that only look at declarations
+	private static class DeclarationVisitor extends BoaAbstractVisitor {
+		long count;
+
+		@Override
+		protected boolean preVisit(final Declaration node) {
+			count += node.getMethodsCount();
+			return false;
+		}
+	}
+
+	@Override
+	public String getName() {
+		return "visitor";
+	}
+
+	@Override
+	public void setup() throws Exception {
+		sources = JavaSources.sources();
+		roots = JavaSources.roots();
+	}
+
+	@Override
+	public void run(final Harness h) throws Exception {
+		h.measure("parse", ITERATIONS / 10, new Op() {
+			public long run(final int i) {
+				return BoaAstIntrinsics.parse(sources.get(i % sources.size())).getNamespacesCount();
+			}
+		});
+		h.measure("visit (all)", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				final AllVisitor v = new AllVisitor();
+				v.visit(roots.get(i % roots.size()));
+				return v.count;
+			}
+		});
+		h.measure("visit (expressions)", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				final ExpressionVisitor v = new ExpressionVisitor();
+				v.visit(roots.get(i % roots.size()));
+				return v.count;
+			}
+		});
+		h.measure("visit (declarations)", ITERATIONS, new Op() {
+			public long run(final int i) throws Exception {
+				final DeclarationVisitor v = new DeclarationVisitor();
+				v.visit(roots.get(i % roots.size()));
+				return v.count;
+			}
+		});
+	}
+}
@@ -30,6 +30,7 @@ import java.io.StringReader;
 import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.UUID;
 
@@ -57,12 +58,18 @@ import org.stringtemplate.v4.ST;
 import boa.compiler.SymbolTable;
 import boa.compiler.ast.Start;
 import boa.compiler.transforms.LocalAggregationTransformer;
+import boa.compiler.transforms.ConstantFoldingTransformer;
+import boa.compiler.transforms.DeadCodeEliminationTransformer;
 import boa.compiler.transforms.InheritedAttributeTransformer;
+import boa.compiler.transforms.PureCallHoistingTransformer;
 import boa.compiler.transforms.VariableDeclRenameTransformer;
 import boa.compiler.transforms.VisitorOptimizingTransformer;
 import boa.compiler.visitors.AbstractCodeGeneratingVisitor;
 import boa.compiler.visitors.CodeGeneratingVisitor;
+import boa.compiler.visitors.GuardFindingVisitor;
+import boa.compiler.visitors.ProjectFieldFindingVisitor;
 import boa.compiler.visitors.TypeCheckingVisitor;
+import boa.io.ProjectGuard;
 
 import boa.parser.BoaLexer;
 import boa.parser.BoaParser;
@@ -247,6 +254,10 @@ public abstract class BaseTest {
 	}
 
 	protected StartContext codegen(final String input, final String error) throws IOException {
+		return codegen(input, error, null);
+	}
+
+	protected StartContext codegen(final String input, final String error, final List<String> profileSites) throws IOException {
 		final File outputRoot = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
 		final File outputSrcDir = new File(outputRoot, "boa");
 		if (!outputSrcDir.mkdirs())
@@ -266,12 +277,20 @@ public abstract class BaseTest {
 		final Start p = ctx.ast;
 
 		try {
+			final ProjectFieldFindingVisitor fieldFinder = new ProjectFieldFindingVisitor();
+			fieldFinder.start(p);
+			final GuardFindingVisitor guardFinder = new GuardFindingVisitor();
+			guardFinder.start(p);
+
 			new VariableDeclRenameTransformer().start(p);
 			new InheritedAttributeTransformer().start(p);
+			new ConstantFoldingTransformer().start(p);
+			new DeadCodeEliminationTransformer().start(p);
+			new PureCallHoistingTransformer().start(p);
 			new LocalAggregationTransformer().start(p);
 			new VisitorOptimizingTransformer().start(p);
 
-			final CodeGeneratingVisitor cg = new CodeGeneratingVisitor("1");
+			final CodeGeneratingVisitor cg = new CodeGeneratingVisitor("1", profileSites);
 			cg.start(p);
 			jobs.add(cg.getCode());
 			jobnames.add("1");
@@ -286,6 +305,14 @@ public abstract class BaseTest {
 			st.add("reduceTables", CodeGeneratingVisitor.reduceAggregatorStrings);
 			st.add("splitsize", 64 * 1024 * 1024);
 			st.add("seeds", seeds);
+			if (fieldFinder.getFields() != null) {
+				st.add("projected", true);
+				st.add("projection", fieldFinder.getFields());
+			}
+			if (!guardFinder.getClauses().isEmpty())
+				st.add("guard", new ProjectGuard(Collections.singletonList(guardFinder.getClauses())).toString());
+			if (profileSites != null)
+				st.add("profile", profileSites);
 
 			final BufferedOutputStream o = new BufferedOutputStream(new FileOutputStream(outputFile));
 			try {
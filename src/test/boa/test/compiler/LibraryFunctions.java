@@ -0,0 +1,29 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.compiler;
+
+import boa.functions.FunctionSpec;
+
+/**
+ * Functions that {@link TestCompileServer} loads as a library.
+ */
+public class LibraryFunctions {
+	@FunctionSpec(name = "twice", returnType = "int", formalParameters = { "int" })
+	public static long twice(final long n) {
+		return 2 * n;
+	}
+}
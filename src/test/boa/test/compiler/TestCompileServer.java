@@ -0,0 +1,261 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import boa.compiler.ArtifactCache;
+import boa.compiler.BoaCompileServer;
+import boa.compiler.InMemoryJavaCompiler;
+
+/**
+ * Tests the compile server, its jar cache and its in-memory javac.
+ */
+@RunWith(JUnit4.class)
+public class TestCompileServer {
+	private static final String PROGRAM = "o: output sum of int;\no << 1;\n";
+	private static final String LIB_PROGRAM = "o: output sum of int;\no << twice(1);\n";
+
+	private File dir;
+	private File runtime;
+	private File library;
+	private BoaCompileServer server;
+
+	@Before
+	public void createServer() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+		runtime = jar("boa-runtime.jar");
+		library = jar("library.jar", LibraryFunctions.class);
+		server = new BoaCompileServer(new ArrayList<URL>(), new ArtifactCache(new File(dir, "cache"), 10));
+	}
+
+	@After
+	public void deleteDir() throws IOException {
+		delete(dir);
+	}
+
+	@Test
+	public void cacheHitAndMiss() throws IOException {
+		final File prog = write("prog.boa", PROGRAM);
+
+		assertCompiled(false, compile(prog));
+		assertCompiled(true, compile(prog));
+
+		write("prog.boa", PROGRAM + "o << 2;\n");
+		assertCompiled(false, compile(prog));
+		assertCompiled(true, compile(prog));
+	}
+
+	@Test
+	public void cacheKeyOptions() throws IOException {
+		final File prog = write("prog.boa", PROGRAM);
+
+		assertCompiled(false, compile(prog));
+		assertCompiled(false, compile(prog, "-n", "Other"));
+		assertCompiled(false, compile(prog, "-v", "2"));
+		assertCompiled(true, compile(prog, "-v", "2"));
+		assertCompiled(true, compile(prog));
+	}
+
+	@Test
+	public void cacheKeyProfiling() throws IOException {
+		final File prog = write("prog.boa", PROGRAM);
+
+		assertCompiled(false, compile(prog));
+		assertCompiled(false, compile(prog, "-prof"));
+		assertTrue(source().contains("BoaProfiler"));
+		assertCompiled(true, compile(prog, "-prof"));
+		assertCompiled(true, compile(prog));
+		assertFalse(source().contains("BoaProfiler"));
+	}
+
+	@Test
+	public void cacheKeyLibraries() throws IOException {
+		final File prog = write("prog.boa", PROGRAM);
+
+		assertCompiled(false, compile(prog));
+		assertCompiled(false, compile(prog, "-l", library.getPath()));
+		assertCompiled(true, compile(prog, "-l", library.getPath()));
+		assertCompiled(true, compile(prog));
+	}
+
+	@Test
+	public void libraryScope() throws IOException {
+		final File prog = write("prog.boa", LIB_PROGRAM);
+
+		assertCompiled(false, compile(prog, "-l", library.getPath()));
+
+		// a later request without the library must not see its functions
+		final BoaCompileServer.Result r = compile(prog);
+		assertNotNull("compiled without the library", r.error);
+		assertTrue(r.diagnostics, r.diagnostics.contains("twice"));
+
+		// and one with it must see them again
+		assertCompiled(false, compile(prog, "-l", library.getPath(), "-v", "2"));
+	}
+
+	@Test
+	public void inMemoryCompile() {
+		final InMemoryJavaCompiler javac = new InMemoryJavaCompiler(Arrays.asList("-cp", System.getProperty("java.class.path")));
+
+		final Map<String, byte[]> classes = javac.compile("boa.Good", "package boa;\npublic class Good {\n\tclass Inner {}\n}\n");
+		assertEquals(Arrays.asList("boa/Good$Inner.class", "boa/Good.class"), sorted(classes.keySet()));
+
+		try {
+			javac.compile("boa.Bad", "package boa;\npublic class Bad {\n\tint f() { return \"\"; }\n}\n");
+			fail("expected a compile error");
+		} catch (final RuntimeException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("compile failed\nError on line 3: "));
+		}
+	}
+
+	@Test
+	public void cacheEviction() throws IOException {
+		final File cacheDir = new File(dir, "small");
+		final ArtifactCache cache = new ArtifactCache(cacheDir, 2);
+		final File jar = new File(dir, "out.jar");
+		final long now = System.currentTimeMillis();
+
+		final String a = new ArtifactCache.Key().add("a").toString();
+		final String b = new ArtifactCache.Key().add("b").toString();
+		final String c = new ArtifactCache.Key().add("c").toString();
+
+		cache.put(a, runtime);
+		new File(cacheDir, a + ".jar").setLastModified(now - 20000);
+		cache.put(b, runtime);
+		new File(cacheDir, b + ".jar").setLastModified(now - 10000);
+
+		// reading a makes b the least recently used
+		assertTrue(cache.get(a, jar));
+		cache.put(c, runtime);
+
+		assertFalse(cache.get(b, jar));
+		assertTrue(cache.get(a, jar));
+		assertTrue(cache.get(c, jar));
+	}
+
+	private BoaCompileServer.Result compile(final File prog, final String... options) {
+		final List<String> args = new ArrayList<String>(Arrays.asList("-i", prog.getPath(), "-o", new File(dir, "out.jar").getPath(), "-j", runtime.getPath()));
+		args.addAll(Arrays.asList(options));
+		return server.compile(args.toArray(new String[args.size()]), true);
+	}
+
+	private static void assertCompiled(final boolean cached, final BoaCompileServer.Result r) {
+		assertNull(r.error, r.error);
+		assertEquals(cached, r.cached);
+	}
+
+	private File write(final String name, final String text) throws IOException {
+		final File f = new File(dir, name);
+		final FileWriter w = new FileWriter(f);
+		try {
+			w.write(text);
+		} finally {
+			w.close();
+		}
+		return f;
+	}
+
+	// the generated source in the last compiled jar
+	private String source() throws IOException {
+		final JarFile jar = new JarFile(new File(dir, "out.jar"));
+		try {
+			for (final JarEntry e : Collections.list(jar.entries()))
+				if (e.getName().endsWith(".java"))
+					return new String(read(jar.getInputStream(e)), "UTF-8");
+		} finally {
+			jar.close();
+		}
+		throw new IOException("no source in " + jar.getName());
+	}
+
+	private File jar(final String name, final Class<?>... classes) throws IOException {
+		final File f = new File(dir, name);
+		final JarOutputStream jar = new JarOutputStream(new FileOutputStream(f));
+		try {
+			for (final Class<?> c : classes) {
+				final String path = c.getName().replace('.', '/') + ".class";
+				jar.putNextEntry(new ZipEntry(path));
+				jar.write(read(c.getClassLoader().getResourceAsStream(path)));
+				jar.closeEntry();
+			}
+		} finally {
+			jar.close();
+		}
+		return f;
+	}
+
+	private static byte[] read(final InputStream in) throws IOException {
+		try {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final byte[] b = new byte[4096];
+			int len;
+			while ((len = in.read(b)) > 0)
+				out.write(b, 0, len);
+			return out.toByteArray();
+		} finally {
+			in.close();
+		}
+	}
+
+	private static List<String> sorted(final Collection<String> c) {
+		final List<String> l = new ArrayList<String>(c);
+		Collections.sort(l);
+		return l;
+	}
+
+	private static void delete(final File f) throws IOException {
+		if (f.isDirectory())
+			for (final File g : f.listFiles())
+				delete(g);
+
+		if (!f.delete())
+			throw new IOException("unable to delete file " + f);
+	}
+}
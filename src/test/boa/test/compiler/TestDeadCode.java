@@ -0,0 +1,165 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import boa.compiler.ast.Start;
+import boa.compiler.transforms.ConstantFoldingTransformer;
+import boa.compiler.transforms.DeadCodeEliminationTransformer;
+import boa.compiler.transforms.VariableDeclRenameTransformer;
+import boa.compiler.visitors.PrettyPrintVisitor;
+
+/**
+ * Test folding constants and removing the code that can not affect the output.
+ */
+public class TestDeadCode extends BaseTest {
+	private String optimize(final String program) throws IOException {
+		final Start p = typecheck(program).ast;
+		new VariableDeclRenameTransformer().start(p);
+		new ConstantFoldingTransformer().start(p);
+		new DeadCodeEliminationTransformer().start(p);
+		return new PrettyPrintVisitor().startAndReturn(p);
+	}
+
+	@Test
+	public void folding() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "o << 7;\n"
+				+ "o << 1;\n"
+				+ "o << -4;\n",
+				optimize("o: output sum of int;\n"
+				+ "o << 1 + 2 * 3;\n"
+				+ "o << (0x10 >> 2) % 3;\n"
+				+ "o << -(1 << 2);"));
+		// division by zero is left to fail at run time
+		assertEquals("o: output sum of int;\n"
+				+ "o << 1 / 0;\n",
+				optimize("o: output sum of int;\no << 1 / 0;"));
+	}
+
+	@Test
+	public void constants() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "n_2 := 0;\n"
+				+ "n_2 = n_2 + 1;\n"
+				+ "o << n_2 + 10;\n"
+				+ "o << n_2 - (-10);\n",
+				optimize("o: output sum of int;\n"
+				+ "N := 10;\n"
+				+ "M := -N;\n"
+				+ "n := 0;\n"
+				+ "n = n + 1;\n"
+				+ "o << n + N;\n"
+				+ "o << n - M;"));
+	}
+
+	@Test
+	public void branches() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "o << 1;\n"
+				+ "o << 3;\n",
+				optimize("o: output sum of int;\n"
+				+ "DEBUG := false;\n"
+				+ "if (!DEBUG) o << 1; else o << 2;\n"
+				+ "if (DEBUG && len(input.name) > 0) o << 2; else if (DEBUG || true) o << 3;\n"
+				+ "while (DEBUG) o << 4;"));
+	}
+
+	@Test
+	public void unreachable() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "f_1 := function (n: int) : int\n"
+				+ "{\n"
+				+ "    return n;\n"
+				+ "}\n"
+				+ ";\n"
+				+ "o << f_1(1);\n",
+				optimize("o: output sum of int;\n"
+				+ "ON := true;\n"
+				+ "f := function(n: int): int {\n\tif (ON) return n;\n\treturn 0;\n};\n"
+				+ "o << f(1);"));
+	}
+
+	@Test
+	public void unusedVariables() throws IOException {
+		// calls may have side effects
+		assertEquals("o: output sum of int;\n"
+				+ "s_0 := input.name;\n"
+				+ "x_2 := len(s_0);\n"
+				+ "o << 1;\n",
+				optimize("o: output sum of int;\n"
+				+ "s := input.name;\n"
+				+ "count := 0;\n"
+				+ "count++;\n"
+				+ "count = count * 2;\n"
+				+ "x := len(s);\n"
+				+ "o << 1;"));
+	}
+
+	@Test
+	public void outputs() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "o << 1;\n",
+				optimize("o: output sum of int;\n"
+				+ "unused: output collection of string;\n"
+				+ "dead: output sum of int;\n"
+				+ "if (false) dead << 1;\n"
+				+ "o << 1;"));
+		// a program must declare an output
+		assertEquals("o: output sum of int;\n",
+				optimize("o: output sum of int;\n"
+				+ "if (false) o << 1;"));
+	}
+
+	@Test
+	public void visitClauses() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "visit(input, visitor {\n"
+				+ "    before _UNUSED: ChangedFile -> {\n"
+				+ "        stop;\n"
+				+ "    }\n"
+				+ "}\n"
+				+ ");\n",
+				optimize("o: output sum of int;\n"
+				+ "DEBUG := false;\n"
+				+ "visit(input, visitor {\n"
+				+ "\tbefore node: Expression -> {\n\t\tdepth := 0;\n\t\tdepth++;\n\t}\n"
+				+ "\tafter Method -> if (DEBUG) o << 1;\n"
+				+ "\tbefore ChangedFile -> stop;\n"
+				+ "});"));
+		// with a wildcard, an empty clause stops the wildcard's clause from running
+		assertEquals("o: output sum of int;\n"
+				+ "visit(input, visitor {\n"
+				+ "    before _UNUSED: Expression -> {\n"
+				+ "    }\n"
+				+ "    before _ -> {\n"
+				+ "        o << 1;\n"
+				+ "    }\n"
+				+ "}\n"
+				+ ");\n",
+				optimize("o: output sum of int;\n"
+				+ "visit(input, visitor {\n"
+				+ "\tbefore Expression -> {}\n"
+				+ "\tbefore _ -> o << 1;\n"
+				+ "});"));
+	}
+}
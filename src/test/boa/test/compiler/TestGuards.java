@@ -0,0 +1,103 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import boa.compiler.visitors.GuardFindingVisitor;
+import boa.io.ProjectGuard;
+
+/**
+ * Test finding the guards a program starts with.
+ */
+public class TestGuards extends BaseTest {
+	private String guard(final String program) throws IOException {
+		final GuardFindingVisitor v = new GuardFindingVisitor();
+		v.start(typecheck(program).ast);
+		if (v.getClauses().isEmpty())
+			return "";
+		return new ProjectGuard(Collections.singletonList(v.getClauses())).toString();
+	}
+
+	// a program visiting with a Project clause that starts with the given statements
+	private String guarded(final String statements) throws IOException {
+		return guard("o: output sum of int;\n"
+				+ "visit(input, visitor {\n\tbefore p: Project -> {\n" + statements + "\n\t\to << 1;\n\t}\n});");
+	}
+
+	@Test
+	public void languageMatches() throws IOException {
+		assertEquals("lang-match::%5Ejava%24", guarded("ifall (i: int; !match(`^java$`, p.programming_languages[i])) stop;"));
+		assertEquals("lang-match:lower:%5Ejava%24", guarded("ifall (i: int; !match(`^java$`, lowercase(input.programming_languages[i]))) stop;"));
+	}
+
+	@Test
+	public void languageEquals() throws IOException {
+		assertEquals("lang-eq::Java", guarded("ifall (i: int; p.programming_languages[i] != \"Java\") stop;"));
+		assertEquals("lang-eq:lower:java", guarded("ifall (i: int; !(\"java\" == lowercase(p.programming_languages[i]))) stop;"));
+	}
+
+	@Test
+	public void repositories() throws IOException {
+		assertEquals("repos:%3E%3D:2", guarded("if (len(p.code_repositories) < 2) stop;"));
+		assertEquals("repos:%3C%3D:1", guarded("if (1 < len(p.code_repositories)) stop;"));
+		assertEquals("repos:%3D%3D:1", guarded("if (!(len(p.code_repositories) == 1)) stop;"));
+	}
+
+	@Test
+	public void severalGuards() throws IOException {
+		assertEquals("lang-eq::Java,repos:%21%3D:0", guarded("count := 0;\n"
+				+ "ifall (i: int; p.programming_languages[i] != \"Java\") stop;\n"
+				+ "if (len(p.code_repositories) == 0) stop;\n"
+				+ "o << count;\n"
+				+ "if (len(p.code_repositories) == 1) stop;"));
+	}
+
+	@Test
+	public void namedVisitor() throws IOException {
+		assertEquals("lang-eq::Java", guard("o: output sum of int;\n"
+				+ "f := function(n: int): int { return n + 1; };\n"
+				+ "v := visitor {\n\tbefore Project -> ifall (i: int; input.programming_languages[i] != \"Java\") stop;\n"
+				+ "\tbefore Method -> o << f(1);\n};\n"
+				+ "visit(input, v);"));
+	}
+
+	@Test
+	public void notGuards() throws IOException {
+		// the program does something besides visiting
+		assertEquals("", guard("o: output sum of int;\no << 1;\n"
+				+ "visit(input, visitor {\n\tbefore Project -> ifall (i: int; input.programming_languages[i] != \"Java\") stop;\n});"));
+		// something happens before the guard
+		assertEquals("", guarded("o << 1;\nifall (i: int; p.programming_languages[i] != \"Java\") stop;"));
+		// the initializer may have side effects
+		assertEquals("", guarded("n := len(p.code_repositories);\nif (n == 0) stop;"));
+		// not only a stop
+		assertEquals("", guarded("if (len(p.code_repositories) == 0) { o << 1; stop; }"));
+		// has an else
+		assertEquals("", guarded("if (len(p.code_repositories) == 0) stop; else o << 1;"));
+		// not only the language
+		assertEquals("", guarded("ifall (i: int; p.programming_languages[i] != p.name) stop;"));
+		// not a Project clause
+		assertEquals("", guard("o: output sum of int;\n"
+				+ "visit(input, visitor {\n\tbefore r: CodeRepository -> {\n\t\tif (getrevisionscount(r) == 0) stop;\n\t\to << 1;\n\t}\n});"));
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Test instrumenting generated code to profile a program.
+ */
+public class TestProfiling extends BaseTest {
+	// generates (and compiles) the profiled program, returning its sites
+	private List<String> sites(final String program) throws IOException {
+		final List<String> sites = new ArrayList<String>();
+		codegen(program, null, sites);
+		return sites;
+	}
+
+	@Test
+	public void visitorClauses() throws IOException {
+		assertEquals(Arrays.asList(
+					"line 3: before Project",
+					"line 8: after Method",
+					"line 9: before _",
+					// made by the local aggregation of the sum
+					"emit o"),
+				sites("o: output sum of int;\n"
+				+ "visit(input, visitor {\n"
+				+ "\tbefore p: Project -> {\n"
+				+ "\t\tif (len(p.code_repositories) == 0) stop;\n"
+				+ "\t\tif (len(p.code_repositories) > 1)\n"
+				+ "\t\t\to << 1;\n"
+				+ "\t}\n"
+				+ "\tafter Method -> o << 2;\n"
+				+ "\tbefore _ -> { }\n"
+				+ "});"));
+	}
+
+	@Test
+	public void intrinsicCalls() throws IOException {
+		assertEquals(Arrays.asList(
+					"line 4: lowercase()",
+					"line 4: match()",
+					"line 5: getast()",
+					"line 6: emit o",
+					"line 7: emit o",
+					"line 3: before ChangedFile"),
+				sites("o: output collection of string;\n"
+				+ "visit(input, visitor {\n"
+				+ "\tbefore f: ChangedFile -> {\n"
+				+ "\t\tif (match(`java$`, lowercase(f.name))) {\n"
+				+ "\t\t\tr := getast(f);\n"
+				+ "\t\t\to << f.name;\n"
+				+ "\t\t\to << r.namespaces[0].name;\n"
+				+ "\t\t}\n"
+				+ "\t\tassert(true);\n"
+				+ "\t}\n"
+				+ "});"));
+	}
+
+	@Test
+	public void traversalClauses() throws IOException {
+		assertEquals(Arrays.asList(
+					"line 4: string()",
+					"line 3: traverse CFGNode",
+					"line 6: emit m"),
+				sites("m: output collection of int;\n"
+				+ "p: Project = input;\n"
+				+ "ids := traversal(node: CFGNode) : string {\n"
+				+ "\treturn string(node.id);\n};\n"
+				+ "m << 1;"));
+	}
+}
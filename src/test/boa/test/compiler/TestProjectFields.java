@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.compiler;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import boa.compiler.visitors.ProjectFieldFindingVisitor;
+
+/**
+ * Test finding which Project members a program reads.
+ */
+public class TestProjectFields extends BaseTest {
+	private Set<String> fields(final String program) throws IOException {
+		final ProjectFieldFindingVisitor v = new ProjectFieldFindingVisitor();
+		v.start(typecheck(program).ast);
+		return v.getFields();
+	}
+
+	private static Set<String> set(final String... names) {
+		return new TreeSet<String>(Arrays.asList(names));
+	}
+
+	@Test
+	public void noMembers() throws IOException {
+		assertEquals(set(), fields("o: output sum of int;\no << 1;"));
+	}
+
+	@Test
+	public void directMembers() throws IOException {
+		assertEquals(set("name", "programming_languages"), fields("o: output collection[string] of string;\n"
+				+ "foreach (i: int; input.programming_languages[i] == \"Java\")\n\to[input.name] << input.programming_languages[i];"));
+	}
+
+	@Test
+	public void throughVariables() throws IOException {
+		assertEquals(set("created_date", "id", "stars"), fields("o: output sum[string] of int;\n"
+				+ "p := input;\nq: Project;\nq = p;\no[q.id] << q.stars;\n"
+				+ "if (yearof(p.created_date) > 2010) o[p.id] << 1;"));
+	}
+
+	@Test
+	public void nestedMembers() throws IOException {
+		assertEquals(set("code_repositories"), fields("o: output sum of int;\n"
+				+ "foreach (i: int; def(input.code_repositories[i])) o << getrevisionscount(input.code_repositories[i]);"));
+	}
+
+	@Test
+	public void visited() throws IOException {
+		assertNull(fields("o: output sum of int;\nvisit(input, visitor {\n\tbefore n: Method -> o << 1;\n});"));
+	}
+
+	@Test
+	public void passedToFunction() throws IOException {
+		assertNull(fields("o: output sum of int;\nf := function(p: Project): int { return p.stars; };\no << f(input);"));
+	}
+
+	@Test
+	public void returned() throws IOException {
+		assertNull(fields("o: output sum of int;\nf := function(): Project { return input; };\no << f().stars;"));
+	}
+}
@@ -0,0 +1,242 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.compiler;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import boa.compiler.ast.Start;
+import boa.compiler.transforms.PureCallHoistingTransformer;
+import boa.compiler.transforms.VariableDeclRenameTransformer;
+import boa.compiler.visitors.PrettyPrintVisitor;
+
+/**
+ * Test sharing the values of calls to pure intrinsics, and moving them out
+ * of loops.
+ */
+public class TestPureCalls extends BaseTest {
+	private String optimize(final String program) throws IOException {
+		final Start p = typecheck(program).ast;
+		new VariableDeclRenameTransformer().start(p);
+		new PureCallHoistingTransformer().start(p);
+		return new PrettyPrintVisitor().startAndReturn(p);
+	}
+
+	@Test
+	public void shared() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "s_0 := input.name;\n"
+				+ "_pure_call_0 := lowercase(s_0);\n"
+				+ "o << len(_pure_call_0);\n"
+				+ "if (match(\"a\", _pure_call_0)) {\n"
+				+ "    o << len(trim(_pure_call_0));\n"
+				+ "}\n",
+				optimize("o: output sum of int;\n"
+				+ "s := input.name;\n"
+				+ "o << len(lowercase(s));\n"
+				+ "if (match(\"a\", lowercase(s))) o << len(trim(lowercase(s)));"));
+	}
+
+	@Test
+	public void assigned() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "s_0 := input.name;\n"
+				+ "_pure_call_0 := lowercase(s_0);\n"
+				+ "o << len(_pure_call_0);\n"
+				+ "o << len(_pure_call_0);\n"
+				+ "s_0 = \"a\";\n"
+				+ "_pure_call_1 := lowercase(s_0);\n"
+				+ "o << len(_pure_call_1);\n"
+				+ "if (len(_pure_call_1) > 0) {\n"
+				+ "    s_0 = \"b\";\n"
+				+ "}\n"
+				+ "o << len(lowercase(s_0));\n",
+				optimize("o: output sum of int;\n"
+				+ "s := input.name;\n"
+				+ "o << len(lowercase(s));\n"
+				+ "o << len(lowercase(s));\n"
+				+ "s = \"a\";\n"
+				+ "o << len(lowercase(s));\n"
+				+ "if (len(lowercase(s)) > 0) s = \"b\";\n"
+				+ "o << len(lowercase(s));"));
+	}
+
+	@Test
+	public void impureCalls() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "s_0 := input.name;\n"
+				+ "f_1 := function ()\n"
+				+ "{\n"
+				+ "    s_0 = \"a\";\n"
+				+ "}\n"
+				+ ";\n"
+				+ "o << len(lowercase(s_0));\n"
+				+ "f_1();\n"
+				+ "o << len(lowercase(s_0));\n"
+				+ "o << len(s_0) + len(s_0);\n",
+				optimize("o: output sum of int;\n"
+				+ "s := input.name;\n"
+				+ "f := function() { s = \"a\"; };\n"
+				+ "o << len(lowercase(s));\n"
+				+ "f();\n"
+				+ "o << len(lowercase(s));\n"
+				+ "# macros are not shared\n"
+				+ "o << len(s) + len(s);"));
+	}
+
+	@Test
+	public void loops() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "_pure_call_1 := lowercase(input.name);\n"
+				+ "foreach (i: int; def(input.code_repositories[i])) {\n"
+				+ "    o << len(_pure_call_1);\n"
+				+ "    o << len(getsnapshot(input.code_repositories[i]));\n"
+				+ "    if (i > 0) {\n"
+				+ "        o << len(_pure_call_1);\n"
+				+ "    }\n"
+				+ "}\n"
+				+ "n_0 := 0;\n"
+				+ "_pure_call_2 := getsnapshot(input.code_repositories[0]);\n"
+				+ "while (n_0 < len(_pure_call_2))\n"
+				+ "{\n"
+				+ "    n_0++;\n"
+				+ "}\n",
+				optimize("o: output sum of int;\n"
+				+ "foreach (i: int; def(input.code_repositories[i])) {\n"
+				+ "\to << len(lowercase(input.name));\n"
+				+ "\to << len(getsnapshot(input.code_repositories[i]));\n"
+				+ "\tif (i > 0) o << len(lowercase(input.name));\n"
+				+ "}\n"
+				+ "n := 0;\n"
+				+ "while (n < len(getsnapshot(input.code_repositories[0]))) n++;"));
+	}
+
+	@Test
+	public void notHoisted() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "s_0 := input.name;\n"
+				+ "foreach (i: int; def(input.code_repositories[i])) {\n"
+				+ "    if (i > 0) {\n"
+				+ "        o << len(lowercase(s_0));\n"
+				+ "    }\n"
+				+ "}\n"
+				+ "foreach (i: int; def(input.code_repositories[i])) {\n"
+				+ "    o << len(getsnapshot(input.code_repositories[0]));\n"
+				+ "}\n"
+				+ "while (len(lowercase(s_0)) > 0)\n"
+				+ "{\n"
+				+ "    s_0 = \"\";\n"
+				+ "}\n",
+				optimize("o: output sum of int;\n"
+				+ "s := input.name;\n"
+				+ "# not made in every iteration\n"
+				+ "foreach (i: int; def(input.code_repositories[i])) if (i > 0) o << len(lowercase(s));\n"
+				+ "# may fail if the loop does not run\n"
+				+ "foreach (i: int; def(input.code_repositories[i])) o << len(getsnapshot(input.code_repositories[0]));\n"
+				+ "# assigned in the loop\n"
+				+ "while (len(lowercase(s)) > 0) s = \"\";"));
+	}
+
+	@Test
+	public void budgetCharged() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "cf_0 := getsnapshot(input.code_repositories[0])[0];\n"
+				+ "if (def(cf_0)) {\n"
+				+ "    _pure_call_0 := url(cf_0);\n"
+				+ "    foreach (i: int; def(input.code_repositories[i])) {\n"
+				+ "        o << len(getast(cf_0).namespaces);\n"
+				+ "        o << len(_pure_call_0);\n"
+				+ "    }\n"
+				+ "}\n",
+				optimize("o: output sum of int;\n"
+				+ "cf := getsnapshot(input.code_repositories[0])[0];\n"
+				+ "if (def(cf)) {\n"
+				+ "\t# charges the budget, so may fail if the loop does not run\n"
+				+ "\tforeach (i: int; def(input.code_repositories[i])) {\n"
+				+ "\t\to << len(getast(cf).namespaces);\n"
+				+ "\t\to << len(url(cf));\n"
+				+ "\t}\n"
+				+ "}"));
+	}
+
+	@Test
+	public void undefinedArgs() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "names_0 := splitall(input.name, \"/\");\n"
+				+ "s_1: string;\n"
+				+ "foreach (i: int; def(names_0[i])) {\n"
+				+ "    o << len(lowercase(s_1)) + len(names_0[i]);\n"
+				+ "}\n"
+				+ "if (def(s_1) && len(names_0) > 1) {\n"
+				+ "    _pure_call_0 := lowercase(s_1);\n"
+				+ "    foreach (i: int; def(names_0[i])) {\n"
+				+ "        o << len(_pure_call_0) + len(names_0[i]);\n"
+				+ "    }\n"
+				+ "}\n"
+				+ "if (def(s_1)) {\n"
+				+ "    s_1 = names_0[0];\n"
+				+ "    foreach (i: int; def(names_0[i])) {\n"
+				+ "        o << len(lowercase(s_1)) + len(names_0[i]);\n"
+				+ "    }\n"
+				+ "}\n",
+				optimize("o: output sum of int;\n"
+				+ "names := splitall(input.name, \"/\");\n"
+				+ "s: string;\n"
+				+ "# may fail on an undefined value if the loop does not run\n"
+				+ "foreach (i: int; def(names[i])) o << len(lowercase(s)) + len(names[i]);\n"
+				+ "# defined where the loop is\n"
+				+ "if (def(s) && len(names) > 1)\n"
+				+ "\tforeach (i: int; def(names[i])) o << len(lowercase(s)) + len(names[i]);\n"
+				+ "# but assigned before it\n"
+				+ "if (def(s)) {\n"
+				+ "\ts = names[0];\n"
+				+ "\tforeach (i: int; def(names[i])) o << len(lowercase(s)) + len(names[i]);\n"
+				+ "}"));
+	}
+
+	@Test
+	public void arrays() throws IOException {
+		assertEquals("o: output sum of int;\n"
+				+ "s_0 := input.name;\n"
+				+ "_pure_call_0 := splitall(s_0, \"/\");\n"
+				+ "a_1 := _pure_call_0;\n"
+				+ "b_2 := _pure_call_0;\n"
+				+ "o << len(a_1[0]) + len(b_2[0]);\n",
+				optimize("o: output sum of int;\n"
+				+ "s := input.name;\n"
+				+ "a := splitall(s, \"/\");\n"
+				+ "b := splitall(s, \"/\");\n"
+				+ "o << len(a[0]) + len(b[0]);"));
+
+		// the arrays could be changed through one of the variables
+		assertEquals("o: output sum of int;\n"
+				+ "s_0 := input.name;\n"
+				+ "a_1 := splitall(s_0, \"/\");\n"
+				+ "b_2 := splitall(s_0, \"/\");\n"
+				+ "a_1[0] = \"\";\n"
+				+ "o << len(b_2[0]);\n",
+				optimize("o: output sum of int;\n"
+				+ "s := input.name;\n"
+				+ "a := splitall(s, \"/\");\n"
+				+ "b := splitall(s, \"/\");\n"
+				+ "a[0] = \"\";\n"
+				+ "o << len(b[0]);"));
+	}
+}
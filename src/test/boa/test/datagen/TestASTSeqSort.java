@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.datagen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import boa.datagen.ASTSeqSort;
+
+/**
+ * Tests sorting ast.seq files built from the ASTs of the sample dataset,
+ * against sorting them in memory.
+ */
+public class TestASTSeqSort {
+	private static File dir;
+	private static Configuration conf;
+	private static FileSystem fs;
+	private static Path input;
+	private static List<String> expected;
+
+	@BeforeClass
+	public static void createInput() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+
+		final List<BytesWritable> asts = new ArrayList<BytesWritable>();
+		final SequenceFile.Reader r = new SequenceFile.Reader(fs, new Path("test/datagen/test_datagen/ast/data"), conf);
+		try {
+			final LongWritable key = new LongWritable();
+			BytesWritable value = new BytesWritable();
+			while (r.next(key, value)) {
+				asts.add(value);
+				value = new BytesWritable();
+			}
+		} finally {
+			r.close();
+		}
+
+		// keys out of order, some of them repeated and some outside ASCII
+		input = new Path(dir.getPath(), "input.seq");
+		final SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, input, Text.class, BytesWritable.class);
+		try {
+			for (int round = 0; round < 3; round++)
+				for (int i = asts.size() - 1; i >= 0; i--)
+					if (round == 0 || i % (round + 2) == 0)
+						w.append(new Text(key(i + round)), asts.get(i));
+		} finally {
+			w.close();
+		}
+
+		expected = sortInMemory(input);
+		assertTrue(expected.size() > ASTSeqSort.FAN_IN);
+	}
+
+	@AfterClass
+	public static void deleteInput() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private static String key(final int i) {
+		switch (i % 4) {
+		case 0: return "repo/" + i;
+		case 1: return "r\u00e9po/" + i;
+		case 2: return "\ud83d\ude00/" + i;
+		default: return "\uffe0/" + i;
+		}
+	}
+
+	// how ASTSeqSort sorted before it sorted externally
+	private static List<String> sortInMemory(final Path path) throws IOException {
+		final Map<String, BytesWritable> map = new HashMap<String, BytesWritable>();
+		final SequenceFile.Reader r = new SequenceFile.Reader(fs, path, conf);
+		try {
+			final Text key = new Text();
+			BytesWritable val = new BytesWritable();
+			while (r.next(key, val)) {
+				map.put(key.toString(), val);
+				val = new BytesWritable();
+			}
+		} finally {
+			r.close();
+		}
+
+		final List<String> keys = new ArrayList<String>(map.keySet());
+		Collections.sort(keys);
+		final List<String> records = new ArrayList<String>();
+		for (final String k : keys)
+			records.add(k + "=" + map.get(k));
+		return records;
+	}
+
+	private static List<String> read(final Path path) throws IOException {
+		final List<String> records = new ArrayList<String>();
+		final SequenceFile.Reader r = new SequenceFile.Reader(fs, path, conf);
+		try {
+			final Text key = new Text();
+			final BytesWritable val = new BytesWritable();
+			while (r.next(key, val))
+				records.add(key + "=" + val);
+		} finally {
+			r.close();
+		}
+		return records;
+	}
+
+	private static List<String> sort(final long runSize, final int threads) throws IOException {
+		final Path output = new Path(dir.getPath(), "sorted-" + runSize + "-" + threads + ".seq");
+		ASTSeqSort.sort(fs, conf, input, output, runSize, threads);
+		return read(output);
+	}
+
+	@Test
+	public void oneRun() throws IOException {
+		assertEquals(expected, sort(Long.MAX_VALUE, 1));
+	}
+
+	@Test
+	public void smallRuns() throws IOException {
+		assertEquals(expected, sort(1 << 12, 1));
+		assertEquals(expected, sort(1 << 12, 4));
+	}
+
+	@Test
+	public void multiLevelMerge() throws IOException {
+		// a run per record, so the runs are merged more than once
+		assertEquals(expected, sort(1, 3));
+	}
+
+	@Test
+	public void inPlace() throws Exception {
+		final Path path = new Path(dir.getPath(), "ast.seq");
+		FileUtils.copyFile(new File(input.toString()), new File(path.toString()));
+		ASTSeqSort.main(new String[] { dir.getPath(), "1", "2" });
+		assertEquals(expected, read(path));
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.datagen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.junit.Test;
+
+import boa.datagen.treed.TreedMapper;
+import boa.types.Edit.EditScript;
+import boa.types.Shared.ChangeKind;
+
+/**
+ * Tests the edit scripts stored for modified Java files.
+ */
+public class TestEditScript {
+	private static final String OLD = "class A {\n\tvoid m() {\n\t\tint x = 1;\n\t}\n}\n";
+	private static final String NEW = "class A {\n\tvoid m() {\n\t\tint x = 1;\n\t\tSystem.out.println(x);\n\t}\n}\n";
+
+	@Test
+	public void unchanged() {
+		assertEquals(0, edits(OLD, OLD).getKindsCount());
+	}
+
+	@Test
+	public void added() {
+		final EditScript edits = edits(OLD, NEW);
+		assertEquals(edits.getKindsCount(), edits.getOldNodesCount());
+		assertEquals(edits.getKindsCount(), edits.getNewNodesCount());
+		assertEquals(edits.getKindsCount(), edits.getLabelsCount());
+
+		int added = 0;
+		for (int i = 0; i < edits.getKindsCount(); i++) {
+			assertTrue(edits.getKinds(i) != ChangeKind.DELETED);
+			if (edits.getKinds(i) == ChangeKind.ADDED) {
+				assertEquals(-1, edits.getOldNodes(i));
+				assertTrue(edits.getNewNodes(i) > 0);
+				added++;
+			}
+		}
+		assertTrue(added > 0);
+	}
+
+	@Test
+	public void deleted() {
+		final EditScript edits = edits(NEW, OLD);
+
+		int deleted = 0;
+		for (int i = 0; i < edits.getKindsCount(); i++) {
+			assertTrue(edits.getKinds(i) != ChangeKind.ADDED);
+			if (edits.getKinds(i) == ChangeKind.DELETED) {
+				assertTrue(edits.getOldNodes(i) > 0);
+				assertEquals(-1, edits.getNewNodes(i));
+				deleted++;
+			}
+		}
+		assertTrue(deleted > 0);
+	}
+
+	@Test
+	public void moved() {
+		final String previous = "class A {\n\tvoid m() {\n\t\tint x = 1;\n\t\tx++;\n\t}\n\tvoid n() {\n\t\tm();\n\t}\n}\n";
+		final String current = "class A {\n\tvoid n() {\n\t\tm();\n\t}\n\tvoid m() {\n\t\tint x = 1;\n\t\tx++;\n\t}\n}\n";
+		final EditScript edits = edits(previous, current);
+
+		assertTrue(edits.getKindsCount() > 0);
+		for (int i = 0; i < edits.getKindsCount(); i++)
+			assertEquals(ChangeKind.MOVED, edits.getKinds(i));
+	}
+
+	private static EditScript edits(final String previous, final String current) {
+		final TreedMapper mapper = new TreedMapper(parse(previous), parse(current));
+		mapper.map();
+		return mapper.getEditScript();
+	}
+
+	private static CompilationUnit parse(final String content) {
+		final ASTParser parser = ASTParser.newParser(AST.JLS8);
+		parser.setKind(ASTParser.K_COMPILATION_UNIT);
+		parser.setSource(content.toCharArray());
+		final Map<?, ?> options = JavaCore.getOptions();
+		JavaCore.setComplianceOptions(JavaCore.VERSION_1_8, options);
+		parser.setCompilerOptions(options);
+		return (CompilationUnit) parser.createAST(null);
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.datagen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.junit.Test;
+
+import boa.datagen.util.JavaASTUtil;
+import boa.datagen.util.JavaErrorCheckVisitor;
+
+/**
+ * Tests finding syntax errors in parsed Java files.
+ */
+public class TestJavaErrorCheck {
+	private static final String[] SOURCES = {
+		"class A {\n\tvoid m() {\n\t\tint x = 1;\n\t}\n}\n",
+		"class A {\n\tvoid m() {\n\t\tint x = 1\n\t}\n}\n",
+		"class A {\n\tvoid m() {\n\t\tif (x) {\n\t}\n}\n",
+		"class A {\n\t/** @param x {@link B */\n\tvoid m(int x) {}\n}\n",
+		"class A extends {}\n",
+		"",
+	};
+
+	@Test
+	public void clean() {
+		assertFalse(JavaErrorCheckVisitor.hasError(JavaASTUtil.parseJava8(SOURCES[0])));
+	}
+
+	@Test
+	public void broken() {
+		assertTrue(JavaErrorCheckVisitor.hasError(JavaASTUtil.parseJava8(SOURCES[1])));
+		assertTrue(JavaErrorCheckVisitor.hasError(JavaASTUtil.parseJava8(SOURCES[2])));
+	}
+
+	@Test
+	public void sameAsWalking() {
+		for (final String source : SOURCES) {
+			final CompilationUnit cu = JavaASTUtil.parseJava8(source);
+			final JavaErrorCheckVisitor errorCheck = new JavaErrorCheckVisitor();
+			cu.accept(errorCheck);
+			assertEquals(source, errorCheck.hasError, JavaErrorCheckVisitor.hasError(cu));
+		}
+	}
+}
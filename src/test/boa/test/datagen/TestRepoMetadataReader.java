@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.datagen;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+
+import boa.datagen.forges.github.RepoMetadata;
+import boa.datagen.forges.github.RepoMetadataPages;
+import boa.datagen.forges.github.RepoMetadataReader;
+
+/**
+ * Test streaming repositories out of GitHub metadata pages.
+ */
+public class TestRepoMetadataReader {
+	private static final String REPO = "{\"id\": %d, \"name\": \"r%d\", \"full_name\": \"u/r%d\","
+			+ " \"owner\": {\"login\": \"u\", \"id\": 7, \"site_admin\": false},"
+			+ " \"html_url\": \"https://github.com/u/r%d\", \"description\": null, \"fork\": false,"
+			+ " \"created_at\": \"2015-06-15T11:40:32Z\", \"homepage\": null, \"size\": 12, \"stargazers_count\": 3,"
+			+ " \"language\": \"Java\", \"forks_count\": 1, \"topics\": [\"a\", \"b\"],"
+			+ " \"language_list\": {\"Java\": 100, \"C\": 2}}";
+
+	private static File dir;
+
+	@BeforeClass
+	public static void createPages() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+
+		for (int p = 0; p < 5; p++) {
+			final StringBuilder sb = new StringBuilder("[");
+			for (int i = 0; i < 100; i++) {
+				if (i > 0)
+					sb.append(",\n");
+				sb.append(repo(p * 100 + i));
+			}
+			sb.append("]");
+			FileUtils.writeStringToFile(new File(dir, "page" + p + ".json"), sb.toString());
+		}
+		FileUtils.writeStringToFile(new File(dir, "bad-item.json"), "[" + repo(1) + ", {\"id\": 2, \"size\": {\"kb\": 1}}, 3, " + repo(4) + "]");
+		FileUtils.writeStringToFile(new File(dir, "bad-page.json"), "[" + repo(1) + ", {\"id\": ");
+		FileUtils.writeStringToFile(new File(dir, "ignored.txt"), "[]");
+	}
+
+	@AfterClass
+	public static void deletePages() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private static String repo(final int id) {
+		return String.format(REPO, id, id, id, id);
+	}
+
+	@Test
+	public void sameAsTree() throws IOException {
+		final JsonElement tree = new JsonParser().parse(repo(42));
+		final RepoMetadataReader r = new RepoMetadataReader(new File(dir, "page0.json"));
+		try {
+			for (int i = 0; i < 43; i++)
+				r.next();
+			assertEquals(42, r.getIndex());
+		} finally {
+			r.close();
+		}
+
+		final RepoMetadataReader r2 = new RepoMetadataReader(writePage("[" + repo(42) + "]"));
+		try {
+			assertEquals(new RepoMetadata(tree.getAsJsonObject()).toBoaMetaDataProtobuf(), r2.next().toBoaMetaDataProtobuf());
+		} finally {
+			r2.close();
+		}
+	}
+
+	@Test
+	public void badItemsAreSkipped() throws IOException {
+		final RepoMetadataReader r = new RepoMetadataReader(new File(dir, "bad-item.json"));
+		try {
+			assertEquals("1", r.next().id);
+			for (int i = 1; i < 3; i++) {
+				try {
+					r.next();
+					throw new AssertionError("item " + i + " should not be read");
+				} catch (final RuntimeException e) {
+					assertEquals(i, r.getIndex());
+				}
+			}
+			assertEquals("4", r.next().id);
+			assertEquals(false, r.hasNext());
+		} finally {
+			r.close();
+		}
+	}
+
+	@Test
+	public void pagesInOrder() throws InterruptedException {
+		final File[] pages = new File[5];
+		for (int p = 0; p < pages.length; p++)
+			pages[p] = new File(dir, "page" + p + ".json");
+
+		// fewer threads than pages, and more repositories per page than are buffered
+		final RepoMetadataPages in = new RepoMetadataPages(pages, 2);
+		for (int i = 0; i < 500; i++) {
+			final RepoMetadataPages.Entry e = in.next();
+			assertNull(e.error);
+			assertEquals(pages[i / 100], e.page);
+			assertEquals(i % 100, e.index);
+			assertEquals("u/r" + i, e.repo.name);
+		}
+		assertNull(in.next());
+	}
+
+	@Test
+	public void badPage() throws InterruptedException {
+		final RepoMetadataPages in = new RepoMetadataPages(new File[] { new File(dir, "bad-page.json") }, 1);
+		assertEquals("u/r1", in.next().repo.name);
+		final RepoMetadataPages.Entry e = in.next();
+		assertEquals(-1, e.index);
+		assertNotNull(e.error);
+		assertNull(in.next());
+	}
+
+	@Test
+	public void listsJsonPages() {
+		assertEquals(7, RepoMetadataPages.list(dir).length);
+	}
+
+	private static File writePage(final String content) throws IOException {
+		final File f = new File(dir, UUID.randomUUID() + ".page");
+		FileUtils.writeStringToFile(f, content);
+		return f;
+	}
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.datagen;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.LongWritable;
+import org.apache.hadoop.io.MapFile;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.SequenceFile.CompressionType;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.io.compress.DefaultCodec;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.google.protobuf.CodedInputStream;
+
+import boa.datagen.SeqCombiner;
+import boa.datagen.util.KeyRemapper;
+import boa.types.Code.CodeRepository;
+import boa.types.Code.Revision;
+import boa.types.Diff.ChangedFile;
+import boa.types.Toplevel.Project;
+
+/**
+ * Tests combining workers' outputs built from the sample dataset, against
+ * shifting their keys by rebuilding the messages.
+ */
+public class TestSeqCombiner {
+	private static final int WORKERS = 3;
+
+	private static File dir;
+	private static Configuration conf;
+	private static FileSystem fs;
+	private static Project project;
+	private static List<Long> astKeys;
+	private static List<BytesWritable> asts;
+
+	@BeforeClass
+	public static void createInput() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+
+		final Text key = new Text();
+		final BytesWritable value = new BytesWritable();
+		final SequenceFile.Reader pr = new SequenceFile.Reader(fs, new Path("test/datagen/test_datagen/projects.seq"), conf);
+		try {
+			pr.next(key, value);
+		} finally {
+			pr.close();
+		}
+		project = Project.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+
+		astKeys = new ArrayList<Long>();
+		asts = new ArrayList<BytesWritable>();
+		final SequenceFile.Reader ar = new SequenceFile.Reader(fs, new Path("test/datagen/test_datagen/ast/data"), conf);
+		try {
+			final LongWritable k = new LongWritable();
+			BytesWritable v = new BytesWritable();
+			while (ar.next(k, v)) {
+				astKeys.add(k.get());
+				asts.add(v);
+				v = new BytesWritable();
+			}
+		} finally {
+			ar.close();
+		}
+
+		// like the importer's workers: every worker's keys start over, and
+		// every other worker stores the revisions of its project as commits
+		final String base = dir.getPath();
+		for (int i = 0; i < WORKERS; i++) {
+			final String name = i + "-" + (1000 + i) + ".seq";
+			final SequenceFile.Writer pw = SequenceFile.createWriter(fs, conf, new Path(base + "/project/" + name), Text.class, BytesWritable.class, CompressionType.BLOCK);
+			final SequenceFile.Writer aw = SequenceFile.createWriter(fs, conf, new Path(base + "/ast/" + name), LongWritable.class, BytesWritable.class, CompressionType.BLOCK);
+			final SequenceFile.Writer cw = SequenceFile.createWriter(fs, conf, new Path(base + "/commit/" + name), LongWritable.class, BytesWritable.class, CompressionType.BLOCK);
+			try {
+				for (int j = 0; j < asts.size(); j++)
+					aw.append(new LongWritable(astKeys.get(j)), asts.get(j));
+
+				final Project.Builder pb = Project.newBuilder(project);
+				pb.setId(project.getId() + "-" + i);
+				if (i % 2 == 1) {
+					long commitKey = 1;
+					for (final CodeRepository.Builder crb : pb.getCodeRepositoriesBuilderList()) {
+						for (final Revision r : crb.getRevisionsList()) {
+							final BytesWritable bw = new BytesWritable(r.toByteArray());
+							crb.addRevisionKeys(commitKey);
+							cw.append(new LongWritable(commitKey), bw);
+							commitKey += bw.getLength();
+						}
+						crb.clearRevisions();
+					}
+				}
+				pw.append(new Text(pb.getId()), new BytesWritable(pb.build().toByteArray()));
+			} finally {
+				pw.close();
+				aw.close();
+				cw.close();
+			}
+		}
+
+		// a buffer smaller than any record hands the records over one at a time
+		System.setProperty("combine.buffer.bytes", "1");
+		try {
+			SeqCombiner.combine(fs, conf, base, CompressionType.BLOCK, new DefaultCodec(), 2);
+		} finally {
+			System.clearProperty("combine.buffer.bytes");
+		}
+	}
+
+	@AfterClass
+	public static void deleteInput() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	// how SeqCombiner shifted the keys of a project before it rewrote them on the wire
+	private static Project shift(final Project p, final long lastAstKey, final long lastCommitKey) {
+		final Project.Builder pb = Project.newBuilder(p);
+		for (final CodeRepository.Builder crb : pb.getCodeRepositoriesBuilderList()) {
+			if (crb.getRevisionsCount() > 0) {
+				for (final Revision.Builder rb : crb.getRevisionsBuilderList())
+					for (final ChangedFile.Builder cfb : rb.getFilesBuilderList())
+						if (cfb.getKey() > 0)
+							cfb.setKey(lastAstKey + cfb.getKey());
+			} else {
+				for (int j = 0; j < crb.getRevisionKeysCount(); j++)
+					crb.setRevisionKeys(j, lastCommitKey + crb.getRevisionKeys(j));
+			}
+			for (final ChangedFile.Builder cfb : crb.getHeadSnapshotBuilderList())
+				if (cfb.getKey() > 0)
+					cfb.setKey(lastAstKey + cfb.getKey());
+		}
+		return pb.build();
+	}
+
+	private static Revision shift(final Revision r, final long lastAstKey) {
+		final Revision.Builder rb = Revision.newBuilder(r);
+		for (final ChangedFile.Builder cfb : rb.getFilesBuilderList())
+			if (cfb.getKey() > 0)
+				cfb.setKey(lastAstKey + cfb.getKey());
+		return rb.build();
+	}
+
+	@Test
+	public void remapper() throws IOException {
+		final byte[] b = project.toByteArray();
+		assertArrayEquals(shift(project, 0, 0).toByteArray(), new KeyRemapper(0, 0).project(b, b.length));
+		assertArrayEquals(shift(project, 1 << 20, 7).toByteArray(), new KeyRemapper(1 << 20, 7).project(b, b.length));
+		assertArrayEquals(shift(project, Long.MAX_VALUE / 2, 0).toByteArray(), new KeyRemapper(Long.MAX_VALUE / 2, 0).project(b, b.length));
+
+		final Project.Builder pb = Project.newBuilder(project);
+		pb.getCodeRepositoriesBuilder(0).clearRevisions().addRevisionKeys(1).addRevisionKeys(300);
+		final byte[] keys = pb.build().toByteArray();
+		assertArrayEquals(shift(pb.build(), 5, 1 << 30).toByteArray(), new KeyRemapper(5, 1 << 30).project(keys, keys.length));
+
+		final Revision r = project.getCodeRepositories(0).getRevisions(0);
+		final byte[] rev = r.toByteArray();
+		assertArrayEquals(shift(r, 12345).toByteArray(), new KeyRemapper(12345, 0).revision(rev, rev.length));
+	}
+
+	@Test
+	public void combined() throws IOException {
+		long lastAstKey = 0;
+		final long lastAstInFile = astKeys.get(astKeys.size() - 1);
+
+		final SequenceFile.Reader pr = new SequenceFile.Reader(fs, new Path(dir.getPath(), "projects.seq"), conf);
+		final MapFile.Reader cr = new MapFile.Reader(fs, dir.getPath() + "/commit", conf);
+		final MapFile.Reader ar = new MapFile.Reader(fs, dir.getPath() + "/ast", conf);
+		try {
+			final Text key = new Text();
+			final BytesWritable value = new BytesWritable();
+			final LongWritable longKey = new LongWritable();
+			long lastCommitKey = 0;
+			for (int i = 0; i < WORKERS; i++) {
+				assertTrue(pr.next(key, value));
+				assertEquals(project.getId() + "-" + i, key.toString());
+				final Project p = Project.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+
+				// the worker's project, with its keys shifted
+				final Project.Builder pb = Project.newBuilder(project);
+				pb.setId(project.getId() + "-" + i);
+				final List<Revision> revisions = new ArrayList<Revision>();
+				if (i % 2 == 1) {
+					long commitKey = 1;
+					for (final CodeRepository.Builder crb : pb.getCodeRepositoriesBuilderList()) {
+						for (final Revision r : crb.getRevisionsList()) {
+							crb.addRevisionKeys(commitKey);
+							revisions.add(r);
+							commitKey += r.getSerializedSize();
+						}
+						crb.clearRevisions();
+					}
+				}
+				assertArrayEquals(shift(pb.build(), lastAstKey, lastCommitKey).toByteArray(), p.toByteArray());
+
+				for (int j = 0; j < revisions.size(); j++) {
+					final long k = p.getCodeRepositories(0).getRevisionKeys(j);
+					assertTrue(cr.get(new LongWritable(k), value) != null);
+					assertArrayEquals(shift(revisions.get(j), lastAstKey).toByteArray(), Revision.parseFrom(CodedInputStream.newInstance(value.getBytes(), 0, value.getLength())).toByteArray());
+					if (j == revisions.size() - 1)
+						lastCommitKey = k;
+				}
+
+				// every AST the project points to is there
+				for (final ChangedFile cf : p.getCodeRepositories(0).getHeadSnapshotList())
+					if (cf.getKey() > 0)
+						assertTrue(ar.get(new LongWritable(cf.getKey()), value) != null);
+				lastAstKey += lastAstInFile;
+			}
+			assertTrue(!pr.next(key, value));
+
+			// the ASTs are in order, each worker's after the ones before it
+			ar.reset();
+			long count = 0;
+			long last = 0;
+			while (ar.next(longKey, value)) {
+				assertTrue(longKey.get() > last);
+				last = longKey.get();
+				count++;
+			}
+			assertEquals(WORKERS * asts.size(), count);
+			assertEquals(lastAstKey, last);
+		} finally {
+			pr.close();
+			cr.close();
+			ar.close();
+		}
+	}
+}
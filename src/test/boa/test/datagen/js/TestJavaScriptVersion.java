@@ -0,0 +1,110 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.datagen.js;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.junit.Test;
+import org.mozilla.javascript.CompilerEnvirons;
+import org.mozilla.javascript.Context;
+import org.mozilla.javascript.Parser;
+import org.mozilla.javascript.ast.AstRoot;
+
+import boa.datagen.util.FileIO;
+import boa.datagen.util.JavaScriptErrorCheckVisitor;
+import boa.datagen.util.JavaScriptVersionVisitor;
+import boa.types.Diff.ChangedFile.FileKind;
+
+/**
+ * Checks that classifying a JavaScript file from one parse gives the same
+ * kind as trying each version in turn.
+ */
+public class TestJavaScriptVersion {
+	private static final int[] VERSIONS = { Context.VERSION_1_1, Context.VERSION_1_2, Context.VERSION_1_3,
+			Context.VERSION_1_5, Context.VERSION_1_6, Context.VERSION_1_7, Context.VERSION_1_8 };
+	private static final FileKind[] KINDS = { FileKind.SOURCE_JS_ES1, FileKind.SOURCE_JS_ES2, FileKind.SOURCE_JS_ES3,
+			FileKind.SOURCE_JS_ES5, FileKind.SOURCE_JS_ES6, FileKind.SOURCE_JS_ES7, FileKind.SOURCE_JS_ES8 };
+
+	@Test
+	public void datagenFiles() {
+		int count = 0;
+		for (final File f : new File("test/datagen/javascript").listFiles())
+			if (f.getName().endsWith(".js")) {
+				final String content = FileIO.readFileContents(f);
+				assertEquals(f.getName(), ladder(content), singlePass(content));
+				count++;
+			}
+		assertTrue(count > 0);
+	}
+
+	@Test
+	public void features() {
+		versionTest(FileKind.SOURCE_JS_ES1, "var x = [1, 2];\nfunction f(a) { return a + x[0]; }\n");
+		versionTest(FileKind.SOURCE_JS_ES7, "let x = 1;\n");
+		versionTest(FileKind.SOURCE_JS_ES7, "function f() { let (x = 1) { return x; } }\n");
+		versionTest(FileKind.SOURCE_JS_ES7, "function g() { yield 1; }\n");
+		versionTest(FileKind.SOURCE_JS_ES8, "var sq = function(x) x * x;\n");
+		versionTest(FileKind.SOURCE_JS_ES8, "var {a, b} = o;\n");
+		// names that are only keywords from 1.7 on need the ladder
+		versionTest(FileKind.SOURCE_JS_ES1, "var let = 1, yield = 2;\n");
+		versionTest(FileKind.SOURCE_JS_ERROR, "var = ;\n");
+	}
+
+	private void versionTest(final FileKind expected, final String content) {
+		assertEquals(expected, ladder(content));
+		assertEquals(expected, singlePass(content));
+	}
+
+	// the kind of the oldest version that parses the file without errors
+	private static FileKind ladder(final String content) {
+		for (int i = 0; i < VERSIONS.length; i++)
+			if (parse(content, VERSIONS[i], null))
+				return KINDS[i];
+		return FileKind.SOURCE_JS_ERROR;
+	}
+
+	// the kind found from a single parse with the most permissive version,
+	// falling back to the ladder as the generator does
+	private static FileKind singlePass(final String content) {
+		final JavaScriptVersionVisitor versionCheck = new JavaScriptVersionVisitor();
+		if (parse(content, Context.VERSION_1_8, versionCheck))
+			return versionCheck.getKind();
+		return ladder(content);
+	}
+
+	private static boolean parse(final String content, final int version, final JavaScriptVersionVisitor versionCheck) {
+		final CompilerEnvirons cp = new CompilerEnvirons();
+		cp.setLanguageVersion(version);
+		final AstRoot cu;
+		try {
+			cu = new Parser(cp).parse(content, null, 0);
+		} catch (final IllegalArgumentException e) {
+			return false;
+		} catch (final org.mozilla.javascript.EvaluatorException e) {
+			return false;
+		}
+
+		final JavaScriptErrorCheckVisitor errorCheck = new JavaScriptErrorCheckVisitor();
+		cu.visit(errorCheck);
+		if (!errorCheck.hasError && versionCheck != null)
+			cu.visit(versionCheck);
+		return !errorCheck.hasError;
+	}
+}
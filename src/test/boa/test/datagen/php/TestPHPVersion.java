@@ -0,0 +1,111 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.datagen.php;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.eclipse.php.internal.core.PHPVersion;
+import org.eclipse.php.internal.core.ast.nodes.ASTParser;
+import org.eclipse.php.internal.core.ast.nodes.Program;
+import org.junit.Test;
+
+import boa.datagen.util.FileIO;
+import boa.datagen.util.PHPErrorCheckVisitor;
+import boa.datagen.util.PHPVersionVisitor;
+import boa.types.Diff.ChangedFile.FileKind;
+
+/**
+ * Checks that classifying a PHP file from one parse gives the same kind as
+ * trying each version in turn until one parses without errors.
+ */
+public class TestPHPVersion {
+	private static final PHPVersion[] VERSIONS = { PHPVersion.PHP5, PHPVersion.PHP5_3, PHPVersion.PHP5_4,
+			PHPVersion.PHP5_5, PHPVersion.PHP5_6, PHPVersion.PHP7_0, PHPVersion.PHP7_1 };
+	private static final FileKind[] KINDS = { FileKind.SOURCE_PHP5, FileKind.SOURCE_PHP5_3, FileKind.SOURCE_PHP5_4,
+			FileKind.SOURCE_PHP5_5, FileKind.SOURCE_PHP5_6, FileKind.SOURCE_PHP7_0, FileKind.SOURCE_PHP7_1 };
+
+	@Test
+	public void datagenFiles() {
+		int count = 0;
+		for (final File f : new File("test/datagen/PHP").listFiles())
+			if (f.getName().endsWith(".php")) {
+				final String content = FileIO.readFileContents(f);
+				assertEquals(f.getName(), ladder(content), singlePass(content));
+				count++;
+			}
+		assertTrue(count > 0);
+	}
+
+	@Test
+	public void features() {
+		versionTest(FileKind.SOURCE_PHP5, "<?php\nfunction f($a) { return $a + 1; }\n");
+		versionTest(FileKind.SOURCE_PHP5_3, "<?php\nnamespace Foo;\n");
+		versionTest(FileKind.SOURCE_PHP5_3, "<?php\n$f = function($x) { return $x; };\n");
+		versionTest(FileKind.SOURCE_PHP5_4, "<?php\ntrait T {}\n");
+		versionTest(FileKind.SOURCE_PHP5_4, "<?php\n$a = [1, 2];\n");
+		versionTest(FileKind.SOURCE_PHP5_5, "<?php\nfunction g() { yield 1; }\n");
+		versionTest(FileKind.SOURCE_PHP5_6, "<?php\n$a = 2 ** 3;\n");
+		versionTest(FileKind.SOURCE_PHP7_0, "<?php\n$c = $a <=> $b;\n");
+		versionTest(FileKind.SOURCE_PHP7_0, "<?php\n$c = $a ?? $b;\n");
+		versionTest(FileKind.SOURCE_PHP7_1, "<?php\n[$a, $b] = $c;\n");
+		versionTest(FileKind.SOURCE_PHP_ERROR, "<?php\n$a = ;\n");
+	}
+
+	private void versionTest(final FileKind expected, final String content) {
+		assertEquals(expected, ladder(content));
+		assertEquals(expected, singlePass(content));
+	}
+
+	// the kind of the oldest version that parses the file without errors
+	private static FileKind ladder(final String content) {
+		for (int i = 0; i < VERSIONS.length; i++)
+			if (parse(content, VERSIONS[i], null))
+				return KINDS[i];
+		return FileKind.SOURCE_PHP_ERROR;
+	}
+
+	// the kind found from a single parse with the most permissive version,
+	// falling back to the ladder as the generator does
+	private static FileKind singlePass(final String content) {
+		final PHPVersionVisitor versionCheck = new PHPVersionVisitor();
+		if (parse(content, PHPVersion.PHP7_1, versionCheck))
+			return versionCheck.getKind();
+		return ladder(content);
+	}
+
+	private static boolean parse(final String content, final PHPVersion version, final PHPVersionVisitor versionCheck) {
+		final ASTParser parser = ASTParser.newParser(version);
+		final Program cu;
+		try {
+			parser.setSource(content.toCharArray());
+			cu = parser.createAST(null);
+		} catch (final Exception e) {
+			return false;
+		}
+		if (cu == null)
+			return false;
+
+		final PHPErrorCheckVisitor errorCheck = new PHPErrorCheckVisitor();
+		cu.accept(errorCheck);
+		if (!errorCheck.hasError && versionCheck != null)
+			cu.accept(versionCheck);
+		return !errorCheck.hasError;
+	}
+}
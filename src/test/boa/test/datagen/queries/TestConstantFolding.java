@@ -0,0 +1,12 @@
+package boa.test.datagen.queries;
+
+import org.junit.Test;
+
+public class TestConstantFolding extends QueryTest {
+
+	@Test
+	public void testConstantFolding() {
+		String expected = "counts[repos] = 11\n";
+		queryTest("test/known-good/constant-folding.boa", expected);
+	}
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.functions;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static boa.functions.BoaAstIntrinsics.parse;
+import static boa.functions.BoaNormalFormIntrinsics.getFingerprint;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import boa.graphs.pdg.PDG;
+import boa.types.Ast.Method;
+
+/**
+ * Test PDG fingerprints.
+ */
+public class TestFingerprint {
+	private static final String SRC =
+		"public class C {\n" +
+		"    public int a() {\n" +
+		"        int x = 7;\n" +
+		"        if (x < 3) return -1;\n" +
+		"        return x;\n" +
+		"    }\n" +
+		"    public int b() {\n" +
+		"        int y = 7;\n" +
+		"        if (y < 3) return -1;\n" +
+		"        return y;\n" +
+		"    }\n" +
+		"    public int c() {\n" +
+		"        int x = 7;\n" +
+		"        if (x > 3) return -1;\n" +
+		"        return x;\n" +
+		"    }\n" +
+		"}\n";
+
+	private static List<Method> methods() {
+		return parse(SRC).getNamespaces(0).getDeclarations(0).getMethodsList();
+	}
+
+	private static PDG pdg(final Method m, final boolean normalize) throws Exception {
+		final PDG pdg = new PDG(m);
+		if (normalize)
+			pdg.normalize();
+		return pdg;
+	}
+
+	@Test
+	public void testStable() throws Exception {
+		final Method m = methods().get(0);
+		assertEquals(getFingerprint(pdg(m, false)), getFingerprint(pdg(m, false)));
+	}
+
+	@Test
+	public void testNormalized() throws Exception {
+		final List<Method> methods = methods();
+		assertNotEquals(getFingerprint(pdg(methods.get(0), false)), getFingerprint(pdg(methods.get(1), false)));
+		assertEquals(getFingerprint(pdg(methods.get(0), true)), getFingerprint(pdg(methods.get(1), true)));
+	}
+
+	@Test
+	public void testDifferent() throws Exception {
+		final List<Method> methods = methods();
+		assertNotEquals(getFingerprint(pdg(methods.get(0), true)), getFingerprint(pdg(methods.get(2), true)));
+	}
+}
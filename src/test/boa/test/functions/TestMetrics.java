@@ -0,0 +1,102 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.functions;
+
+import static org.junit.Assert.assertEquals;
+import static boa.functions.BoaAstIntrinsics.parse;
+import static boa.functions.BoaMetricIntrinsics.*;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import boa.types.Ast.Declaration;
+import boa.types.Ast.Namespace;
+
+/**
+ * Test the object-oriented metrics.
+ */
+public class TestMetrics {
+	private static final String SRC =
+		"public class A {\n" +
+		"    int x;\n" +
+		"    int y;\n" +
+		"    public int getX() { return x; }\n" +
+		"    public int getY() { return this.y; }\n" +
+		"    public int sum() { return x + y; }\n" +
+		"    private void log() { System.out.println(\"a\"); }\n" +
+		"    class Inner {\n" +
+		"        int z;\n" +
+		"        void f() { }\n" +
+		"    }\n" +
+		"}\n" +
+		"class B extends A {\n" +
+		"    void g() { sum(); }\n" +
+		"}\n" +
+		"class C extends B {\n" +
+		"}\n";
+
+	private Namespace ns;
+
+	@Before
+	public void setUp() {
+		setProject(null);
+		ns = parse(SRC).getNamespaces(0);
+	}
+
+	private Declaration decl(final int i) {
+		return ns.getDeclarations(i);
+	}
+
+	@Test
+	public void testSubtreeCounts() throws Exception {
+		assertEquals(3, getMetricNOA(decl(0)));
+		assertEquals(5, getMetricNOO(decl(0)));
+		assertEquals(3, getMetricNPM(decl(0)));
+		assertEquals(1, getMetricNOA(decl(0).getNestedDeclarations(0)));
+		assertEquals(0, getMetricNPM(decl(0).getNestedDeclarations(0)));
+	}
+
+	@Test
+	public void testLCOO() throws Exception {
+		// getX and getY, getX and log, getY and log, sum and log share no field
+		// getX and sum, getY and sum do
+		assertEquals(2, getMetricLCOO(decl(0)));
+		assertEquals(0, getMetricLCOO(decl(1)));
+	}
+
+	@Test
+	public void testRFC() throws Exception {
+		assertEquals(5, getMetricRFC(decl(0)));
+		assertEquals(2, getMetricRFC(decl(1)));
+	}
+
+	@Test
+	public void testWithoutProject() throws Exception {
+		// without a project no superclass can be looked up
+		assertEquals(0, getMetricDIT(decl(0)));
+		assertEquals(1, getMetricDIT(decl(2)));
+		assertEquals(0, getMetricCBC(decl(1)));
+		assertEquals(0, getMetricCA(decl(0)));
+	}
+
+	@Test
+	public void testMemoized() throws Exception {
+		final Declaration a = decl(0);
+		assertEquals(getMetricNOA(a), getMetricNOA(a));
+		assertEquals(getMetricLCOO(a), getMetricLCOO(a));
+	}
+}
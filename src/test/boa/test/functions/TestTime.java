@@ -0,0 +1,156 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.functions;
+
+import static org.junit.Assert.assertEquals;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Random;
+import java.util.TimeZone;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+import org.junit.runners.Parameterized.Parameters;
+
+import boa.functions.BoaTimeIntrinsics;
+
+/**
+ * Tests the time functions against the same computations done with a
+ * {@link Calendar}, for times around daylight saving transitions as well as
+ * random times between 1800 and 2200.
+ */
+@RunWith(Parameterized.class)
+public class TestTime {
+	private static final int SAMPLES = 20000;
+
+	private final String zone;
+	private final long[] times;
+
+	@Parameters(name = "{index}][{0}")
+	public static Collection<Object[]> zones() {
+		return Arrays.asList(new Object[][] {
+			{ "PST8PDT" },
+			{ "UTC" },
+			{ "America/New_York" },
+			{ "America/Sao_Paulo" },
+			{ "Europe/London" },
+			{ "Europe/Moscow" },
+			{ "Asia/Kolkata" },
+			{ "Australia/Lord_Howe" },
+			{ "Pacific/Apia" },
+			{ "GMT+05:30" },
+			{ "not a zone" },
+		});
+	}
+
+	public TestTime(final String zone) {
+		this.zone = zone;
+
+		final Random r = new Random(zone.hashCode());
+		final TimeZone tz = TimeZone.getTimeZone(zone);
+		times = new long[SAMPLES];
+		int i = 0;
+
+		// times within a few days of each transition
+		long prev = Long.MIN_VALUE;
+		for (long ms = -2208988800000L; ms < 4102444800000L && i < SAMPLES / 2; ms += 60 * 60 * 1000L) {
+			final int offset = tz.getOffset(ms);
+			if (prev != Long.MIN_VALUE && offset != prev)
+				for (int j = 0; j < 50 && i < SAMPLES / 2; j++)
+					times[i++] = (ms + (long) ((r.nextDouble() - 0.5) * 6 * 24 * 60 * 60 * 1000L)) * 1000 + r.nextInt(1000);
+			prev = offset;
+		}
+
+		// random times, and a few of them on exact boundaries
+		while (i < SAMPLES) {
+			long t = (-5364662400000L + (long) (r.nextDouble() * 12623040000000L)) * 1000 + r.nextInt(1000000);
+			if (r.nextInt(10) == 0)
+				t -= t % (60 * 60 * 1000000L);
+			times[i++] = t;
+		}
+	}
+
+	private Calendar calendar(final long t) {
+		final Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone(zone));
+		calendar.setTimeInMillis(t / 1000);
+		return calendar;
+	}
+
+	private long add(final int part, final long t, final long n) {
+		final Calendar calendar = calendar(t);
+		calendar.add(part, (int) n);
+		return calendar.getTimeInMillis() * 1000;
+	}
+
+	private long trunc(final long t, final int... fields) {
+		final Calendar calendar = calendar(t);
+		for (final int field : fields)
+			calendar.set(field, 0);
+		return calendar.getTimeInMillis() * 1000;
+	}
+
+	@Test
+	public void testAdd() {
+		final Random r = new Random(1);
+		for (final long t : times) {
+			final long n = r.nextInt(100) - 50;
+			assertEquals(add(Calendar.DAY_OF_MONTH, t, n), BoaTimeIntrinsics.addDay(t, n, zone));
+			assertEquals(add(Calendar.DAY_OF_MONTH, t, n * 7), BoaTimeIntrinsics.addWeek(t, n, zone));
+			assertEquals(add(Calendar.MONTH, t, n), BoaTimeIntrinsics.addMonth(t, n, zone));
+			assertEquals(add(Calendar.YEAR, t, n), BoaTimeIntrinsics.addYear(t, n, zone));
+		}
+	}
+
+	@Test
+	public void testParts() {
+		for (final long t : times) {
+			final Calendar c = calendar(t);
+			assertEquals(c.get(Calendar.DAY_OF_MONTH), BoaTimeIntrinsics.dayOfMonth(t, zone));
+			assertEquals(c.get(Calendar.DAY_OF_WEEK), BoaTimeIntrinsics.dayOfWeek(t, zone));
+			assertEquals(c.get(Calendar.DAY_OF_YEAR), BoaTimeIntrinsics.dayOfYear(t, zone));
+			assertEquals(c.get(Calendar.HOUR_OF_DAY), BoaTimeIntrinsics.hourOf(t, zone));
+			assertEquals(c.get(Calendar.MINUTE), BoaTimeIntrinsics.minuteOf(t, zone));
+			assertEquals(c.get(Calendar.MONTH), BoaTimeIntrinsics.monthOf(t, zone));
+			assertEquals(c.get(Calendar.SECOND), BoaTimeIntrinsics.secondOf(t, zone));
+			assertEquals(c.get(Calendar.YEAR), BoaTimeIntrinsics.yearOf(t, zone));
+		}
+	}
+
+	@Test
+	public void testTrunc() {
+		for (final long t : times) {
+			assertEquals(trunc(t, Calendar.MILLISECOND), BoaTimeIntrinsics.truncToSecond(t, zone));
+			assertEquals(trunc(t, Calendar.SECOND, Calendar.MILLISECOND), BoaTimeIntrinsics.truncToMinute(t, zone));
+			assertEquals(trunc(t, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND), BoaTimeIntrinsics.truncToHour(t, zone));
+			assertEquals(trunc(t, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND), BoaTimeIntrinsics.truncToDay(t, zone));
+			assertEquals(trunc(t, Calendar.DAY_OF_MONTH, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND), BoaTimeIntrinsics.truncToMonth(t, zone));
+			assertEquals(trunc(t, Calendar.DAY_OF_YEAR, Calendar.HOUR_OF_DAY, Calendar.MINUTE, Calendar.SECOND, Calendar.MILLISECOND), BoaTimeIntrinsics.truncToYear(t, zone));
+		}
+	}
+
+	@Test
+	public void testFormat() {
+		final SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss E zzz '%' DDD");
+		format.setTimeZone(TimeZone.getTimeZone(zone));
+		for (int i = 0; i < times.length; i += 10)
+			assertEquals(format.format(calendar(times[i]).getTime()), BoaTimeIntrinsics.formatTime("%Y-%m-%d %H:%M:%S %a %Z %% %j", times[i], zone));
+	}
+}
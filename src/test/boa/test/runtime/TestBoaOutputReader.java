@@ -0,0 +1,161 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.DataInputBuffer;
+import org.apache.hadoop.io.DataOutputBuffer;
+import org.apache.hadoop.io.NullWritable;
+import org.apache.hadoop.mapreduce.RecordWriter;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import boa.io.BoaOutputFormat;
+import boa.io.BoaOutputReader;
+import boa.io.EmitKey;
+import boa.io.OutputRecord;
+
+/**
+ * Tests rendering binary output and assembling output from its parts.
+ */
+public class TestBoaOutputReader {
+	private static final int PARTS = 12;
+
+	private static File dir;
+	private static Configuration conf;
+	private static FileSystem fs;
+	private static String expected;
+
+	@BeforeClass
+	public static void createOutput() throws Exception {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+
+		// even parts are text, odd parts binary, and one part is empty
+		final StringBuilder all = new StringBuilder();
+		for (int p = 0; p < PARTS; p++) {
+			final StringBuilder text = new StringBuilder();
+			final File part = new File(dir, String.format("part-r-%05d", p));
+			final RecordWriter<Object, NullWritable> w = p % 2 == 1 ? BoaOutputFormat.newBinaryWriter(fs, conf, new Path(part.getPath())) : null;
+			try {
+				for (int i = 0; i < (p == 4 ? 0 : 1000 * p); i++) {
+					final OutputRecord r = i % 3 == 0 ? new OutputRecord(new EmitKey("[" + i + "]", "t" + p, 0), "vé" + i, i % 2 == 0 ? "" + i : null) : new OutputRecord("line " + i);
+					text.append(r).append('\n');
+					if (w != null)
+						w.write(r, NullWritable.get());
+				}
+			} finally {
+				if (w != null)
+					w.close(null);
+			}
+			if (w == null)
+				FileUtils.writeStringToFile(part, text.toString(), "UTF-8");
+			all.append(text);
+		}
+		expected = all.toString();
+	}
+
+	@AfterClass
+	public static void deleteOutput() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void records() throws IOException {
+		final OutputRecord value = new OutputRecord(new EmitKey("[a][b]", "counts", 0), "3", null);
+		final OutputRecord weighted = new OutputRecord(new EmitKey("counts", 0), "x", "0.5");
+		final OutputRecord line = new OutputRecord("\"a\" -> \"b\"");
+		assertEquals("counts[a][b] = 3", value.toString());
+		assertEquals("counts[] = x weight 0.5", weighted.toString());
+		assertEquals("\"a\" -> \"b\"", line.toString());
+
+		final DataOutputBuffer out = new DataOutputBuffer();
+		value.write(out);
+		weighted.write(out);
+		line.write(out);
+		final DataInputBuffer in = new DataInputBuffer();
+		in.reset(out.getData(), out.getLength());
+		final OutputRecord r = new OutputRecord();
+		r.readFields(in);
+		assertEquals(value.toString(), r.toString());
+		r.readFields(in);
+		assertEquals(weighted.toString(), r.toString());
+		assertEquals("0.5", r.getWeight());
+		r.readFields(in);
+		assertEquals(line.toString(), r.toString());
+		assertEquals(null, r.getTable());
+	}
+
+	@Test
+	public void render() throws IOException {
+		assertFalse(BoaOutputReader.isBinary(fs, new Path(dir.getPath(), "part-r-00000")));
+		assertTrue(BoaOutputReader.isBinary(fs, new Path(dir.getPath(), "part-r-00001")));
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		for (final Path part : BoaOutputReader.parts(fs, new Path(dir.getPath())))
+			BoaOutputReader.render(fs, conf, part, out);
+		assertEquals(expected, out.toString("UTF-8"));
+	}
+
+	@Test
+	public void assemble() throws IOException {
+		for (final int threads : new int[] { 1, 3, PARTS }) {
+			final ByteArrayOutputStream out = new ByteArrayOutputStream();
+			final List<long[]> index = new ArrayList<long[]>();
+			final long length = BoaOutputReader.assemble(fs, conf, new Path(dir.getPath()), out, threads, new BoaOutputReader.Listener() {
+				@Override
+				public void written(final Path part, final long offset, final long partLength) {
+					index.add(new long[] { offset, partLength });
+				}
+			});
+			final byte[] b = out.toByteArray();
+			assertEquals(expected, new String(b, "UTF-8"));
+			assertEquals(b.length, length);
+
+			// every part is where the index says
+			assertEquals(PARTS, index.size());
+			long offset = 0;
+			for (int p = 0; p < PARTS; p++) {
+				assertEquals(offset, index.get(p)[0]);
+				final ByteArrayOutputStream part = new ByteArrayOutputStream();
+				BoaOutputReader.render(fs, conf, new Path(dir.getPath(), String.format("part-r-%05d", p)), part);
+				assertEquals(part.size(), index.get(p)[1]);
+				offset += index.get(p)[1];
+			}
+			assertEquals(length, offset);
+		}
+	}
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import boa.aggregators.CollectionAggregator;
+import boa.io.EmitKey;
+import boa.io.EmitValue;
+import boa.runtime.BoaBudget;
+import boa.runtime.BoaCombiner;
+import boa.runtime.BoaLocalExecutor;
+import boa.runtime.BoaMapper;
+import boa.runtime.BoaReducer;
+import boa.runtime.BoaRunner;
+
+/**
+ * Test skipping the projects that go over their budget.
+ */
+public class TestBudget {
+	private static final int PROJECTS = 20;
+
+	private static File dir;
+
+	// a program that emits the key of each project, then visits 10 nodes per the key's value
+	public static class Program extends BoaRunner {
+		@Override
+		public String getUsage() {
+			return "";
+		}
+
+		@Override
+		public int run(final String[] args) {
+			return 0;
+		}
+
+		@Override
+		public Mapper<?, ?, ?, ?> getMapper() {
+			return new ProgramMapper();
+		}
+
+		@Override
+		public BoaCombiner getCombiner() {
+			return null;
+		}
+
+		@Override
+		public BoaReducer getReducer() {
+			return new ProgramReducer();
+		}
+	}
+
+	public static class ProgramMapper extends BoaMapper {
+		@Override
+		protected void map(final Text key, final BytesWritable value, final Context context) throws IOException, InterruptedException {
+			try {
+				final Context output = startProject();
+				output.write(new EmitKey("keys", 0), new EmitValue(key.toString()));
+				for (int i = 0; i < 10 * Integer.parseInt(key.toString()); i++)
+					BoaBudget.node();
+				endProject();
+			} catch (final BoaBudget.ExceededException e) {
+				abortProject(key, e);
+			}
+		}
+	}
+
+	public static class ProgramReducer extends BoaReducer {
+		public ProgramReducer() {
+			super();
+
+			this.aggregators.put("0::keys", new CollectionAggregator());
+		}
+	}
+
+	@BeforeClass
+	public static void createInput() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		final File input = new File(dir, "input");
+		if (!input.mkdirs())
+			throw new IOException("unable to mkdir " + input);
+
+		final Configuration conf = new Configuration();
+		final SequenceFile.Writer w = SequenceFile.createWriter(FileSystem.getLocal(conf), conf, new Path(input.getPath(), "projects.seq"), Text.class, BytesWritable.class);
+		try {
+			for (int i = 0; i < PROJECTS; i++)
+				w.append(new Text(String.format("%02d", i)), new BytesWritable());
+		} finally {
+			w.close();
+		}
+	}
+
+	@AfterClass
+	public static void deleteInput() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@After
+	public void clearBudget() {
+		BoaBudget.setup(new Configuration());
+	}
+
+	private static String expected(final int projects) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < projects; i++)
+			sb.append(String.format("keys[] = %02d\n", i));
+		return sb.toString();
+	}
+
+	@Test
+	public void noBudget() throws IOException {
+		final File out = new File(dir, "none");
+		final BoaLocalExecutor executor = new BoaLocalExecutor(TestBudget.class.getClassLoader(), Program.class.getName(), 2);
+		executor.run(new File(dir, "input").getPath(), out.getPath());
+
+		assertEquals(expected(PROJECTS), FileUtils.readFileToString(new File(out, "part-r-00000")));
+		assertEquals(0, executor.getCounters().findCounter(BoaBudget.BUDGETCOUNTER.PROJECTS_OVER_BUDGET).getValue());
+	}
+
+	@Test
+	public void nodes() throws IOException {
+		final File out = new File(dir, "nodes");
+		final BoaLocalExecutor executor = new BoaLocalExecutor(TestBudget.class.getClassLoader(), Program.class.getName(), 2);
+		executor.getConf().setLong(BoaBudget.NODES, 100);
+		executor.run(new File(dir, "input").getPath(), out.getPath());
+
+		// projects 11 and up visit too many nodes, and leave no output
+		assertEquals(expected(11), FileUtils.readFileToString(new File(out, "part-r-00000")));
+		assertEquals(PROJECTS - 11, executor.getCounters().findCounter(BoaBudget.BUDGETCOUNTER.PROJECTS_OVER_BUDGET).getValue());
+	}
+
+	@Test
+	public void asts() {
+		final Configuration conf = new Configuration();
+		conf.setLong(BoaBudget.ASTS, 2);
+		BoaBudget.setup(conf);
+
+		BoaBudget.start();
+		BoaBudget.ast();
+		BoaBudget.ast();
+		try {
+			BoaBudget.ast();
+			fail("read more ASTs than the budget");
+		} catch (final BoaBudget.ExceededException e) {
+		}
+
+		// the next project starts over
+		BoaBudget.start();
+		BoaBudget.ast();
+	}
+
+	@Test
+	public void time() throws InterruptedException {
+		final Configuration conf = new Configuration();
+		conf.setLong(BoaBudget.MILLIS, 1);
+		BoaBudget.setup(conf);
+
+		BoaBudget.start();
+		Thread.sleep(10);
+		try {
+			BoaBudget.check();
+			fail("took more time than the budget");
+		} catch (final BoaBudget.ExceededException e) {
+		}
+	}
+}
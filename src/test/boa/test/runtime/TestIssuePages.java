@@ -0,0 +1,160 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import boa.io.IssuePages;
+import boa.types.Issues.Issue;
+import boa.types.Issues.Issue.IssueStatus;
+import boa.types.Issues.IssuesRoot;
+import boa.types.Shared.Person;
+
+/**
+ * Test the paged issue storage.
+ */
+public class TestIssuePages {
+	private static final int ISSUES = 1000;
+
+	private static File dir;
+	private static Configuration conf;
+	private static FileSystem fs;
+	private static IssuesRoot many, few;
+
+	private static IssuesRoot issues(final Random r, final int n) {
+		final IssuesRoot.Builder b = IssuesRoot.newBuilder();
+		for (int i = 0; i < n; i++) {
+			final long created = r.nextInt(ISSUES * 10) * 1000000L;
+			b.addIssues(Issue.newBuilder()
+				.setId("" + i)
+				.setNumber(i)
+				.setStatus(r.nextInt(4) == 0 ? IssueStatus.OPEN : IssueStatus.CLOSED)
+				.setAuthor(Person.newBuilder().setUsername("u" + i))
+				.setSummary("")
+				.setDescription("")
+				.setCreatedDate(created)
+				.setModifiedDate(created));
+		}
+		return b.build();
+	}
+
+	@BeforeClass
+	public static void createInput() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+
+		final Random r = new Random(42);
+		many = issues(r, ISSUES);
+		few = issues(r, 3);
+
+		final Path issues = new Path(dir.getPath(), "issues.seq");
+		final SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, issues, Text.class, BytesWritable.class);
+		try {
+			w.append(new Text("many"), new BytesWritable(many.toByteArray()));
+			w.append(new Text("few"), new BytesWritable(few.toByteArray()));
+			w.append(new Text("none"), new BytesWritable(IssuesRoot.newBuilder().build().toByteArray()));
+		} finally {
+			w.close();
+		}
+
+		IssuePages.write(fs, conf, issues, new Path(dir.getPath()));
+	}
+
+	@AfterClass
+	public static void deleteInput() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void all() throws IOException {
+		final IssuePages.Reader pages = IssuePages.Reader.open(fs, conf, new Path(dir.getPath()));
+		assertNotNull(pages);
+		try {
+			assertEquals((ISSUES + IssuePages.PAGE_SIZE - 1) / IssuePages.PAGE_SIZE, pages.getEntry("many").pages.size());
+			assertEquals(IssuePages.filter(many, Long.MIN_VALUE, Long.MAX_VALUE, null), pages.get("many", Long.MIN_VALUE, Long.MAX_VALUE, null));
+			assertEquals(few.getIssuesCount(), pages.get("few", Long.MIN_VALUE, Long.MAX_VALUE, null).getIssuesCount());
+			assertEquals(0, pages.get("none", Long.MIN_VALUE, Long.MAX_VALUE, null).getIssuesCount());
+			assertEquals(0, pages.get("missing", Long.MIN_VALUE, Long.MAX_VALUE, null).getIssuesCount());
+		} finally {
+			pages.close();
+		}
+	}
+
+	@Test
+	public void filtered() throws IOException {
+		final IssuePages.Reader pages = IssuePages.Reader.open(fs, conf, new Path(dir.getPath()));
+		try {
+			final long start = ISSUES * 4 * 1000000L, end = ISSUES * 5 * 1000000L;
+			for (final IssueStatus status : new IssueStatus[] { null, IssueStatus.OPEN, IssueStatus.CLOSED, IssueStatus.FIXED }) {
+				final IssuesRoot expected = IssuePages.filter(many, start, end, status);
+				assertEquals(expected, pages.get("many", start, end, status));
+				assertEquals(IssuePages.filter(many, Long.MIN_VALUE, Long.MAX_VALUE, status), pages.get("many", Long.MIN_VALUE, Long.MAX_VALUE, status));
+			}
+			assertEquals(0, pages.get("many", start, start, null).getIssuesCount());
+
+			// a tenth of the time range is on at most two pages
+			int read = 0;
+			for (final IssuePages.Page p : pages.getEntry("many").pages)
+				if (p.matches(start, end, null))
+					read++;
+			assertTrue(read <= 2);
+		} finally {
+			pages.close();
+		}
+	}
+
+	@Test
+	public void noPages() throws IOException {
+		assertNull(IssuePages.Reader.open(fs, conf, new Path(dir.getPath(), "missing")));
+	}
+
+	@Test
+	public void encoding() throws IOException {
+		final IssuePages.Entry e = IssuePages.Entry.of(IssuePages.paginate(many));
+		final byte[] b = e.encode();
+		final IssuePages.Entry d = IssuePages.Entry.decode(b, b.length);
+		assertEquals(e.pages.size(), d.pages.size());
+		for (int i = 0; i < e.pages.size(); i++) {
+			assertEquals(e.pages.get(i).first, d.pages.get(i).first);
+			assertEquals(e.pages.get(i).last, d.pages.get(i).last);
+			assertEquals(e.pages.get(i).statuses, d.pages.get(i).statuses);
+		}
+	}
+}
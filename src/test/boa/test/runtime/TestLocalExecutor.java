@@ -0,0 +1,198 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import boa.aggregators.CollectionAggregator;
+import boa.aggregators.IntSumAggregator;
+import boa.io.BoaOutputFormat;
+import boa.io.BoaOutputReader;
+import boa.io.EmitKey;
+import boa.io.EmitValue;
+import boa.runtime.BoaCombiner;
+import boa.runtime.BoaLocalExecutor;
+import boa.runtime.BoaMapper;
+import boa.runtime.BoaReducer;
+import boa.runtime.BoaRunner;
+import boa.types.Toplevel.Project;
+
+/**
+ * Test running programs with the in-process executor.
+ */
+public class TestLocalExecutor {
+	private static final int PROJECTS = 40;
+
+	private static File dir;
+
+	// a program with two jobs: one counting projects and listing their keys, one counting workers
+	public static class Program extends BoaRunner {
+		@Override
+		public String getUsage() {
+			return "";
+		}
+
+		@Override
+		public int run(final String[] args) {
+			return 0;
+		}
+
+		@Override
+		public Mapper<?, ?, ?, ?> getMapper() {
+			return new ProgramMapper();
+		}
+
+		@Override
+		public BoaCombiner getCombiner() {
+			return null;
+		}
+
+		@Override
+		public BoaReducer getReducer() {
+			return new ProgramReducer();
+		}
+	}
+
+	public static class ProgramMapper extends BoaMapper {
+		// each worker should see its own copy of this
+		private static boolean started = false;
+
+		@Override
+		protected void setup(final Context context) throws IOException, InterruptedException {
+			super.setup(context);
+			if (!started)
+				context.write(new EmitKey("workers", 1), new EmitValue(1));
+			started = true;
+		}
+
+		@Override
+		protected void map(final Text key, final BytesWritable value, final Context context) throws IOException, InterruptedException {
+			final Project p = Project.parseFrom(com.google.protobuf.CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+			context.write(new EmitKey("projects", 0), new EmitValue(p.getId().length() > 0 ? 1 : 0));
+			context.write(new EmitKey("keys", 0), new EmitValue(key.toString()));
+		}
+	}
+
+	public static class ProgramReducer extends BoaReducer {
+		public ProgramReducer() {
+			super();
+
+			this.aggregators.put("0::projects", new IntSumAggregator());
+			this.aggregators.put("0::keys", new CollectionAggregator());
+			this.aggregators.put("1::workers", new IntSumAggregator());
+		}
+	}
+
+	@BeforeClass
+	public static void createInput() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		final File input = new File(dir, "input");
+		if (!input.mkdirs())
+			throw new IOException("unable to mkdir " + input);
+
+		final Configuration conf = new Configuration();
+		final FileSystem fs = FileSystem.getLocal(conf);
+
+		final Text key = new Text();
+		final BytesWritable value = new BytesWritable();
+		final SequenceFile.Reader r = new SequenceFile.Reader(fs, new Path("test/datagen/test_datagen/projects.seq"), conf);
+		try {
+			r.next(key, value);
+		} finally {
+			r.close();
+		}
+
+		final SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, new Path(input.getPath(), "projects.seq"), Text.class, BytesWritable.class);
+		try {
+			for (int i = 0; i < PROJECTS; i++)
+				w.append(new Text(String.format("%02d", i)), value);
+		} finally {
+			w.close();
+		}
+	}
+
+	@AfterClass
+	public static void deleteInput() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	private static String run(final int threads) throws IOException {
+		final File out = new File(dir, "out" + threads);
+		new BoaLocalExecutor(TestLocalExecutor.class.getClassLoader(), Program.class.getName(), threads).run(new File(dir, "input").getPath(), out.getPath());
+		return FileUtils.readFileToString(new File(out, "part-r-00000")) + "--\n" + FileUtils.readFileToString(new File(out, "part-r-00001"));
+	}
+
+	private static String expected(final int workers) {
+		final StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < PROJECTS; i++)
+			sb.append(String.format("keys[] = %02d\n", i));
+		sb.append("projects[] = " + PROJECTS + "\n");
+		sb.append("--\n");
+		sb.append("workers[] = " + workers + "\n");
+		return sb.toString();
+	}
+
+	@Test
+	public void oneThread() throws IOException {
+		assertEquals(expected(1), run(1));
+	}
+
+	@Test
+	public void manyThreads() throws IOException {
+		// values come out in input order, no matter which thread mapped them
+		assertEquals(expected(4), run(4));
+	}
+
+	@Test
+	public void binary() throws IOException {
+		final File out = new File(dir, "binary");
+		final BoaLocalExecutor executor = new BoaLocalExecutor(TestLocalExecutor.class.getClassLoader(), Program.class.getName(), 2);
+		executor.getConf().setBoolean(BoaOutputFormat.BINARY, true);
+		executor.run(new File(dir, "input").getPath(), out.getPath());
+
+		// rendered on demand, the output is the same as if written as text
+		final Configuration conf = new Configuration();
+		final FileSystem fs = FileSystem.getLocal(conf);
+		final String[] parts = new String[2];
+		for (int i = 0; i < parts.length; i++) {
+			final Path part = new Path(new File(out, String.format("part-r-%05d", i)).getPath());
+			assertTrue(BoaOutputReader.isBinary(fs, part));
+			final ByteArrayOutputStream text = new ByteArrayOutputStream();
+			BoaOutputReader.render(fs, conf, part, text);
+			parts[i] = text.toString("UTF-8");
+		}
+		assertEquals(expected(2), parts[0] + "--\n" + parts[1]);
+	}
+}
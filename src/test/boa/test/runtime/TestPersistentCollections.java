@@ -0,0 +1,175 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Random;
+
+import org.junit.Test;
+
+import boa.functions.BoaIntrinsics;
+import boa.runtime.BoaPersistentMap;
+import boa.runtime.BoaPersistentSet;
+
+/**
+ * Test the persistent sets and maps traversal results are stored in.
+ */
+public class TestPersistentCollections {
+	// a key whose hash often collides, to reach the collision nodes
+	private static class Key {
+		private final int id;
+
+		Key(final int id) {
+			this.id = id;
+		}
+
+		@Override
+		public int hashCode() {
+			return id % 7;
+		}
+
+		@Override
+		public boolean equals(final Object o) {
+			return o instanceof Key && ((Key) o).id == id;
+		}
+
+		@Override
+		public String toString() {
+			return "k" + id;
+		}
+	}
+
+	private static Object key(final Random r) {
+		final int i = r.nextInt(300);
+		return i % 3 == 0 ? new Key(i) : "s" + i;
+	}
+
+	// random changes to copies of a set, checked against HashSets
+	@Test
+	public void set() {
+		final Random r = new Random(42);
+		BoaPersistentSet<Object> s = new BoaPersistentSet<Object>();
+		HashSet<Object> expected = new HashSet<Object>();
+		for (int i = 0; i < 5000; i++) {
+			final BoaPersistentSet<Object> copy = s.snapshot();
+			final HashSet<Object> expectedCopy = new HashSet<Object>(expected);
+
+			final Object k = key(r);
+			if (r.nextInt(3) == 0)
+				assertEquals(expected.remove(k), s.remove(k));
+			else
+				assertEquals(expected.add(k), s.add(k));
+
+			// the copy did not change
+			assertEquals(expectedCopy, copy);
+			assertEquals(expected, s);
+			assertEquals(expected.size(), s.size());
+			assertEquals(expected.equals(expectedCopy), s.equals(copy));
+			assertEquals(expected.hashCode(), s.hashCode());
+
+			if (r.nextBoolean()) {
+				s = copy;
+				expected = expectedCopy;
+			}
+		}
+	}
+
+	@Test
+	public void setOperations() {
+		final Random r = new Random(7);
+		for (int i = 0; i < 200; i++) {
+			final BoaPersistentSet<Object> a = new BoaPersistentSet<Object>();
+			for (int j = r.nextInt(100); j > 0; j--)
+				a.add(key(r));
+			// b is derived from a, so the two share most of their nodes
+			final BoaPersistentSet<Object> b = a.snapshot();
+			for (int j = r.nextInt(10); j > 0; j--)
+				b.add(key(r));
+			for (int j = r.nextInt(10); j > 0; j--)
+				b.remove(key(r));
+
+			final HashSet<Object> ha = new HashSet<Object>(a);
+			final HashSet<Object> hb = new HashSet<Object>(b);
+
+			assertEquals(BoaIntrinsics.set_union(ha, hb), BoaIntrinsics.set_union(a, b));
+			assertEquals(BoaIntrinsics.set_intersect(ha, hb), BoaIntrinsics.set_intersect(a, b));
+			assertEquals(BoaIntrinsics.set_difference(ha, hb), BoaIntrinsics.set_difference(a, b));
+			assertEquals(BoaIntrinsics.set_symdiff(ha, hb), BoaIntrinsics.set_symdiff(a, b));
+			assertEquals(ha.containsAll(hb), a.containsAll(b));
+			assertEquals(ha.equals(hb), a.equals(b));
+
+			// operations on a persistent set and a plain one
+			assertEquals(BoaIntrinsics.set_union(ha, hb), BoaIntrinsics.set_union(a, hb));
+			assertEquals(BoaIntrinsics.set_difference(ha, hb), BoaIntrinsics.set_difference(a, hb));
+		}
+	}
+
+	@Test
+	public void copy() {
+		final HashSet<String> plain = new HashSet<String>();
+		plain.add("a");
+		final HashSet<String> copy = BoaPersistentSet.copy(plain);
+		plain.add("b");
+		assertEquals(1, copy.size());
+
+		final HashSet<String> shared = BoaPersistentSet.copy(copy);
+		shared.add("c");
+		assertFalse(copy.contains("c"));
+		assertTrue(shared.contains("a"));
+		assertEquals(2, shared.toArray(new String[0]).length);
+
+		final HashSet<String> cloned = BoaIntrinsics.set_clone(shared);
+		cloned.clear();
+		assertEquals(2, shared.size());
+	}
+
+	@Test
+	public void map() {
+		final Random r = new Random(3);
+		BoaPersistentMap<Object, Integer> m = new BoaPersistentMap<Object, Integer>();
+		HashMap<Object, Integer> expected = new HashMap<Object, Integer>();
+		for (int i = 0; i < 5000; i++) {
+			final BoaPersistentMap<Object, Integer> copy = m.snapshot();
+			final HashMap<Object, Integer> expectedCopy = new HashMap<Object, Integer>(expected);
+
+			final Object k = key(r);
+			if (r.nextInt(3) == 0)
+				assertEquals(expected.remove(k), m.remove(k));
+			else
+				assertEquals(expected.put(k, i % 5), m.put(k, i % 5));
+
+			assertEquals(expectedCopy, copy);
+			assertEquals(expected, m);
+			assertEquals(m, expected);
+			assertEquals(expected.equals(expectedCopy), m.equals(copy));
+			assertEquals(expected.hashCode(), m.hashCode());
+			assertEquals(expected.containsKey(k), m.containsKey(k));
+
+			if (r.nextBoolean()) {
+				m = copy;
+				expected = expectedCopy;
+			}
+		}
+		assertEquals(new HashSet<Object>(expected.keySet()), new HashSet<Object>(m.keySet()));
+		assertEquals(expected.values().size(), m.values().size());
+	}
+}
@@ -0,0 +1,214 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Random;
+
+import org.junit.Test;
+
+import boa.functions.BoaIntrinsics;
+import boa.runtime.BoaLongDoubleMap;
+import boa.runtime.BoaLongLongMap;
+import boa.runtime.BoaLongSet;
+import boa.runtime.BoaLongStack;
+import boa.runtime.BoaStringLongMap;
+
+/**
+ * Test the unboxed collections generated for int and float elements.
+ */
+public class TestPrimitiveCollections {
+	// random puts and removes, checked against a LinkedHashMap
+	// keys(), values() and string() list the elements in insertion order,
+	// where the java.util collections listed them in hash order
+	@Test
+	public void iterationOrder() {
+		final BoaLongLongMap m = new BoaLongLongMap();
+		final BoaLongSet s = new BoaLongSet();
+		for (final long k : new long[] { 42, -7, 1000000, 3, 0 }) {
+			m.put(k, k * 2);
+			s.add(k);
+		}
+		m.put(42L, 5L);
+		m.remove(3L);
+		m.put(3L, 1L);
+		s.remove(3L);
+		s.add(3L);
+
+		assertArrayEquals(new long[] { 42, -7, 1000000, 0, 3 }, BoaIntrinsics.basic_array(m.keySet().toArray(new Long[0])));
+		assertArrayEquals(new long[] { 5, -14, 2000000, 0, 1 }, BoaIntrinsics.basic_array(m.values().toArray(new Long[0])));
+		assertEquals("{42=5, -7=-14, 1000000=2000000, 0=0, 3=1}", m.toString());
+		assertEquals("[42, -7, 1000000, 0, 3]", s.toString());
+		assertEquals("42, -7, 1000000, 0, 3", BoaIntrinsics.arrayToString(BoaIntrinsics.basic_array(s.toArray(new Long[0]))));
+
+		// growing the table keeps the order
+		for (long k = 100; k < 1100; k++)
+			s.add(k);
+		assertEquals(Arrays.asList(42L, -7L, 1000000L, 0L, 3L, 100L), Arrays.asList(s.toArray(new Long[0])).subList(0, 6));
+
+		final BoaStringLongMap sm = new BoaStringLongMap();
+		for (final String k : new String[] { "b", "c", "a" })
+			sm.put(k, 1);
+		assertEquals("{b=1, c=1, a=1}", sm.toString());
+	}
+
+	@Test
+	public void longLongMap() {
+		final Random r = new Random(42);
+		final BoaLongLongMap m = new BoaLongLongMap();
+		final LinkedHashMap<Long, Long> expected = new LinkedHashMap<Long, Long>();
+		for (int i = 0; i < 20000; i++) {
+			final long k = r.nextInt(500) - 250;
+			if (r.nextInt(3) == 0) {
+				assertEquals(expected.remove(k) != null, m.remove(k));
+			} else {
+				if (!expected.containsKey(k))
+					expected.put(k, (long) i);
+				else
+					expected.put(k, expected.get(k) + i);
+				m.put(k, m.containsKey(k) ? m.get(k) + i : i);
+			}
+			assertEquals(expected.size(), m.size());
+		}
+		assertEquals(expected, m);
+		assertEquals(m, expected);
+		assertEquals(expected.toString(), m.toString());
+		assertEquals(new HashMap<Long, Long>(expected).hashCode(), m.hashCode());
+
+		m.clear();
+		assertTrue(m.isEmpty());
+		assertFalse(m.containsKey(3L));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void missingKey() {
+		new BoaLongLongMap().get(1L);
+	}
+
+	@Test
+	public void boxedAccess() {
+		final BoaLongLongMap m = new BoaLongLongMap();
+		m.put(1L, Long.valueOf(2));
+		m.put(Long.valueOf(3), 4L);
+		assertEquals(Long.valueOf(2), m.get((Object) 1L));
+		assertNull(m.get((Object) 2L));
+		assertNull(m.get("1"));
+		assertEquals(Arrays.asList(1L, 3L), Arrays.asList(m.keySet().toArray(new Long[0])));
+		assertEquals(Arrays.asList(2L, 4L), Arrays.asList(m.values().toArray(new Long[0])));
+	}
+
+	@Test
+	public void longDoubleMap() {
+		final BoaLongDoubleMap m = new BoaLongDoubleMap();
+		for (long i = 0; i < 100; i++)
+			m.put(i, i / 2.0);
+		for (long i = 0; i < 100; i += 2)
+			m.remove(i);
+		assertEquals(50, m.size());
+		assertEquals(49.5, m.get(99L), 0);
+		assertFalse(m.containsKey(98L));
+	}
+
+	@Test
+	public void stringLongMap() {
+		final Random r = new Random(7);
+		final BoaStringLongMap m = new BoaStringLongMap();
+		final LinkedHashMap<String, Long> expected = new LinkedHashMap<String, Long>();
+		for (int i = 0; i < 20000; i++) {
+			final String k = "k" + r.nextInt(500);
+			if (r.nextInt(3) == 0) {
+				assertEquals(expected.remove(k), m.remove(k));
+			} else {
+				final long v = expected.containsKey(k) ? expected.get(k) + 1 : 1;
+				expected.put(k, v);
+				m.put(k, m.containsKey(k) ? m.get(k) + 1 : 1);
+			}
+		}
+		assertEquals(expected, m);
+		assertEquals(expected.toString(), m.toString());
+	}
+
+	@Test
+	public void longSet() {
+		final BoaLongSet s1 = new BoaLongSet();
+		final BoaLongSet s2 = new BoaLongSet();
+		for (long i = 0; i < 100; i++) {
+			s1.add(i);
+			s2.add(i + 50);
+		}
+		assertTrue(s1.contains(0L));
+		assertFalse(s1.add(0L));
+
+		assertEquals(150, BoaIntrinsics.set_union(s1, s2).size());
+		assertEquals(50, BoaIntrinsics.set_intersect(s1, s2).size());
+		assertEquals(50, BoaIntrinsics.set_difference(s1, s2).size());
+		assertEquals(100, BoaIntrinsics.set_symdiff(s1, s2).size());
+
+		final BoaLongSet c = BoaIntrinsics.set_clone(s1);
+		c.remove(0L);
+		assertTrue(s1.contains(0L));
+		assertFalse(c.contains(0L));
+		assertEquals(new HashSet<Long>(c), c);
+	}
+
+	// tuples and traversals copy their values with the copy constructors
+	@Test
+	public void copies() {
+		final BoaLongLongMap m = new BoaLongLongMap();
+		m.put(1L, 1L);
+		final BoaLongLongMap m2 = new BoaLongLongMap(m);
+		m2.put(2L, 2L);
+		assertEquals(1, m.size());
+		assertEquals(2, m2.size());
+
+		final BoaStringLongMap s = new BoaStringLongMap();
+		s.put("a", 1L);
+		final BoaStringLongMap s2 = new BoaStringLongMap(s);
+		s2.remove("a");
+		assertEquals(1L, s.get("a"));
+		assertTrue(s2.isEmpty());
+
+		final BoaLongStack st = new BoaLongStack();
+		st.push(1L);
+		final BoaLongStack st2 = new BoaLongStack(st);
+		st2.push(2L);
+		assertEquals(1, st.size());
+		assertEquals(2L, st2.peek());
+	}
+
+	@Test
+	public void longStack() {
+		final BoaLongStack s = new BoaLongStack();
+		for (long i = 0; i < 20; i++)
+			s.push(i);
+		assertEquals(19L, BoaIntrinsics.stack_peek(s));
+		assertEquals(19L, BoaIntrinsics.stack_pop(s));
+		assertEquals(19, s.size());
+		assertEquals(Long.valueOf(0), s.toArray(new Long[0])[0]);
+		s.clear();
+		assertTrue(s.empty());
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.apache.hadoop.mapreduce.TaskAttemptID;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import boa.io.EmitKey;
+import boa.io.EmitValue;
+import boa.runtime.BoaProfiler;
+
+/**
+ * Test counting and timing the sites of a profiled program.
+ */
+public class TestProfiler {
+	private File dir;
+	private Configuration conf;
+
+	@Before
+	public void setUp() {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		conf = new Configuration();
+		conf.set(BoaProfiler.PROPERTY, new Path(dir.getAbsolutePath()).toString());
+	}
+
+	@After
+	public void tearDown() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	// runs a map task calling the first site n times and the second once
+	private void task(final int id, final int n) throws IOException, InterruptedException {
+		BoaProfiler.setup(new String[] { "line 1: before Method", "line 2: getast()" });
+		for (int i = 0; i < n; i++)
+			BoaProfiler.stop(0, BoaProfiler.start(0));
+		assertEquals("x", BoaProfiler.call(1, BoaProfiler.start(1), "x"));
+
+		final Mapper<Text, BytesWritable, EmitKey, EmitValue> mapper = new Mapper<Text, BytesWritable, EmitKey, EmitValue>();
+		BoaProfiler.cleanup(mapper.new Context(conf, new TaskAttemptID("local", 0, true, id, 0), null, null, null, null, null));
+	}
+
+	@Test
+	public void sums() throws Exception {
+		task(0, 1000);
+		task(1, 500);
+
+		final List<BoaProfiler.Site> sites = BoaProfiler.read(conf, new Path(dir.getAbsolutePath()));
+		assertEquals(2, sites.size());
+		assertEquals("line 1: before Method", sites.get(0).description);
+		assertEquals(1500, sites.get(0).calls);
+		// about one call in SAMPLE_PERIOD is timed
+		assertTrue(sites.get(0).samples > 1500 / BoaProfiler.SAMPLE_PERIOD / 2);
+		assertTrue(sites.get(0).samples < 1500 / BoaProfiler.SAMPLE_PERIOD * 2);
+		assertEquals("line 2: getast()", sites.get(1).description);
+		assertEquals(2, sites.get(1).calls);
+		// the first call of every site is timed
+		assertEquals(2, sites.get(1).samples);
+	}
+
+	@Test
+	public void startsOver() throws Exception {
+		task(0, 10);
+		task(0, 20);
+
+		assertEquals(20, BoaProfiler.read(conf, new Path(dir.getAbsolutePath())).get(0).calls);
+	}
+
+	@Test
+	public void report() throws Exception {
+		task(0, 10);
+
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		assertTrue(BoaProfiler.report(conf, new Path(dir.getAbsolutePath()), new PrintStream(out)));
+		final String[] lines = out.toString().split("\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[1].endsWith("line 1: before Method") || lines[2].endsWith("line 1: before Method"));
+	}
+
+	@Test
+	public void noProfile() throws Exception {
+		assertNull(BoaProfiler.read(conf, new Path(dir.getAbsolutePath())));
+		assertFalse(BoaProfiler.report(conf, new Path(dir.getAbsolutePath()), new PrintStream(new ByteArrayOutputStream())));
+	}
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.hadoop.conf.Configuration;
+import org.apache.hadoop.fs.FileSystem;
+import org.apache.hadoop.fs.Path;
+import org.apache.hadoop.io.BytesWritable;
+import org.apache.hadoop.io.SequenceFile;
+import org.apache.hadoop.io.Text;
+import org.apache.hadoop.mapreduce.Mapper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import boa.aggregators.CollectionAggregator;
+import boa.io.EmitKey;
+import boa.io.EmitValue;
+import boa.io.ProjectGuard;
+import boa.io.ProjectIndex;
+import boa.runtime.BoaCombiner;
+import boa.runtime.BoaLocalExecutor;
+import boa.runtime.BoaMapper;
+import boa.runtime.BoaReducer;
+import boa.runtime.BoaRunner;
+import boa.types.Toplevel.Project;
+
+/**
+ * Test the project index and skipping the projects a guard rejects.
+ */
+public class TestProjectIndex {
+	private static final int PROJECTS = 20;
+
+	private static File dir;
+	private static Configuration conf;
+	private static FileSystem fs;
+
+	// a program listing the keys of the projects it was given, guarded to Java projects
+	public static class Program extends BoaRunner {
+		@Override
+		public String getUsage() {
+			return "";
+		}
+
+		@Override
+		public String getInputGuard() {
+			return "lang-eq::Java";
+		}
+
+		@Override
+		public int run(final String[] args) {
+			return 0;
+		}
+
+		@Override
+		public Mapper<?, ?, ?, ?> getMapper() {
+			return new ProgramMapper();
+		}
+
+		@Override
+		public BoaCombiner getCombiner() {
+			return null;
+		}
+
+		@Override
+		public BoaReducer getReducer() {
+			return new ProgramReducer();
+		}
+	}
+
+	public static class ProgramMapper extends BoaMapper {
+		@Override
+		protected void map(final Text key, final BytesWritable value, final Context context) throws IOException, InterruptedException {
+			context.write(new EmitKey("keys", 0), new EmitValue(key.toString()));
+		}
+	}
+
+	public static class ProgramReducer extends BoaReducer {
+		public ProgramReducer() {
+			super();
+
+			this.aggregators.put("0::keys", new CollectionAggregator());
+		}
+	}
+
+	// even projects are Java projects, every third has no repositories
+	private static Project project(final Project p, final int i) {
+		final Project.Builder pb = Project.newBuilder(p);
+		pb.setId("" + i);
+		pb.clearProgrammingLanguages();
+		pb.addProgrammingLanguages(i % 2 == 0 ? "Java" : "C");
+		if (i % 3 == 0)
+			pb.clearCodeRepositories();
+		return pb.build();
+	}
+
+	@BeforeClass
+	public static void createInput() throws IOException {
+		dir = new File(new File(System.getProperty("java.io.tmpdir")), UUID.randomUUID().toString());
+		if (!dir.mkdirs())
+			throw new IOException("unable to mkdir " + dir);
+
+		conf = new Configuration();
+		fs = FileSystem.getLocal(conf);
+
+		final Text key = new Text();
+		final BytesWritable value = new BytesWritable();
+		final SequenceFile.Reader r = new SequenceFile.Reader(fs, new Path("test/datagen/test_datagen/projects.seq"), conf);
+		try {
+			r.next(key, value);
+		} finally {
+			r.close();
+		}
+		final Project p = Project.parseFrom(com.google.protobuf.CodedInputStream.newInstance(value.getBytes(), 0, value.getLength()));
+
+		// written out of key order, the index must still find them
+		final SequenceFile.Writer w = SequenceFile.createWriter(fs, conf, new Path(dir.getPath(), "projects.seq"), Text.class, BytesWritable.class);
+		try {
+			for (int i = PROJECTS - 1; i >= 0; i--)
+				w.append(new Text(String.format("%02d", i)), new BytesWritable(project(p, i).toByteArray()));
+		} finally {
+			w.close();
+		}
+
+		ProjectIndex.write(fs, conf, new Path(dir.getPath()));
+	}
+
+	@AfterClass
+	public static void deleteInput() throws IOException {
+		FileUtils.deleteDirectory(dir);
+	}
+
+	@Test
+	public void entries() throws IOException {
+		final ProjectIndex.Reader index = ProjectIndex.Reader.open(fs, conf, new Path(dir.getPath()));
+		assertNotNull(index);
+		try {
+			for (int i = 0; i < PROJECTS; i++) {
+				final ProjectIndex.Entry e = index.get(new Text(String.format("%02d", i)));
+				assertNotNull(e);
+				assertEquals(Arrays.asList(i % 2 == 0 ? "Java" : "C"), e.languages);
+				if (i % 3 == 0)
+					assertEquals(0, e.repositories);
+				else
+					assertTrue(e.repositories > 0);
+			}
+			assertNull(index.get(new Text("missing")));
+		} finally {
+			index.close();
+		}
+	}
+
+	@Test
+	public void noIndex() throws IOException {
+		assertNull(ProjectIndex.Reader.open(fs, conf, new Path(dir.getPath(), "missing")));
+	}
+
+	@Test
+	public void encoding() throws IOException {
+		final ProjectIndex.Entry e = new ProjectIndex.Entry(Arrays.asList("Java", "C++"), 2, 300, new TreeMap<Integer, Integer>());
+		e.kinds.put(1, 7);
+		final byte[] b = e.encode();
+		final ProjectIndex.Entry d = ProjectIndex.Entry.decode(b, b.length);
+		assertEquals(e.languages, d.languages);
+		assertEquals(e.repositories, d.repositories);
+		assertEquals(e.revisions, d.revisions);
+		assertEquals(e.kinds, d.kinds);
+	}
+
+	@Test
+	public void guards() {
+		final String text = "lang-match:lower:%5Ej;repos:%3E%3D:2,lang-eq::C%2B%2B";
+		final ProjectGuard guard = ProjectGuard.parse(text);
+		assertEquals(text, guard.toString());
+
+		final Map<Integer, Integer> kinds = new TreeMap<Integer, Integer>();
+		assertTrue(guard.accepts(new ProjectIndex.Entry(Arrays.asList("Java"), 0, 0, kinds)));
+		assertTrue(guard.accepts(new ProjectIndex.Entry(Arrays.asList("C", "C++"), 2, 0, kinds)));
+		assertFalse(guard.accepts(new ProjectIndex.Entry(Arrays.asList("C++"), 1, 0, kinds)));
+		assertFalse(guard.accepts(new ProjectIndex.Entry(Arrays.asList("C"), 2, 0, kinds)));
+	}
+
+	@Test
+	public void skipsRejected() throws IOException {
+		final File out = new File(dir, "out");
+		new BoaLocalExecutor(TestProjectIndex.class.getClassLoader(), Program.class.getName(), 2).run(dir.getPath(), out.getPath());
+
+		final StringBuilder sb = new StringBuilder();
+		for (int i = PROJECTS - 1; i >= 0; i--)
+			if (i % 2 == 0)
+				sb.append(String.format("keys[] = %02d\n", i));
+		assertEquals(sb.toString(), FileUtils.readFileToString(new File(out, "part-r-00000")));
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2018, Robert Dyer,
+ *                 and Bowling Green State University
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package boa.test.runtime;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+
+import org.junit.Test;
+
+import boa.runtime.ProjectProjection;
+import boa.types.Code.CodeRepository;
+import boa.types.Code.CodeRepository.RepositoryKind;
+import boa.types.Toplevel.Project;
+import boa.types.Toplevel.Project.ForgeKind;
+
+/**
+ * Test decoding only some fields of a Project.
+ */
+public class TestProjectProjection {
+	private static final Project PROJECT = Project.newBuilder()
+			.setId("1").setName("p").setProjectUrl("http://p").setKind(ForgeKind.GITHUB)
+			.setDescription("a project")
+			.addProgrammingLanguages("Java").addProgrammingLanguages("C")
+			.addCodeRepositories(CodeRepository.newBuilder().setUrl("http://p.git").setKind(RepositoryKind.GIT).setHead(0))
+			.setStars(5)
+			.build();
+
+	private static Project parse(final ProjectProjection projection) throws IOException {
+		// put the project in the middle of a larger buffer, as a BytesWritable would
+		final byte[] b = PROJECT.toByteArray();
+		final byte[] buf = new byte[b.length + 10];
+		System.arraycopy(b, 0, buf, 3, b.length);
+		return projection.parse(buf, 3, b.length);
+	}
+
+	@Test
+	public void onlyRequired() throws IOException {
+		assertEquals(Project.newBuilder().setId("1").setName("p").setProjectUrl("http://p").setKind(ForgeKind.GITHUB).build(), parse(new ProjectProjection()));
+	}
+
+	@Test
+	public void someFields() throws IOException {
+		final Project p = parse(new ProjectProjection("programming_languages", "stars"));
+		assertEquals(PROJECT.getProgrammingLanguagesList(), p.getProgrammingLanguagesList());
+		assertEquals(5, p.getStars());
+		assertEquals(0, p.getCodeRepositoriesCount());
+		assertEquals("", p.getDescription());
+	}
+
+	@Test
+	public void unknownField() throws IOException {
+		assertEquals(PROJECT, parse(new ProjectProjection("stars", "no_such_field")));
+	}
+
+	@Test
+	public void reusedBuffer() throws IOException {
+		final ProjectProjection projection = new ProjectProjection("code_repositories");
+		for (int i = 0; i < 3; i++)
+			assertEquals(PROJECT.getCodeRepositories(0), parse(projection).getCodeRepositories(0));
+	}
+}